@@ -12,6 +12,11 @@ import com.vividsolutions.jts.index.strtree.STRtree;
 
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Validates that a collection of {@link CurvePolygon}s satisfies the area condition.
@@ -22,20 +27,36 @@ public class AreaValidator {
     private static final byte INVALID = 1;
     private static final byte MATCHED = 2;
     private static final byte VALID = 3;
+    /** number of faces validated by one task in parallel mode */
+    private static final int FACES_PER_TASK = 64;
 
-    private final CurveSegmentIntersector intersector = new CurveSegmentIntersector();
     private final JtsextGeometryFactory factory;
     private final double maxOverlap;
     private final List<Face> faces = new ArrayList<Face>();
     private final List<EdgeRing> rings = new ArrayList<EdgeRing>();
     private final List<Intersection> intersections = new ArrayList<Intersection>();
     private final Map<String, Set<String>> overlaps = new HashMap<String, Set<String>>();
+    private final Map<Polygon, Face> facesByPolygon = new IdentityHashMap<Polygon, Face>();
+    /** segments marked by {@link #addInvalidSegment(Polygon, int, int)}, applied after the edge state is initialized */
+    private final Map<EdgeRing, List<Integer>> presetInvalidSegments = new HashMap<EdgeRing, List<Integer>>();
+    private int threadCount = 1;
 
     public AreaValidator(JtsextGeometryFactory factory, double maxOverlap) {
         this.factory = factory;
         this.maxOverlap = maxOverlap;
     }
 
+    /**
+     * Sets the number of threads used by {@link #validateAll()}. With more than one thread, the faces are validated
+     * concurrently.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
     /**
      * Validates that a collection of {@link CurvePolygon}s satisfies the area condition.
      * <p>
@@ -48,12 +69,20 @@ public class AreaValidator {
      * @return A list of {@link IoxInvalidDataException}s with an entry for each violation.
      */
     public static List<IoxInvalidDataException> validateArea(Collection<Polygon> polygons, double maxOverlap, String iliQualifiedName) {
+        return validateArea(polygons, maxOverlap, iliQualifiedName, 1);
+    }
+
+    /**
+     * Same as {@link #validateArea(Collection, double, String)}, but validates the faces with the given number of threads.
+     */
+    public static List<IoxInvalidDataException> validateArea(Collection<Polygon> polygons, double maxOverlap, String iliQualifiedName, int threadCount) {
         if (polygons.isEmpty()) {
             return Collections.emptyList();
         }
 
         JtsextGeometryFactory factory = (JtsextGeometryFactory) polygons.iterator().next().getFactory();
         AreaValidator areaValidator = new AreaValidator(factory, maxOverlap);
+        areaValidator.setThreadCount(threadCount);
 
         areaValidator.addPolygons(polygons);
         areaValidator.validateAll();
@@ -74,6 +103,7 @@ public class AreaValidator {
     private void addPolygon(Polygon polygon, Map<Edge, CurveSegment> segmentsMap, Map<Coordinate, List<Edge>> nodes) {
         Face face = new Face();
         faces.add(face);
+        facesByPolygon.put(polygon, face);
         face.polygon = polygon;
 
         CompoundCurveRing shell = (CompoundCurveRing)polygon.getExteriorRing();
@@ -201,6 +231,53 @@ public class AreaValidator {
         }
     }
 
+    /**
+     * Marks a segment of a polygon as invalid, as if it was marked by a polygon validated before. Use this to validate
+     * a collection of polygons in parts with the same result: the segments returned by
+     * {@link #getInvalidSegments(Polygon)} for a polygon of a later part are marked before the validation of that part.
+     *
+     * @param polygon A polygon added by {@link #addPolygons(Collection)}
+     * @param ringIndex 0 for the shell, 1 + the index of the hole for a hole
+     * @param segmentIndex The index of the segment in the ring
+     */
+    public void addInvalidSegment(Polygon polygon, int ringIndex, int segmentIndex) {
+        EdgeRing ring = getRing(polygon, ringIndex);
+        List<Integer> segments = presetInvalidSegments.get(ring);
+        if (segments == null) {
+            segments = new ArrayList<Integer>();
+            presetInvalidSegments.put(ring, segments);
+        }
+        segments.add(segmentIndex);
+    }
+
+    /**
+     * @param polygon A polygon added by {@link #addPolygons(Collection)}
+     * @return The ring index and segment index of the segments of the polygon, that are marked as invalid after
+     * {@link #validateAll(Set)}
+     * @see #addInvalidSegment(Polygon, int, int)
+     */
+    public List<int[]> getInvalidSegments(Polygon polygon) {
+        List<int[]> invalidSegments = new ArrayList<int[]>();
+        Face face = facesByPolygon.get(polygon);
+        for (int ringIndex = 0; ringIndex <= face.holes.length; ringIndex++) {
+            EdgeRing ring = getRing(polygon, ringIndex);
+            for (int i = 0; i < ring.getNumSegments(); i++) {
+                if (ring.state[i] == INVALID) {
+                    invalidSegments.add(new int[]{ringIndex, i});
+                }
+            }
+        }
+        return invalidSegments;
+    }
+
+    private EdgeRing getRing(Polygon polygon, int ringIndex) {
+        Face face = facesByPolygon.get(polygon);
+        if (face == null) {
+            throw new IllegalArgumentException("unknown polygon " + polygon.getUserData());
+        }
+        return ringIndex == 0 ? face.shell : face.holes[ringIndex - 1];
+    }
+
     public List<IoxInvalidDataException> createIntersectionExceptions(String iliQualifiedName) {
         List<IoxInvalidDataException> invalidDataExceptions = new ArrayList<IoxInvalidDataException>();
 
@@ -218,6 +295,20 @@ public class AreaValidator {
         return invalidDataExceptions;
     }
 
+    /**
+     * @return The intersections found by {@link #validateAll()}
+     */
+    public List<Intersection> getIntersections() {
+        return intersections;
+    }
+
+    /**
+     * @return The TIDs of the overlapping polygons found by {@link #validateAll()}; the key is the lower TID of each pair
+     */
+    public Map<String, Set<String>> getOverlaps() {
+        return overlaps;
+    }
+
     public List<MultiLineString> gatherInvalidGeometry() {
         List<MultiLineString> invalidMultiLines = new ArrayList<MultiLineString>();
         for (Face face : faces) {
@@ -266,7 +357,22 @@ public class AreaValidator {
      * Validates all polygons. Get the result with {@link #createIntersectionExceptions(String)} or {@link #gatherInvalidGeometry()}.
      */
     public void validateAll() {
+        validateAll(null);
+    }
+
+    /**
+     * Validates the faces of the given polygons. The other polygons are only used as neighbours of these faces; their
+     * own segments are not validated. Intersections are reported from the side of the given polygons.
+     *
+     * @param targetPolygons The polygons to validate (compared by identity), or null to validate all polygons
+     */
+    public void validateAll(Set<Polygon> targetPolygons) {
         initializeEdgeState();
+        for (Map.Entry<EdgeRing, List<Integer>> preset : presetInvalidSegments.entrySet()) {
+            for (int i : preset.getValue()) {
+                preset.getKey().setState(i, INVALID);
+            }
+        }
 
         STRtree index = new STRtree();
 
@@ -274,13 +380,170 @@ public class AreaValidator {
             index.insert(face.polygon.getEnvelopeInternal(), face);
         }
 
-        for (Face face : faces) {
+        List<Face> targetFaces = faces;
+        if (targetPolygons != null) {
+            targetFaces = new ArrayList<Face>();
+            for (Face face : faces) {
+                if (targetPolygons.contains(face.polygon)) {
+                    targetFaces.add(face);
+                }
+            }
+        }
+
+        if (threadCount > 1 && targetFaces.size() > FACES_PER_TASK) {
+            validateAllParallel(index, targetFaces);
+            return;
+        }
+
+        FaceContext context = new FaceContext(intersections, overlaps, false);
+        for (Face face : targetFaces) {
             List<Face> adjacentFaces = index.query(face.polygon.getEnvelopeInternal());
             adjacentFaces.remove(face);
-            validateFace(face, adjacentFaces);
+            validateFace(context, face, adjacentFaces);
         }
     }
 
+    /**
+     * Validates blocks of faces concurrently and gives the same result as the serial validation.
+     * <p>
+     * A task only reads and writes the state of the rings of its own faces. Segments of other rings, that a face
+     * finds to be invalid, are collected per face. The results are committed in the order of the faces: the marks
+     * of a face are applied to the rings of the faces that are already committed, and are kept for the faces that
+     * are not yet committed. If a mark hits a segment of a face, that was still unknown when the face was validated,
+     * the serial validation would have skipped this segment, so the face is validated again with the marks applied.
+     */
+    private void validateAllParallel(final STRtree index, List<Face> targetFaces) {
+        // initialize the lazily built structures, so that the tasks only read shared data
+        index.build();
+        for (EdgeRing ring : rings) {
+            ring.getIndex();
+            for (CurveSegment segment : ring.lines.getSegments()) {
+                segment.getCoordinates();
+            }
+        }
+        for (Face face : faces) {
+            face.indexedPointInAreaLocator = new IndexedPointInAreaLocator(face.polygon);
+            face.indexedPointInAreaLocator.locate(face.polygon.getEnvelopeInternal().centre());
+        }
+
+        // state of the rings of the target faces before any face is validated, and the marks of committed faces
+        // for rings of faces that are not yet committed
+        final Map<EdgeRing, byte[]> initialStates = new HashMap<EdgeRing, byte[]>();
+        for (Face face : targetFaces) {
+            initialStates.put(face.shell, face.shell.state.clone());
+            for (EdgeRing hole : face.holes) {
+                initialStates.put(hole, hole.state.clone());
+            }
+        }
+        Map<EdgeRing, List<Integer>> pendingMarks = new HashMap<EdgeRing, List<Integer>>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<List<FaceContext>>> results = new ArrayList<Future<List<FaceContext>>>();
+        try {
+            for (int start = 0; start < targetFaces.size(); start += FACES_PER_TASK) {
+                final List<Face> block = targetFaces.subList(start, Math.min(start + FACES_PER_TASK, targetFaces.size()));
+                results.add(executor.submit(new Callable<List<FaceContext>>() {
+                    @Override
+                    public List<FaceContext> call() {
+                        List<FaceContext> contexts = new ArrayList<FaceContext>(block.size());
+                        for (Face face : block) {
+                            contexts.add(validateDeferred(index, face));
+                        }
+                        return contexts;
+                    }
+                }));
+            }
+
+            int faceIndex = 0;
+            for (Future<List<FaceContext>> result : results) {
+                for (FaceContext context : result.get()) {
+                    Face face = targetFaces.get(faceIndex++);
+                    boolean changed = applyPendingMarks(face.shell, initialStates, pendingMarks);
+                    for (EdgeRing hole : face.holes) {
+                        changed |= applyPendingMarks(hole, initialStates, pendingMarks);
+                    }
+                    face.shell.state = resetState(face.shell, changed, initialStates);
+                    for (EdgeRing hole : face.holes) {
+                        hole.state = resetState(hole, changed, initialStates);
+                    }
+                    if (changed) {
+                        context = validateDeferred(index, face);
+                    }
+
+                    intersections.addAll(context.intersections);
+                    for (Map.Entry<String, Set<String>> overlapping : context.overlaps.entrySet()) {
+                        for (String tid2 : overlapping.getValue()) {
+                            recordOverlap(overlaps, overlapping.getKey(), tid2);
+                        }
+                    }
+                    for (int i = 0; i < context.invalidRings.size(); i++) {
+                        EdgeRing ring = context.invalidRings.get(i);
+                        if (initialStates.containsKey(ring)) {
+                            List<Integer> marks = pendingMarks.get(ring);
+                            if (marks == null) {
+                                marks = new ArrayList<Integer>();
+                                pendingMarks.put(ring, marks);
+                            }
+                            marks.add(context.invalidSegments.get(i));
+                        } else {
+                            ring.setState(context.invalidSegments.get(i), INVALID);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FaceContext validateDeferred(STRtree index, Face face) {
+        FaceContext context = new FaceContext(new ArrayList<Intersection>(), new HashMap<String, Set<String>>(), true);
+        List<Face> adjacentFaces = index.query(face.polygon.getEnvelopeInternal());
+        adjacentFaces.remove(face);
+        validateFace(context, face, adjacentFaces);
+        return context;
+    }
+
+    /**
+     * Applies the marks of the committed faces to the initial state of a ring of the face to commit.
+     *
+     * @return true if a mark hits a segment that was unknown when the face was validated
+     */
+    private boolean applyPendingMarks(EdgeRing ring, Map<EdgeRing, byte[]> initialStates, Map<EdgeRing, List<Integer>> pendingMarks) {
+        List<Integer> marks = pendingMarks.remove(ring);
+        if (marks == null) {
+            return false;
+        }
+        byte[] initialState = initialStates.get(ring);
+        boolean changed = false;
+        for (int index : marks) {
+            if (initialState[index] == UNKNOWN) {
+                initialState[index] = INVALID;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the state to continue with: the initial state, if the face has to be validated again
+     */
+    private static byte[] resetState(EdgeRing ring, boolean changed, Map<EdgeRing, byte[]> initialStates) {
+        byte[] initialState = initialStates.remove(ring);
+        return changed ? initialState : ring.state;
+    }
+
     /**
      * Initializes the state of the segments of the {@link EdgeRing}s that record is the segment is valid or violates
      * the area condition.
@@ -338,15 +601,15 @@ public class AreaValidator {
         }
     }
 
-    private void validateFace(Face currentFace, List<Face> adjacentFaces) {
-        validateEdgeRing(currentFace.shell, adjacentFaces);
+    private void validateFace(FaceContext context, Face currentFace, List<Face> adjacentFaces) {
+        validateEdgeRing(context, currentFace.shell, adjacentFaces);
 
         for (EdgeRing edgeRing : currentFace.holes) {
-            validateEdgeRing(edgeRing, adjacentFaces);
+            validateEdgeRing(context, edgeRing, adjacentFaces);
         }
     }
 
-    private void validateEdgeRing(EdgeRing edgeRing, List<Face> adjacentFaces) {
+    private void validateEdgeRing(FaceContext context, EdgeRing edgeRing, List<Face> adjacentFaces) {
         if (edgeRing.isAllKnown()) {
             return;
         }
@@ -360,11 +623,11 @@ public class AreaValidator {
             byte allValid = NOT_SET;
             for (Face adjacentFace : adjacentFaces) {
                 EdgeRing shell = adjacentFace.shell;
-                byte segmentInsideShell = validateSegmentAgainstRing(edgeRing, i, shell);
+                byte segmentInsideShell = validateSegmentAgainstRing(context, edgeRing, i, shell);
 
                 byte segmentInsideHole = UNKNOWN;
                 for (EdgeRing hole : adjacentFace.holes) {
-                    byte holeState = validateSegmentAgainstRing(edgeRing, i, hole);
+                    byte holeState = validateSegmentAgainstRing(context, edgeRing, i, hole);
                     if (holeState == VALID) {
                         segmentInsideHole = VALID;
                     } else if (holeState == INVALID && segmentInsideHole == UNKNOWN) {
@@ -377,7 +640,7 @@ public class AreaValidator {
                 } else if (segmentInsideShell == INVALID || segmentInsideHole == INVALID) {
                     allValid = INVALID;
                     edgeRing.setState(i, INVALID);
-                    recordOverlap(
+                    recordOverlap(context.overlaps,
                             edgeRing.userData.toString(),
                             shell.userData.toString());
                 } else {
@@ -397,7 +660,7 @@ public class AreaValidator {
             CurveSegment thisSegment = edgeRing.getSegment(i);
             for (Face adjacentFace : adjacentFaces) {
                 if (isPointInsideFace(thisSegment.getEndPoint(), adjacentFace)) {
-                    recordOverlap(edgeRing.userData.toString(), adjacentFace.polygon.getUserData().toString());
+                    recordOverlap(context.overlaps, edgeRing.userData.toString(), adjacentFace.polygon.getUserData().toString());
 
                     edgeRing.setState(i, INVALID);
                     edgeRing.setState(edgeRing.next(i), INVALID);
@@ -412,6 +675,7 @@ public class AreaValidator {
      * an invalid way, it is marked as invalid. If the segment touches the ring in a control point, the return value
      * reflects whether the segment is inside ({@link #INVALID}) or outside ({@link #VALID}) the other ring.
      *
+     * @param context The intersector and the result buffers to use
      * @param testRing The {@link EdgeRing} of the segment to test
      * @param testSegmentIndex The index of the segment to test
      * @param otherRing The other {@link EdgeRing} to test against
@@ -419,7 +683,8 @@ public class AreaValidator {
      * @return Indication if the segment is inside ({@link #INVALID}) or outside ({@link #VALID}) the other ring or
      * {@link #UNKNOWN} if the segment does not touch the other ring anywhere.
      */
-    private byte validateSegmentAgainstRing(EdgeRing testRing, int testSegmentIndex, EdgeRing otherRing) {
+    private byte validateSegmentAgainstRing(FaceContext context, EdgeRing testRing, int testSegmentIndex, EdgeRing otherRing) {
+        CurveSegmentIntersector intersector = context.intersector;
         CurveSegment testSegment = testRing.getSegment(testSegmentIndex);
         STRtree index = otherRing.getIndex();
         Map<Integer, Double> pointsToCheck = new HashMap<Integer, Double>();
@@ -432,8 +697,8 @@ public class AreaValidator {
             if (intersector.hasIntersection()) {
                 if (isInvalidProperIntersection(intersector, testSegment, otherSegment, maxOverlap)) {
                     testRing.setState(testSegmentIndex, INVALID);
-                    otherRing.setState(i, INVALID);
-                    recordIntersection(intersector, testRing.lines, otherRing.lines, testSegment, otherSegment);
+                    context.setInvalid(otherRing, i);
+                    recordIntersection(context.intersections, intersector, testRing.lines, otherRing.lines, testSegment, otherSegment);
                 } else {
                     // remember intersection for later checking
                     if (intersector.getIntersectionNum() == 2) {
@@ -500,7 +765,7 @@ public class AreaValidator {
         return face.indexedPointInAreaLocator.locate(point) == Location.INTERIOR;
     }
 
-    private void recordIntersection(CurveSegmentIntersector intersector, CompoundCurve curveA, CompoundCurve curveB, CurveSegment segmentA, CurveSegment segmentB) {
+    private static void recordIntersection(List<Intersection> intersections, CurveSegmentIntersector intersector, CompoundCurve curveA, CompoundCurve curveB, CurveSegment segmentA, CurveSegment segmentB) {
         if (intersector.getIntersectionNum() == 1) {
             intersections.add(new Intersection(intersector.getIntersection(0), curveA, curveB, segmentA, segmentB, intersector.getOverlap()));
         } else if (intersector.getIntersectionNum() == 2) {
@@ -509,6 +774,10 @@ public class AreaValidator {
     }
 
     private void recordOverlap(String tid1, String tid2) {
+        recordOverlap(overlaps, tid1, tid2);
+    }
+
+    private static void recordOverlap(Map<String, Set<String>> overlaps, String tid1, String tid2) {
         if (tid1.compareTo(tid2) > 0) {
             String temp = tid1;
             tid1 = tid2;
@@ -692,6 +961,34 @@ public class AreaValidator {
         }
     }
 
+    /**
+     * Intersector and results of the validation of some faces.
+     */
+    private static class FaceContext {
+        final CurveSegmentIntersector intersector = new CurveSegmentIntersector();
+        final List<Intersection> intersections;
+        final Map<String, Set<String>> overlaps;
+        /** Invalid segments of rings of other faces, that are not yet marked; null if they are marked immediately. */
+        final List<EdgeRing> invalidRings;
+        final List<Integer> invalidSegments;
+
+        FaceContext(List<Intersection> intersections, Map<String, Set<String>> overlaps, boolean deferOtherRings) {
+            this.intersections = intersections;
+            this.overlaps = overlaps;
+            this.invalidRings = deferOtherRings ? new ArrayList<EdgeRing>() : null;
+            this.invalidSegments = deferOtherRings ? new ArrayList<Integer>() : null;
+        }
+
+        void setInvalid(EdgeRing otherRing, int index) {
+            if (invalidRings == null) {
+                otherRing.setState(index, INVALID);
+            } else {
+                invalidRings.add(otherRing);
+                invalidSegments.add(index);
+            }
+        }
+    }
+
     /**
      * Represents a face of a {@link Polygon} with its shell and holes.
      */
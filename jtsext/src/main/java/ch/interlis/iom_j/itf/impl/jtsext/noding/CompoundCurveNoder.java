@@ -30,6 +30,18 @@ public class CompoundCurveNoder
   private boolean isNoded=false;
   private boolean validateOnly=false;
   private boolean enableCommonSegments=false;
+  private int threadCount=1;
+  /** min. number of curves per tile in tiled mode.
+   */
+  private static final int MIN_CURVES_PER_TILE=256;
+  /** min. number of segments of a curve, to build a spatial index of its segments.
+   * Curves with fewer segments are searched linearly.
+   */
+  private static final int MIN_SEGMENTS_PER_INDEX=16;
+  /** segment index of the curve, that was last used as first curve of a pair.
+   * Consecutive pairs usually share the first curve, so the index is built once per curve.
+   */
+  private SegmentIndex segmentIndex=null;
   
   /**
    * Creates a new noding validator for a given set of linework.
@@ -77,9 +89,15 @@ public class CompoundCurveNoder
   	}
   }
 
-  private HashMap<CurvePairInt,HashSet<Coordinate>> compared=new HashMap<CurvePairInt,HashSet<Coordinate>>();
+  /** intersection points found so far, of the pair of curves that is currently computed.
+   */
+  private HashSet<Coordinate> pairIntersections=new HashSet<Coordinate>();
   private void checkIntersections()
   {
+	if(threadCount>1 && segStrings.size()>=2*MIN_CURVES_PER_TILE){
+		checkIntersectionsTiled();
+		return;
+	}
 	segInt=new java.util.ArrayList<Intersection>();
 	STRtree polyidx=new STRtree();
     for (int i=0;i<segStrings.size();i++) {
@@ -91,16 +109,170 @@ public class CompoundCurveNoder
     	CompoundCurve e0 =  segStrings.get(i);
 		List<Integer> hits=polyidx.query(e0.getEnvelopeInternal());
         for (int e1_i :  hits) {
-        	CurvePairInt pair=new CurvePairInt(i,e1_i);
-        	if(!compared.containsKey(pair)){
+        	// the envelopes of both curves intersect, so a pair with a lower index was already computed, when the curve with the lower index was e0
+        	if(e1_i>=i){
     	    	CompoundCurve e1 =  segStrings.get(e1_i);
-        		compared.put(pair,new HashSet<Coordinate>());
                 computeIntersects(i,e0, e1_i,e1);
         	}
         }
       }
   }
 
+  /** intersections of a pair of curves, found in one tile.
+   */
+  private static class PairIntersections {
+	  private int c0;
+	  private int c1;
+	  private List<Intersection> intersections;
+	  private PairIntersections(CurvePairInt pair,List<Intersection> intersections) {
+		  c0=pair.c0;
+		  c1=pair.c1;
+		  this.intersections=intersections;
+	  }
+  }
+  private static class TileResult {
+	  private List<PairIntersections> intersections=new java.util.ArrayList<PairIntersections>();
+	  private Map<CompoundCurve,SortedSet<Integer>> nodes=null;
+  }
+  /** Computes the intersections in spatial tiles, one task per tile.
+   * The curves are assigned to all tiles that their envelope overlaps. A pair of curves is only
+   * computed in the tile that contains the lower left corner of the intersection of their envelopes,
+   * so every pair is computed exactly once.
+   * The intersections are reported in the same order as {@link #checkIntersections()} without tiles
+   * (the pairs are visited in the order of the global index), 
+   * so the result doesn't depend on the number of threads or tiles.
+   */
+  private void checkIntersectionsTiled()
+  {
+	segInt=new java.util.ArrayList<Intersection>();
+	// tasks read the curves concurrently; segStrings might be backed by a file
+	final List<CompoundCurve> curves=new java.util.ArrayList<CompoundCurve>(segStrings);
+	final int curvec=curves.size();
+	final Envelope envs[]=new Envelope[curvec];
+	final Envelope total=new Envelope();
+	for(int i=0;i<curvec;i++){
+		envs[i]=new Envelope(curves.get(i).getEnvelopeInternal());
+		total.expandToInclude(envs[i]);
+	}
+	final int tilesPerAxis=Math.max(1,Math.min((int)Math.ceil(Math.sqrt(threadCount*4)),(int)Math.sqrt(curvec/MIN_CURVES_PER_TILE)));
+	final double tileWidth=total.getWidth()/tilesPerAxis;
+	final double tileHeight=total.getHeight()/tilesPerAxis;
+	ArrayList<ArrayList<Integer>> tileCurves=new ArrayList<ArrayList<Integer>>();
+	for(int tilei=0;tilei<tilesPerAxis*tilesPerAxis;tilei++){
+		tileCurves.add(new ArrayList<Integer>());
+	}
+	for(int i=0;i<curvec;i++){
+		int ix0=getTileIndex(envs[i].getMinX(),total.getMinX(),tileWidth,tilesPerAxis);
+		int ix1=getTileIndex(envs[i].getMaxX(),total.getMinX(),tileWidth,tilesPerAxis);
+		int iy0=getTileIndex(envs[i].getMinY(),total.getMinY(),tileHeight,tilesPerAxis);
+		int iy1=getTileIndex(envs[i].getMaxY(),total.getMinY(),tileHeight,tilesPerAxis);
+		for(int iy=iy0;iy<=iy1;iy++){
+			for(int ix=ix0;ix<=ix1;ix++){
+				tileCurves.get(iy*tilesPerAxis+ix).add(i);
+			}
+		}
+	}
+	java.util.concurrent.ExecutorService executor=java.util.concurrent.Executors.newFixedThreadPool(threadCount);
+	try {
+		ArrayList<java.util.concurrent.Future<TileResult>> tileResults=new ArrayList<java.util.concurrent.Future<TileResult>>();
+		for(int tilei=0;tilei<tileCurves.size();tilei++){
+			final int thisTile=tilei;
+			final ArrayList<Integer> curveIdxs=tileCurves.get(tilei);
+			if(curveIdxs.isEmpty()){
+				continue;
+			}
+			tileResults.add(executor.submit(new java.util.concurrent.Callable<TileResult>(){
+				@Override
+				public TileResult call() {
+					// own noder, to have an own intersector and own results
+					CompoundCurveNoder tileNoder=new CompoundCurveNoder(curves,validateOnly);
+					tileNoder.enableCommonSegments=enableCommonSegments;
+					tileNoder.segInt=new java.util.ArrayList<Intersection>();
+					TileResult ret=new TileResult();
+					STRtree tileidx=new STRtree();
+					for(int i:curveIdxs){
+						tileidx.insert(envs[i], i);
+					}
+					for(int i:curveIdxs){
+						List<Integer> hits=tileidx.query(envs[i]);
+						for(int j:hits){
+							if(j<i){
+								continue;
+							}
+							double refx=Math.max(envs[i].getMinX(),envs[j].getMinX());
+							double refy=Math.max(envs[i].getMinY(),envs[j].getMinY());
+							int refTile=getTileIndex(refy,total.getMinY(),tileHeight,tilesPerAxis)*tilesPerAxis
+									+getTileIndex(refx,total.getMinX(),tileWidth,tilesPerAxis);
+							if(refTile!=thisTile){
+								continue;
+							}
+							CurvePairInt pair=new CurvePairInt(i,j);
+							int isc=tileNoder.segInt.size();
+							tileNoder.computeIntersects(i,curves.get(i), j,curves.get(j));
+							if(tileNoder.segInt.size()>isc){
+								ret.intersections.add(new PairIntersections(pair,new java.util.ArrayList<Intersection>(tileNoder.segInt.subList(isc, tileNoder.segInt.size()))));
+							}
+						}
+					}
+					ret.nodes=tileNoder.nodes;
+					return ret;
+				}
+			}));
+		}
+		HashMap<Long,List<Intersection>> pairs=new HashMap<Long,List<Intersection>>();
+		for(java.util.concurrent.Future<TileResult> tileResult:tileResults){
+			TileResult result=tileResult.get();
+			for(PairIntersections pair:result.intersections){
+				pairs.put(getPairKey(pair.c0,pair.c1),pair.intersections);
+			}
+			for(Map.Entry<CompoundCurve,SortedSet<Integer>> node:result.nodes.entrySet()){
+				for(int nodeSegIndex:node.getValue()){
+					createNode(node.getKey(),nodeSegIndex);
+				}
+			}
+		}
+		// report in the order of the serial loop; the global index only costs envelope queries
+		if(!pairs.isEmpty()){
+			STRtree polyidx=new STRtree();
+			for(int i=0;i<curvec;i++){
+				polyidx.insert(envs[i], i);
+			}
+			for(int i=0;i<curvec && !pairs.isEmpty();i++){
+				List<Integer> hits=polyidx.query(envs[i]);
+				for(int j:hits){
+					if(j>=i){
+						List<Intersection> pairInt=pairs.remove(getPairKey(i,j));
+						if(pairInt!=null){
+							segInt.addAll(pairInt);
+						}
+					}
+				}
+			}
+		}
+	} catch (InterruptedException e) {
+		throw new IllegalStateException(e);
+	} catch (java.util.concurrent.ExecutionException e) {
+		if(e.getCause() instanceof RuntimeException){
+			throw (RuntimeException)e.getCause();
+		}
+		throw new IllegalStateException(e.getCause());
+	} finally {
+		executor.shutdownNow();
+	}
+  }
+  private static long getPairKey(int c0,int c1)
+  {
+	  return ((long)c0<<32)|(c1&0xffffffffL);
+  }
+  private static int getTileIndex(double v,double min,double tileSize,int tilec)
+  {
+	  if(tileSize<=0.0){
+		  return 0;
+	  }
+	  int idx=(int)((v-min)/tileSize);
+	  return Math.max(0,Math.min(tilec-1,idx));
+  }
+
 	/**
 	 * Returns the lines, cut at the node points.
 	 * If  no nodes were calculated beforehand by calling {@link #getIntersections} or {@link #isValid}, the lines are returned unchanged.
@@ -141,16 +313,14 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
     endPts2[0]=ss1.getStartPoint().getCoordinate();
     endPts2[1]=ss1.getEndPoint().getCoordinate();
 	
-	STRtree index0 = new STRtree();
-	for (int i = 0; i < ss0.getNumSegments(); i++) {
-		CurveSegment seg = ss0.getSegments().get(i);
-		index0.insert(seg.computeEnvelopeInternal(), i);
+	pairIntersections.clear();
+	if(segmentIndex==null || segmentIndex.curve!=ss0){
+		segmentIndex=new SegmentIndex(ss0);
 	}
+	SegmentIndex index0=segmentIndex;
 	if (ss0 == ss1) {
 		for (int i = 0; i < ss1.getNumSegments(); i++) {
-			CurveSegment seg = ss1.getSegments().get(i);
-			List<Integer> hits = index0.query(seg.computeEnvelopeInternal());
-			Collections.sort(hits); // Necessary because segIntAdd might lose intersections if they are not added in order
+			List<Integer> hits = index0.query(index0.envs[i]); // sorted, because segIntAdd might lose intersections if they are not added in order
 			for (int hit : hits) {
 				if (hit > i) {
 					checkInteriorIntersections(ss0Idx,ss0, hit, ss1Idx,ss1, i,endPts1,endPts2);
@@ -160,8 +330,7 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
 	} else {
 		for (int i = 0; i < ss1.getNumSegments(); i++) {
 			CurveSegment seg = ss1.getSegments().get(i);
-			List<Integer> hits = index0.query(seg.computeEnvelopeInternal());
-			Collections.sort(hits); // Necessary because segIntAdd might lose intersections if they are not added in order
+			List<Integer> hits = index0.query(seg.computeEnvelopeInternal()); // sorted, because segIntAdd might lose intersections if they are not added in order
 			for (int hit : hits) {
 				checkInteriorIntersections(ss0Idx,ss0, hit, ss1Idx,ss1, i,endPts1,endPts2);
 			}
@@ -292,7 +461,7 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
 	private void segIntAdd(Coordinate intersection, Coordinate intersection2,
 			int e0_i,CompoundCurve e0, int e1_i,CompoundCurve e1, CurveSegment s0,
 			CurveSegment s1, Double overlap,boolean isOverlay) {
-		HashSet<Coordinate> isList=compared.get(new CurvePairInt(e0_i, e1_i));
+		HashSet<Coordinate> isList=pairIntersections;
 		boolean added=false;
 		if(!isList.contains(intersection)){
 			added=true;
@@ -311,7 +480,7 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
 
 	private void segIntAdd(Coordinate intersection, int e0_i,CompoundCurve e0,
 			int e1_i,CompoundCurve e1, CurveSegment s0, CurveSegment s1, Double overlap) {
-		HashSet<Coordinate> isList=compared.get(new CurvePairInt(e0_i, e1_i));
+		HashSet<Coordinate> isList=pairIntersections;
 		if(!isList.contains(intersection)){
 			isList.add(intersection);
 			Intersection is=new Intersection(intersection, e0, e1, s0, s1, overlap);
@@ -319,6 +488,44 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
 		}
 	}
 
+	/** envelopes of the segments of a curve, with a spatial index if the curve has many segments.
+	 */
+	private static class SegmentIndex {
+		private final CompoundCurve curve;
+		private final Envelope envs[];
+		private STRtree tree=null;
+		private SegmentIndex(CompoundCurve curve) {
+			this.curve=curve;
+			int segc=curve.getNumSegments();
+			envs=new Envelope[segc];
+			for (int i = 0; i < segc; i++) {
+				envs[i]=curve.getSegments().get(i).computeEnvelopeInternal();
+			}
+			if(segc>=MIN_SEGMENTS_PER_INDEX){
+				tree=new STRtree();
+				for (int i = 0; i < segc; i++) {
+					tree.insert(envs[i], i);
+				}
+			}
+		}
+		/** @return the indices of the segments, whose envelope intersects the given envelope, in ascending order.
+		 */
+		private List<Integer> query(Envelope env) {
+			if(tree!=null){
+				List<Integer> hits=tree.query(env);
+				Collections.sort(hits);
+				return hits;
+			}
+			List<Integer> hits=new java.util.ArrayList<Integer>();
+			for (int i = 0; i < envs.length; i++) {
+				if(envs[i].intersects(env)){
+					hits.add(i);
+				}
+			}
+			return hits;
+		}
+	}
+
 	private void createNode(CompoundCurve line, int nodeSegIndex) {
 		if(nodeSegIndex==0){ // first segment
 			return;
@@ -343,6 +550,19 @@ private void computeIntersects(int ss0Idx,CompoundCurve ss0, int ss1Idx,Compound
 			throw new IllegalArgumentException("intersections");
 		}
 	}
+    public int getThreadCount() {
+        return threadCount;
+    }
+    /** sets the number of threads to compute the intersections. 
+     * With more than one thread, the curves are partitioned into spatial tiles, that are processed in parallel.
+     * The intersections are then reported ordered by the indices of the curves, instead of the order of the spatial index.
+     */
+    public void setThreadCount(int threadCount) {
+        if(threadCount<1){
+            throw new IllegalArgumentException("threadCount "+threadCount);
+        }
+        this.threadCount = threadCount;
+    }
     public boolean isEnableCommonSegments() {
         return enableCommonSegments;
     }
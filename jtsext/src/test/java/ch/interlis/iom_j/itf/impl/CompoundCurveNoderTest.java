@@ -220,4 +220,86 @@ public class CompoundCurveNoderTest {
 		Collection<? extends CompoundCurve> noded=validator.getNodedSubstrings();
 		assertEquals("[COMPOUNDCURVE (CIRCULARSTRING (110 110, 115 108, 120 110), (120 110, 120 140, 110 140, 110 110)), COMPOUNDCURVE ((110 110, 115 115, 115 120, 112 120, 110 110))]", noded.toString());
 	}
+	
+	private List<CompoundCurve> createGrid() throws ParseException {
+	    WKTReader wktRdr = new WKTReader(fact);
+	    List<CompoundCurve> segs=new ArrayList<CompoundCurve>();
+	    for(int j=0;j<20;j++){
+	        StringBuilder wkt=new StringBuilder("LINESTRING(");
+	        String sep="";
+	        for(int x=0;x<=1000;x+=10){
+	            wkt.append(sep+x+" "+j*50);
+	            sep=", ";
+	        }
+	        wkt.append(")");
+	        segs.add(fact.createCompoundCurve((LineString)wktRdr.read(wkt.toString())));
+	        // crossing at a common vertex
+	        for(int k=1;k<=60;k++){
+	            segs.add(fact.createCompoundCurve((LineString)wktRdr.read("LINESTRING("+k*10+" "+(j*50-20)+", "+k*10+" "+j*50+", "+k*10+" "+(j*50+20)+")")));
+	        }
+	        // crossing without a common vertex
+	        for(int k=70;k<=72;k++){
+	            segs.add(fact.createCompoundCurve((LineString)wktRdr.read("LINESTRING("+(k*10+3)+" "+(j*50-5)+", "+(k*10+7)+" "+(j*50+5)+")")));
+	        }
+	    }
+	    return segs;
+	}
+	private static List<String> toShortStrings(List<ch.interlis.iom_j.itf.impl.jtsext.noding.Intersection> intersections) {
+	    List<String> ret=new ArrayList<String>();
+	    for(ch.interlis.iom_j.itf.impl.jtsext.noding.Intersection is:intersections){
+	        ret.add(is.toShortString());
+	    }
+	    return ret;
+	}
+	// mit mehreren Threads (in Kacheln) werden die gleichen Schnittpunkte und Knoten in der gleichen Reihenfolge gefunden
+	@Test
+	public void tiled_sameResult() throws ParseException {
+	    CompoundCurveNoder validator1=new CompoundCurveNoder(createGrid(),false);
+	    CompoundCurveNoder validator4=new CompoundCurveNoder(createGrid(),false);
+	    validator4.setThreadCount(4);
+	    assertEquals(20*3,validator1.getIntersections().size());
+	    assertEquals(validator1.getIntersections().size(),validator4.getIntersections().size());
+	    java.util.TreeSet<String> is1=new java.util.TreeSet<String>();
+	    for(ch.interlis.iom_j.itf.impl.jtsext.noding.Intersection is:validator1.getIntersections()){
+	        is1.add(is.toShortString());
+	    }
+	    java.util.TreeSet<String> is4=new java.util.TreeSet<String>();
+	    for(ch.interlis.iom_j.itf.impl.jtsext.noding.Intersection is:validator4.getIntersections()){
+	        is4.add(is.toShortString());
+	    }
+	    assertEquals(is1,is4);
+	    assertEquals(toShortStrings(validator1.getIntersections()),toShortStrings(validator4.getIntersections()));
+	    assertEquals(validator1.getNodedSubstrings().toString(),validator4.getNodedSubstrings().toString());
+	}
+	// die Reihenfolge der Schnittpunkte ist mit mehreren Threads gleich, auch wenn die Reihenfolge der Linien nicht raeumlich ist
+	@Test
+	public void tiledShuffled_sameOrder() throws ParseException {
+	    for(int seed=0;seed<10;seed++){
+	        List<CompoundCurve> grid=createGrid();
+	        java.util.Collections.shuffle(grid,new java.util.Random(seed));
+	        CompoundCurveNoder validator1=new CompoundCurveNoder(grid,false);
+	        CompoundCurveNoder validator4=new CompoundCurveNoder(grid,false);
+	        validator4.setThreadCount(2+seed%3);
+	        assertEquals(20*3,validator1.getIntersections().size());
+	        assertEquals(toShortStrings(validator1.getIntersections()),toShortStrings(validator4.getIntersections()));
+	        assertEquals(validator1.getNodedSubstrings().toString(),validator4.getNodedSubstrings().toString());
+	    }
+	}
+	// lange Linie (Segment-Index) mit vielen kurzen Linien, die sie kreuzen
+	@Test
+	public void longLine_manyCrossings() throws ParseException {
+	    WKTReader wktRdr = new WKTReader(fact);
+	    StringBuilder wkt=new StringBuilder("LINESTRING(0 0");
+	    for(int i=1;i<=100;i++){
+	        wkt.append(", "+(i*10)+" "+(i%2));
+	    }
+	    wkt.append(")");
+	    List<CompoundCurve> segs=new ArrayList<CompoundCurve>();
+	    segs.add(fact.createCompoundCurve((LineString)wktRdr.read(wkt.toString())));
+	    for(int i=0;i<50;i++){
+	        segs.add(fact.createCompoundCurve((LineString)wktRdr.read("LINESTRING("+(i*20+5)+" -5, "+(i*20+5)+" 5)")));
+	    }
+	    CompoundCurveNoder validator=new CompoundCurveNoder(segs,false);
+	    assertEquals(50,validator.getIntersections().size());
+	}
 }
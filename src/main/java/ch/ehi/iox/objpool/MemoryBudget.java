@@ -0,0 +1,55 @@
+package ch.ehi.iox.objpool;
+
+import java.util.WeakHashMap;
+
+/** Max. number of bytes that a group of ObjectPoolManagers may hold on the heap together.
+ * Each manager reports its own memory size, when it checks the budget. A manager, that finds
+ * the total over the limit, spills its own storages, so the managers don't need to
+ * access each other (they might be used by different threads).
+ * @see ObjectPoolManager#ObjectPoolManager(MemoryBudget)
+ */
+public class MemoryBudget {
+	private static MemoryBudget sharedBudget=null;
+	private long limit=0L;
+	/** last reported memory size per manager. Managers, that are not closed, are dropped when they are garbage collected.
+	 */
+	private WeakHashMap<ObjectPoolManager,Long> sizes=new WeakHashMap<ObjectPoolManager,Long>();
+
+	public MemoryBudget(long limit) {
+		this.limit=limit;
+	}
+	/** @return the budget used by all managers created with the default constructor;
+	 * its limit is a quarter of the max. heap size.
+	 */
+	public static synchronized MemoryBudget getSharedBudget() {
+		if(sharedBudget==null){
+			sharedBudget=new MemoryBudget(Runtime.getRuntime().maxMemory()/4);
+		}
+		return sharedBudget;
+	}
+	public synchronized long getLimit() {
+		return limit;
+	}
+	public synchronized void setLimit(long limit) {
+		this.limit=limit;
+	}
+	/** @return number of bytes held on the heap by all managers of this budget, according to their last report.
+	 */
+	public synchronized long getTotalSize() {
+		long total=0L;
+		for(Long size:sizes.values()){
+			total+=size;
+		}
+		return total;
+	}
+	/** records the current memory size of a manager.
+	 * @return the total size of all managers.
+	 */
+	synchronized long report(ObjectPoolManager manager,long size) {
+		sizes.put(manager, size);
+		return getTotalSize();
+	}
+	synchronized void remove(ObjectPoolManager manager) {
+		sizes.remove(manager);
+	}
+}
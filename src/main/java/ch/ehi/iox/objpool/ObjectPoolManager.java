@@ -1,28 +1,244 @@
 package ch.ehi.iox.objpool;
 
 import java.io.File;
-import java.lang.management.GarbageCollectorMXBean;
-import java.lang.management.ManagementFactory;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 import ch.ehi.basics.logging.EhiLogger;
 import ch.ehi.iox.objpool.impl.BTreeImpl;
 import ch.ehi.iox.objpool.impl.JavaSerializer;
+import ch.ehi.iox.objpool.impl.KeyIndex;
+import ch.ehi.iox.objpool.impl.LongCounterMap;
 import ch.ehi.iox.objpool.impl.ObjPoolImpl;
 import ch.ehi.iox.objpool.impl.ObjPoolImpl2;
+import ch.ehi.iox.objpool.impl.ObjPoolMultiMap;
+import ch.ehi.iox.objpool.impl.SegmentLogStorageEngine;
 import ch.ehi.iox.objpool.impl.Serializer;
+import ch.ehi.iox.objpool.impl.TreeMapKeyIndex;
+import ch.ehi.iox.objpool.impl.btree.BTree;
 
 public class ObjectPoolManager {
 
 	private ArrayList<ObjPoolImpl> maps=new ArrayList<ObjPoolImpl>(); 
 	private ArrayList<BTreeImpl> maps2=new ArrayList<BTreeImpl>(); 
 	private ArrayList<ObjPoolImpl2> maps3=new ArrayList<ObjPoolImpl2>(); 
-	private long initGcTime=0;
+	private ArrayList<PoolStorage> storages=new ArrayList<PoolStorage>(); 
+	/** pool name of each storage, to report the footprint per pool name.
+	 */
+	private java.util.HashMap<PoolStorage,String> storageNames=new java.util.HashMap<PoolStorage,String>();
+	/** per pool name: max. size of the storages of that name, that were open at the same time.
+	 */
+	private java.util.TreeMap<String,Long> peakStorageSizes=new java.util.TreeMap<String,Long>();
+	private ArrayList<LongCounterMap> counterMaps=new ArrayList<LongCounterMap>(); 
+	private ArrayList<ObjPoolMultiMap> multiMaps=new ArrayList<ObjPoolMultiMap>(); 
+	private StorageEngine storageEngine=null;
+	private MemoryBudget memoryBudget=null;
+	private int btreeFanOut=BTree.DEFAULT_FAN_OUT;
+	private int btreeCacheSize=BTree.DEFAULT_CACHE_SIZE;
 	private boolean doCacheing=true;
 	private int callCount=0;
+	/** number of bytes appended to the storages since the last check of the memory budget.
+	 */
+	private long appendedSinceCheck=0L;
+	/** max. number of bytes appended between two checks of the memory budget.
+	 */
+	private static final long MAX_CHECK_INTERVAL=1024L*1024L;
 	
+	/** creates a manager, that shares the default budget ({@link MemoryBudget#getSharedBudget()}) with all other managers
+	 * created by this constructor.
+	 */
 	public ObjectPoolManager() {
-		initGcTime=getTotalGcTime();
+		this(MemoryBudget.getSharedBudget());
+	}
+	/** @param memoryBudget max. number of bytes the pools of this manager may hold on the heap, before they are spilled to disk.
+	 */
+	public ObjectPoolManager(long memoryBudget) {
+		this(new MemoryBudget(memoryBudget));
+	}
+	/** @param memoryBudget budget, that this manager shares with other managers.
+	 */
+	public ObjectPoolManager(MemoryBudget memoryBudget) {
+		if(memoryBudget==null){
+			throw new IllegalArgumentException("memoryBudget==null");
+		}
+		this.memoryBudget=memoryBudget;
+		storageEngine=new SegmentLogStorageEngine(true);
+	}
+	/** default memory budget: a quarter of the max. heap size, shared by all managers created by the default constructor.
+	 */
+	public static long getDefaultMemoryBudget() {
+		return MemoryBudget.getSharedBudget().getLimit();
+	}
+	public long getMemoryBudget() {
+		return memoryBudget.getLimit();
+	}
+	/** gives this manager an own budget, that is no longer shared with other managers.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget.remove(this);
+		this.memoryBudget=new MemoryBudget(memoryBudget);
+	}
+	public MemoryBudget getBudget() {
+		return memoryBudget;
+	}
+	public int getBTreeFanOut() {
+		return btreeFanOut;
+	}
+	/** sets the max. number of entries per node of BTree based pools created afterwards.
+	 */
+	public void setBTreeFanOut(int fanOut) {
+		this.btreeFanOut=fanOut;
+	}
+	public int getBTreeCacheSize() {
+		return btreeCacheSize;
+	}
+	/** sets the number of nodes (and values) each BTree based pool created afterwards keeps in memory.
+	 */
+	public void setBTreeCacheSize(int cacheSize) {
+		this.btreeCacheSize=cacheSize;
+	}
+	public StorageEngine getStorageEngine() {
+		return storageEngine;
+	}
+	/** sets the engine that creates the storages of pools created afterwards.
+	 */
+	public void setStorageEngine(StorageEngine storageEngine) {
+		if(storageEngine==null){
+			throw new IllegalArgumentException("storageEngine==null");
+		}
+		this.storageEngine=storageEngine;
+	}
+	/** creates a new storage for the values of an object pool.
+	 * The storage is subject to the memory budget of this manager, until it is released by closeStorage().
+	 */
+	public PoolStorage newStorage(String poolName) {
+		PoolStorage storage=new BudgetedStorage(storageEngine.newStorage(this,poolName));
+		storages.add(storage);
+		storageNames.put(storage, poolName!=null ? poolName : "");
+		return storage;
+	}
+	public void closeStorage(PoolStorage storage) throws IOException {
+		updatePeakStorageSize(storage);
+		storages.remove(storage);
+		storageNames.remove(storage);
+		storage.close();
+	}
+	/** storages only grow until they are closed, so the peak of the total size of the storages of one pool name
+	 * is reached, when one of them is closed.
+	 */
+	private void updatePeakStorageSize(PoolStorage closedStorage) {
+		String poolName=storageNames.get(closedStorage);
+		if(poolName==null){
+			return;
+		}
+		long size=0L;
+		for(PoolStorage storage:storages){
+			if(poolName.equals(storageNames.get(storage))){
+				size+=storage.length();
+			}
+		}
+		Long peak=peakStorageSizes.get(poolName);
+		if(peak==null || peak<size){
+			peakStorageSizes.put(poolName, size);
+		}
+	}
+	/** @return per pool name, the peak number of bytes held by the storages of that name (on the heap or in temp files).
+	 */
+	public java.util.Map<String,Long> getPeakStorageSizes() {
+		java.util.TreeMap<String,Long> ret=new java.util.TreeMap<String,Long>(peakStorageSizes);
+		for(PoolStorage storage:storages){
+			String poolName=storageNames.get(storage);
+			long size=0L;
+			for(PoolStorage other:storages){
+				if(poolName.equals(storageNames.get(other))){
+					size+=other.length();
+				}
+			}
+			Long peak=ret.get(poolName);
+			if(peak==null || peak<size){
+				ret.put(poolName, size);
+			}
+		}
+		return ret;
+	}
+	/** @return number of bytes held on the heap by all storages, key indexes and counter maps of this manager.
+	 */
+	public long getMemorySize() {
+		long size=0L;
+		for(PoolStorage storage:storages){
+			size+=storage.getMemorySize();
+		}
+		for(LongCounterMap counterMap:counterMaps){
+			size+=counterMap.getMemorySize();
+		}
+		size+=getKeyIndexMemorySize();
+		return size;
+	}
+	/** key indexes are kept on the heap until their pool is closed; they can not be spilled,
+	 * but they reduce the budget that is left for the storages.
+	 */
+	private long getKeyIndexMemorySize() {
+		long size=0L;
+		for(ObjPoolImpl2 m:maps3){
+			size+=m.getKeyIndexMemorySize();
+		}
+		for(ObjPoolMultiMap m:multiMaps){
+			size+=m.getKeyIndexMemorySize();
+		}
+		return size;
+	}
+	/** called after a record was appended to a storage of this manager.
+	 * The memory budget is checked after each 1/16 of the budget (but at least after each MAX_CHECK_INTERVAL bytes)
+	 * appended, independent of the kind of pool that appends.
+	 */
+	private void recordAppended(int length) {
+		appendedSinceCheck+=length;
+		if(appendedSinceCheck>=Math.max(1L,Math.min(memoryBudget.getLimit()/16L,MAX_CHECK_INTERVAL))){
+			appendedSinceCheck=0L;
+			checkMemoryBudget();
+		}
+	}
+	/** storage, that reports appended records to the manager, so that the memory budget is enforced 
+	 * for all pools (with or without cache) and for all other users of newStorage().
+	 */
+	private class BudgetedStorage implements PoolStorage {
+		private PoolStorage storage=null;
+		private BudgetedStorage(PoolStorage storage) {
+			this.storage=storage;
+		}
+		@Override
+		public long append(byte[] record) throws IOException {
+			long pos=storage.append(record);
+			recordAppended(record.length);
+			return pos;
+		}
+		@Override
+		public byte[] read(long pos) throws IOException {
+			return storage.read(pos);
+		}
+		@Override
+		public java.util.Iterator<byte[]> scan(long[] positions) {
+			return storage.scan(positions);
+		}
+		@Override
+		public long length() {
+			return storage.length();
+		}
+		@Override
+		public long getMemorySize() {
+			return storage.getMemorySize();
+		}
+		@Override
+		public boolean spill() throws IOException {
+			return storage.spill();
+		}
+		@Override
+		public void close() throws IOException {
+			storage.close();
+		}
+		@Override
+		public String toString() {
+			return storage.toString();
+		}
 	}
 
 	@Deprecated
@@ -45,9 +261,24 @@ public class ObjectPoolManager {
         return newObjectPoolImpl2(null,serializer);
     }
 	public <K,V> java.util.Map<K, V> newObjectPoolImpl2(String poolName,Serializer<V> serializer) {
+		return newObjectPoolImpl2(poolName,serializer,new TreeMapKeyIndex<K>());
+	}
+	public <K,V> java.util.Map<K, V> newObjectPoolImpl2(String poolName,Serializer<V> serializer,KeyIndex<K> keyIndex) {
 		flushWriteQueues();
 		ObjPoolImpl2 m=null;
-		m = new ObjPoolImpl2(this,poolName,serializer);
+		m = new ObjPoolImpl2(this,poolName,serializer,keyIndex);
+		if(!doCacheing){
+			m.disableCache();
+		}
+		maps3.add(m);
+		return m;
+	}
+	/** creates a pool on an existing storage, e.g. a persistent, read-only one.
+	 * The storage is not subject to the memory budget of this manager.
+	 */
+	public <K,V> java.util.Map<K, V> newObjectPoolImpl2(String poolName,Serializer<V> serializer,KeyIndex<K> keyIndex,PoolStorage storage) {
+		ObjPoolImpl2 m=null;
+		m = new ObjPoolImpl2(this,poolName,serializer,keyIndex,storage);
 		if(!doCacheing){
 			m.disableCache();
 		}
@@ -69,43 +300,118 @@ public class ObjectPoolManager {
 		return m;
 	}
 
+	/** creates a new pool, that maps a key to a list of values.
+	 */
+	public <K,V> ObjPoolMultiMap<K,V> newMultiMap(String poolName,Serializer<V> serializer,KeyIndex<K> keyIndex) {
+		ObjPoolMultiMap<K,V> m=new ObjPoolMultiMap<K,V>(this,poolName,serializer,keyIndex,ObjPoolMultiMap.DEFAULT_CHUNK_SIZE);
+		multiMaps.add(m);
+		return m;
+	}
+	/** closes the given pool, that was created by this manager, and deletes its data.
+	 */
+	public void closeObjectPool(java.util.Map<?,?> pool) {
+		if(maps3.remove(pool)){
+			((ObjPoolImpl2)pool).close();
+		}else if(maps2.remove(pool)){
+			((BTreeImpl)pool).close();
+		}else if(maps.remove(pool)){
+			((ObjPoolImpl)pool).clear();
+		}
+	}
+	public void closeMultiMap(ObjPoolMultiMap<?,?> pool) {
+		if(multiMaps.remove(pool)){
+			pool.close();
+		}
+	}
+	/** creates a new map of counters. The table of the map is kept on the heap, 
+	 * as long as it is smaller than half of the memory budget.
+	 */
+	public LongCounterMap newCounterMap(String poolName) {
+		LongCounterMap m=new LongCounterMap(poolName,memoryBudget.getLimit()/2);
+		counterMaps.add(m);
+		return m;
+	}
+
 	public void flushWriteQueues() {
 		for (ObjPoolImpl m: maps) {
 			m.flushWriteQueue();
 		}
 		//System.out.println("maxMemory "+(java.lang.Runtime.getRuntime().maxMemory()-(java.lang.Runtime.getRuntime().totalMemory()-java.lang.Runtime.getRuntime().freeMemory()))/1024L+" KB");
-		if(doCacheing){
-			if(callCount==0){
-				if(getTotalGcTime()-initGcTime>10000){
-					// switch off caches
-					EhiLogger.traceState("switch off object cache");
-					for (BTreeImpl m: maps2) {
-						m.disableCache();
-					}
-					for (ObjPoolImpl2 m: maps3) {
-						m.disableCache();
-					}
-					doCacheing=false;
-				}
-				callCount++;
-			}else if(callCount==1000){
-				callCount=0;
-			}else{
-				callCount++;
-			}
-		} 
+		if(callCount==0){
+			checkMemoryBudget();
+			callCount++;
+		}else if(callCount==1000){
+			callCount=0;
+		}else{
+			callCount++;
+		}
 	}
-	private long getTotalGcTime()
+	/** spills storages to disk, largest first, until the memory used by all managers of the budget is within the budget.
+	 * Only the storages (and counter maps) of this manager are spilled.
+	 * If the budget can not be met, caches are switched off.
+	 */
+	public void checkMemoryBudget()
 	{
-		List<GarbageCollectorMXBean> memBeans = ManagementFactory.getGarbageCollectorMXBeans();
-		long totalGcTime=0;
-		for(GarbageCollectorMXBean memBean:memBeans){
-			if(memBean.isValid()){
-				//System.out.println(memBean.getName()+": count "+memBean.getCollectionCount()+", time "+memBean.getCollectionTime());
-				totalGcTime+=memBean.getCollectionTime();
+		long limit=memoryBudget.getLimit();
+		long size=memoryBudget.report(this, getMemorySize());
+		if(size<=limit){
+			return;
+		}
+		ArrayList<PoolStorage> candidates=new ArrayList<PoolStorage>(storages);
+		final java.util.HashMap<PoolStorage,Long> sizes=new java.util.HashMap<PoolStorage,Long>();
+		for(PoolStorage storage:candidates){
+			sizes.put(storage, storage.getMemorySize());
+		}
+		java.util.Collections.sort(candidates,new java.util.Comparator<PoolStorage>(){
+			@Override
+			public int compare(PoolStorage o1, PoolStorage o2) {
+				return sizes.get(o2).compareTo(sizes.get(o1));
+			}
+		});
+		for(PoolStorage storage:candidates){
+			if(size<=limit){
+				break;
+			}
+			try {
+				if(storage.spill()){
+					long newSize=storage.getMemorySize();
+					EhiLogger.traceState("spill object pool storage ("+sizes.get(storage)+" bytes) "+storage);
+					size-=sizes.get(storage)-newSize;
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		if(size>limit){
+			ArrayList<LongCounterMap> counterCandidates=new ArrayList<LongCounterMap>(counterMaps);
+			java.util.Collections.sort(counterCandidates,new java.util.Comparator<LongCounterMap>(){
+				@Override
+				public int compare(LongCounterMap o1, LongCounterMap o2) {
+					return Long.valueOf(o2.getMemorySize()).compareTo(o1.getMemorySize());
+				}
+			});
+			for(LongCounterMap counterMap:counterCandidates){
+				if(size<=limit){
+					break;
+				}
+				long oldSize=counterMap.getMemorySize();
+				if(counterMap.spill()){
+					size-=oldSize;
+				}
 			}
 		}
-		return totalGcTime;
+		if(size>limit && doCacheing){
+			// switch off caches
+			EhiLogger.traceState("switch off object cache");
+			for (BTreeImpl m: maps2) {
+				m.disableCache();
+			}
+			for (ObjPoolImpl2 m: maps3) {
+				m.disableCache();
+			}
+			doCacheing=false;
+		}
+		memoryBudget.report(this, getMemorySize());
 	}
 
 	public void close() {
@@ -121,6 +427,27 @@ public class ObjectPoolManager {
 			m.close();
 		}
 		maps3.clear();
+		for (LongCounterMap m: counterMaps) {
+			m.close();
+		}
+		counterMaps.clear();
+		for (ObjPoolMultiMap m: multiMaps) {
+			m.close();
+		}
+		multiMaps.clear();
+		for (PoolStorage storage: storages) {
+			updatePeakStorageSize(storage);
+		}
+		storageNames.clear();
+		for (PoolStorage storage: storages) {
+			try {
+				storage.close();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		storages.clear();
+		memoryBudget.remove(this);
 	}
 
 	static public File getCacheTmpFilename() {
@@ -0,0 +1,31 @@
+package ch.ehi.iox.objpool;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/** Storage of the serialized values of an object pool.
+ * Values are appended as records and identified by their position in the storage.
+ * @see StorageEngine
+ */
+public interface PoolStorage {
+	/** @return position of the record
+	 */
+	long append(byte[] record) throws IOException;
+	byte[] read(long pos) throws IOException;
+	/** reads the records at the given positions, in ascending order of the positions.
+	 */
+	Iterator<byte[]> scan(long[] positions);
+	/** @return size of the storage (in bytes).
+	 */
+	long length();
+	/** @return number of bytes currently held on the heap.
+	 */
+	long getMemorySize();
+	/** moves the records held on the heap to disk.
+	 * @return false if there was nothing to move.
+	 */
+	boolean spill() throws IOException;
+	/** closes the storage. Temporary storages delete all of their data.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,8 @@
+package ch.ehi.iox.objpool;
+
+/** Creates the storages of the object pools of an ObjectPoolManager.
+ * @see ObjectPoolManager#setStorageEngine(StorageEngine)
+ */
+public interface StorageEngine {
+	PoolStorage newStorage(ObjectPoolManager manager,String poolName);
+}
@@ -5,7 +5,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Iterator;
@@ -15,6 +14,7 @@ import java.util.Set;
 
 import ch.ehi.basics.logging.EhiLogger;
 import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
 import ch.ehi.iox.objpool.impl.btree.BTree;
 import ch.ehi.iox.objpool.impl.btree.BTreeCursor;
 import ch.ehi.iox.objpool.impl.btree.NodeId;
@@ -22,16 +22,15 @@ import ch.ehi.iox.objpool.impl.btree.NodeId;
 public class BTreeImpl<K,V> implements Map<K, V> {
 	private ObjectPoolManager objectPoolManager=null;
 	private BTree<K, Long> tree= null;
-	private RandomAccessFile outFile=null;
-	private java.io.File outFilename=null;
+	private PoolStorage outFile=null;
 	private Serializer valueSerializer=null;
-    private static int MAX_CACHE=32;
+    private int maxCache=32;
     private String poolName=null;
-    private LinkedHashMap<Long,SoftReference<V>> cache = new LinkedHashMap<Long,SoftReference<V>>(MAX_CACHE,0.75f,true){
+    private LinkedHashMap<Long,SoftReference<V>> cache = new LinkedHashMap<Long,SoftReference<V>>(16,0.75f,true){
     	@Override
     	protected boolean removeEldestEntry(Map.Entry<Long, SoftReference<V>> eldest) {
     		if(true){
-        		if(size()<MAX_CACHE){
+        		if(size()<maxCache){
         			return false;
         		}
                 return true; // remove eldest
@@ -55,9 +54,9 @@ public class BTreeImpl<K,V> implements Map<K, V> {
 		    this.poolName=poolName;
 			objectPoolManager=objectPoolManager1;
 			valueSerializer=valueSerializer1;
-			tree= new BTree<K, Long>( poolName==null?null:poolName+" KEY",ObjectPoolManager.getCacheTmpFilename() , new JavaComparator<K>(),keySerializer,new LongSerializer());
-			outFilename=ObjectPoolManager.getCacheTmpFilename();
-			outFile=new RandomAccessFile(outFilename, "rw");
+			tree= new BTree<K, Long>( poolName==null?null:poolName+" KEY",ObjectPoolManager.getCacheTmpFilename() , new JavaComparator<K>(),keySerializer,new LongSerializer(),objectPoolManager.getBTreeFanOut(),objectPoolManager.getBTreeCacheSize());
+			maxCache=objectPoolManager.getBTreeCacheSize();
+			outFile=objectPoolManager.newStorage(poolName);
 		}catch(IOException e){
 			throw new IllegalStateException(e);
 		}
@@ -75,18 +74,14 @@ public class BTreeImpl<K,V> implements Map<K, V> {
 		if(outFile!=null){
 			try {
 			    String tag=(poolName!=null?poolName:this.getClass().getSimpleName())+" VAL";
-                EhiLogger.traceState(tag+": filesize "+outFile.length()+" <"+outFilename.getPath()+">");
+                EhiLogger.traceState(tag+": size "+outFile.length()+", "+outFile);
                 EhiLogger.traceState(tag+": valueSize min "+minValueSize+", max "+maxValueSize+", updates "+updateCount);
-				outFile.close();
+				objectPoolManager.closeStorage(outFile);
 			} catch (IOException e) {
 				throw new IllegalStateException(e);
 			}
 			outFile=null;
 		}
-		if(outFilename!=null){
-			outFilename.delete();
-			outFilename=null;
-		}
 	}
 	public void disableCache()
 	{
@@ -137,10 +132,7 @@ public class BTreeImpl<K,V> implements Map<K, V> {
 					return value;
 				}
 			}
-			outFile.seek(pos);
-			int size=outFile.readInt();
-			byte[] bytes=new byte[size];
-			outFile.read(bytes);
+			byte[] bytes=outFile.read(pos);
 		    try {
 				value=(V)valueSerializer.getObject(bytes);
 			} catch (ClassNotFoundException e) {
@@ -150,13 +142,11 @@ public class BTreeImpl<K,V> implements Map<K, V> {
 		}
 		return null;
 	}
-	private void writeValue(long pos, V value) throws IOException {
-		outFile.seek(pos);
+	private long writeValue(V value) throws IOException {
 		byte[] bytes=valueSerializer.getBytes(value);
 		maxValueSize=Math.max(maxValueSize,bytes.length);
         minValueSize=Math.min(minValueSize,bytes.length);
-		outFile.writeInt(bytes.length);
-		outFile.write(bytes);
+		return outFile.append(bytes);
 	}
 
 	@Override
@@ -173,19 +163,17 @@ public class BTreeImpl<K,V> implements Map<K, V> {
 	public V put(K key, V value) {
 		try {
 			
-			long pos = outFile.length();
-			writeValue(pos,value);
+			long pos = writeValue(value);
 			if(cache!=null){
 				objectPoolManager.flushWriteQueues();
 				if(cache!=null){
 					cache.put(pos, new SoftReference<V>(value));
 				}
 			}
-			Long retPos=tree.get((K)key);
+			Long retPos=tree.put(key, pos);
 			if(retPos!=null) {
 			    updateCount++;
 			}
-			tree.put(key, pos);
 			return null;
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
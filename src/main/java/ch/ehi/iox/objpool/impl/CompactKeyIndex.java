@@ -0,0 +1,332 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/** Memory efficient KeyIndex.
+ * Keys are stored in their encoded form (as defined by the subclass) in large byte chunks,
+ * either on the heap or off-heap (direct buffers). Lookup is done by an open-addressing hash table
+ * that refers to the entries by index; the positions of the values are kept in a primitive long array.
+ * There are no per key objects on the heap.
+ */
+public abstract class CompactKeyIndex<K> implements KeyIndex<K> {
+	private static final int CHUNK_SIZE=1024*1024;
+	private static final int NO_ENTRY=0;
+	private final boolean offHeap;
+	private ArrayList<ByteBuffer> chunks=new ArrayList<ByteBuffer>();
+	private int chunkFill=CHUNK_SIZE;
+	/** per entry: position of the value or -1 if removed
+	 */
+	private long[] positions=new long[64];
+	/** per entry: address of the encoded key
+	 */
+	private int[] keyRefs=new int[64];
+	private int entryCount=0;
+	private int size=0;
+	/** hash table: entry index+1; NO_ENTRY if slot is free
+	 */
+	private int[] table=new int[128];
+	private byte[] keyBuf=new byte[64];
+	private byte[] cmpBuf1=new byte[64];
+	private byte[] cmpBuf2=new byte[64];
+	/** entry indices in key order; null if not yet computed or outdated
+	 */
+	private int[] sortedEntries=null;
+
+	public CompactKeyIndex()
+	{
+		this(false);
+	}
+	/** @param offHeap true if the encoded keys should be stored in direct buffers.
+	 */
+	public CompactKeyIndex(boolean offHeap)
+	{
+		this.offHeap=offHeap;
+	}
+	/** encodes the key into buf.
+	 * @return length of the encoded key; if greater than buf.length, encodeKey() is called again with a larger buffer.
+	 */
+	protected abstract int encodeKey(K key,byte buf[]);
+	protected abstract K decodeKey(byte buf[],int len);
+	/** compares two encoded keys according to the natural order of the keys.
+	 */
+	protected int compareKeys(byte key1[],int len1,byte key2[],int len2)
+	{
+		return ((Comparable)decodeKey(key1,len1)).compareTo(decodeKey(key2,len2));
+	}
+	/** called before the entries are sorted, e.g. to prepare data required by compareKeys().
+	 */
+	protected void prepareCompare()
+	{
+	}
+
+	@Override
+	public long get(K key) {
+		int keyLen=encode(key);
+		int entry=findEntry(keyLen,hash(keyBuf,keyLen));
+		if(entry<0){
+			return -1L;
+		}
+		return positions[entry];
+	}
+	@Override
+	public long put(K key, long pos) {
+		if(pos<0){
+			throw new IllegalArgumentException("pos "+pos);
+		}
+		int keyLen=encode(key);
+		int hash=hash(keyBuf,keyLen);
+		int entry=findEntry(keyLen,hash);
+		if(entry>=0){
+			long ret=positions[entry];
+			positions[entry]=pos;
+			if(ret==-1L){
+				size++;
+				sortedEntries=null;
+			}
+			return ret;
+		}
+		if((entryCount+1)*4>table.length*3){
+			rehash(table.length*2);
+		}
+		entry=entryCount;
+		if(entry==positions.length){
+			int newLength=positions.length+(positions.length>>1);
+			long[] newPositions=new long[newLength];
+			System.arraycopy(positions, 0, newPositions, 0, entryCount);
+			positions=newPositions;
+			int[] newKeyRefs=new int[newLength];
+			System.arraycopy(keyRefs, 0, newKeyRefs, 0, entryCount);
+			keyRefs=newKeyRefs;
+		}
+		keyRefs[entry]=storeKey(keyBuf,keyLen);
+		positions[entry]=pos;
+		entryCount++;
+		size++;
+		int slot=hash & (table.length-1);
+		while(table[slot]!=NO_ENTRY){
+			slot=(slot+1) & (table.length-1);
+		}
+		table[slot]=entry+1;
+		sortedEntries=null;
+		return -1L;
+	}
+	@Override
+	public long remove(K key) {
+		int keyLen=encode(key);
+		int entry=findEntry(keyLen,hash(keyBuf,keyLen));
+		if(entry<0){
+			return -1L;
+		}
+		long ret=positions[entry];
+		if(ret!=-1L){
+			// keep entry as tombstone; it will be reused if the key is added again
+			positions[entry]=-1L;
+			size--;
+			sortedEntries=null;
+		}
+		return ret;
+	}
+	@Override
+	public int size() {
+		return size;
+	}
+	@Override
+	public Iterator<K> keyIterator() {
+		final int[] entries=getSortedEntries();
+		return new Iterator<K>(){
+			private int i=0;
+			@Override
+			public boolean hasNext() {
+				return i<entries.length;
+			}
+			@Override
+			public K next() {
+				if(i>=entries.length){
+					throw new java.util.NoSuchElementException();
+				}
+				int len=loadKey(keyRefs[entries[i++]],0);
+				return decodeKey(cmpBuf1,len);
+			}
+			@Override
+			public void remove() {
+				throw new java.lang.UnsupportedOperationException();
+			}
+		};
+	}
+	@Override
+	public long[] getPositionsInKeyOrder() {
+		int[] entries=getSortedEntries();
+		long[] ret=new long[entries.length];
+		for(int i=0;i<entries.length;i++){
+			ret[i]=positions[entries[i]];
+		}
+		return ret;
+	}
+	/** @return approximate number of bytes used by this index on the heap (off-heap chunks are not counted).
+	 */
+	@Override
+	public long getMemorySize() {
+		return (offHeap ? 0L : (long)chunks.size()*CHUNK_SIZE)+positions.length*8L+keyRefs.length*4L+table.length*4L;
+	}
+	private int[] getSortedEntries() {
+		if(sortedEntries==null){
+			int[] entries=new int[size];
+			int j=0;
+			for(int i=0;i<entryCount;i++){
+				if(positions[i]!=-1L){
+					entries[j++]=i;
+				}
+			}
+			prepareCompare();
+			mergeSort(entries,new int[entries.length],0,entries.length);
+			sortedEntries=entries;
+		}
+		return sortedEntries;
+	}
+	private void mergeSort(int[] a,int[] tmp,int from,int to) {
+		if(to-from<2){
+			return;
+		}
+		int mid=(from+to)>>>1;
+		mergeSort(a,tmp,from,mid);
+		mergeSort(a,tmp,mid,to);
+		if(compareEntries(a[mid-1],a[mid])<=0){
+			return; // already in order
+		}
+		System.arraycopy(a, from, tmp, from, to-from);
+		int i=from;
+		int j=mid;
+		for(int k=from;k<to;k++){
+			if(j>=to || (i<mid && compareEntries(tmp[i],tmp[j])<=0)){
+				a[k]=tmp[i++];
+			}else{
+				a[k]=tmp[j++];
+			}
+		}
+	}
+	private int compareEntries(int entry1,int entry2) {
+		int len1=loadKey(keyRefs[entry1],0);
+		int len2=loadKey(keyRefs[entry2],1);
+		return compareKeys(cmpBuf1,len1,cmpBuf2,len2);
+	}
+	private int encode(K key) {
+		int len=encodeKey(key,keyBuf);
+		if(len>keyBuf.length){
+			keyBuf=new byte[len];
+			len=encodeKey(key,keyBuf);
+		}
+		return len;
+	}
+	private static int hash(byte[] buf,int len) {
+		int h=1;
+		for(int i=0;i<len;i++){
+			h=31*h+buf[i];
+		}
+		h^=(h>>>20)^(h>>>12);
+		return h^(h>>>7)^(h>>>4);
+	}
+	private int findEntry(int keyLen,int hash) {
+		int slot=hash & (table.length-1);
+		while(true){
+			int entry=table[slot]-1;
+			if(entry<0){
+				return -1;
+			}
+			if(keyEquals(keyRefs[entry],keyBuf,keyLen)){
+				return entry;
+			}
+			slot=(slot+1) & (table.length-1);
+		}
+	}
+	private void rehash(int newLength) {
+		int[] newTable=new int[newLength];
+		for(int entry=0;entry<entryCount;entry++){
+			int len=loadKey(keyRefs[entry],0);
+			int slot=hash(cmpBuf1,len) & (newLength-1);
+			while(newTable[slot]!=NO_ENTRY){
+				slot=(slot+1) & (newLength-1);
+			}
+			newTable[slot]=entry+1;
+		}
+		table=newTable;
+	}
+	// encoded keys are stored as varint length followed by the bytes of the key
+	private int storeKey(byte[] buf,int len) {
+		int required=len+5;
+		if(required>CHUNK_SIZE){
+			throw new IllegalArgumentException("key too large ("+len+" bytes)");
+		}
+		if(chunkFill+required>CHUNK_SIZE){
+			if(chunks.size()>=Integer.MAX_VALUE/CHUNK_SIZE){
+				throw new IllegalStateException("key index full");
+			}
+			chunks.add(offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+			chunkFill=0;
+		}
+		ByteBuffer chunk=chunks.get(chunks.size()-1);
+		int ref=(chunks.size()-1)*CHUNK_SIZE+chunkFill;
+		int offset=chunkFill;
+		int v=len;
+		while((v & ~0x7f)!=0){
+			chunk.put(offset++,(byte)((v & 0x7f)|0x80));
+			v>>>=7;
+		}
+		chunk.put(offset++,(byte)v);
+		for(int i=0;i<len;i++){
+			chunk.put(offset++,buf[i]);
+		}
+		chunkFill=offset;
+		return ref;
+	}
+	private int readLength(ByteBuffer chunk,int[] offset) {
+		int len=0;
+		int shift=0;
+		while(true){
+			byte b=chunk.get(offset[0]++);
+			len|=(b & 0x7f)<<shift;
+			if((b & 0x80)==0){
+				return len;
+			}
+			shift+=7;
+		}
+	}
+	private final int[] offsetBuf=new int[1];
+	private boolean keyEquals(int ref,byte[] buf,int len) {
+		ByteBuffer chunk=chunks.get(ref/CHUNK_SIZE);
+		offsetBuf[0]=ref%CHUNK_SIZE;
+		if(readLength(chunk,offsetBuf)!=len){
+			return false;
+		}
+		int offset=offsetBuf[0];
+		for(int i=0;i<len;i++){
+			if(chunk.get(offset+i)!=buf[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+	/** copies the encoded key into cmpBuf1 (buf==0) or cmpBuf2 (buf==1).
+	 * @return length of the key
+	 */
+	private int loadKey(int ref,int buf) {
+		ByteBuffer chunk=chunks.get(ref/CHUNK_SIZE);
+		offsetBuf[0]=ref%CHUNK_SIZE;
+		int len=readLength(chunk,offsetBuf);
+		byte[] dest=buf==0 ? cmpBuf1 : cmpBuf2;
+		if(dest.length<len){
+			dest=new byte[len];
+			if(buf==0){
+				cmpBuf1=dest;
+			}else{
+				cmpBuf2=dest;
+			}
+		}
+		int offset=offsetBuf[0];
+		for(int i=0;i<len;i++){
+			dest[i]=chunk.get(offset+i);
+		}
+		return len;
+	}
+}
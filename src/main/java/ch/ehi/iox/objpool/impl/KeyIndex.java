@@ -0,0 +1,27 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.util.Iterator;
+
+/** Maps the keys of an object pool to the positions of their values in the backing file.
+ */
+public interface KeyIndex<K> {
+	/** @return position of the value or -1 if the key is unknown.
+	 */
+	long get(K key);
+	/** @return previous position of the value or -1 if the key was unknown.
+	 */
+	long put(K key,long pos);
+	/** @return previous position of the value or -1 if the key was unknown.
+	 */
+	long remove(K key);
+	int size();
+	/** iterates over the keys in key order.
+	 */
+	Iterator<K> keyIterator();
+	/** @return positions of all values, in key order.
+	 */
+	long[] getPositionsInKeyOrder();
+	/** @return approximate number of bytes held on the heap by this index.
+	 */
+	long getMemorySize();
+}
@@ -0,0 +1,249 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ch.ehi.basics.logging.EhiLogger;
+import ch.ehi.iox.objpool.ObjectPoolManager;
+
+/** Map from a 128 bit key (e.g. a fingerprint of a compound key) to a long counter.
+ * The map is an open-addressing hash table with linear probing. Each slot holds the key and the counter
+ * in place, so an increment is a single probe sequence without any object allocation.
+ * The table is kept on the heap, until it grows larger than maxHeapSize; then it is moved
+ * to a memory-mapped file in the temp directory.
+ * The key 0/0 is reserved and mapped to 0/1.
+ */
+public class LongCounterMap {
+	private static final int SLOT_LONGS=3;
+	private static final int SLOT_SIZE=SLOT_LONGS*8;
+	private static final int REGION_SLOTS=(1024*1024*1024)/SLOT_SIZE;
+	private static final int MIN_CAPACITY=1024;
+	private long maxHeapSize=0L;
+	private String poolName=null;
+	/** number of slots; a power of 2.
+	 */
+	private long capacity=0L;
+	private long size=0L;
+	private long[] heapTable=null;
+	private MappedByteBuffer[] mappedTable=null;
+	private java.io.File filename=null;
+	private long probes=0L;
+
+	/** @param maxHeapSize max. number of bytes of the table on the heap.
+	 */
+	public LongCounterMap(String poolName,long maxHeapSize)
+	{
+		this.poolName=poolName;
+		this.maxHeapSize=maxHeapSize;
+		capacity=MIN_CAPACITY;
+		heapTable=new long[(int)capacity*SLOT_LONGS];
+	}
+	/** @return the counter of the given key or 0 if the key is unknown.
+	 */
+	public long get(long key1,long key2)
+	{
+		if(key1==0L && key2==0L){
+			key2=1L;
+		}
+		long slot=findSlot(key1,key2);
+		if(isFree(slot)){
+			return 0L;
+		}
+		return getLong(slot,2);
+	}
+	/** adds delta to the counter of the given key. An unknown key starts with 0.
+	 * @return the new value of the counter
+	 */
+	public long add(long key1,long key2,long delta)
+	{
+		if(key1==0L && key2==0L){
+			key2=1L;
+		}
+		long slot=findSlot(key1,key2);
+		if(isFree(slot)){
+			if((size+1)*4>capacity*3){
+				rehash(capacity*2,false);
+				slot=findSlot(key1,key2);
+			}
+			setLong(slot,0,key1);
+			setLong(slot,1,key2);
+			setLong(slot,2,delta);
+			size++;
+			return delta;
+		}
+		long ret=getLong(slot,2)+delta;
+		setLong(slot,2,ret);
+		return ret;
+	}
+	public long increment(long key1,long key2)
+	{
+		return add(key1,key2,1L);
+	}
+	/** sets the counter of the given key.
+	 * @return the previous value of the counter or 0 if the key was unknown.
+	 */
+	public long put(long key1,long key2,long value)
+	{
+		long old=get(key1,key2);
+		add(key1,key2,value-old);
+		return old;
+	}
+	/** @return number of keys.
+	 */
+	public long size()
+	{
+		return size;
+	}
+	public boolean isMapped()
+	{
+		return mappedTable!=null;
+	}
+	/** @return number of bytes of the table on the heap.
+	 */
+	public long getMemorySize()
+	{
+		return heapTable!=null ? (long)heapTable.length*8L : 0L;
+	}
+	/** moves the table from the heap to a memory-mapped file.
+	 * @return false if the table is already mapped.
+	 */
+	public boolean spill()
+	{
+		if(heapTable==null){
+			return false;
+		}
+		rehash(capacity,true);
+		return true;
+	}
+	/** @return slot of the key or the free slot, where the key has to be inserted.
+	 */
+	private long findSlot(long key1,long key2)
+	{
+		long mask=capacity-1;
+		long slot=mix(key1^(key2*0x9E3779B97F4A7C15L)) & mask;
+		while(true){
+			probes++;
+			long k1=getLong(slot,0);
+			long k2=getLong(slot,1);
+			if(k1==0L && k2==0L){
+				return slot;
+			}
+			if(k1==key1 && k2==key2){
+				return slot;
+			}
+			slot=(slot+1) & mask;
+		}
+	}
+	private boolean isFree(long slot)
+	{
+		return getLong(slot,0)==0L && getLong(slot,1)==0L;
+	}
+	private void rehash(long newCapacity,boolean toFile)
+	{
+		long[] oldHeapTable=heapTable;
+		MappedByteBuffer[] oldMappedTable=mappedTable;
+		java.io.File oldFilename=filename;
+		long oldCapacity=capacity;
+		try {
+			if(!toFile && heapTable!=null && newCapacity*SLOT_SIZE<=maxHeapSize && newCapacity*SLOT_LONGS<=Integer.MAX_VALUE){
+				heapTable=new long[(int)(newCapacity*SLOT_LONGS)];
+			}else{
+				heapTable=null;
+				filename=ObjectPoolManager.getCacheTmpFilename();
+				mappedTable=mapFile(filename,newCapacity);
+				EhiLogger.traceState((poolName!=null?poolName:getClass().getSimpleName())+": map "+newCapacity+" slots <"+filename.getPath()+">");
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		capacity=newCapacity;
+		for(long oldSlot=0;oldSlot<oldCapacity;oldSlot++){
+			long k1;
+			long k2;
+			long counter;
+			if(oldHeapTable!=null){
+				int idx=(int)oldSlot*SLOT_LONGS;
+				k1=oldHeapTable[idx];
+				k2=oldHeapTable[idx+1];
+				counter=oldHeapTable[idx+2];
+			}else{
+				MappedByteBuffer region=oldMappedTable[(int)(oldSlot/REGION_SLOTS)];
+				int offset=(int)(oldSlot%REGION_SLOTS)*SLOT_SIZE;
+				k1=region.getLong(offset);
+				k2=region.getLong(offset+8);
+				counter=region.getLong(offset+16);
+			}
+			if(k1!=0L || k2!=0L){
+				long slot=findSlot(k1,k2);
+				setLong(slot,0,k1);
+				setLong(slot,1,k2);
+				setLong(slot,2,counter);
+			}
+		}
+		MappedBuffers.unmap(oldMappedTable);
+		if(oldFilename!=null){
+			oldFilename.delete();
+		}
+	}
+	private static MappedByteBuffer[] mapFile(java.io.File filename,long slotCount) throws IOException
+	{
+		RandomAccessFile file=new RandomAccessFile(filename, "rw");
+		try {
+			long length=slotCount*SLOT_SIZE;
+			// new file; all slots are 0 (free)
+			file.setLength(length);
+			FileChannel channel=file.getChannel();
+			int regionc=(int)((slotCount+REGION_SLOTS-1)/REGION_SLOTS);
+			MappedByteBuffer[] ret=new MappedByteBuffer[regionc];
+			for(int i=0;i<regionc;i++){
+				long start=(long)i*REGION_SLOTS*SLOT_SIZE;
+				ret[i]=channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min((long)REGION_SLOTS*SLOT_SIZE, length-start));
+			}
+			return ret;
+		} finally {
+			// the mapping stays valid after closing the channel
+			file.close();
+		}
+	}
+	private long getLong(long slot,int field)
+	{
+		if(heapTable!=null){
+			return heapTable[(int)slot*SLOT_LONGS+field];
+		}
+		return mappedTable[(int)(slot/REGION_SLOTS)].getLong((int)(slot%REGION_SLOTS)*SLOT_SIZE+field*8);
+	}
+	private void setLong(long slot,int field,long value)
+	{
+		if(heapTable!=null){
+			heapTable[(int)slot*SLOT_LONGS+field]=value;
+			return;
+		}
+		mappedTable[(int)(slot/REGION_SLOTS)].putLong((int)(slot%REGION_SLOTS)*SLOT_SIZE+field*8,value);
+	}
+	private static long mix(long h)
+	{
+		h^=h>>>33;
+		h*=0xff51afd7ed558ccdL;
+		h^=h>>>33;
+		h*=0xc4ceb9fe1a85ec53L;
+		h^=h>>>33;
+		return h;
+	}
+	/** removes all keys, releases the mapping and deletes the file of the table.
+	 */
+	public void close()
+	{
+		EhiLogger.traceState((poolName!=null?poolName:getClass().getSimpleName())+": size "+size+", capacity "+capacity+", probes "+probes+(filename!=null ? " <"+filename.getPath()+">" : ""));
+		heapTable=new long[MIN_CAPACITY*SLOT_LONGS];
+		MappedBuffers.unmap(mappedTable);
+		mappedTable=null;
+		capacity=MIN_CAPACITY;
+		size=0L;
+		if(filename!=null){
+			filename.delete();
+			filename=null;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+
+/** Releases memory mappings, without waiting for the garbage collector.
+ * As long as a file is mapped, it can not be deleted on Windows.
+ */
+class MappedBuffers {
+	private MappedBuffers() {}
+	/** unmaps the given buffers. The buffers must not be used afterwards.
+	 * Best effort; if the JVM does not support it, the mapping is released by the garbage collector.
+	 */
+	static void unmap(MappedByteBuffer[] buffers)
+	{
+		if(buffers==null){
+			return;
+		}
+		for(int i=0;i<buffers.length;i++){
+			if(buffers[i]!=null){
+				unmap(buffers[i]);
+				buffers[i]=null;
+			}
+		}
+	}
+	static void unmap(MappedByteBuffer buffer)
+	{
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass=Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner=unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+			Field theUnsafe=unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (NoSuchMethodException e) {
+			// Java 8 and older; see below
+		} catch (Exception e) {
+			return;
+		}
+		try {
+			Method cleanerMethod=buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner=cleanerMethod.invoke(buffer);
+			if(cleaner!=null){
+				Method clean=cleaner.getClass().getMethod("clean");
+				clean.setAccessible(true);
+				clean.invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// ignore; released by the garbage collector
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ch.ehi.iox.objpool.PoolStorage;
+
+/** Read-only view of a log written in the format of SegmentLog (length prefixed records).
+ * The file is memory-mapped, so reading a record requires no system call and
+ * the pages are shared with other processes, that map the same file.
+ * The file is not deleted by close().
+ */
+public class MappedSegmentLog implements PoolStorage {
+	/** max. size of one mapped region.
+	 */
+	public static final int REGION_SIZE=1024*1024*1024;
+	private java.io.File filename=null;
+	private MappedByteBuffer[] regions=null;
+	private long length=0L;
+	private byte[] header=new byte[4];
+
+	public MappedSegmentLog(java.io.File filename) throws IOException
+	{
+		this.filename=filename;
+		RandomAccessFile file=new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel=file.getChannel();
+			length=channel.size();
+			int regionc=(int)((length+REGION_SIZE-1)/REGION_SIZE);
+			regions=new MappedByteBuffer[regionc];
+			for(int i=0;i<regionc;i++){
+				long start=(long)i*REGION_SIZE;
+				regions[i]=channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length-start));
+			}
+		} finally {
+			// the mapping stays valid after closing the channel
+			file.close();
+		}
+	}
+	@Override
+	public long append(byte[] record) throws IOException
+	{
+		throw new java.lang.UnsupportedOperationException("read-only storage "+filename);
+	}
+	@Override
+	public byte[] read(long pos) throws IOException
+	{
+		if(regions==null){
+			throw new IllegalStateException("closed");
+		}
+		if(pos<0 || pos+4>length){
+			throw new IllegalArgumentException("pos "+pos);
+		}
+		get(pos,header,4);
+		int size=LongSerializer.bytesToInteger(header, 0);
+		byte[] ret=new byte[size];
+		get(pos+4,ret,size);
+		return ret;
+	}
+	private void get(long pos,byte[] dest,int len)
+	{
+		int off=0;
+		while(off<len){
+			java.nio.ByteBuffer region=regions[(int)(pos/REGION_SIZE)].duplicate();
+			int regionPos=(int)(pos%REGION_SIZE);
+			int count=Math.min(len-off, region.limit()-regionPos);
+			region.position(regionPos);
+			region.get(dest, off, count);
+			off+=count;
+			pos+=count;
+		}
+	}
+	@Override
+	public java.util.Iterator<byte[]> scan(final long[] positions)
+	{
+		return new java.util.Iterator<byte[]>(){
+			private int idx=0;
+			@Override
+			public boolean hasNext() {
+				return idx<positions.length;
+			}
+			@Override
+			public byte[] next() {
+				if(idx>=positions.length){
+					throw new java.util.NoSuchElementException();
+				}
+				try {
+					return read(positions[idx++]);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			@Override
+			public void remove() {
+				throw new java.lang.UnsupportedOperationException();
+			}
+		};
+	}
+	@Override
+	public long length()
+	{
+		return length;
+	}
+	/** mapped pages are not part of the heap.
+	 */
+	@Override
+	public long getMemorySize()
+	{
+		return 0L;
+	}
+	@Override
+	public boolean spill() throws IOException
+	{
+		return false;
+	}
+	/** releases the mapping. The file is kept.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		MappedBuffers.unmap(regions);
+		regions=null;
+	}
+	@Override
+	public String toString()
+	{
+		return "filesize "+length+", mapped <"+filename.getPath()+">";
+	}
+}
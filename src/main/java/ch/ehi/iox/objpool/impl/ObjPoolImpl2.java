@@ -5,7 +5,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.HashMap;
@@ -13,18 +12,17 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 
 import ch.ehi.basics.logging.EhiLogger;
 import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
 import ch.ehi.iox.objpool.impl.btree.BTree;
 import ch.ehi.iox.objpool.impl.btree.BTreeCursor;
 
 public class ObjPoolImpl2<K,V> implements Map<K, V> {
 	
-	private TreeMap<K, Long> tree= null;
-	private RandomAccessFile outFile=null;
-	private java.io.File outFilename=null;
+	private KeyIndex<K> tree= null;
+	private PoolStorage outFile=null;
 	private Serializer valueSerializer=null;
 	private ObjectPoolManager objectPoolManager=null;
     private String poolName=null;
@@ -34,16 +32,22 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
     }
 	public ObjPoolImpl2( ObjectPoolManager objectPoolManager1, String poolName,Serializer valueSerializer1)
 	{
-		try{
-			objectPoolManager=objectPoolManager1;
-			valueSerializer=valueSerializer1;
-			tree= new TreeMap<K, Long>();
-			outFilename=ObjectPoolManager.getCacheTmpFilename();
-			outFile=new RandomAccessFile(outFilename, "rw");
-			this.poolName=poolName;
-		}catch(IOException e){
-			throw new IllegalStateException(e);
-		}
+		this(objectPoolManager1,poolName,valueSerializer1,new TreeMapKeyIndex<K>());
+	}
+	public ObjPoolImpl2( ObjectPoolManager objectPoolManager1, String poolName,Serializer valueSerializer1,KeyIndex<K> keyIndex)
+	{
+		this(objectPoolManager1,poolName,valueSerializer1,keyIndex,objectPoolManager1.newStorage(poolName));
+	}
+	/** creates a pool on an existing storage (e.g. a persistent one), that already contains 
+	 * the values referred to by keyIndex.
+	 */
+	public ObjPoolImpl2( ObjectPoolManager objectPoolManager1, String poolName,Serializer valueSerializer1,KeyIndex<K> keyIndex,PoolStorage storage)
+	{
+		objectPoolManager=objectPoolManager1;
+		valueSerializer=valueSerializer1;
+		tree= keyIndex;
+		outFile=storage;
+		this.poolName=poolName;
 	}
     private static int MAX_CACHE=32;
     private LinkedHashMap<Long,SoftReference<V>> cache = new LinkedHashMap<Long,SoftReference<V>>(MAX_CACHE,0.75f,true){
@@ -59,6 +63,12 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
         }
 
     };
+	/** @return number of bytes held on the heap by the key index.
+	 */
+	public long getKeyIndexMemorySize()
+	{
+		return tree!=null ? tree.getMemorySize() : 0L;
+	}
 	public void close()
 	{
 		if(tree!=null){
@@ -66,17 +76,13 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 		}
 		if(outFile!=null){
 			try {
-                EhiLogger.traceState((poolName!=null?poolName:this.getClass().getSimpleName())+": filesize "+outFile.length()+", updates "+updateCount+", <"+outFilename.getPath()+">");
-				outFile.close();
+                EhiLogger.traceState((poolName!=null?poolName:this.getClass().getSimpleName())+": size "+outFile.length()+", updates "+updateCount+", "+outFile);
+				objectPoolManager.closeStorage(outFile);
 			} catch (IOException e) {
 				throw new IllegalStateException(e);
 			}
 			outFile=null;
 		}
-		if(outFilename!=null){
-			outFilename.delete();
-			outFilename=null;
-		}
 			
 	}
 	public void disableCache()
@@ -91,7 +97,7 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 
 	@Override
 	public boolean containsKey(Object key) {
-		return tree.get((K)key)!=null;
+		return tree.get((K)key)!=-1L;
 	}
 
 	@Override
@@ -110,14 +116,14 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 			if(cache!=null){
 				objectPoolManager.flushWriteQueues();
 			}
-			Long pos= tree.get((K)key);
+			long pos= tree.get((K)key);
 			return readValue(pos);
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
 	}
-	private V readValue(Long pos) throws IOException {
-		if(pos!=null){
+	private V readValue(long pos) throws IOException {
+		if(pos!=-1L){
 			SoftReference<V> valueRef=null;
 			if(cache!=null){
 				valueRef=cache.get(pos);
@@ -129,10 +135,7 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 					return value;
 				}
 			}
-			outFile.seek(pos);
-			int size=outFile.readInt();
-			byte[] bytes=new byte[size];
-			outFile.read(bytes);
+			byte[] bytes=outFile.read(pos);
 		    try {
 				value=(V)valueSerializer.getObject(bytes);
 			} catch (ClassNotFoundException e) {
@@ -142,11 +145,9 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 		}
 		return null;
 	}
-	private void writeValue(long pos, V value) throws IOException {
-		outFile.seek(pos);
+	private long writeValue(V value) throws IOException {
 		byte[] bytes=valueSerializer.getBytes(value);
-		outFile.writeInt(bytes.length);
-		outFile.write(bytes);
+		return outFile.append(bytes);
 	}
 
 	@Override
@@ -156,28 +157,41 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 
 	@Override
 	public Set<K> keySet() {
-		return tree.keySet();
+		return new java.util.AbstractSet<K>(){
+			@Override
+			public Iterator<K> iterator() {
+				return tree.keyIterator();
+			}
+			@Override
+			public int size() {
+				return tree.size();
+			}
+		};
 	}
 
 	private long updateCount=0L;
 	@Override
 	public V put(K key, V value) {
+		putValue(key,value);
+		return null;
+	}
+	/** same as put(), but returns the position of the value in the storage.
+	 */
+	public long putValue(K key, V value) {
 		try {
 			
-			long pos = outFile.length();
-			writeValue(pos,value);
+			long pos = writeValue(value);
 			if(cache!=null){
 				objectPoolManager.flushWriteQueues();
 				if(cache!=null){
 					cache.put(pos, new SoftReference<V>(value));
 				}
 			}
-			Long retPos=tree.get((K)key);
-			if(retPos!=null) {
+			long retPos=tree.put(key, pos);
+			if(retPos!=-1L) {
 			    updateCount++;
 			}
-			tree.put(key, pos);
-			return null;
+			return pos;
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
@@ -190,7 +204,7 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 
 	@Override
 	public V remove(Object key) {
-		tree.remove(key);
+		tree.remove((K)key);
 		return null;
 	}
 
@@ -204,19 +218,71 @@ public class ObjPoolImpl2<K,V> implements Map<K, V> {
 		throw new java.lang.UnsupportedOperationException();
 	}
 	public java.util.Iterator<K> keyIterator(){
-		return tree.keySet().iterator();
+		return tree.keyIterator();
+	}
+	/** @return positions of the values in the storage, in the same order as keyIterator().
+	 */
+	public long[] getPositionsInKeyOrder(){
+		return tree.getPositionsInKeyOrder();
+	}
+	public PoolStorage getStorage(){
+		return outFile;
+	}
+	/** Iterates over the values in the physical order of the backing file, 
+	 * instead of the order of the keys.
+	 * Values of updated keys are returned once (the current version).
+	 * Use this instead of valueIterator(), if the visiting order doesn't matter.
+	 */
+	public java.util.Iterator<V> valueIteratorInFileOrder(){
+		long[] positions=tree.getPositionsInKeyOrder();
+		java.util.Arrays.sort(positions);
+		return valueIteratorAt(positions);
+	}
+	/** Iterates over the values at the given positions (as returned by putValue()).
+	 * @param positions positions in ascending order.
+	 */
+	public java.util.Iterator<V> valueIteratorAt(long[] positions){
+		final Iterator<byte[]> records=outFile.scan(positions);
+		java.util.Iterator<V> ret= new Iterator<V>() {
+			@Override
+			public boolean hasNext() {
+				return records.hasNext();
+			}
+
+			@Override
+			public V next() {
+				try {
+					return (V)valueSerializer.getObject(records.next());
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				} catch (ClassNotFoundException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new java.lang.UnsupportedOperationException();
+			}
+			
+		};
+		return ret;
 	}
 	public java.util.Iterator<V> valueIterator(){
 		java.util.Iterator<V> ret= new Iterator<V>() {
-			Iterator<K> cursor=tree.keySet().iterator();
+			long[] positions=tree.getPositionsInKeyOrder();
+			int i=0;
 			@Override
 			public boolean hasNext() {
-				return cursor.hasNext();
+				return i<positions.length;
 			}
 
 			@Override
 			public V next() {
-				Long pos= tree.get(cursor.next());
+				if(i>=positions.length){
+					throw new java.util.NoSuchElementException();
+				}
+				long pos= positions[i++];
 				try {
 					return readValue(pos);
 				} catch (IOException e) {
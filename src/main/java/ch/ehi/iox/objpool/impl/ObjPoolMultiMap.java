@@ -0,0 +1,195 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ch.ehi.basics.logging.EhiLogger;
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
+
+/** Pool that maps a key to a list of values. Values can only be appended.
+ * The values of a key are stored as a chain of chunks in an append-only storage;
+ * each chunk holds some values and the position of the previous chunk of the same key.
+ * The key index refers to the last chunk of each key, so adding a value never rewrites older values.
+ * Values are serialized, when they are added, and collected per key, until a chunk is full
+ * (or too many values are pending); then they are written as one chunk.
+ */
+public class ObjPoolMultiMap<K,V> {
+	public static final int DEFAULT_CHUNK_SIZE=16;
+	private static final int MAX_PENDING_VALUES=4096;
+	private static final long NO_CHUNK=-1L;
+	private KeyIndex<K> heads=null;
+	private PoolStorage outFile=null;
+	private Serializer<V> valueSerializer=null;
+	private ObjectPoolManager objectPoolManager=null;
+	private String poolName=null;
+	private int chunkSize=DEFAULT_CHUNK_SIZE;
+	/** serialized values per key, that are not yet written.
+	 */
+	private HashMap<K,ArrayList<byte[]>> pending=new HashMap<K,ArrayList<byte[]>>();
+	private int pendingCount=0;
+	private long valueCount=0L;
+	private long chunkCount=0L;
+
+	public ObjPoolMultiMap(ObjectPoolManager objectPoolManager1,String poolName,Serializer<V> valueSerializer1,KeyIndex<K> keyIndex,int chunkSize)
+	{
+		if(chunkSize<1){
+			throw new IllegalArgumentException("chunkSize "+chunkSize);
+		}
+		objectPoolManager=objectPoolManager1;
+		this.poolName=poolName;
+		valueSerializer=valueSerializer1;
+		heads=keyIndex;
+		this.chunkSize=chunkSize;
+		outFile=objectPoolManager.newStorage(poolName);
+	}
+	/** appends a value to the list of the given key.
+	 */
+	public void add(K key,V value)
+	{
+		byte[] bytes=null;
+		try {
+			bytes=valueSerializer.getBytes(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		ArrayList<byte[]> values=pending.get(key);
+		if(values==null){
+			values=new ArrayList<byte[]>();
+			pending.put(key, values);
+		}
+		values.add(bytes);
+		pendingCount++;
+		valueCount++;
+		if(values.size()>=chunkSize){
+			writeChunk(key,values);
+			pending.remove(key);
+		}else if(pendingCount>MAX_PENDING_VALUES){
+			flush();
+		}
+	}
+	/** @return the values of the given key, in the order they were added, or null if the key is unknown.
+	 */
+	public List<V> get(K key)
+	{
+		flush(key);
+		long pos=heads.get(key);
+		if(pos==NO_CHUNK){
+			return null;
+		}
+		ArrayList<List<V>> chunks=new ArrayList<List<V>>();
+		int valuec=0;
+		try {
+			while(pos!=NO_CHUNK){
+				DataInputStream in=new DataInputStream(new ByteArrayInputStream(outFile.read(pos)));
+				pos=in.readLong();
+				int chunkc=in.readInt();
+				ArrayList<V> chunk=new ArrayList<V>(chunkc);
+				for(int i=0;i<chunkc;i++){
+					byte[] bytes=new byte[in.readInt()];
+					in.readFully(bytes);
+					chunk.add(valueSerializer.getObject(bytes));
+				}
+				chunks.add(chunk);
+				valuec+=chunkc;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+		// chunks are chained from the last to the first one
+		Collections.reverse(chunks);
+		ArrayList<V> ret=new ArrayList<V>(valuec);
+		for(List<V> chunk:chunks){
+			ret.addAll(chunk);
+		}
+		return ret;
+	}
+	public boolean containsKey(K key)
+	{
+		return pending.containsKey(key) || heads.get(key)!=NO_CHUNK;
+	}
+	/** @return number of keys.
+	 */
+	public int size()
+	{
+		flush();
+		return heads.size();
+	}
+	/** @return number of bytes held on the heap by the key index.
+	 */
+	public long getKeyIndexMemorySize()
+	{
+		return heads.getMemorySize();
+	}
+	/** iterates over the keys in key order.
+	 */
+	public Iterator<K> keyIterator()
+	{
+		flush();
+		return heads.keyIterator();
+	}
+	/** writes all pending values.
+	 */
+	public void flush()
+	{
+		for(Map.Entry<K,ArrayList<byte[]>> entry:pending.entrySet()){
+			writeChunk(entry.getKey(),entry.getValue());
+		}
+		pending.clear();
+	}
+	private void flush(K key)
+	{
+		ArrayList<byte[]> values=pending.remove(key);
+		if(values!=null){
+			writeChunk(key,values);
+		}
+	}
+	private void writeChunk(K key,List<byte[]> values)
+	{
+		try {
+			int size=12;
+			for(byte[] bytes:values){
+				size+=4+bytes.length;
+			}
+			ByteArrayOutputStream chunk=new ByteArrayOutputStream(size);
+			DataOutputStream out=new DataOutputStream(chunk);
+			out.writeLong(heads.get(key));
+			out.writeInt(values.size());
+			for(byte[] bytes:values){
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			heads.put(key, outFile.append(chunk.toByteArray()));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		pendingCount-=values.size();
+		chunkCount++;
+	}
+	public void close()
+	{
+		pending.clear();
+		pendingCount=0;
+		if(outFile!=null){
+			try {
+				EhiLogger.traceState((poolName!=null?poolName:this.getClass().getSimpleName())+": values "+valueCount+", chunks "+chunkCount+", size "+outFile.length());
+				objectPoolManager.closeStorage(outFile);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			outFile=null;
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import ch.ehi.iox.objpool.PoolStorage;
+
+/** Append-only log of length prefixed records.
+ * Records are collected in a write buffer and written to the file in large blocks
+ * (without fsync). The end of the log is tracked in memory, so appending a record
+ * normally requires no system call at all.
+ * The file is only created, when the write buffer is flushed the first time.
+ * If keepInMemory is set, full write buffers are kept on the heap, until spill() is called.
+ */
+public class SegmentLog implements PoolStorage {
+	public static final int DEFAULT_BUFFER_SIZE=64*1024;
+	public static final int READ_BUFFER_SIZE=1024*1024;
+	private java.io.File filename=null;
+	private RandomAccessFile file=null;
+	/** number of bytes written to the file.
+	 */
+	private long fileLength=0L;
+	/** position of the file pointer, as far as known.
+	 */
+	private long filePointer=0L;
+	private boolean inMemory=false;
+	/** full write buffers, not yet written to the file. They follow the file content.
+	 */
+	private ArrayList<byte[]> memChunks=new ArrayList<byte[]>();
+	private ArrayList<Long> memChunkStarts=new ArrayList<Long>();
+	private long memLength=0L;
+	private long memSize=0L;
+	/** write buffer. Follows the memory chunks.
+	 */
+	private byte[] writeBuffer=null;
+	private int writeBufferLength=0;
+	private int bufferSize=DEFAULT_BUFFER_SIZE;
+	private byte[] header=new byte[4];
+	private long flushCount=0L;
+
+	public SegmentLog(java.io.File filename)
+	{
+		this(filename,DEFAULT_BUFFER_SIZE,false);
+	}
+	public SegmentLog(java.io.File filename,int bufferSize)
+	{
+		this(filename,bufferSize,false);
+	}
+	public SegmentLog(java.io.File filename,int bufferSize,boolean keepInMemory)
+	{
+		if(bufferSize<=4){
+			throw new IllegalArgumentException("bufferSize "+bufferSize);
+		}
+		this.filename=filename;
+		this.bufferSize=bufferSize;
+		this.inMemory=keepInMemory;
+	}
+	/** appends a record to the log.
+	 * @return position of the record in the log
+	 */
+	@Override
+	public long append(byte[] record) throws IOException
+	{
+		int recordSize=4+record.length;
+		if(writeBuffer==null){
+			writeBuffer=new byte[bufferSize];
+		}
+		if(writeBufferLength+recordSize>writeBuffer.length){
+			if(inMemory){
+				sealWriteBuffer();
+			}else{
+				flush();
+			}
+		}
+		long pos=length();
+		if(recordSize>writeBuffer.length){
+			// record larger than buffer
+			LongSerializer.integerToBytes(record.length, header, 0);
+			if(inMemory){
+				byte[] chunk=new byte[recordSize];
+				System.arraycopy(header, 0, chunk, 0, 4);
+				System.arraycopy(record, 0, chunk, 4, record.length);
+				addMemChunk(chunk,recordSize);
+			}else{
+				// write it directly
+				openFile();
+				seek(fileLength);
+				file.write(header);
+				file.write(record);
+				fileLength+=recordSize;
+				filePointer=fileLength;
+			}
+		}else{
+			LongSerializer.integerToBytes(record.length, writeBuffer, writeBufferLength);
+			System.arraycopy(record, 0, writeBuffer, writeBufferLength+4, record.length);
+			writeBufferLength+=recordSize;
+		}
+		return pos;
+	}
+	/** reads the record at the given position.
+	 * @param pos position as returned by append()
+	 */
+	@Override
+	public byte[] read(long pos) throws IOException
+	{
+		if(pos<0 || pos>=length()){
+			throw new IllegalArgumentException("pos "+pos);
+		}
+		if(pos>=fileLength+memLength){
+			// record still in write buffer
+			return readRecord(writeBuffer,(int)(pos-fileLength-memLength));
+		}
+		if(pos>=fileLength){
+			// record in a memory chunk
+			int idx=java.util.Collections.binarySearch(memChunkStarts, pos);
+			if(idx<0){
+				idx=-idx-2;
+			}
+			return readRecord(memChunks.get(idx),(int)(pos-memChunkStarts.get(idx)));
+		}
+		seek(pos);
+		file.readFully(header);
+		int size=LongSerializer.bytesToInteger(header, 0);
+		byte[] ret=new byte[size];
+		file.readFully(ret);
+		filePointer=pos+4+size;
+		return ret;
+	}
+	private static byte[] readRecord(byte[] buffer,int offset)
+	{
+		int size=LongSerializer.bytesToInteger(buffer, offset);
+		byte[] ret=new byte[size];
+		System.arraycopy(buffer, offset+4, ret, 0, size);
+		return ret;
+	}
+	/** reads the records at the given positions by reading the log front to back in large blocks.
+	 * Records not listed in positions (e.g. old versions of updated values) are skipped.
+	 * The blocks are read through the file of the log, so the iterator holds no file handle
+	 * and need not be read to its end.
+	 * @param positions positions as returned by append(), in ascending order
+	 */
+	@Override
+	public java.util.Iterator<byte[]> scan(final long[] positions)
+	{
+		return new java.util.Iterator<byte[]>(){
+			private int idx=0;
+			private byte[] block=null;
+			private long blockStart=0L;
+			private int blockLength=0;
+			@Override
+			public boolean hasNext() {
+				if(idx<positions.length){
+					return true;
+				}
+				block=null;
+				return false;
+			}
+			@Override
+			public byte[] next() {
+				if(idx>=positions.length){
+					throw new java.util.NoSuchElementException();
+				}
+				long pos=positions[idx++];
+				try {
+					if(pos>=fileLength){
+						return read(pos);
+					}
+					if(pos<blockStart || pos+4>blockStart+blockLength){
+						readBlock(pos);
+					}
+					int offset=(int)(pos-blockStart);
+					int size=LongSerializer.bytesToInteger(block, offset);
+					if(offset+4+size>blockLength){
+						if(4+size>block.length){
+							// record larger than a block
+							return read(pos);
+						}
+						readBlock(pos);
+						offset=0;
+					}
+					byte[] ret=new byte[size];
+					System.arraycopy(block, offset+4, ret, 0, size);
+					return ret;
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			@Override
+			public void remove() {
+				throw new java.lang.UnsupportedOperationException();
+			}
+			private void readBlock(long pos) throws IOException {
+				if(block==null){
+					block=new byte[READ_BUFFER_SIZE];
+				}
+				int len=(int)Math.min(block.length, fileLength-pos);
+				seek(pos);
+				file.readFully(block, 0, len);
+				filePointer=pos+len;
+				blockStart=pos;
+				blockLength=len;
+			}
+		};
+	}
+	/** writes the content of the write buffer to the file.
+	 * Has no effect, as long as the log is kept in memory.
+	 */
+	public void flush() throws IOException
+	{
+		if(inMemory || writeBufferLength==0){
+			return;
+		}
+		openFile();
+		seek(fileLength);
+		file.write(writeBuffer, 0, writeBufferLength);
+		fileLength+=writeBufferLength;
+		filePointer=fileLength;
+		writeBufferLength=0;
+		flushCount++;
+	}
+	/** writes all records held in memory to the file.
+	 * Later records are written to the file, whenever the write buffer is full.
+	 */
+	@Override
+	public boolean spill() throws IOException
+	{
+		if(!inMemory){
+			return false;
+		}
+		inMemory=false;
+		if(memChunks.size()>0){
+			openFile();
+			seek(fileLength);
+			for(int i=0;i<memChunks.size();i++){
+				long start=memChunkStarts.get(i);
+				long end=i+1<memChunks.size() ? memChunkStarts.get(i+1) : fileLength+memLength;
+				file.write(memChunks.get(i), 0, (int)(end-start));
+			}
+			fileLength+=memLength;
+			filePointer=fileLength;
+			flushCount+=memChunks.size();
+			memChunks.clear();
+			memChunkStarts.clear();
+			memLength=0L;
+			memSize=0L;
+		}
+		flush();
+		return true;
+	}
+	private void sealWriteBuffer()
+	{
+		if(writeBufferLength>0){
+			addMemChunk(writeBuffer,writeBufferLength);
+			writeBuffer=new byte[bufferSize];
+			writeBufferLength=0;
+		}
+	}
+	private void addMemChunk(byte[] chunk,int length)
+	{
+		memChunkStarts.add(fileLength+memLength);
+		memChunks.add(chunk);
+		memLength+=length;
+		memSize+=chunk.length;
+	}
+	/** size of the log (in bytes), including the not yet flushed records.
+	 */
+	@Override
+	public long length()
+	{
+		return fileLength+memLength+writeBufferLength;
+	}
+	@Override
+	public long getMemorySize()
+	{
+		return memSize+(writeBuffer!=null ? writeBuffer.length : 0);
+	}
+	public boolean isInMemory()
+	{
+		return inMemory;
+	}
+	public long getFlushCount()
+	{
+		return flushCount;
+	}
+	public java.io.File getFilename()
+	{
+		return filename;
+	}
+	/** closes and deletes the file of this log.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		writeBuffer=null;
+		writeBufferLength=0;
+		memChunks.clear();
+		memChunkStarts.clear();
+		memLength=0L;
+		memSize=0L;
+		if(file!=null){
+			file.close();
+			file=null;
+		}
+		if(filename!=null){
+			filename.delete();
+			filename=null;
+		}
+	}
+	@Override
+	public String toString()
+	{
+		return "filesize "+fileLength+", memsize "+memSize+", flushes "+flushCount+(filename!=null ? " <"+filename.getPath()+">" : "");
+	}
+	private void openFile() throws IOException
+	{
+		if(file==null){
+			file=new RandomAccessFile(filename, "rw");
+			filePointer=0L;
+		}
+	}
+	private void seek(long pos) throws IOException
+	{
+		if(filePointer!=pos){
+			file.seek(pos);
+			filePointer=pos;
+		}
+	}
+}
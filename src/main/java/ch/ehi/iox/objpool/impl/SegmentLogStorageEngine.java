@@ -0,0 +1,20 @@
+package ch.ehi.iox.objpool.impl;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
+import ch.ehi.iox.objpool.StorageEngine;
+
+/** Creates SegmentLogs in the temp directory.
+ * If keepInMemory is set, the logs keep their records on the heap, 
+ * until the ObjectPoolManager asks them to spill to disk.
+ */
+public class SegmentLogStorageEngine implements StorageEngine {
+	private boolean keepInMemory=true;
+	public SegmentLogStorageEngine(boolean keepInMemory) {
+		this.keepInMemory=keepInMemory;
+	}
+	@Override
+	public PoolStorage newStorage(ObjectPoolManager manager, String poolName) {
+		return new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),SegmentLog.DEFAULT_BUFFER_SIZE,keepInMemory);
+	}
+}
@@ -0,0 +1,53 @@
+package ch.ehi.iox.objpool.impl;
+
+/** Compact index of String keys. The keys are stored UTF-8 encoded.
+ */
+public class StringKeyIndex extends CompactKeyIndex<String> {
+	public StringKeyIndex() {
+		super();
+	}
+	public StringKeyIndex(boolean offHeap) {
+		super(offHeap);
+	}
+	@Override
+	protected int encodeKey(String key, byte[] buf) {
+		int len=0;
+		int keyLen=key.length();
+		for(int i=0;i<keyLen;i++){
+			char c=key.charAt(i);
+			if(c<0x80){
+				len=put(buf,len,c);
+			}else{
+				// not ASCII
+				return encodeUtf8(key,buf);
+			}
+		}
+		return len;
+	}
+	private static int encodeUtf8(String key, byte[] buf) {
+		byte[] utf8=null;
+		try {
+			utf8=key.getBytes("UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		if(utf8.length<=buf.length){
+			System.arraycopy(utf8, 0, buf, 0, utf8.length);
+		}
+		return utf8.length;
+	}
+	private static int put(byte[] buf,int len,int b) {
+		if(len<buf.length){
+			buf[len]=(byte)b;
+		}
+		return len+1;
+	}
+	@Override
+	protected String decodeKey(byte[] buf, int len) {
+		try {
+			return new String(buf,0,len,"UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
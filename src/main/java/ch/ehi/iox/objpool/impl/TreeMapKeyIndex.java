@@ -0,0 +1,47 @@
+package ch.ehi.iox.objpool.impl;
+
+import java.util.Iterator;
+import java.util.TreeMap;
+
+public class TreeMapKeyIndex<K> implements KeyIndex<K> {
+	/** estimated size of a TreeMap entry with its Long value and a small key object.
+	 */
+	private static final long ENTRY_SIZE=40L+16L+48L;
+	private TreeMap<K, Long> tree= new TreeMap<K, Long>();
+	@Override
+	public long get(K key) {
+		Long pos=tree.get(key);
+		return pos==null ? -1L : pos;
+	}
+	@Override
+	public long put(K key, long pos) {
+		Long retPos=tree.put(key, pos);
+		return retPos==null ? -1L : retPos;
+	}
+	@Override
+	public long remove(K key) {
+		Long retPos=tree.remove(key);
+		return retPos==null ? -1L : retPos;
+	}
+	@Override
+	public int size() {
+		return tree.size();
+	}
+	@Override
+	public Iterator<K> keyIterator() {
+		return tree.keySet().iterator();
+	}
+	@Override
+	public long[] getPositionsInKeyOrder() {
+		long[] ret=new long[tree.size()];
+		int i=0;
+		for(Long pos:tree.values()){
+			ret[i++]=pos;
+		}
+		return ret;
+	}
+	@Override
+	public long getMemorySize() {
+		return tree.size()*ENTRY_SIZE;
+	}
+}
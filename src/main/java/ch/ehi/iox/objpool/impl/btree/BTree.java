@@ -10,8 +10,6 @@ import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.WeakHashMap;
 
 import ch.ehi.basics.logging.EhiLogger;
@@ -20,9 +18,15 @@ import ch.ehi.iox.objpool.impl.Serializer;
 
 
 public class BTree<Key, Value>  {
-    // max children per B-tree node = M-1
+    /** default max. number of entries per node.
+     */
+    public static final int DEFAULT_FAN_OUT = 64;
+    /** default number of nodes held in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    // max children per B-tree node = fanOut-1
     // (must be even and greater than 2)
-    static final int M = 16;
+    private int fanOut = DEFAULT_FAN_OUT;
 
     private NodeId root;       // root of the B-tree
     private int height;      // height of the B-tree
@@ -35,31 +39,11 @@ public class BTree<Key, Value>  {
     private java.io.File fileName=null;
     public final static int BLOCK_SIZE=8192;
     private int pageCount=0;
-    private static int MAX_CACHE=32;
     private String poolName=null;
-    private final LinkedHashMap<NodeId,Node> cache = new LinkedHashMap<NodeId,Node>(MAX_CACHE,0.75f,true){
-    	@Override
-    	protected boolean removeEldestEntry(Map.Entry<NodeId, Node> eldest) {
-    		if(true){
-        		Node node=eldest.getValue();
-        		if(size()<MAX_CACHE){
-        			return false;
-        		}
-        		if(node.isDirty()){
-        			// save it
-        			writeNode(node);
-        		}
-                return true; // remove eldest
-    		}
-    		return false;
-        }
-
-    };
-	protected void touchNode(NodeId nodeId) {
-		cache.get(nodeId);
-	}
-	private void writeNode(Node node) {
+    private NodeCache<Key,Value> cache=null;
+	void writeNode(Node node) {
 		try {
+			openFile();
 			ArrayList<Long> pages=node.getOverflowPages();
 			byte[] bytes=node.getBytes();
 			final int blockSize=BLOCK_SIZE-8;
@@ -88,6 +72,7 @@ public class BTree<Key, Value>  {
 				}
 			}
 			node.setOverflowPages(pages);
+			node.clearDirty();
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
@@ -99,6 +84,7 @@ public class BTree<Key, Value>  {
     		return ret;
     	}
     	try{
+			openFile();
 			ArrayList<Long> pages=new ArrayList<Long>();
 			long blockId=nodeId.getPageId();
 			file.seek(blockId*BLOCK_SIZE);
@@ -117,6 +103,7 @@ public class BTree<Key, Value>  {
 			}
     		Node node=Node.read(this,nodeId,bytes.toByteArray());
     		node.setOverflowPages(pages);
+    		node.clearDirty();
         	return node;
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
@@ -132,14 +119,28 @@ public class BTree<Key, Value>  {
         this(null,path,keyComparator,keySerializer,valueSerializer);
     }
     public BTree(String poolName,java.io.File path,java.util.Comparator<Key> keyComparator,Serializer keySerializer,Serializer valueSerializer) 
+            throws java.io.IOException 
+    {
+        this(poolName,path,keyComparator,keySerializer,valueSerializer,DEFAULT_FAN_OUT,DEFAULT_CACHE_SIZE);
+    }
+    /**
+     * Initializes an empty B-tree.
+     * @param fanOut max. number of entries per node (must be even and greater than 2)
+     * @param cacheSize number of nodes held in memory
+     */
+    public BTree(String poolName,java.io.File path,java.util.Comparator<Key> keyComparator,Serializer keySerializer,Serializer valueSerializer,int fanOut,int cacheSize) 
     		throws java.io.IOException 
     {
+        if(fanOut<=2 || fanOut%2!=0){
+            throw new IllegalArgumentException("fanOut "+fanOut);
+        }
+        this.fanOut=fanOut;
+        this.cache=new NodeCache<Key,Value>(this,cacheSize,cacheSize/8);
         this.poolName=poolName;
     	this.keyComparator=keyComparator;
     	this.keySerializer=keySerializer;
     	this.valueSerializer=valueSerializer;
     	this.fileName=path;
-		this.file = new RandomAccessFile( path, "rw" );
 		height=0;
 		n=0;
         root = new Node(this,allocPage(),0).getNodeId();
@@ -176,6 +177,10 @@ public class BTree<Key, Value>  {
         return height;
     }
 
+    public int getFanOut() {
+        return fanOut;
+    }
+
 
     /**
      * Returns the value associated with the given key.
@@ -189,6 +194,7 @@ public class BTree<Key, Value>  {
         if (key == null){
         	throw new IllegalArgumentException("argument to get() is null");
         }
+        cache.flushWriteQueueIfFull();
         return search(getNode(root), key, height);
     }
 
@@ -221,14 +227,21 @@ public class BTree<Key, Value>  {
      *
      * @param  key the key
      * @param  val the value
+     * @return the previous value associated with the key or {@code null}
      * @throws IllegalArgumentException if {@code key} is {@code null}
      */
-    public void put(Key key, Value val) {
+    public Value put(Key key, Value val) {
         if (key == null) throw new IllegalArgumentException("argument key to put() is null");
+        cache.flushWriteQueueIfFull();
+        replaced=false;
+        replacedValue=null;
         Node<Key,Value> u = insert(getNode(root), key, val, height); 
+        if(replaced){
+            return replacedValue;
+        }
         n++;
         if (u == null){
-        	return;
+        	return null;
         }
 
         // need to split root
@@ -237,7 +250,10 @@ public class BTree<Key, Value>  {
         t.setEntry(1, new Entry(u.getEntry(0).getKey(), null, u.getNodeId()));
         root = t.getNodeId();
         height++;
+        return null;
     }
+    private boolean replaced=false;
+    private Value replacedValue=null;
 
     private Node insert(Node<Key,Value> h, Key key, Value val, int ht) {
         int j;
@@ -249,6 +265,8 @@ public class BTree<Key, Value>  {
             for (j = 0; j < h.getEntryCount(); j++) {
                 if (eq(key, h.getEntry(j).getKey())){
                 	// found, replace value
+                	replaced=true;
+                	replacedValue=(Value)h.getEntry(j).getVal();
                 	h.setEntry(j, t);
                 	return null;
                 }
@@ -283,7 +301,7 @@ public class BTree<Key, Value>  {
         }
         
         // node not yet full?
-        if (h.getEntryCount() < M){
+        if (h.getEntryCount() < fanOut){
         	return null;
         }else{
         	// node full
@@ -293,10 +311,11 @@ public class BTree<Key, Value>  {
 
     // split node in half
     private Node split(Node fullNode) {
-        Node newNode = new Node(this,allocPage(),M/2);
-        fullNode.setEntryCount(M/2);
-        for (int j = 0; j < M/2; j++){
-            newNode.setEntry(j,fullNode.getEntry(M/2+j));
+        int half=fanOut/2;
+        Node newNode = new Node(this,allocPage(),half);
+        fullNode.setEntryCount(half);
+        for (int j = 0; j < half; j++){
+            newNode.setEntry(j,fullNode.getEntry(half+j));
         }
         return newNode;    
     }
@@ -387,15 +406,25 @@ public class BTree<Key, Value>  {
             throw new IllegalStateException(e);
         }
 	}
-	public void cachePut(NodeId nodeId, Node node) {
-		cache.put(nodeId, node);
+	void cachePut(NodeId nodeId, Node node) {
+		cache.put(node);
+	}
+	/** the file is only created, if a node has to be evicted from the cache.
+	 */
+	private void openFile() throws IOException {
+		if(file==null){
+			file = new RandomAccessFile( fileName, "rw" );
+		}
 	}
 	public void close() throws IOException {
-		if(file!=null){
+		if(fileName!=null){
 		    String tag=(poolName!=null?poolName:this.getClass().getSimpleName());
-            EhiLogger.traceState(tag+": size "+size()+", filesize "+file.length()+" <"+fileName.getPath()+">");
+            EhiLogger.traceState(tag+": size "+size()+", filesize "+(file!=null?file.length():0L)+" <"+fileName.getPath()+">");
             EhiLogger.traceState(tag+": keySize min "+minKeySize+", max "+maxKeySize);
             EhiLogger.traceState(tag+": valueSize min "+minValueSize+", max "+maxValueSize);
+            EhiLogger.traceState(tag+": fanOut "+fanOut+", "+cache);
+		}
+		if(file!=null){
 			file.close();
 			file=null;
 		}
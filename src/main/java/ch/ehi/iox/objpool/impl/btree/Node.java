@@ -11,9 +11,10 @@ import ch.ehi.iox.objpool.impl.LongSerializer;
 // helper B-tree node data type
 final class Node<Key,Value> {
     private int m;                             // number of entries
-    private Entry<Key,Value>[] children = new Entry[BTree.M];   // the array of entries
+    private Entry<Key,Value>[] children;   // the array of entries
     private NodeId nodeId;
     private boolean dirty=true;
+    private boolean referenced=true;        // reference bit of the NodeCache
     private BTree<Key,Value> tree=null;
     private ArrayList<Long> overflowPages=new ArrayList<Long>();
     // create a node with k children
@@ -21,6 +22,7 @@ final class Node<Key,Value> {
     	this.nodeId=nodeId;
         m=k;
         this.tree=tree;
+        children = new Entry[tree.getFanOut()];
         this.dirty=true;
         tree.cachePut(nodeId,this);
     }
@@ -30,23 +32,23 @@ final class Node<Key,Value> {
 	}
 
 	public int getEntryCount() {
-		tree.touchNode(nodeId);
+		referenced=true;
 		return m;
 	}
 
 	public void setEntryCount(int m) {
-		tree.touchNode(nodeId);
+		referenced=true;
 		this.m = m;
 		dirty=true;
 	}
 
 	public Entry<Key,Value> getEntry(int i) {
-		tree.touchNode(nodeId);
+		referenced=true;
 		return children[i];
 	}
 
 	public void setEntry(int i,Entry<Key,Value> child) {
-		tree.touchNode(nodeId);
+		referenced=true;
 		children[i] = child;
 		dirty=true;
 	}
@@ -55,6 +57,22 @@ final class Node<Key,Value> {
 		return dirty;
 	}
 
+	void clearDirty() {
+		dirty=false;
+	}
+
+	void setReferenced() {
+		referenced=true;
+	}
+
+	/** @return previous value of the reference bit.
+	 */
+	boolean clearReferenced() {
+		boolean ret=referenced;
+		referenced=false;
+		return ret;
+	}
+
 	public ArrayList<Long> getOverflowPages() {
 		return overflowPages;
 	}
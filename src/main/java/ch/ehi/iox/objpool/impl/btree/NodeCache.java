@@ -0,0 +1,120 @@
+package ch.ehi.iox.objpool.impl.btree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/** Cache of the nodes of a BTree with CLOCK eviction.
+ * Each node has a reference bit, that is set whenever the node is accessed.
+ * To make room, the clock hand sweeps over the cached nodes, clears the reference bits and evicts
+ * the first node that was not accessed since the last sweep.
+ * Evicted dirty nodes are not written immediately, but collected and written as a batch in page order.
+ * Until then, they are still found by get(). The batch is only written between two operations of the tree
+ * (see flushWriteQueueIfFull()), so a node that is evicted while the tree still modifies it, is not lost.
+ */
+class NodeCache<Key,Value> {
+	private BTree<Key,Value> tree=null;
+	private Node<Key,Value>[] slots=null;
+	private HashMap<NodeId,Node<Key,Value>> nodes=null;
+	private HashMap<NodeId,Node<Key,Value>> writeQueue=null;
+	private int writeBatchSize=0;
+	private int hand=0;
+	private int count=0;
+	private long hits=0L;
+	private long misses=0L;
+	private long writes=0L;
+	private long writeBatches=0L;
+
+	NodeCache(BTree<Key,Value> tree,int cacheSize,int writeBatchSize) {
+		if(cacheSize<2){
+			throw new IllegalArgumentException("cacheSize "+cacheSize);
+		}
+		this.tree=tree;
+		this.slots=new Node[cacheSize];
+		this.nodes=new HashMap<NodeId,Node<Key,Value>>(cacheSize*2);
+		this.writeBatchSize=Math.max(1, writeBatchSize);
+		this.writeQueue=new HashMap<NodeId,Node<Key,Value>>(this.writeBatchSize*2);
+	}
+	/** @return the cached node or null.
+	 */
+	Node<Key,Value> get(NodeId nodeId) {
+		Node<Key,Value> node=nodes.get(nodeId);
+		if(node!=null){
+			node.setReferenced();
+			hits++;
+			return node;
+		}
+		node=writeQueue.remove(nodeId);
+		if(node!=null){
+			// evicted, but not yet written
+			put(node);
+			hits++;
+			return node;
+		}
+		misses++;
+		return null;
+	}
+	void put(Node<Key,Value> node) {
+		int slot;
+		if(count<slots.length){
+			slot=count++;
+		}else{
+			slot=evict();
+		}
+		slots[slot]=node;
+		nodes.put(node.getNodeId(), node);
+		node.setReferenced();
+	}
+	private int evict() {
+		while(true){
+			Node<Key,Value> node=slots[hand];
+			int slot=hand;
+			hand=(hand+1)%slots.length;
+			if(node.clearReferenced()){
+				// second chance
+				continue;
+			}
+			nodes.remove(node.getNodeId());
+			slots[slot]=null;
+			if(node.isDirty()){
+				writeQueue.put(node.getNodeId(), node);
+			}
+			return slot;
+		}
+	}
+	/** writes the evicted dirty nodes, if there are enough of them to fill a batch.
+	 * Must not be called while the tree holds references to nodes.
+	 */
+	void flushWriteQueueIfFull() {
+		if(writeQueue.size()>=writeBatchSize){
+			flushWriteQueue();
+		}
+	}
+	/** writes all evicted dirty nodes, in page order.
+	 */
+	void flushWriteQueue() {
+		if(writeQueue.isEmpty()){
+			return;
+		}
+		ArrayList<Node<Key,Value>> batch=new ArrayList<Node<Key,Value>>(writeQueue.values());
+		writeQueue.clear();
+		Collections.sort(batch,new Comparator<Node<Key,Value>>(){
+			@Override
+			public int compare(Node<Key, Value> o1, Node<Key, Value> o2) {
+				long p1=o1.getNodeId().getPageId();
+				long p2=o2.getNodeId().getPageId();
+				return p1<p2 ? -1 : (p1==p2 ? 0 : 1);
+			}
+		});
+		for(Node<Key,Value> node:batch){
+			tree.writeNode(node);
+		}
+		writes+=batch.size();
+		writeBatches++;
+	}
+	@Override
+	public String toString() {
+		return "cache size "+slots.length+", hits "+hits+", misses "+misses+", writes "+writes+", write batches "+writeBatches;
+	}
+}
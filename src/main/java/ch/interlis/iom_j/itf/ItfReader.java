@@ -659,16 +659,7 @@ public class ItfReader implements ch.interlis.iox.IoxReader,IoxIliReader{
 	}
 	private String[] splitItfLine(String line)
 	{
-		String[] ret=line.trim().split("\\s+");
-		for(int i=0;i<ret.length;i++){
-			if(ret[i]!=null && ret[i].length()==0){
-				ret[i]=null;
-			}
-			if(ret[i]!=null && ret[i].equals(undefinedCode)){
-				ret[i]=null;
-			}
-		}
-		return ret;
+		return ItfScanner.splitFields(line,undefinedCode);
 	}
 	private String undefinedCode="@";
 	private char blankCode='_';
@@ -63,11 +63,15 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
     private LineobjectIterator currentSurfaceAttrsIt=null;
 	private HashMap<AttributeDef,ItfSurfaceLinetable2Polygon> currentSurfaceAttrs=null;
 	private HashMap<AttributeDef,ItfAreaLinetable2Polygon> currentAreaAttrs=null;
+	/** manager of the temporary storages of this reader and of all polygon builders.
+	 */
 	private ObjectPoolManager objPool=null;
+	private java.util.Map<String,Long> peakTempStorageSizes=null;
 	private ArrayList<IoxInvalidDataException> dataerrs=new ArrayList<IoxInvalidDataException>();
 	private int ignorePolygonBuildingErrors=POLYGON_BUILDING_ERRORS_ON;
 	private boolean readLinetables=false;
 	private boolean allowItfAreaHoles=true; // default is like Interlis2 (not exactly according to Interlis1 spec)
+	private int polygonBuildThreadCount=1;
 	private PipelinePool ioxDataPool=null;
 	private LogEventFactory errFact=null;
 
@@ -132,9 +136,21 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
 		closePolygonizers();
 		if(objPool!=null){
 			objPool.close();
+			peakTempStorageSizes=objPool.getPeakStorageSizes();
+			for(String poolName:peakTempStorageSizes.keySet()){
+				EhiLogger.traceState("peak temp storage size "+poolName+": "+peakTempStorageSizes.get(poolName)+" bytes");
+			}
 			objPool=null;
 		}
 	}
+	/** @return per table/attribute, the peak number of bytes of the temporary storages (on the heap or in temp files).
+	 */
+	public java.util.Map<String,Long> getPeakTempStorageSizes() {
+		if(objPool!=null){
+			return objPool.getPeakStorageSizes();
+		}
+		return peakTempStorageSizes;
+	}
 	@Override
 	public IomObject createIomObject(String type, String oid)
 			throws IoxException {
@@ -186,6 +202,7 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
                 }
             }
 			closePolygonizers();
+			objPool.closeObjectPool(currentMainObjs);
 			currentMainObjs=null;
 			currentSurfaceAttrs=null;
             currentSurfaceAttrsIt=null;
@@ -304,7 +321,7 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
 			// maintable
 			surfaceOrAreaAttr=null;
 			//mainObjs=new HashMap<String,IomObject>();
-			currentMainObjs=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer(getFactory()));
+			currentMainObjs=objPool.newObjectPoolImpl2(aclass.getScopedName(null),new IomObjectSerializer(getFactory()));
 			iliQName=aclass.getScopedName(null);
 			while(true){
 				  // collect objects
@@ -573,12 +590,14 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
 			AttributeDef attr = (AttributeDef) attrObj;
 			Type type = Type.findReal (attr.getDomain());
 			if(type instanceof SurfaceType){
-			    ItfSurfaceLinetable2Polygon polygonBuilder=new ItfSurfaceLinetable2Polygon(attr,ignorePolygonBuildingErrors);
+			    ItfSurfaceLinetable2Polygon polygonBuilder=new ItfSurfaceLinetable2Polygon(attr,ignorePolygonBuildingErrors,objPool);
+			    polygonBuilder.setThreadCount(polygonBuildThreadCount);
                 polygonBuilder.setKeepLinetables(readLinetables,ModelUtilities.getHelperTableMainTableRef(attr),ModelUtilities.getHelperTableMainTableRef2(attr));
 				attrs_surfaceAttrs.put(attr, polygonBuilder);
 			}else if(type instanceof AreaType){
-				ItfAreaLinetable2Polygon polygonBuilder = new ItfAreaLinetable2Polygon(attr,ignorePolygonBuildingErrors);
+				ItfAreaLinetable2Polygon polygonBuilder = new ItfAreaLinetable2Polygon(attr,ignorePolygonBuildingErrors,objPool);
 				polygonBuilder.setAllowItfAreaHoles(allowItfAreaHoles);
+				polygonBuilder.setThreadCount(polygonBuildThreadCount);
                 polygonBuilder.setKeepLinetables(readLinetables,ModelUtilities.getHelperTableMainTableRef(attr),ModelUtilities.getHelperTableMainTableRef2(attr));
 				attrs_areaAttrs.put(attr, polygonBuilder);
 			}
@@ -635,6 +654,18 @@ public class ItfReader2 implements ch.interlis.iox.IoxReader,IoxIliReader{
 	public void setAllowItfAreaHoles(boolean allowItfAreaHoles) {
 		this.allowItfAreaHoles = allowItfAreaHoles;
 	}
+    public int getPolygonBuildThreadCount() {
+        return polygonBuildThreadCount;
+    }
+    /** sets the number of threads to build the polygons of SURFACE and AREA attributes. 
+     * 1 (the default) builds them in the reading thread.
+     */
+    public void setPolygonBuildThreadCount(int threadCount) {
+        if(threadCount<1){
+            throw new IllegalArgumentException("threadCount "+threadCount);
+        }
+        this.polygonBuildThreadCount = threadCount;
+    }
     public int getIgnorePolygonBuildingErrors() {
         return ignorePolygonBuildingErrors;
     }
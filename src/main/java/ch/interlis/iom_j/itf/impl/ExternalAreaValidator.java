@@ -0,0 +1,378 @@
+package ch.interlis.iom_j.itf.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import ch.ehi.basics.logging.EhiLogger;
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
+import ch.ehi.iox.objpool.impl.PolygonSerializer;
+import ch.interlis.iom_j.itf.impl.jtsext.geom.CurvePolygon;
+import ch.interlis.iom_j.itf.impl.jtsext.geom.JtsextGeometryFactory;
+import ch.interlis.iom_j.itf.impl.jtsext.noding.AreaValidator;
+import ch.interlis.iom_j.itf.impl.jtsext.noding.Intersection;
+import ch.interlis.iox_j.IoxIntersectionException;
+import ch.interlis.iox_j.IoxInvalidDataException;
+
+/** Validates the AREA condition of polygons, that are held in a temporary storage instead of on the heap.
+ * Per polygon, only its envelope and the position in the storage are kept on the heap (in primitive arrays).
+ * The polygons are validated in batches of consecutive polygons (in the order they were added), each batch together
+ * with the polygons, whose envelope intersects the envelope of a polygon of the batch. These neighbours are found
+ * by an index of the polygons sorted along a Hilbert curve of the centers of their envelopes; they are read from
+ * the storage and kept in a bounded cache, so only the active window of faces is held in memory.
+ * Segments of polygons of later batches, that are found to be invalid, are carried over to the batch of the polygon,
+ * so the result is the same as the one of the in-memory validation.
+ * @see AreaValidator
+ */
+public class ExternalAreaValidator {
+	public static final int DEFAULT_BATCH_SIZE=256;
+	public static final int DEFAULT_CACHE_SIZE=4096;
+	/** number of consecutive polygons (in Hilbert order), that are summarized by one envelope in the spatial index.
+	 */
+	private static final int POLYGONS_PER_LEAF=64;
+	/** number of cells per axis of the Hilbert curve.
+	 */
+	private static final int HILBERT_SIDE=1<<16;
+	private ObjectPoolManager objPoolManager=null;
+	private String poolName=null;
+	private PoolStorage storage=null;
+	private PolygonSerializer serializer=new PolygonSerializer();
+	/** minx,miny,maxx,maxy per polygon.
+	 */
+	private double envs[]=new double[4*1024];
+	private long positions[]=new long[1024];
+	private int polygonc=0;
+	private Envelope total=new Envelope();
+	private int batchSize=DEFAULT_BATCH_SIZE;
+	private int cacheSize=DEFAULT_CACHE_SIZE;
+	private int threadCount=1;
+	private LinkedHashMap<Integer,Polygon> cache=null;
+	private long polygonReads=0L;
+
+	public ExternalAreaValidator(ObjectPoolManager objPoolManager,String poolName) {
+		this.objPoolManager=objPoolManager;
+		this.poolName=poolName;
+		storage=objPoolManager.newStorage(poolName);
+	}
+	/** adds a polygon to validate. The TID of the polygon is expected as its user data.
+	 */
+	public void addPolygon(Polygon polygon) {
+		if(polygonc==positions.length) {
+			positions=Arrays.copyOf(positions, polygonc*2);
+			envs=Arrays.copyOf(envs, polygonc*2*4);
+		}
+		Envelope env=polygon.getEnvelopeInternal();
+		envs[4*polygonc]=env.getMinX();
+		envs[4*polygonc+1]=env.getMinY();
+		envs[4*polygonc+2]=env.getMaxX();
+		envs[4*polygonc+3]=env.getMaxY();
+		total.expandToInclude(env);
+		try {
+			ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+			DataOutputStream out=new DataOutputStream(bytes);
+			out.writeUTF((String)polygon.getUserData());
+			out.write(serializer.getBytes(polygon));
+			out.flush();
+			positions[polygonc]=storage.append(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		polygonc++;
+		objPoolManager.flushWriteQueues();
+	}
+	public int size() {
+		return polygonc;
+	}
+	/** Validates the AREA condition.
+	 * @return A list of IoxInvalidDataExceptions with an entry for each violation.
+	 * @see AreaValidator#validateArea(java.util.Collection, double, String)
+	 */
+	public List<IoxInvalidDataException> validate(double maxOverlap,String iliQualifiedName) {
+		if(polygonc==0) {
+			return Collections.emptyList();
+		}
+		STRtree leafIndex=buildLeafIndex();
+		openCache();
+		List<Intersection> intersections=new ArrayList<Intersection>();
+		TreeMap<String,TreeSet<String>> overlaps=new TreeMap<String,TreeSet<String>>();
+		// invalid segments (ring index<<32 | segment index) of polygons of later batches
+		Map<Integer,Set<Long>> invalidSegments=new HashMap<Integer,Set<Long>>();
+		BitSet inWindow=new BitSet(polygonc);
+		int maxWindowSize=0;
+		for(int batchStart=0;batchStart<polygonc;batchStart+=batchSize) {
+			int batchEnd=Math.min(batchStart+batchSize, polygonc);
+			// collect the batch and its neighbours
+			ArrayList<Integer> window=new ArrayList<Integer>();
+			for(int polygonIdx=batchStart;polygonIdx<batchEnd;polygonIdx++) {
+				addNeighbours(leafIndex, polygonIdx, inWindow, window);
+			}
+			maxWindowSize=Math.max(maxWindowSize, window.size());
+			Collections.sort(window);
+			ArrayList<Polygon> polygons=new ArrayList<Polygon>(window.size());
+			Set<Polygon> targets=Collections.newSetFromMap(new IdentityHashMap<Polygon,Boolean>());
+			for(int polygonIdx:window) {
+				Polygon polygon=getPolygon(polygonIdx);
+				polygons.add(polygon);
+				if(polygonIdx>=batchStart && polygonIdx<batchEnd) {
+					targets.add(polygon);
+				}
+				inWindow.clear(polygonIdx);
+			}
+			// validate the batch
+			AreaValidator areaValidator=new AreaValidator((JtsextGeometryFactory)polygons.get(0).getFactory(), maxOverlap);
+			areaValidator.setThreadCount(threadCount);
+			areaValidator.addPolygons(polygons);
+			for(int i=0;i<window.size();i++) {
+				Set<Long> segments=window.get(i)<batchEnd ? invalidSegments.remove(window.get(i)) : null;
+				if(segments!=null) {
+					for(long segment:segments) {
+						areaValidator.addInvalidSegment(polygons.get(i), (int)(segment>>>32), (int)segment);
+					}
+				}
+			}
+			areaValidator.validateAll(targets);
+			for(int i=0;i<window.size();i++) {
+				if(window.get(i)>=batchEnd) {
+					for(int[] segment:areaValidator.getInvalidSegments(polygons.get(i))) {
+						Set<Long> segments=invalidSegments.get(window.get(i));
+						if(segments==null) {
+							segments=new HashSet<Long>();
+							invalidSegments.put(window.get(i), segments);
+						}
+						segments.add(((long)segment[0]<<32) | segment[1]);
+					}
+				}
+			}
+			intersections.addAll(areaValidator.getIntersections());
+			for(Map.Entry<String,Set<String>> overlap:areaValidator.getOverlaps().entrySet()) {
+				TreeSet<String> tids=overlaps.get(overlap.getKey());
+				if(tids==null) {
+					tids=new TreeSet<String>();
+					overlaps.put(overlap.getKey(), tids);
+				}
+				tids.addAll(overlap.getValue());
+			}
+		}
+		EhiLogger.traceState(poolName+": polygons "+polygonc+", max. window "+maxWindowSize+", polygon reads "+polygonReads);
+		cache=null;
+		List<IoxInvalidDataException> ret=new ArrayList<IoxInvalidDataException>();
+		for(Intersection intersection:intersections) {
+			ret.add(new IoxIntersectionException(iliQualifiedName, intersection.getCurve1().getUserData().toString(), intersection));
+		}
+		if(intersections.isEmpty()) {
+			for(Map.Entry<String,TreeSet<String>> overlap:overlaps.entrySet()) {
+				for(String tid2:overlap.getValue()) {
+					ret.add(new IoxInvalidDataException("polygons overlay tid1 " + overlap.getKey() + ", tid2 " + tid2));
+				}
+			}
+		}
+		return ret;
+	}
+	/** Checks if two polygons overlay completely. The polygons are read one by one from the storage.
+	 * @return A list of IoxInvalidDataExceptions with an entry for each pair of overlaying polygons.
+	 * @see CurvePolygon#polygonOverlays(Polygon, Polygon)
+	 */
+	public List<IoxInvalidDataException> validateOverlays() {
+		List<IoxInvalidDataException> ret=new ArrayList<IoxInvalidDataException>();
+		if(polygonc==0) {
+			return ret;
+		}
+		STRtree leafIndex=buildLeafIndex();
+		openCache();
+		BitSet inWindow=new BitSet(polygonc);
+		for(int polygonIdx=0;polygonIdx<polygonc;polygonIdx++) {
+			ArrayList<Integer> neighbours=new ArrayList<Integer>();
+			addNeighbours(leafIndex, polygonIdx, inWindow, neighbours);
+			Collections.sort(neighbours);
+			Polygon e0=getPolygon(polygonIdx);
+			for(int neighbourIdx:neighbours) {
+				inWindow.clear(neighbourIdx);
+				// each pair is compared once, from the polygon added first
+				if(neighbourIdx>polygonIdx) {
+					Polygon e1=getPolygon(neighbourIdx);
+					if(CurvePolygon.polygonOverlays(e0, e1)) {
+						ret.add(new IoxInvalidDataException("polygons overlay tid1 "+e0.getUserData()+", tid2 "+e1.getUserData()));
+					}
+				}
+			}
+		}
+		cache=null;
+		return ret;
+	}
+	/** @return an index of the leafs of the polygons sorted along the Hilbert curve.
+	 * The item of a leaf is the array of the indices of its polygons.
+	 */
+	private STRtree buildLeafIndex() {
+		int order[]=sortByHilbertKey();
+		STRtree leafIndex=new STRtree();
+		for(int leafStart=0;leafStart<polygonc;leafStart+=POLYGONS_PER_LEAF) {
+			Envelope leafEnv=new Envelope();
+			int leafEnd=Math.min(leafStart+POLYGONS_PER_LEAF, polygonc);
+			for(int i=leafStart;i<leafEnd;i++) {
+				leafEnv.expandToInclude(getEnvelope(order[i]));
+			}
+			leafIndex.insert(leafEnv, Arrays.copyOfRange(order, leafStart, leafEnd));
+		}
+		leafIndex.build();
+		return leafIndex;
+	}
+	/** adds the polygons, whose envelope intersects the envelope of the given polygon, and that are not yet in the window.
+	 */
+	private void addNeighbours(STRtree leafIndex,int polygonIdx,BitSet inWindow,List<Integer> window) {
+		Envelope env=getEnvelope(polygonIdx);
+		List<int[]> leafs=leafIndex.query(env);
+		for(int leaf[]:leafs) {
+			for(int neighbourIdx:leaf) {
+				if(!inWindow.get(neighbourIdx) && intersects(neighbourIdx,env)) {
+					inWindow.set(neighbourIdx);
+					window.add(neighbourIdx);
+				}
+			}
+		}
+	}
+	private void openCache() {
+		cache=new LinkedHashMap<Integer,Polygon>(16,0.75f,true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,Polygon> eldest) {
+				return size()>cacheSize;
+			}
+		};
+		polygonReads=0L;
+	}
+	/** releases the storage of the polygons.
+	 */
+	public void close() {
+		if(storage!=null) {
+			try {
+				objPoolManager.closeStorage(storage);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			storage=null;
+		}
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+	/** sets the number of polygons, that are validated together.
+	 */
+	public void setBatchSize(int batchSize) {
+		if(batchSize<1) {
+			throw new IllegalArgumentException("batchSize "+batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+	public int getCacheSize() {
+		return cacheSize;
+	}
+	/** sets the max. number of polygons kept on the heap between two batches.
+	 */
+	public void setCacheSize(int cacheSize) {
+		if(cacheSize<1) {
+			throw new IllegalArgumentException("cacheSize "+cacheSize);
+		}
+		this.cacheSize = cacheSize;
+	}
+	/** sets the number of threads used to validate a batch.
+	 * @see AreaValidator#setThreadCount(int)
+	 */
+	public void setThreadCount(int threadCount) {
+		if(threadCount<1) {
+			throw new IllegalArgumentException("threadCount "+threadCount);
+		}
+		this.threadCount = threadCount;
+	}
+	/** @return the indices of the polygons, ordered by the Hilbert key of the center of their envelopes.
+	 */
+	private int[] sortByHilbertKey() {
+		double scaleX=total.getWidth()>0.0 ? (HILBERT_SIDE-1)/total.getWidth() : 0.0;
+		double scaleY=total.getHeight()>0.0 ? (HILBERT_SIDE-1)/total.getHeight() : 0.0;
+		long keys[]=new long[polygonc];
+		for(int i=0;i<polygonc;i++) {
+			double cx=(envs[4*i]+envs[4*i+2])/2.0;
+			double cy=(envs[4*i+1]+envs[4*i+3])/2.0;
+			int x=(int)((cx-total.getMinX())*scaleX);
+			int y=(int)((cy-total.getMinY())*scaleY);
+			// key < 2^32, index < 2^31
+			keys[i]=(getHilbertKey(x,y)<<31) | i;
+		}
+		Arrays.sort(keys);
+		int ret[]=new int[polygonc];
+		for(int i=0;i<polygonc;i++) {
+			ret[i]=(int)(keys[i] & 0x7fffffffL);
+		}
+		return ret;
+	}
+	/** @return the distance along the Hilbert curve of the given cell.
+	 */
+	static long getHilbertKey(int x,int y) {
+		long d=0L;
+		for(int s=HILBERT_SIDE/2;s>0;s/=2) {
+			int rx=(x & s)>0 ? 1 : 0;
+			int ry=(y & s)>0 ? 1 : 0;
+			d+=(long)s*(long)s*((3*rx)^ry);
+			// rotate the quadrant
+			if(ry==0) {
+				if(rx==1) {
+					x=HILBERT_SIDE-1-x;
+					y=HILBERT_SIDE-1-y;
+				}
+				int t=x;
+				x=y;
+				y=t;
+			}
+		}
+		return d;
+	}
+	private Envelope getEnvelope(int polygonIdx) {
+		return new Envelope(envs[4*polygonIdx],envs[4*polygonIdx+2],envs[4*polygonIdx+1],envs[4*polygonIdx+3]);
+	}
+	private boolean intersects(int polygonIdx,Envelope env) {
+		return !(envs[4*polygonIdx]>env.getMaxX() || envs[4*polygonIdx+2]<env.getMinX()
+				|| envs[4*polygonIdx+1]>env.getMaxY() || envs[4*polygonIdx+3]<env.getMinY());
+	}
+	private Polygon getPolygon(int polygonIdx) {
+		Polygon ret=cache.get(polygonIdx);
+		if(ret==null) {
+			ret=readPolygon(polygonIdx);
+			cache.put(polygonIdx, ret);
+			polygonReads++;
+		}
+		return ret;
+	}
+	private Polygon readPolygon(int polygonIdx) {
+		try {
+			DataInputStream in=new DataInputStream(new ByteArrayInputStream(storage.read(positions[polygonIdx])));
+			String tid=in.readUTF();
+			byte polygonBytes[]=new byte[in.available()];
+			in.readFully(polygonBytes);
+			Polygon ret=serializer.getObject(polygonBytes);
+			ret.setUserData(tid);
+			return ret;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -73,6 +73,9 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 	private double newVertexOffset=0.0;
 	private JtsextGeometryFactory jtsFact=new JtsextGeometryFactory();
 	private ObjectPoolManager objPool = null;
+	/** true if objPool was created by this builder (and not shared with others).
+	 */
+	private boolean ownObjPool=true;
 	private int ignorePolygonBuildingErrors;
 	ArrayList<IoxInvalidDataException> dataerrs=new ArrayList<IoxInvalidDataException>(); 
 	private String linetableIliqname=null;
@@ -81,12 +84,20 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
     private boolean keepLinetables=false;
     private String mainTableRef1=null;
     private String mainTableRef2=null;
+    private int threadCount=1;
 
     public ItfAreaLinetable2Polygon(AttributeDef surfaceAttr,boolean ignorePolygonBuildingErrors1)
     {
         this(surfaceAttr,ignorePolygonBuildingErrors1?ItfReader2.POLYGON_BUILDING_ERRORS_OFF:ItfReader2.POLYGON_BUILDING_ERRORS_ON);
     }
 	public ItfAreaLinetable2Polygon(AttributeDef surfaceAttr,int ignorePolygonBuildingErrors1)
+	{
+		this(surfaceAttr,ignorePolygonBuildingErrors1,null);
+	}
+	/** @param objPool1 manager of the temporary storages; shared with other builders. 
+	 * If null, the builder uses its own manager.
+	 */
+	public ItfAreaLinetable2Polygon(AttributeDef surfaceAttr,int ignorePolygonBuildingErrors1,ObjectPoolManager objPool1)
 	{
 		linetableIliqname=surfaceAttr.getContainer().getScopedName(null)+"_"+surfaceAttr.getName();
 		geomattrIliqname=surfaceAttr.getContainer().getScopedName(null)+"."+surfaceAttr.getName();
@@ -101,7 +112,12 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 		}
 		linattrTab=((AreaType)surfaceAttr.getDomainResolvingAliases()).getLineAttributeStructure();
 		helperTableGeomAttrName=ch.interlis.iom_j.itf.ModelUtilities.getHelperTableGeomAttrName(surfaceAttr);
-		objPool=new ObjectPoolManager();
+		if(objPool1!=null){
+			objPool=objPool1;
+			ownObjPool=false;
+		}else{
+			objPool=new ObjectPoolManager();
+		}
 	}
 	public ItfAreaLinetable2Polygon(String geomAttr)
 	{
@@ -124,20 +140,35 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 	@Override
 	public void close()
 	{
-        lines=null;
-        lineattrs=null;
-        mainTids=null;
 		if(objPool!=null){
-			objPool.close();
+			if(ownObjPool){
+				objPool.close();
+			}else{
+				if(lines!=null){
+					objPool.closeObjectPool(lines);
+				}
+				if(lineattrs!=null){
+					objPool.closeObjectPool(lineattrs);
+				}
+			}
 			objPool=null;
 		}
+        lines=null;
+        lineattrs=null;
+        mainTids=null;
+	}
+	/** name of the pools of this builder, to report their footprint.
+	 */
+	private String getPoolName()
+	{
+		return geomattrIliqname!=null ? geomattrIliqname : this.getClass().getSimpleName();
 	}
 	@Override
 	public void addItfLinetableObject(IomObject iomObj)
 	{
 		if(lines==null){
-			lines=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer());
-            lineattrs=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer());
+			lines=objPool.newObjectPoolImpl2(getPoolName(),new IomObjectSerializer());
+            lineattrs=objPool.newObjectPoolImpl2(getPoolName(),new IomObjectSerializer());
 		}
 		IomObject polyline=iomObj.getattrobj(helperTableGeomAttrName, 0);
 		if(polyline==null){
@@ -201,6 +232,7 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 
 			ArrayList<CompoundCurve> segv=lineset.buildBoundaries(lines,jtsFact);
 			lineset=null;
+			objPool.closeObjectPool(lines);
             lines=null;     
 
 			EhiLogger.traceState("validate noding..."+helperTableGeomAttrName+", maxOverlaps "+maxOverlaps+", offset "+newVertexOffset);
@@ -209,6 +241,7 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 			}
 			
 				CompoundCurveNoder validator=new CompoundCurveNoder(segv,false);
+				validator.setThreadCount(threadCount);
 				if(!validator.isValid()){
 					boolean hasIntersections=false;
 					for(Intersection is:validator.getIntersections()){
@@ -259,7 +292,7 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 			IoxPolygonizer polygonizer=new IoxPolygonizer(newVertexOffset);
 			//for(CompoundCurve boundary:segv){
 			if(keepLinetables) {
-	            lines=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer());
+	            lines=objPool.newObjectPoolImpl2(getPoolName(),new IomObjectSerializer());
 			}
             try {
                 HashMap<String,Integer> tidCount=new HashMap<String,Integer>();
@@ -526,6 +559,18 @@ public class ItfAreaLinetable2Polygon implements Linetable2Polygon {
 	public boolean isAllowItfAreaHoles() {
 		return allowItfAreaHoles;
 	}
+	/** sets the number of threads to node the lines. 1 (the default) nodes them in the calling thread.
+	 * With more than one thread, the lines are noded in spatial tiles in parallel.
+	 */
+	public void setThreadCount(int threadCount) {
+		if(threadCount<1){
+			throw new IllegalArgumentException("threadCount "+threadCount);
+		}
+		this.threadCount=threadCount;
+	}
+	public int getThreadCount() {
+		return threadCount;
+	}
 	public void setAllowItfAreaHoles(boolean allowItfAreaHoles) {
 		this.allowItfAreaHoles = allowItfAreaHoles;
 	}
@@ -41,12 +41,32 @@ public class ItfAreaPolygon2Linetable {
 	private Collection<IomObject> ioxlines=null;
 	private ObjectPoolManager recman=null;
 	private String iliqname=null;
+	/** if not null, the polygons are held by it instead of by the polygons list.
+	 */
+	private ExternalAreaValidator externalPolygons=null;
 	public ItfAreaPolygon2Linetable(String iliqname1, ObjectPoolManager recman1){
+		this(iliqname1,recman1,false);
+	}
+	/** @param externalPolygons if true, the polygons are stored in a temporary storage instead of on the heap, 
+	 * and validate1() validates them with an ExternalAreaValidator.
+	 */
+	public ItfAreaPolygon2Linetable(String iliqname1, ObjectPoolManager recman1,boolean externalPolygons){
 		lines=new FileBasedCollection<CompoundCurve>(recman1,this.getClass().getSimpleName(),new CompoundCurveSerializer());
-		polygons=new java.util.ArrayList<Polygon>();
+		if(externalPolygons){
+			this.externalPolygons=new ExternalAreaValidator(recman1,this.getClass().getSimpleName()+" "+iliqname1);
+		}else{
+			polygons=new java.util.ArrayList<Polygon>();
+		}
 		recman=recman1;
 		iliqname=iliqname1;
 	}
+	private void addPolygon(Polygon polygon) {
+		if(externalPolygons!=null){
+			externalPolygons.addPolygon(polygon);
+		}else{
+			polygons.add(polygon);
+		}
+	}
 	public void addLines(String mainObjTid,String internalTid,ArrayList<IomObject> ioxlines) throws IoxException {
 		for(IomObject ioxline:ioxlines){
 			CompoundCurve line=Iox2jtsext.polyline2JTS(ioxline, false, 0.0);
@@ -82,7 +102,7 @@ public class ItfAreaPolygon2Linetable {
 			}else{
 				polygon.setUserData(mainObjTid);
 			}
-			polygons.add(polygon);
+			addPolygon(polygon);
 		}
 		
 		for(IomObject ioxline:ioxlines){
@@ -110,7 +130,7 @@ public class ItfAreaPolygon2Linetable {
                 }else{
                     polygon.setUserData(mainObjTid);
                 }
-                polygons.add(polygon);
+                addPolygon(polygon);
             }
         }
         
@@ -128,7 +148,23 @@ public class ItfAreaPolygon2Linetable {
     }
 
 	public List<IoxInvalidDataException> validate1(double maxOverlap)  {
-		return AreaValidator.validateArea(polygons, maxOverlap, iliqname);
+		return validate1(maxOverlap,1);
+	}
+	/** same as validate1(double), but validates the polygons with the given number of threads.
+	 */
+	public List<IoxInvalidDataException> validate1(double maxOverlap,int threadCount)  {
+		if(externalPolygons!=null){
+			externalPolygons.setThreadCount(threadCount);
+			return externalPolygons.validate(maxOverlap, iliqname);
+		}
+		return AreaValidator.validateArea(polygons, maxOverlap, iliqname, threadCount);
+	}
+	/** releases the temporary storage of the polygons. The polygons can not be validated afterwards.
+	 */
+	public void close() {
+		if(externalPolygons!=null){
+			externalPolygons.close();
+		}
 	}
 	public List<IoxInvalidDataException> validate0(double maxOverlapDummy)  {
 		CompoundCurveNoder noder=new CompoundCurveNoder(recman,(java.util.List)lines,false);
@@ -148,6 +184,11 @@ public class ItfAreaPolygon2Linetable {
             return intersectionsWithoutCompleteOverlays;
         }
     
+        if(externalPolygons!=null) {
+            intersectionsWithoutCompleteOverlays=externalPolygons.validateOverlays();
+            return intersectionsWithoutCompleteOverlays.isEmpty() ? null : intersectionsWithoutCompleteOverlays;
+        }
+        List<Polygon> polygons=this.polygons;
         if(polygons==null) {
             return null;
         }
@@ -33,7 +33,8 @@ import ch.interlis.iox.IoxException;
  * @version $Revision: 1.0 $ $Date: 23.06.2006 $
  */
 public class ItfScanner {
-	private java.io.LineNumberReader is=null;
+	private static final int BUFFER_SIZE=256*1024;
+	private PhysicalLineReader is=null;
 	private HashMap str2lk=null;
 	public final static String ITF_CHARSET="ISO-8859-1";
 	public ItfScanner(java.io.InputStream in)
@@ -41,7 +42,7 @@ public class ItfScanner {
 	,java.io.IOException
 	{
 		setupStr2lk();
-		is=new java.io.LineNumberReader(new java.io.InputStreamReader(in,ITF_CHARSET));
+		is=new PhysicalLineReader(in);
 	}
 	public void close()
 	throws IoxException
@@ -49,6 +50,90 @@ public class ItfScanner {
 		is=null;
 		str2lk=null;
 	}
+	/** Reads physical lines of an ISO-8859-1 encoded stream.
+	 * Each byte is one char, so the bytes are copied directly into a reused line buffer,
+	 * without a charset decoder and without a per line StringBuffer.
+	 * Lines are terminated by LF, CR or CR LF.
+	 */
+	private static class PhysicalLineReader {
+		private java.io.InputStream in=null;
+		private byte[] buf=new byte[BUFFER_SIZE];
+		private int pos=0;
+		private int limit=0;
+		private char[] line=new char[256];
+		private int lineNumber=0;
+		private PhysicalLineReader(java.io.InputStream in)
+		{
+			this.in=in;
+		}
+		private boolean fill()
+		throws java.io.IOException
+		{
+			int len=0;
+			do{
+				len=in.read(buf,0,buf.length);
+			}while(len==0);
+			if(len<0){
+				pos=0;
+				limit=0;
+				return false;
+			}
+			pos=0;
+			limit=len;
+			return true;
+		}
+		/** @return the next physical line without line terminator, or null at end of stream.
+		 */
+		public String readLine()
+		throws java.io.IOException
+		{
+			int linec=0;
+			while(true){
+				if(pos>=limit && !fill()){
+					if(linec==0){
+						return null;
+					}
+					break;
+				}
+				int start=pos;
+				int end=limit;
+				byte b=0;
+				while(pos<end){
+					b=buf[pos];
+					if(b=='\n' || b=='\r'){
+						break;
+					}
+					pos++;
+				}
+				int len=pos-start;
+				if(linec+len>line.length){
+					line=java.util.Arrays.copyOf(line,Math.max(line.length*2,linec+len));
+				}
+				for(int i=start;i<pos;i++){
+					line[linec++]=(char)(buf[i]&0xff);
+				}
+				if(pos<end){
+					// line terminator found
+					pos++;
+					if(b=='\r'){
+						if(pos>=limit){
+							fill();
+						}
+						if(pos<limit && buf[pos]=='\n'){
+							pos++;
+						}
+					}
+					break;
+				}
+			}
+			lineNumber++;
+			return new String(line,0,linec);
+		}
+		public int getLineNumber()
+		{
+			return lineNumber;
+		}
+	}
 	public boolean read(ItfLineCursor cursor)
 	throws IoxException
 	{
@@ -150,6 +235,65 @@ public class ItfScanner {
 		lookAheadKind=detLineKind(is.getLineNumber(),new StringBuffer(lookAheadStr));
 		return lookAheadKind;
 	}
+	/** Splits the content of a logical line into its values.
+	 * Values are separated by white space; leading and trailing white space is ignored.
+	 * Values equal to the undefined code are returned as null. An empty line results in a single null value.
+	 * @param undefinedCode code of an undefined value, or null.
+	 */
+	public static String[] splitFields(String line,String undefinedCode)
+	{
+		int end=line!=null ? line.length() : 0;
+		int start=0;
+		while(start<end && line.charAt(start)<=' '){
+			start++;
+		}
+		while(end>start && line.charAt(end-1)<=' '){
+			end--;
+		}
+		if(start==end){
+			return new String[1];
+		}
+		// first pass: count the values
+		int valuec=1;
+		boolean inSeparator=false;
+		for(int i=start;i<end;i++){
+			if(isSeparator(line.charAt(i))){
+				if(!inSeparator){
+					valuec++;
+					inSeparator=true;
+				}
+			}else{
+				inSeparator=false;
+			}
+		}
+		// second pass: cut the values
+		String[] ret=new String[valuec];
+		int undefinedLen=undefinedCode!=null ? undefinedCode.length() : -1;
+		int valuei=0;
+		int i=start;
+		while(i<end){
+			int valueStart=i;
+			while(i<end && !isSeparator(line.charAt(i))){
+				i++;
+			}
+			int valueLen=i-valueStart;
+			if(valueLen==undefinedLen && line.regionMatches(valueStart,undefinedCode,0,undefinedLen)){
+				ret[valuei++]=null;
+			}else{
+				ret[valuei++]=line.substring(valueStart,i);
+			}
+			while(i<end && isSeparator(line.charAt(i))){
+				i++;
+			}
+		}
+		return ret;
+	}
+	/** same set of chars as the regular expression \\s.
+	 */
+	private static boolean isSeparator(char c)
+	{
+		return c==' ' || c=='\t' || c=='\n' || c=='\u000b' || c=='\f' || c=='\r';
+	}
 	private char continueCode='\\';
 	public void setContinueCode(char c)
 	{
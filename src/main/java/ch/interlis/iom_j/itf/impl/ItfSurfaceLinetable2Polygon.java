@@ -14,10 +14,11 @@ import com.vividsolutions.jts.geom.Polygon;
 import ch.ehi.basics.logging.EhiLogger;
 import ch.ehi.basics.types.OutParam;
 import ch.ehi.iox.objpool.ObjectPoolManager;
-import ch.ehi.iox.objpool.impl.IomObjectArraySerializer;
 import ch.ehi.iox.objpool.impl.IomObjectSerializer;
 import ch.ehi.iox.objpool.impl.JavaSerializer;
+import ch.ehi.iox.objpool.impl.ObjPoolMultiMap;
 import ch.ehi.iox.objpool.impl.PolygonSerializer;
+import ch.ehi.iox.objpool.impl.StringKeyIndex;
 import ch.interlis.ili2c.metamodel.AbstractSurfaceOrAreaType;
 import ch.interlis.ili2c.metamodel.AttributeDef;
 import ch.interlis.ili2c.metamodel.CoordType;
@@ -107,7 +108,7 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 	private Map<String,Polygon> polygons=null;
 	private Set<String> mainTids=new java.util.HashSet<String>();
     private Map<String,String> lineTid2mainTid=new java.util.HashMap<String,String>();
-	private Map<String,java.util.List<IomObject>> linepool=null;
+	private ObjPoolMultiMap<String,IomObject> linepool=null;
 	private boolean surfacesBuilt=false;
 	private String helperTableMainTableRef=null;
 	private String helperTableGeomAttrName=null;
@@ -116,16 +117,28 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 	private double maxOverlaps=0.0;
 	private double newVertexOffset=0.0;
 	private ObjectPoolManager objPool=null;
+	/** true if objPool was created by this builder (and not shared with others).
+	 */
+	private boolean ownObjPool=true;
     private boolean keepLinetables=false;
 	private int ignorePolygonBuildingErrors;
 	ArrayList<IoxInvalidDataException> dataerrs=new ArrayList<IoxInvalidDataException>();
 	private String linetableIliqname=null;
 	private String geomattrIliqname=null;
+	private static final int SURFACE_BATCH_SIZE=64;
+	private int threadCount=1;
     public ItfSurfaceLinetable2Polygon(AttributeDef surfaceAttr,boolean ignorePolygonBuildingErrors1)
     {
         this(surfaceAttr,ignorePolygonBuildingErrors1?ItfReader2.POLYGON_BUILDING_ERRORS_OFF:ItfReader2.POLYGON_BUILDING_ERRORS_ON);
     }
 	public ItfSurfaceLinetable2Polygon(AttributeDef surfaceAttr,int ignorePolygonBuildingErrors1)
+	{
+		this(surfaceAttr,ignorePolygonBuildingErrors1,null);
+	}
+	/** @param objPool1 manager of the temporary storages; shared with other builders. 
+	 * If null, the builder uses its own manager.
+	 */
+	public ItfSurfaceLinetable2Polygon(AttributeDef surfaceAttr,int ignorePolygonBuildingErrors1,ObjectPoolManager objPool1)
 	{
 		linetableIliqname=surfaceAttr.getContainer().getScopedName(null)+"_"+surfaceAttr.getName();
 		geomattrIliqname=surfaceAttr.getContainer().getScopedName(null)+"."+surfaceAttr.getName();
@@ -145,8 +158,13 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 		linattrTab=((SurfaceType)surfaceAttr.getDomainResolvingAliases()).getLineAttributeStructure();
 		helperTableMainTableRef=ch.interlis.iom_j.itf.ModelUtilities.getHelperTableMainTableRef(surfaceAttr);
 		helperTableGeomAttrName=ch.interlis.iom_j.itf.ModelUtilities.getHelperTableGeomAttrName(surfaceAttr);
-		objPool=new ObjectPoolManager();
-		polygons=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new PolygonSerializer());
+		if(objPool1!=null){
+			objPool=objPool1;
+			ownObjPool=false;
+		}else{
+			objPool=new ObjectPoolManager();
+		}
+		polygons=objPool.newObjectPoolImpl2(getPoolName(),new PolygonSerializer());
 	}
 	public ItfSurfaceLinetable2Polygon(String tableRef, String geomAttr)
 	{
@@ -171,18 +189,31 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 	public void close()
 	{
 		if(objPool!=null){
+			if(ownObjPool){
+				objPool.close();
+			}else{
+				objPool.closeObjectPool(polygons);
+				if(linepool!=null){
+					objPool.closeMultiMap(linepool);
+				}
+			}
 			linepool=null;
 			polygons=null;
 			mainTids=null;
-			objPool.close();
 			objPool=null;
 		}
 	}
+	/** name of the pools of this builder, to report their footprint.
+	 */
+	private String getPoolName()
+	{
+		return geomattrIliqname!=null ? geomattrIliqname : this.getClass().getSimpleName();
+	}
 	@Override
 	public void addItfLinetableObject(IomObject iomObj)
 	{
 		if(linepool==null){
-			linepool=objPool.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectArraySerializer());
+			linepool=objPool.newMultiMap(getPoolName(),new IomObjectSerializer(),new StringKeyIndex());
 		}
 		IomObject structvalue=iomObj.getattrobj(helperTableMainTableRef,0);
 		String mainTid=null;
@@ -193,16 +224,7 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 			dataerrs.add(new IoxInvalidDataException("boundary line without reference to main table",linetableIliqname,iomObj.getobjectoid(),iomObj));
 			return;
 		}
-		java.util.List<IomObject> lines=null;
-		if(linepool.containsKey(mainTid)){
-            lines=new java.util.ArrayList<IomObject>(linepool.get(mainTid));
-			lines.add(iomObj);
-			linepool.put(mainTid,lines);
-		}else{
-			lines=new java.util.ArrayList<IomObject>();
-			lines.add(iomObj);
-			linepool.put(mainTid,lines);
-		}
+		linepool.add(mainTid,iomObj);
         String lineTid=iomObj.getobjectoid();
         lineTid2mainTid.put(lineTid, mainTid);
 	}
@@ -235,33 +257,126 @@ public class ItfSurfaceLinetable2Polygon implements Linetable2Polygon {
 	{
 		surfacesBuilt=true;
 		if(linepool==null){
-			linepool=new HashMap<String,java.util.List<IomObject>>();
+			linepool=objPool.newMultiMap(getPoolName(),new IomObjectSerializer(),new StringKeyIndex());
 		}
-		int totalObj=linepool.keySet().size();
+		int totalObj=linepool.size();
 		int objc=1;
 		EhiLogger.traceState("build surfaces..."+helperTableGeomAttrName+", maxOverlaps "+maxOverlaps);
 		boolean isDisconnected=false;
-		for(String mainTid:linepool.keySet()){
+		Iterator<String> mainTidIt=linepool.keyIterator();
+		if(threadCount>1){
+			buildSurfacesParallel(mainTidIt);
+			return;
+		}
+		while(mainTidIt.hasNext()){
+			String mainTid=mainTidIt.next();
 			//EhiLogger.debug("tid <"+mainTid+"> "+objc+"/"+totalObj);objc++;
-			java.util.List<IomObject> lines1=linepool.get(mainTid);
-			HashMap<String,IomObject> lines=new HashMap<String,IomObject>();
-			for(IomObject line:lines1){
-				IomObject polyline=line.getattrobj(helperTableGeomAttrName, 0);
-				if(polyline==null){
-					dataerrs.add(new IoxInvalidDataException("empty line",linetableIliqname,line.getobjectoid(),line));
-				}else{
-					lines.put(line.getobjectoid(), line);
+			Polygon poly=buildSurface(mainTid,linepool.get(mainTid),dataerrs);
+			if(poly!=null) {
+	            polygons.put(mainTid, poly);
+			}
+		}
+	}
+	/** builds the polygon of one main table object.
+	 * Doesn't modify the state of this builder, so it can be called concurrently.
+	 * @param errs receives the data errors of this main table object.
+	 * @return the polygon or null.
+	 */
+	private Polygon buildSurface(String mainTid,java.util.List<IomObject> lines1,ArrayList<IoxInvalidDataException> errs) throws IoxException
+	{
+		HashMap<String,IomObject> lines=new HashMap<String,IomObject>();
+		for(IomObject line:lines1){
+			IomObject polyline=line.getattrobj(helperTableGeomAttrName, 0);
+			if(polyline==null){
+				errs.add(new IoxInvalidDataException("empty line",linetableIliqname,line.getobjectoid(),line));
+			}else{
+				lines.put(line.getobjectoid(), line);
+			}
+		}
+		LineSet lineset=new LineSet(true,linattrTab,helperTableGeomAttrName);
+		
+		ArrayList<CompoundCurve> segv=lineset.buildBoundaries(lines,jtsFact);
+		OutParam<Polygon> poly=new OutParam<Polygon>();
+		createPolygon(mainTid, segv,maxOverlaps,newVertexOffset,errs,linetableIliqname,geomattrIliqname,poly);
+		return poly.value;
+	}
+	/** result of building the polygons of a batch of main table objects.
+	 */
+	private static class SurfaceBatch {
+		private ArrayList<String> mainTids=new ArrayList<String>();
+		private ArrayList<java.util.List<IomObject>> lines=new ArrayList<java.util.List<IomObject>>();
+		private Polygon[] polygons=null;
+		private ArrayList<IoxInvalidDataException> errs=new ArrayList<IoxInvalidDataException>();
+		private IoxException exception=null;
+	}
+	/** builds the polygons with a bounded pool of worker threads.
+	 * The lines are read and the polygons are written only by the calling thread.
+	 * The batches are completed in the order of the main table TIDs, so the data errors
+	 * are in the same order as with a single thread.
+	 */
+	private void buildSurfacesParallel(Iterator<String> mainTidIt) throws IoxException
+	{
+		java.util.concurrent.ExecutorService executor=java.util.concurrent.Executors.newFixedThreadPool(threadCount);
+		java.util.LinkedList<java.util.concurrent.Future<SurfaceBatch>> pendingBatches=new java.util.LinkedList<java.util.concurrent.Future<SurfaceBatch>>();
+		try {
+			while(mainTidIt.hasNext() || !pendingBatches.isEmpty()){
+				// keep all workers busy, but limit the number of batches in memory
+				while(mainTidIt.hasNext() && pendingBatches.size()<threadCount*2){
+					final SurfaceBatch batch=new SurfaceBatch();
+					while(mainTidIt.hasNext() && batch.mainTids.size()<SURFACE_BATCH_SIZE){
+						String mainTid=mainTidIt.next();
+						batch.mainTids.add(mainTid);
+						batch.lines.add(linepool.get(mainTid));
+					}
+					pendingBatches.add(executor.submit(new java.util.concurrent.Callable<SurfaceBatch>(){
+						@Override
+						public SurfaceBatch call() {
+							batch.polygons=new Polygon[batch.mainTids.size()];
+							try {
+								for(int i=0;i<batch.polygons.length;i++){
+									batch.polygons[i]=buildSurface(batch.mainTids.get(i),batch.lines.get(i),batch.errs);
+								}
+							} catch (IoxException e) {
+								batch.exception=e;
+							}
+							batch.lines=null;
+							return batch;
+						}
+					}));
+				}
+				SurfaceBatch batch=pendingBatches.removeFirst().get();
+				dataerrs.addAll(batch.errs);
+				for(int i=0;i<batch.polygons.length;i++){
+					if(batch.polygons[i]!=null){
+						polygons.put(batch.mainTids.get(i), batch.polygons[i]);
+					}
+				}
+				if(batch.exception!=null){
+					throw batch.exception;
 				}
 			}
-			LineSet lineset=new LineSet(true,linattrTab,helperTableGeomAttrName);
-			
-			ArrayList<CompoundCurve> segv=lineset.buildBoundaries(lines,jtsFact);
-			OutParam<Polygon> poly=new OutParam<Polygon>();
-			createPolygon(mainTid, segv,maxOverlaps,newVertexOffset,dataerrs,linetableIliqname,geomattrIliqname,poly);
-			if(poly.value!=null) {
-	            polygons.put(mainTid, poly.value);
+		} catch (InterruptedException e) {
+			throw new IoxException(e);
+		} catch (java.util.concurrent.ExecutionException e) {
+			Throwable cause=e.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
 			}
+			throw new IoxException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	/** sets the number of threads to build the polygons. 1 (the default) builds them in the calling thread.
+	 */
+	public void setThreadCount(int threadCount) {
+		if(threadCount<1){
+			throw new IllegalArgumentException("threadCount "+threadCount);
 		}
+		this.threadCount=threadCount;
+	}
+	public int getThreadCount() {
+		return threadCount;
 	}
     public static boolean validateMultiPolygon(String mainTid,AttributeDef surfaceAttr,IomObject polygon,LogEventFactory errFact,String validationType, AbstractCoordType controlPointType)
             throws IoxException
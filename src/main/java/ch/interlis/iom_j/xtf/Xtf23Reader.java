@@ -11,6 +11,7 @@ import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.EndElement;
@@ -25,6 +26,7 @@ import ch.interlis.ili2c.metamodel.TransferDescription;
 import ch.interlis.iom.IomConstants;
 import ch.interlis.iom.IomObject;
 import ch.interlis.iom_j.Iom_jObject;
+import ch.interlis.iom_j.xtf.impl.XMLStreamEventReader;
 import ch.interlis.iox.IoxEvent;
 import ch.interlis.iox.IoxException;
 import ch.interlis.iox.IoxFactoryCollection;
@@ -55,6 +57,9 @@ public class Xtf23Reader implements IoxReader ,IoxIliReader{
         }
     }
     private XMLEventReader reader=null;
+    /** same as reader; gives access to the cursor, to read coordinates without events.
+     */
+    private XMLStreamEventReader cursorReader=null;
 	private IoxFactoryCollection factory=new  ch.interlis.iox_j.DefaultIoxFactoryCollection();
 	private java.io.InputStream inputFile=null;
 	private int oidSpaceSize=0;
@@ -179,7 +184,8 @@ public class Xtf23Reader implements IoxReader ,IoxIliReader{
 	private void init(java.io.InputStream in) throws IoxException{
 		javax.xml.stream.XMLInputFactory inputFactory = javax.xml.stream.XMLInputFactory.newInstance();
 		try{
-			reader=inputFactory.createXMLEventReader(in);
+			cursorReader=new XMLStreamEventReader(inputFactory.createXMLStreamReader(in));
+			reader=cursorReader;
 		}catch(javax.xml.stream.XMLStreamException ex){
 			throw new IoxException(ex);
 		}
@@ -188,6 +194,7 @@ public class Xtf23Reader implements IoxReader ,IoxIliReader{
 	@Override
 	public void close() throws IoxException {
 		reader=null;
+		cursorReader=null;
 		if(inputFile!=null){
 			try{
 				inputFile.close();
@@ -1201,6 +1208,9 @@ public class Xtf23Reader implements IoxReader ,IoxIliReader{
 		}
 		IomObject segment=createIomObject(segmentType, null);
 		segmentOut.value=segment;
+		if(cursorReader!=null && cursorReader.isCursorAligned()){
+			return readSegment(cursorReader.getCursor(),segment);
+		}
 		SegmentType segTypeName=null;
         event=nextEvent(event);
 		while(event.isStartElement()){
@@ -1246,6 +1256,78 @@ public class Xtf23Reader implements IoxReader ,IoxIliReader{
 		return event;
 	}
 	
+	/** Same as the event based part of readSegment(XMLEvent,String,OutParam), but reads the values of the segment
+	 * directly from the cursor, without creating events.
+	 * Starts at the start of the segment; returns the first event after the end of the segment.
+	 */
+	private XMLEvent readSegment(XMLStreamReader cursor,IomObject segment) throws IoxException, XMLStreamException {
+		int eventType=nextEvent(cursor);
+		while(eventType==XMLStreamConstants.START_ELEMENT){
+			SegmentType segTypeName = SegmentType.valueOf(cursor.getLocalName());
+			eventType=cursor.next();
+			if(!isCharacters(eventType)){
+				throw new IoxSyntaxException("expected coord");
+			}
+			// could have an 1-n events of chars.
+			String value=cursor.getText();
+			eventType=cursor.next();
+			if(isCharacters(eventType)){
+				StringBuilder values=new StringBuilder(value);
+				while(isCharacters(eventType)){
+					values.append(cursor.getText());
+					eventType=cursor.next();
+				}
+				value=values.toString();
+			}
+			if(StringUtility.purge(value)==null) {
+				throw new IoxSyntaxException("expected coord");
+			}
+			// event is endElement of attribute
+			if(eventType!=XMLStreamConstants.END_ELEMENT) {
+				throw new IoxSyntaxException(unexpectedXmlEvent2msg(cursorReader.currentEvent()));
+			}
+			switch(segTypeName){
+				case C1: segment.setattrvalue(Iom_jObject.COORD_C1, value);
+					break;
+				case C2: segment.setattrvalue(Iom_jObject.COORD_C2, value);
+					break;
+				case C3: segment.setattrvalue(Iom_jObject.COORD_C3, value);
+					break;
+				case A1: segment.setattrvalue(Iom_jObject.ARC_A1, value);
+					break;
+				case A2: segment.setattrvalue(Iom_jObject.ARC_A2, value);
+					break;
+				case R: segment.setattrvalue(Iom_jObject.ARC_R, value);
+					break;
+				default: throw new IoxSyntaxException(unexpectedXmlEvent2msg(cursorReader.currentEvent()));
+			}
+			eventType=nextEvent(cursor);
+			// event is end COORD or start C2
+		}
+		// skip end COORD
+		if(eventType!=XMLStreamConstants.END_ELEMENT){
+			throw new IoxSyntaxException(unexpectedXmlEvent2msg(cursorReader.currentEvent()));
+		}
+		nextEvent(cursor);
+		return cursorReader.currentEvent();
+	}
+	/** same as nextEvent(XMLEvent), but moves the cursor.
+	 * @return type of the current event.
+	 */
+	private int nextEvent(XMLStreamReader cursor) throws XMLStreamException, IoxSyntaxException {
+		int eventType=cursor.next();
+		while(isCharacters(eventType) || eventType==XMLStreamConstants.COMMENT){
+			if(isCharacters(eventType) && !cursor.isWhiteSpace()){
+				throw new IoxSyntaxException(unexpectedXmlEvent2msg(cursorReader.currentEvent()));
+			}
+			eventType=cursor.next();
+		}
+		return eventType;
+	}
+	private static boolean isCharacters(int eventType) {
+		return eventType==XMLStreamConstants.CHARACTERS || eventType==XMLStreamConstants.CDATA || eventType==XMLStreamConstants.SPACE;
+	}
+	
 	private int hsOid=0;
 	private String hsNextOid(){
 		hsOid++;
@@ -14,6 +14,7 @@ import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.EndElement;
@@ -37,6 +38,7 @@ import ch.interlis.ili2c.metamodel.ViewableTransferElement;
 import ch.interlis.iom.IomConstants;
 import ch.interlis.iom.IomObject;
 import ch.interlis.iom_j.Iom_jObject;
+import ch.interlis.iom_j.xtf.impl.XMLStreamEventReader;
 import ch.interlis.iom_j.xtf.impl.XtfWriterAlt;
 import ch.interlis.iox.IoxEvent;
 import ch.interlis.iox.IoxException;
@@ -47,6 +49,9 @@ import ch.interlis.iox_j.IoxSyntaxException;
 
 public class Xtf24Reader implements IoxReader ,IoxIliReader{
 	private XMLEventReader xmlreader=null;
+	/** same as xmlreader; gives access to the cursor, to read coordinates without events.
+	 */
+	private XMLStreamEventReader cursorReader=null;
 	private IoxFactoryCollection factory=new  ch.interlis.iox_j.DefaultIoxFactoryCollection();
 	private java.io.InputStream inputFile=null;
     private ArrayList<String> models=new ArrayList<String>();
@@ -195,7 +200,8 @@ public class Xtf24Reader implements IoxReader ,IoxIliReader{
 	private void init(java.io.InputStream in) throws IoxException{
 		javax.xml.stream.XMLInputFactory inputFactory = javax.xml.stream.XMLInputFactory.newInstance();
 		try{
-			xmlreader=inputFactory.createXMLEventReader(in);
+			cursorReader=new XMLStreamEventReader(inputFactory.createXMLStreamReader(in));
+			xmlreader=cursorReader;
 		}catch(javax.xml.stream.XMLStreamException ex){
 			throw new IoxException(ex);
 		}
@@ -212,6 +218,7 @@ public class Xtf24Reader implements IoxReader ,IoxIliReader{
 	@Override
 	public void close() throws IoxException {
 		xmlreader=null;
+		cursorReader=null;
 		if(inputFile!=null){
 			try{
 				inputFile.close();
@@ -1399,6 +1406,10 @@ public class Xtf24Reader implements IoxReader ,IoxIliReader{
 			throw new IoxException("expected segment type");
 		}
 		IomObject segment=createIomObject(segmentType, null);
+		if(cursorReader!=null && cursorReader.isCursorAligned()){
+			readSegment(cursorReader.getCursor(),segment);
+			return segment;
+		}
 		SegmentType upperCaseTypeName=null;
 		while(!event.isEndElement()){
 	        if(event.isStartElement()){
@@ -1437,6 +1448,42 @@ public class Xtf24Reader implements IoxReader ,IoxIliReader{
 		return segment;
 	}
 	
+	/** Same as the event based loop of readSegment(XMLEvent,String), but reads the values of the segment
+	 * directly from the cursor, without creating events.
+	 * Starts at the current event (first value or end of segment); ends at the end of the segment.
+	 */
+	private void readSegment(XMLStreamReader cursor,IomObject segment) throws IoxException, XMLStreamException {
+		int eventType=cursor.getEventType();
+		while(eventType!=XMLStreamConstants.END_ELEMENT){
+			if(eventType==XMLStreamConstants.START_ELEMENT){
+				String segmentTypeName=cursor.getLocalName();
+				eventType=cursor.next();
+				if(eventType==XMLStreamConstants.END_ELEMENT){
+					throw new IoxException("expected coord");
+				}
+				if(!isCharacters(eventType)){
+					throw new IoxSyntaxException(event2msgtext(cursorReader.currentEvent()));
+				}
+				SegmentType upperCaseTypeName = SegmentType.valueOf(segmentTypeName.toUpperCase());
+				segment.setattrvalue(upperCaseTypeName.name(), cursor.getText());
+			}
+			eventType=cursor.next();
+			if(eventType==XMLStreamConstants.START_ELEMENT){
+				throw new IoxSyntaxException(event2msgtext(cursorReader.currentEvent()));
+			}
+			eventType=cursor.next();
+			while(isCharacters(eventType) || eventType==XMLStreamConstants.COMMENT){
+				if(isCharacters(eventType) && !cursor.isWhiteSpace()){
+					throw new IoxSyntaxException(event2msgtext(cursorReader.currentEvent()));
+				}
+				eventType=cursor.next();
+			}
+		}
+	}
+	private static boolean isCharacters(int eventType) {
+		return eventType==XMLStreamConstants.CHARACTERS || eventType==XMLStreamConstants.CDATA || eventType==XMLStreamConstants.SPACE;
+	}
+	
 	private int hsOid=0;
 	private String hsNextOid(){
 		hsOid++;
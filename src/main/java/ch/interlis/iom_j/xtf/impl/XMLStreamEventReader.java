@@ -0,0 +1,244 @@
+package ch.interlis.iom_j.xtf.impl;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+
+/** XMLEventReader on top of a XMLStreamReader (cursor API).
+ * Unlike a XMLEventReader created by the XMLInputFactory, it gives access to the underlying cursor,
+ * so that hot paths (e.g. coordinates) can read without creating an event per tag and text node,
+ * while the rest of a reader still works with events.
+ * As long as no event is peeked, the cursor is positioned at the event returned last by nextEvent().
+ * After the cursor was moved directly, nextEvent() continues after the new cursor position.
+ */
+public class XMLStreamEventReader implements XMLEventReader {
+	private XMLStreamReader cursor=null;
+	private XMLEventFactory factory=null;
+	private XMLEvent peeked=null;
+	private boolean started=false;
+
+	public XMLStreamEventReader(XMLStreamReader cursor) {
+		this.cursor=cursor;
+		factory=XMLEventFactory.newInstance();
+	}
+	/** @return the underlying cursor, positioned at the event returned last by nextEvent().
+	 * @throws IllegalStateException if an event is peeked; use isCursorAligned() to test.
+	 */
+	public XMLStreamReader getCursor() {
+		if(!isCursorAligned()) {
+			throw new IllegalStateException("event peeked; cursor is ahead");
+		}
+		return cursor;
+	}
+	/** @return true if the cursor is positioned at the event returned last by nextEvent().
+	 */
+	public boolean isCursorAligned() {
+		return peeked==null && started;
+	}
+	/** @return a new event of the current cursor position.
+	 */
+	public XMLEvent currentEvent() throws XMLStreamException {
+		getCursor();
+		return allocate();
+	}
+	@Override
+	public XMLEvent nextEvent() throws XMLStreamException {
+		if(peeked!=null) {
+			XMLEvent ret=peeked;
+			peeked=null;
+			return ret;
+		}
+		if(!started) {
+			// the cursor is initially positioned at START_DOCUMENT
+			started=true;
+			return allocate();
+		}
+		if(!cursor.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		cursor.next();
+		return allocate();
+	}
+	@Override
+	public boolean hasNext() {
+		if(peeked!=null || !started) {
+			return true;
+		}
+		try {
+			return cursor.hasNext();
+		} catch (XMLStreamException e) {
+			return false;
+		}
+	}
+	@Override
+	public XMLEvent peek() throws XMLStreamException {
+		if(peeked==null && hasNext()) {
+			peeked=nextEvent();
+		}
+		return peeked;
+	}
+	@Override
+	public Object next() {
+		try {
+			return nextEvent();
+		} catch (XMLStreamException e) {
+			NoSuchElementException ex=new NoSuchElementException(e.getMessage());
+			ex.initCause(e);
+			throw ex;
+		}
+	}
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	@Override
+	public String getElementText() throws XMLStreamException {
+		StringBuilder ret=new StringBuilder();
+		while(true) {
+			XMLEvent event=nextEvent();
+			if(event.isEndElement()) {
+				break;
+			}else if(event.isCharacters()) {
+				ret.append(event.asCharacters().getData());
+			}else if(event.isEntityReference()) {
+				ret.append(((javax.xml.stream.events.EntityReference)event).getDeclaration().getReplacementText());
+			}else if(event.isStartElement()) {
+				throw new XMLStreamException("element text content may not contain START_ELEMENT",event.getLocation());
+			}else if(event.isEndDocument()) {
+				throw new XMLStreamException("unexpected end of document when reading element text content",event.getLocation());
+			}
+			// skip comments and processing instructions
+		}
+		return ret.toString();
+	}
+	@Override
+	public XMLEvent nextTag() throws XMLStreamException {
+		while(true) {
+			XMLEvent event=nextEvent();
+			if(event.isStartElement() || event.isEndElement()) {
+				return event;
+			}
+			if(event.isCharacters() && !event.asCharacters().isWhiteSpace()) {
+				throw new XMLStreamException("unexpected non-whitespace text",event.getLocation());
+			}
+		}
+	}
+	@Override
+	public Object getProperty(String name) {
+		return cursor.getProperty(name);
+	}
+	@Override
+	public void close() throws XMLStreamException {
+		peeked=null;
+		cursor.close();
+	}
+	private XMLEvent allocate() throws XMLStreamException {
+		factory.setLocation(new FixedLocation(cursor.getLocation()));
+		switch(cursor.getEventType()) {
+		case XMLStreamConstants.START_ELEMENT:
+			int attrc=cursor.getAttributeCount();
+			ArrayList<Attribute> attrs=new ArrayList<Attribute>(attrc);
+			for(int i=0;i<attrc;i++) {
+				attrs.add(factory.createAttribute(nonNull(cursor.getAttributePrefix(i)),nonNull(cursor.getAttributeNamespace(i)),cursor.getAttributeLocalName(i),cursor.getAttributeValue(i)));
+			}
+			return factory.createStartElement(nonNull(cursor.getPrefix()),nonNull(cursor.getNamespaceURI()),cursor.getLocalName(),attrs.iterator(),getNamespaces());
+		case XMLStreamConstants.END_ELEMENT:
+			return factory.createEndElement(nonNull(cursor.getPrefix()),nonNull(cursor.getNamespaceURI()),cursor.getLocalName(),getNamespaces());
+		case XMLStreamConstants.CHARACTERS:
+			return factory.createCharacters(cursor.getText());
+		case XMLStreamConstants.CDATA:
+			return factory.createCData(cursor.getText());
+		case XMLStreamConstants.SPACE:
+			return factory.createIgnorableSpace(cursor.getText());
+		case XMLStreamConstants.COMMENT:
+			return factory.createComment(cursor.getText());
+		case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			return factory.createProcessingInstruction(cursor.getPITarget(),cursor.getPIData());
+		case XMLStreamConstants.ENTITY_REFERENCE:
+			return factory.createEntityReference(cursor.getLocalName(),null);
+		case XMLStreamConstants.DTD:
+			return factory.createDTD(cursor.getText());
+		case XMLStreamConstants.START_DOCUMENT:
+			String encoding=cursor.getCharacterEncodingScheme();
+			if(encoding==null) {
+				encoding=cursor.getEncoding();
+			}
+			if(encoding==null) {
+				encoding="UTF-8";
+			}
+			String version=cursor.getVersion();
+			if(cursor.standaloneSet()) {
+				return factory.createStartDocument(encoding,version!=null ? version : "1.0",cursor.isStandalone());
+			}
+			return version!=null ? factory.createStartDocument(encoding,version) : factory.createStartDocument(encoding);
+		case XMLStreamConstants.END_DOCUMENT:
+			return factory.createEndDocument();
+		default:
+			throw new XMLStreamException("unexpected event type "+cursor.getEventType(),cursor.getLocation());
+		}
+	}
+	private java.util.Iterator<Namespace> getNamespaces() {
+		int namespacec=cursor.getNamespaceCount();
+		if(namespacec==0) {
+			return java.util.Collections.<Namespace>emptyList().iterator();
+		}
+		ArrayList<Namespace> namespaces=new ArrayList<Namespace>(namespacec);
+		for(int i=0;i<namespacec;i++) {
+			String prefix=cursor.getNamespacePrefix(i);
+			if(prefix==null || prefix.length()==0) {
+				namespaces.add(factory.createNamespace(nonNull(cursor.getNamespaceURI(i))));
+			}else {
+				namespaces.add(factory.createNamespace(prefix,nonNull(cursor.getNamespaceURI(i))));
+			}
+		}
+		return namespaces.iterator();
+	}
+	private static String nonNull(String value) {
+		return value==null ? "" : value;
+	}
+	/** copy of a Location; the Location of a XMLStreamReader changes with the cursor.
+	 */
+	private static class FixedLocation implements Location {
+		private int lineNumber;
+		private int columnNumber;
+		private int characterOffset;
+		private String publicId;
+		private String systemId;
+		private FixedLocation(Location location) {
+			lineNumber=location.getLineNumber();
+			columnNumber=location.getColumnNumber();
+			characterOffset=location.getCharacterOffset();
+			publicId=location.getPublicId();
+			systemId=location.getSystemId();
+		}
+		@Override
+		public int getLineNumber() {
+			return lineNumber;
+		}
+		@Override
+		public int getColumnNumber() {
+			return columnNumber;
+		}
+		@Override
+		public int getCharacterOffset() {
+			return characterOffset;
+		}
+		@Override
+		public String getPublicId() {
+			return publicId;
+		}
+		@Override
+		public String getSystemId() {
+			return systemId;
+		}
+	}
+}
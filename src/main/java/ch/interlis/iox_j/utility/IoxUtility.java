@@ -203,22 +203,27 @@ public class IoxUtility {
         IoxReader ioxReader=null;
         try {
             ioxReader=new ReaderFactory().createReader(new java.io.File(dataFile), errFactory,settings);
-            if(ioxReader instanceof Xtf24Reader) {
+            IoxReader reader=ioxReader;
+            if(reader instanceof PipelinedIoxReader) {
+                // not yet started; the wrapped reader may still be used directly
+                reader=((PipelinedIoxReader)reader).getReader();
+            }
+            if(reader instanceof Xtf24Reader) {
                 modelVersion=Model.ILI2_4;
-            }else if(ioxReader instanceof XtfReader) {
+            }else if(reader instanceof XtfReader) {
                 modelVersion=Model.ILI2_3;
-                IoxEvent event = ioxReader.read();
-                if(((XtfReader)ioxReader).getMimeType().equals(Xtf23Reader.XTF_22)) {
+                IoxEvent event = reader.read();
+                if(((XtfReader)reader).getMimeType().equals(Xtf23Reader.XTF_22)) {
                     modelVersion=Model.ILI2_2;
                 }
-            }else if(ioxReader instanceof Xtf23Reader) {
+            }else if(reader instanceof Xtf23Reader) {
                 modelVersion=Model.ILI2_3;
-                if(((Xtf23Reader)ioxReader).getMimeType().equals(Xtf23Reader.XTF_22)) {
+                if(((Xtf23Reader)reader).getMimeType().equals(Xtf23Reader.XTF_22)) {
                     modelVersion=Model.ILI2_2;
                 }
-            }else if(ioxReader instanceof ItfReader) {
+            }else if(reader instanceof ItfReader) {
                 modelVersion=Model.ILI1;
-            }else if(ioxReader instanceof ItfReader2) {
+            }else if(reader instanceof ItfReader2) {
                 modelVersion=Model.ILI1;
             }
         }finally {
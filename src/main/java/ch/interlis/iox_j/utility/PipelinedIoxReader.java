@@ -0,0 +1,217 @@
+package ch.interlis.iox_j.utility;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iox.IoxEvent;
+import ch.interlis.iox.IoxException;
+import ch.interlis.iox.IoxFactoryCollection;
+import ch.interlis.iox.IoxReader;
+import ch.interlis.iox_j.IoxIliReader;
+
+/** Read-ahead reader: reads the events of another reader in one separate thread.
+ * Parsing (and object construction) of the wrapped reader runs ahead of the caller,
+ * while the caller processes (e.g. validates) the events returned so far.
+ * This overlaps reading with processing; the file itself is still parsed sequentially 
+ * by a single thread (baskets are not parsed in parallel), so it uses at most two cores.
+ * The events are returned in the same order as by the wrapped reader.
+ * The wrapped reader must not be used directly, once the first event was read.
+ * setModel(), setTopicFilter(), setFactory() and createIomObject() must be called before the first read(),
+ * as the wrapped reader runs in the producer thread afterwards.
+ */
+public class PipelinedIoxReader implements IoxReader, IoxIliReader {
+	public static final int DEFAULT_BATCH_SIZE=256;
+	public static final int DEFAULT_QUEUE_SIZE=16;
+	private IoxReader reader=null;
+	private int batchSize=DEFAULT_BATCH_SIZE;
+	private ArrayBlockingQueue<Batch> queue=null;
+	private Thread producer=null;
+	private volatile boolean closed=false;
+	private Batch currentBatch=null;
+	private int currentIdx=0;
+	private boolean endReached=false;
+
+	/** some events of the wrapped reader, or the end of the events, or the failure of the wrapped reader.
+	 */
+	private static class Batch {
+		private ArrayList<IoxEvent> events=null;
+		private boolean end=false;
+		private Throwable failure=null;
+	}
+
+	public PipelinedIoxReader(IoxReader reader) {
+		this(reader,DEFAULT_BATCH_SIZE,DEFAULT_QUEUE_SIZE);
+	}
+	/** @param batchSize number of events handed over to the caller at once.
+	 * @param queueSize max. number of batches the wrapped reader may read ahead.
+	 */
+	public PipelinedIoxReader(IoxReader reader,int batchSize,int queueSize) {
+		if(batchSize<1 || queueSize<1) {
+			throw new IllegalArgumentException("batchSize "+batchSize+", queueSize "+queueSize);
+		}
+		this.reader=reader;
+		this.batchSize=batchSize;
+		queue=new ArrayBlockingQueue<Batch>(queueSize);
+	}
+	public IoxReader getReader() {
+		return reader;
+	}
+	@Override
+	public IoxEvent read() throws IoxException {
+		if(endReached) {
+			return null;
+		}
+		if(producer==null) {
+			startProducer();
+		}
+		while(currentBatch==null || currentIdx>=currentBatch.events.size()) {
+			try {
+				currentBatch=queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IoxException("interrupted while waiting for the next event",e);
+			}
+			currentIdx=0;
+			if(currentBatch.failure!=null) {
+				endReached=true;
+				Throwable failure=currentBatch.failure;
+				currentBatch=null;
+				if(failure instanceof IoxException) {
+					throw (IoxException)failure;
+				}else if(failure instanceof RuntimeException) {
+					throw (RuntimeException)failure;
+				}else if(failure instanceof Error) {
+					throw (Error)failure;
+				}
+				throw new IoxException(failure);
+			}
+			if(currentBatch.end) {
+				endReached=true;
+				currentBatch=null;
+				return null;
+			}
+		}
+		IoxEvent ret=currentBatch.events.get(currentIdx);
+		// release the event as early as possible
+		currentBatch.events.set(currentIdx, null);
+		currentIdx++;
+		return ret;
+	}
+	private void startProducer() {
+		producer=new Thread(new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		},this.getClass().getSimpleName());
+		producer.setDaemon(true);
+		producer.start();
+	}
+	private void produce() {
+		Batch batch=new Batch();
+		batch.events=new ArrayList<IoxEvent>(batchSize);
+		try {
+			while(!closed) {
+				IoxEvent event=reader.read();
+				if(event==null) {
+					if(!batch.events.isEmpty()) {
+						put(batch);
+					}
+					batch=new Batch();
+					batch.end=true;
+					put(batch);
+					return;
+				}
+				batch.events.add(event);
+				if(batch.events.size()>=batchSize) {
+					put(batch);
+					batch=new Batch();
+					batch.events=new ArrayList<IoxEvent>(batchSize);
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed by the consumer
+		} catch (Throwable e) {
+			try {
+				if(!batch.events.isEmpty()) {
+					put(batch);
+				}
+				batch=new Batch();
+				batch.failure=e;
+				put(batch);
+			} catch (InterruptedException e1) {
+				// closed by the consumer
+			}
+		}
+	}
+	private void put(Batch batch) throws InterruptedException {
+		while(!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			if(closed) {
+				throw new InterruptedException();
+			}
+		}
+	}
+	@Override
+	public void close() throws IoxException {
+		closed=true;
+		if(producer!=null) {
+			producer.interrupt();
+			queue.clear();
+			try {
+				producer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.clear();
+			producer=null;
+		}
+		currentBatch=null;
+		endReached=true;
+		reader.close();
+	}
+	/** @throws IllegalStateException if the wrapped reader was already started.
+	 */
+	private void assertNotStarted(String method) {
+		if(producer!=null || endReached) {
+			throw new IllegalStateException(method+"() must be called before the first read()");
+		}
+	}
+	@Override
+	public void setFactory(IoxFactoryCollection factory) throws IoxException {
+		assertNotStarted("setFactory");
+		reader.setFactory(factory);
+	}
+	@Override
+	public IoxFactoryCollection getFactory() throws IoxException {
+		return reader.getFactory();
+	}
+	@Override
+	public IomObject createIomObject(String type, String oid) throws IoxException {
+		assertNotStarted("createIomObject");
+		return reader.createIomObject(type, oid);
+	}
+	@Override
+	public void setModel(TransferDescription td) {
+		assertNotStarted("setModel");
+		if(reader instanceof IoxIliReader) {
+			((IoxIliReader)reader).setModel(td);
+		}
+	}
+	@Override
+	public void setTopicFilter(String[] topicNames) {
+		assertNotStarted("setTopicFilter");
+		if(reader instanceof IoxIliReader) {
+			((IoxIliReader)reader).setTopicFilter(topicNames);
+		}
+	}
+	@Override
+	public String getMimeType() {
+		if(reader instanceof IoxIliReader) {
+			return ((IoxIliReader)reader).getMimeType();
+		}
+		return null;
+	}
+}
@@ -27,9 +27,20 @@ import ch.interlis.iox_j.validator.InterlisFunction;
 
 public class ReaderFactory{
     public static final String CONFIG_CUSTOM_READERS="ch.interlis.iox_j.utility.customReaders";
+    /** read XML transfer files ahead in a separate thread (see PipelinedIoxReader); 
+     * the file is still parsed by one thread.
+     */
+    public static final String CONFIG_PIPELINED_XML_READER="ch.interlis.iox_j.utility.pipelinedXmlReader";
+    public static final String CONFIG_PIPELINED_XML_READER_DO="pipelinedXmlReader";
     @Deprecated
     public IoxReader createReader(File inputFile, LogEventFactory errFact) throws IoxException {
         return createReader(inputFile,errFact,null);
+    }
+    private static IoxReader pipelineXmlReader(IoxReader reader,Settings settings) {
+        if(CONFIG_PIPELINED_XML_READER_DO.equals(settings.getValue(CONFIG_PIPELINED_XML_READER))) {
+            return new PipelinedIoxReader(reader);
+        }
+        return reader;
     }
 	public IoxReader createReader(File inputFile, LogEventFactory errFact,Settings settings) throws IoxException {
 	    if(settings==null) {
@@ -59,13 +70,13 @@ public class ReaderFactory{
 		if(ns!=null) {
 		    if(ns.equals(XtfReader.XMLNS_XTF22) || ns.equals(XtfReader.XMLNS_XTF23)) {
 	            reader=new XtfReader(inputFile);
-                return reader;
+                return pipelineXmlReader(reader,settings);
 		    }else if(ns.equals(Xtf24Reader.XMLNS_XTF24)) {
 	            reader=new Xtf24Reader(inputFile);
-                return reader;
+                return pipelineXmlReader(reader,settings);
             }else if(ns.equals(Iligml20Reader.XMLNS_ILIGML)) {
                 reader=new Iligml20Reader(inputFile);
-                return reader;
+                return pipelineXmlReader(reader,settings);
 		    }
 	        throw new IoxException("unknown xml file");
 		}
@@ -137,7 +137,7 @@ public class AttributeArray {
 		this.values = values.toArray(new Object[values.size()]);
 	}
 	
-	private Object[] getValues() {
+	Object[] getValues() {
 		return values;
 	}
 	
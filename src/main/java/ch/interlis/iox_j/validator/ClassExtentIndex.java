@@ -0,0 +1,90 @@
+package ch.interlis.iox_j.validator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.interlis.ili2c.metamodel.Viewable;
+
+/** Index of the objects of a basket per concrete class.
+ * The index is built while the objects are added to the ObjectPool.
+ * It doesn't hold the objects, but the positions of the objects in the storage of the basket,
+ * in the order they were added.
+ */
+public class ClassExtentIndex {
+	private static final long[] EMPTY=new long[0];
+	private HashMap<String,HashMap<Viewable,Extent>> extentsOfBasket=new HashMap<String,HashMap<Viewable,Extent>>();
+
+	private static class Extent {
+		private long[] positions=new long[16];
+		private int size=0;
+		private void add(long pos) {
+			if(size==positions.length) {
+				positions=Arrays.copyOf(positions, size*2);
+			}
+			positions[size++]=pos;
+		}
+	}
+	/** adds an object.
+	 * @param aclass concrete class of the object.
+	 * @param pos position of the object in the storage of the basket.
+	 */
+	public void addObject(String basketId,Viewable aclass,long pos) {
+		HashMap<Viewable,Extent> extents=extentsOfBasket.get(basketId);
+		if(extents==null) {
+			extents=new HashMap<Viewable,Extent>();
+			extentsOfBasket.put(basketId, extents);
+		}
+		Extent extent=extents.get(aclass);
+		if(extent==null) {
+			extent=new Extent();
+			extents.put(aclass, extent);
+		}
+		extent.add(pos);
+	}
+	/** @return number of objects of the given class in the given basket.
+	 * @param includeSubclasses also count the objects of the subclasses.
+	 */
+	public long getObjectCount(String basketId,Viewable aclass,boolean includeSubclasses) {
+		HashMap<Viewable,Extent> extents=extentsOfBasket.get(basketId);
+		if(extents==null) {
+			return 0L;
+		}
+		if(!includeSubclasses) {
+			Extent extent=extents.get(aclass);
+			return extent==null ? 0L : extent.size;
+		}
+		long count=0L;
+		for(Map.Entry<Viewable,Extent> entry:extents.entrySet()) {
+			if(entry.getKey().isExtending(aclass)) {
+				count+=entry.getValue().size;
+			}
+		}
+		return count;
+	}
+	/** @return positions of the objects of the given class in the storage of the given basket, in ascending order.
+	 * @param includeSubclasses also include the objects of the subclasses.
+	 */
+	public long[] getPositions(String basketId,Viewable aclass,boolean includeSubclasses) {
+		HashMap<Viewable,Extent> extents=extentsOfBasket.get(basketId);
+		if(extents==null) {
+			return EMPTY;
+		}
+		if(!includeSubclasses) {
+			Extent extent=extents.get(aclass);
+			return extent==null ? EMPTY : Arrays.copyOf(extent.positions, extent.size);
+		}
+		long[] ret=new long[(int)getObjectCount(basketId, aclass, true)];
+		int retc=0;
+		for(Map.Entry<Viewable,Extent> entry:extents.entrySet()) {
+			if(entry.getKey().isExtending(aclass)) {
+				Extent extent=entry.getValue();
+				System.arraycopy(extent.positions, 0, ret, retc, extent.size);
+				retc+=extent.size;
+			}
+		}
+		// all classes share the storage of the basket; ascending position is the order the objects were added
+		Arrays.sort(ret);
+		return ret;
+	}
+}
@@ -1,33 +1,31 @@
 package ch.interlis.iox_j.validator;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import ch.ehi.iox.objpool.ObjectPoolManager;
-import ch.ehi.iox.objpool.impl.LongSerializer;
+import ch.ehi.iox.objpool.impl.LongCounterMap;
 import ch.interlis.ili2c.metamodel.AssociationDef;
 import ch.interlis.ili2c.metamodel.RoleDef;
 import ch.interlis.iom.IomObject;
 
+// counts the links per object and role.
+// The key (OID, class, role-name) is stored as 128 bit fingerprint; the probability 
+// of a collision is about n^2/2^129 for n keys.
 public class LinkPool {
-	Map<LinkPoolKey, Long> collectionOfReferenceObj = null;;
+	LongCounterMap collectionOfReferenceObj = null;
+	private long fingerprint1=0L;
+	private long fingerprint2=0L;
 	
 	public LinkPool(ObjectPoolManager objPoolManager) {
-	    collectionOfReferenceObj=objPoolManager.newObjectPool2(this.getClass().getSimpleName(),new LinkPoolKeySerializer(), new LongSerializer());
+	    collectionOfReferenceObj=objPoolManager.newCounterMap(this.getClass().getSimpleName());
     }
 
     // returns the number of referenced objects consisting of OID and role-name.
 	public long getTargetObjectCount(IomObject iomObj, RoleDef role, boolean doItfOidPerTable) {
-		Long ret = null;
 		if(doItfOidPerTable){
-			ret=collectionOfReferenceObj.get(new LinkPoolKey(iomObj.getobjectoid(), iomObj.getobjecttag(), role.getName()));
+			setFingerprint(iomObj.getobjectoid(), iomObj.getobjecttag(), role.getName());
 		} else {
-			ret=collectionOfReferenceObj.get(new LinkPoolKey(iomObj.getobjectoid(), null, role.getName()));
-		}
-		if(ret==null){
-			return 0;
+			setFingerprint(iomObj.getobjectoid(), null, role.getName());
 		}
-		return ret;
+		return collectionOfReferenceObj.get(fingerprint1,fingerprint2);
 	}
 
 	public void addLink(IomObject iomObj, RoleDef role, String targetOid, boolean doItfOidPerTable){
@@ -52,18 +50,42 @@ public class LinkPool {
 	}
 
 	private void increaseCounter(String oid, String className, RoleDef role, boolean doItfOidPerTable){
-		LinkPoolKey key = null;
 		if(doItfOidPerTable){
-			key=new LinkPoolKey(oid, className, role.getName());
+			setFingerprint(oid, className, role.getName());
 		} else {
-			key=new LinkPoolKey(oid, null, role.getName());
+			setFingerprint(oid, null, role.getName());
 		}
-		if(collectionOfReferenceObj.containsKey(key)){
-			long counter=collectionOfReferenceObj.get(key);
-			counter+=1;
-			collectionOfReferenceObj.put(key,counter);
-		}else{
-			collectionOfReferenceObj.put(key,1L);
+		collectionOfReferenceObj.increment(fingerprint1,fingerprint2);
+	}
+	
+	// two independent 64 bit hashes of the key; a field separator (a value outside of the range of char) 
+	// is added after each field, so that the fields can not be shifted
+	private void setFingerprint(String oid, String className, String roleName) {
+		fingerprint1=0xcbf29ce484222325L;
+		fingerprint2=0x84222325cbf29ce4L;
+		addToFingerprint(oid);
+		addToFingerprint(roleName);
+		addToFingerprint(className);
+	}
+	private void addToFingerprint(String value) {
+		long h1=fingerprint1;
+		long h2=fingerprint2;
+		if(value==null) {
+			h1=(h1^0x10001L)*0x100000001b3L;
+			h2=(h2+0x10001L)*0x9E3779B97F4A7C15L;
+		}else {
+			int len=value.length();
+			for(int i=0;i<len;i++) {
+				char c=value.charAt(i);
+				h1=(h1^c)*0x100000001b3L;
+				h2=(h2+c)*0x9E3779B97F4A7C15L;
+				h2^=h2>>>29;
+			}
+			h1=(h1^0x10000L)*0x100000001b3L;
+			h2=(h2+0x10000L)*0x9E3779B97F4A7C15L;
 		}
+		h2^=h2>>>29;
+		fingerprint1=h1;
+		fingerprint2=h2;
 	}
 }
\ No newline at end of file
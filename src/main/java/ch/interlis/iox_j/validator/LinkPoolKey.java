@@ -1,5 +1,8 @@
 package ch.interlis.iox_j.validator;
 
+/** @deprecated no longer used by LinkPool, that keeps a 128 bit fingerprint of the key instead.
+ */
+@Deprecated
 public class LinkPoolKey implements Comparable {
 	
 	private String oid;
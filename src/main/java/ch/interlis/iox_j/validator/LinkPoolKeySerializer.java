@@ -7,6 +7,9 @@ import java.io.IOException;
 import ch.ehi.iox.objpool.impl.AbstractIomObjectSerializer;
 import ch.ehi.iox.objpool.impl.Serializer;
 
+/** @deprecated no longer used by LinkPool.
+ */
+@Deprecated
 public class LinkPoolKeySerializer extends AbstractIomObjectSerializer implements Serializer<LinkPoolKey> {
 
     @Override
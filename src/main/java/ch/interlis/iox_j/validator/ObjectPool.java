@@ -3,6 +3,7 @@ package ch.interlis.iox_j.validator;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,11 +37,14 @@ public class ObjectPool {
 	private Map<String, Map<ObjectPoolKey, IomObject>> collectionOfBaskets = new java.util.HashMap<String, Map<ObjectPoolKey, IomObject>>();
 	private java.util.TreeSet<String> dataBids=new java.util.TreeSet<String>();
     private java.util.TreeSet<String> refdataBids=new java.util.TreeSet<String>();
+    private ReverseRoleIndex reverseRoleIndex=null;
+    private ClassExtentIndex classExtentIndex=new ClassExtentIndex();
 	
 	public ObjectPool(boolean doItfOidPerTable, IoxLogging errs, LogEventFactory errFact, HashMap<String,Object> tag2class,ObjectPoolManager objPoolManager){
 		this.doItfOidPerTable = doItfOidPerTable;
 		this.tag2class = tag2class;
 		this.objPoolManager=objPoolManager;
+		this.reverseRoleIndex=new ReverseRoleIndex(objPoolManager);
 	}
 	public static String getAssociationId(IomObject iomObj, AssociationDef assocDef) {
 		if(assocDef==null){
@@ -110,7 +114,11 @@ public class ObjectPool {
 		        return existingObj;
 		    }
 		}
-			collectionOfObjects.put(key,iomObj);
+		long pos=((ch.ehi.iox.objpool.impl.ObjPoolImpl2<ObjectPoolKey, IomObject>)collectionOfObjects).putValue(key,iomObj);
+		if(dataBids.contains(currentBasketId)) {
+		    reverseRoleIndex.addObject(iomObj, (Viewable<?>)modelEle, currentBasketId, oid);
+		    classExtentIndex.addObject(currentBasketId, (Viewable<?>)modelEle, pos);
+		}
 		return null;
 	}
     private Map<ObjectPoolKey, IomObject> getCollectionOfObjects(String basketId) {
@@ -121,7 +129,7 @@ public class ObjectPool {
         if(collectionOfBaskets.containsKey(basketId)){
 			collectionOfObjects=collectionOfBaskets.get(basketId);
 		} else {
-			collectionOfObjects=objPoolManager.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer()); // new HashMap<ObjectPoolKey, IomObject>();
+			collectionOfObjects=objPoolManager.newObjectPoolImpl2(this.getClass().getSimpleName(),new IomObjectSerializer(),new ObjectPoolKeyIndex()); // new HashMap<ObjectPoolKey, IomObject>();
 			collectionOfBaskets.put(basketId, collectionOfObjects);
 		}
         return collectionOfObjects;
@@ -131,6 +139,59 @@ public class ObjectPool {
 		return (ch.ehi.iox.objpool.impl.ObjPoolImpl2)getCollectionOfObjects(basketId);
 	}
 	
+	/** @return the objects of the data baskets, that are an instance of objClass and refer by the given role to refOid
+	 * (in the order they were added), or null if there are none.
+	 * @param refClass class of the referenced object; used to normalize the refOids.
+	 */
+	public List<IomObject> getReferencingObjects(String roleName, Viewable objClass, Viewable refClass, String refOid){
+	    if(refOid==null) {
+	        return null;
+	    }
+	    List<IomObject> ret=null;
+	    for(ReverseRoleIndex.Entry entry:reverseRoleIndex.getEntries(roleName, refOid)) {
+	        Viewable aclass=(Viewable)tag2class.get(entry.getTag());
+	        if(!aclass.isExtending(objClass)) {
+	            continue;
+	        }
+	        if(!refOid.equals(normalizeOid(refClass, entry.getRefOid()))) {
+	            continue;
+	        }
+	        String basketId=entry.getBasketId();
+	        IomObject iomObj=getCollectionOfObjects(basketId).get(new ObjectPoolKey(entry.getOid(), doItfOidPerTable ? aclass : null, basketId));
+	        if(iomObj!=null) {
+	            if(ret==null) {
+	                ret=new ArrayList<IomObject>();
+	            }
+	            ret.add(iomObj);
+	        }
+	    }
+	    return ret;
+	}
+	private static String normalizeOid(Viewable modelEle, String oid) {
+	    if(modelEle instanceof AbstractClassDef) {
+	        Domain oidType=((AbstractClassDef) modelEle).getOid();
+	        if(oidType==PredefinedModel.getInstance().UUIDOID) {
+	            oid=Validator.normalizeUUID(oid);
+	        }
+	    }
+	    return oid;
+	}
+	
+	/** @return number of objects of the given class in the given data basket.
+	 * @param includeSubclasses also count the objects of the subclasses.
+	 */
+	public long getObjectCount(String basketId, Viewable aclass, boolean includeSubclasses){
+	    return classExtentIndex.getObjectCount(basketId, aclass, includeSubclasses);
+	}
+	/** @return the objects of the given class in the given data basket, in the order they were added.
+	 * The objects are read while iterating.
+	 * @param includeSubclasses also return the objects of the subclasses.
+	 */
+	public Iterator<IomObject> getObjectsOfClass(String basketId, Viewable aclass, boolean includeSubclasses){
+	    long[] positions=classExtentIndex.getPositions(basketId, aclass, includeSubclasses);
+	    return getObjectsOfBasketId(basketId).valueIteratorAt(positions);
+	}
+	
 	public Set<String> getDataBids(){
 		return dataBids;
 	}
@@ -200,6 +261,17 @@ public class ObjectPool {
 		}
 		return null;
 	}
+    /** adds a basket of reference data, whose objects are already pooled (e.g. by a ReferenceDataPool).
+     */
+    public void addReferenceBasket(String basketId, Map<ObjectPoolKey, IomObject> objects) {
+        if(basketId==null || basketId.length()==0) {
+            throw new IllegalArgumentException("basketId==null");
+        }
+        if(!collectionOfBaskets.containsKey(basketId)) {
+            collectionOfBaskets.put(basketId, objects);
+        }
+        refdataBids.add(basketId);
+    }
     public void startNewTransfer() {
         // TODO clear/remove transient TIDs
     }
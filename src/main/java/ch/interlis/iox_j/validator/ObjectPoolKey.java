@@ -98,7 +98,7 @@ public class ObjectPoolKey implements java.lang.Comparable {
 		return true;
 	}
 
-	private String getOid() {
+	String getOid() {
 		return oid;
 	}
 
@@ -106,7 +106,7 @@ public class ObjectPoolKey implements java.lang.Comparable {
 		this.oid = oid;
 	}
 
-	private Viewable getClassValue() {
+	Viewable getClassValue() {
 		return classValue;
 	}
 
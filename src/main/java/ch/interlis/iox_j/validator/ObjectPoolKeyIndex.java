@@ -0,0 +1,247 @@
+package ch.interlis.iox_j.validator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ch.ehi.iox.objpool.impl.CompactKeyIndex;
+import ch.interlis.ili2c.metamodel.Viewable;
+
+/** Compact index of ObjectPoolKeys.
+ * Basket id and class of a key are interned (stored as a small number);
+ * the OID is stored as packed bytes (UUIDs in lower case as 16 bytes,
+ * ASCII OIDs as one byte per character).
+ */
+public class ObjectPoolKeyIndex extends CompactKeyIndex<ObjectPoolKey> {
+	private static final byte OID_TEXT=0;
+	private static final byte OID_UUID=1;
+	private static final int UUID_LENGTH=36;
+	/** basketId+class (oid==null) to qualifier id
+	 */
+	private HashMap<ObjectPoolKey,Integer> qualifierIds=new HashMap<ObjectPoolKey,Integer>();
+	private ArrayList<ObjectPoolKey> qualifiers=new ArrayList<ObjectPoolKey>();
+	private int[] qualifierRanks=null;
+	private Viewable lastClass=null;
+	private String lastBasketId=null;
+	private int lastQualifierId=-1;
+
+	public ObjectPoolKeyIndex() {
+		super();
+	}
+	public ObjectPoolKeyIndex(boolean offHeap) {
+		super(offHeap);
+	}
+
+	@Override
+	protected int encodeKey(ObjectPoolKey key, byte[] buf) {
+		int qualifierId=getQualifierId(key.getClassValue(),key.getBasketId());
+		String oid=key.getOid();
+		int len=0;
+		// qualifier id as varint
+		int v=qualifierId;
+		while((v & ~0x7f)!=0){
+			len=put(buf,len,(v & 0x7f)|0x80);
+			v>>>=7;
+		}
+		len=put(buf,len,v);
+		if(oid==null){
+			return len;
+		}
+		if(isLowerCaseUuid(oid)){
+			len=put(buf,len,OID_UUID);
+			for(int i=0;i<UUID_LENGTH;){
+				if(oid.charAt(i)=='-'){
+					i++;
+					continue;
+				}
+				int hi=Character.digit(oid.charAt(i), 16);
+				int lo=Character.digit(oid.charAt(i+1), 16);
+				len=put(buf,len,(hi<<4)|lo);
+				i+=2;
+			}
+			return len;
+		}
+		len=put(buf,len,OID_TEXT);
+		int oidLen=oid.length();
+		if(isAscii(oid)){
+			for(int i=0;i<oidLen;i++){
+				len=put(buf,len,oid.charAt(i));
+			}
+		}else{
+			try {
+				byte[] utf8=oid.getBytes("UTF-8");
+				for(int i=0;i<utf8.length;i++){
+					len=put(buf,len,utf8[i]);
+				}
+			} catch (java.io.UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return len;
+	}
+	private static boolean isAscii(String oid) {
+		for(int i=0;i<oid.length();i++){
+			if(oid.charAt(i)>=0x80){
+				return false;
+			}
+		}
+		return true;
+	}
+	private static int put(byte[] buf,int len,int b) {
+		if(len<buf.length){
+			buf[len]=(byte)b;
+		}
+		return len+1;
+	}
+	@Override
+	protected ObjectPoolKey decodeKey(byte[] buf, int len) {
+		int pos=0;
+		int qualifierId=0;
+		int shift=0;
+		while(true){
+			byte b=buf[pos++];
+			qualifierId|=(b & 0x7f)<<shift;
+			if((b & 0x80)==0){
+				break;
+			}
+			shift+=7;
+		}
+		ObjectPoolKey qualifier=qualifiers.get(qualifierId);
+		return new ObjectPoolKey(decodeOid(buf,pos,len),qualifier.getClassValue(),qualifier.getBasketId());
+	}
+	private static String decodeOid(byte[] buf,int pos,int len) {
+		if(pos>=len){
+			return null;
+		}
+		byte tag=buf[pos++];
+		if(tag==OID_UUID){
+			StringBuilder oid=new StringBuilder(UUID_LENGTH);
+			for(int i=0;i<16;i++){
+				if(i==4 || i==6 || i==8 || i==10){
+					oid.append('-');
+				}
+				int b=buf[pos+i] & 0xff;
+				oid.append(Character.forDigit(b>>>4, 16));
+				oid.append(Character.forDigit(b & 0xf, 16));
+			}
+			return oid.toString();
+		}
+		try {
+			return new String(buf,pos,len-pos,"UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	@Override
+	public long getMemorySize() {
+		// qualifier keys are shared with the objects; only count the table entries
+		return super.getMemorySize()+qualifiers.size()*64L;
+	}
+	@Override
+	protected void prepareCompare() {
+		// rank of qualifiers according to ObjectPoolKey.compareTo()
+		Integer[] ids=new Integer[qualifiers.size()];
+		for(int i=0;i<ids.length;i++){
+			ids[i]=i;
+		}
+		java.util.Arrays.sort(ids,new java.util.Comparator<Integer>(){
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return qualifiers.get(o1).compareTo(qualifiers.get(o2));
+			}
+		});
+		qualifierRanks=new int[ids.length];
+		for(int i=0;i<ids.length;i++){
+			qualifierRanks[ids[i]]=i;
+		}
+	}
+	@Override
+	protected int compareKeys(byte[] key1, int len1, byte[] key2, int len2) {
+		int pos1=0;
+		int qualifierId1=0;
+		int shift=0;
+		while(true){
+			byte b=key1[pos1++];
+			qualifierId1|=(b & 0x7f)<<shift;
+			if((b & 0x80)==0){
+				break;
+			}
+			shift+=7;
+		}
+		int pos2=0;
+		int qualifierId2=0;
+		shift=0;
+		while(true){
+			byte b=key2[pos2++];
+			qualifierId2|=(b & 0x7f)<<shift;
+			if((b & 0x80)==0){
+				break;
+			}
+			shift+=7;
+		}
+		if(qualifierId1!=qualifierId2){
+			return qualifierRanks[qualifierId1]-qualifierRanks[qualifierId2];
+		}
+		if(pos1>=len1 || pos2>=len2){
+			// oid==null sorts first
+			return (pos1>=len1 ? 0 : 1)-(pos2>=len2 ? 0 : 1);
+		}
+		if(key1[pos1]==key2[pos2] && isAscii(key1,pos1+1,len1) && isAscii(key2,pos2+1,len2)){
+			// same encoding; byte order of packed UUIDs and ASCII text is equal to the order of the oid strings
+			int i1=pos1+1;
+			int i2=pos2+1;
+			while(i1<len1 && i2<len2){
+				int c=(key1[i1] & 0xff)-(key2[i2] & 0xff);
+				if(c!=0){
+					return c;
+				}
+				i1++;
+				i2++;
+			}
+			return (len1-i1)-(len2-i2);
+		}
+		return decodeOid(key1,pos1,len1).compareTo(decodeOid(key2,pos2,len2));
+	}
+	private static boolean isAscii(byte[] buf,int from,int to) {
+		if(buf[from-1]==OID_UUID){
+			return true;
+		}
+		for(int i=from;i<to;i++){
+			if(buf[i]<0){
+				return false;
+			}
+		}
+		return true;
+	}
+	private int getQualifierId(Viewable classValue,String basketId) {
+		if(lastQualifierId>=0 && classValue==lastClass && (basketId==null ? lastBasketId==null : basketId.equals(lastBasketId))){
+			return lastQualifierId;
+		}
+		ObjectPoolKey qualifier=new ObjectPoolKey(null,classValue,basketId);
+		Integer id=qualifierIds.get(qualifier);
+		if(id==null){
+			id=qualifiers.size();
+			qualifiers.add(qualifier);
+			qualifierIds.put(qualifier,id);
+		}
+		lastClass=classValue;
+		lastBasketId=basketId;
+		lastQualifierId=id;
+		return id;
+	}
+	static boolean isLowerCaseUuid(String oid) {
+		if(oid.length()!=UUID_LENGTH){
+			return false;
+		}
+		for(int i=0;i<UUID_LENGTH;i++){
+			char c=oid.charAt(i);
+			if(i==8 || i==13 || i==18 || i==23){
+				if(c!='-'){
+					return false;
+				}
+			}else if(!((c>='0' && c<='9') || (c>='a' && c<='f'))){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,60 @@
+package ch.interlis.iox_j.validator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** Bounded cache of compiled regular expressions.
+ * The regular expressions of a model (e.g. of FORMAT types or Text.matches() constraints) are few,
+ * but are applied to many objects; compiling them again for every value is expensive.
+ * If more than maxSize different expressions are used, the least recently used one is dropped.
+ */
+public class PatternCache {
+	public static final int DEFAULT_MAX_SIZE=256;
+	private LinkedHashMap<String,Pattern> patterns=null;
+	private long hits=0L;
+	private long misses=0L;
+	
+	public PatternCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	public PatternCache(final int maxSize) {
+		if(maxSize<1) {
+			throw new IllegalArgumentException("maxSize "+maxSize);
+		}
+		patterns=new LinkedHashMap<String,Pattern>(16,0.75f,true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,Pattern> eldest) {
+				return size()>maxSize;
+			}
+		};
+	}
+	/** @return the compiled regular expression.
+	 * @throws java.util.regex.PatternSyntaxException if the expression is not valid.
+	 */
+	public Pattern get(String regex) {
+		Pattern ret=patterns.get(regex);
+		if(ret==null) {
+			ret=Pattern.compile(regex);
+			patterns.put(regex, ret);
+			misses++;
+		}else {
+			hits++;
+		}
+		return ret;
+	}
+	/** same as value.matches(regex).
+	 */
+	public boolean matches(String regex,CharSequence value) {
+		return get(regex).matcher(value).matches();
+	}
+	public int size() {
+		return patterns.size();
+	}
+	public long getHits() {
+		return hits;
+	}
+	public long getMisses() {
+		return misses;
+	}
+}
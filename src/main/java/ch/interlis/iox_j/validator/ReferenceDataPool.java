@@ -0,0 +1,442 @@
+package ch.interlis.iox_j.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.impl.IomObjectSerializer;
+import ch.ehi.iox.objpool.impl.MappedSegmentLog;
+import ch.ehi.iox.objpool.impl.ObjPoolImpl2;
+import ch.ehi.iox.objpool.impl.SegmentLog;
+import ch.interlis.ili2c.metamodel.Model;
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.ili2c.metamodel.Viewable;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iox.IoxLogEvent;
+import ch.interlis.iox.IoxLogging;
+import ch.interlis.iox_j.logging.LogEventImpl;
+
+/** Persistent pool of the objects of a reference data file.
+ * The pool is stored in its own directory (named by the checksum of the reference data file and 
+ * the fingerprint of the model) below a base directory, so that later runs can reuse it without reading the reference data again.
+ * The values are opened memory-mapped and read-only.
+ * <pre>
+ * baseDir/checksum-model/pool.properties  version, baskets
+ * baseDir/checksum-model/basketN.dat       serialized objects of basket N (format of SegmentLog)
+ * baseDir/checksum-model/basketN.idx       oid, class, position of the objects of basket N
+ * baseDir/checksum-model/messages.dat      messages about the objects, reported by the run that wrote the pool
+ * </pre>
+ * A new pool is written into a temporary directory, that is renamed when complete.
+ */
+public class ReferenceDataPool {
+	public static final int FORMAT_VERSION=2;
+	private static final String PROPERTIES_FILE="pool.properties";
+	private static final String MESSAGES_FILE="messages.dat";
+	private static final String PROP_VERSION="version";
+	private static final String PROP_CHECKSUM="checksum";
+	private static final String PROP_MODEL="model";
+	private static final String PROP_OIDPERTABLE="doItfOidPerTable";
+	private static final String PROP_BASKETCOUNT="basketCount";
+	private static final String PROP_BASKET="basket.";
+	private static final String PROP_BID=".bid";
+	private static final String PROP_TOPIC=".topic";
+	private static final String PROP_DOMAIN=".domain.";
+	private File baseDir=null;
+	private String checksum=null;
+	private String modelFingerprint=null;
+	private List<IoxLogEvent> messages=null;
+
+	/** A basket of the pool.
+	 */
+	public static class Basket {
+		private String bid;
+		private String topic;
+		private Map<String,String> genericDomains;
+		private ObjPoolImpl2<ObjectPoolKey,IomObject> objects;
+		private Basket(String bid,String topic,Map<String,String> genericDomains,ObjPoolImpl2<ObjectPoolKey,IomObject> objects) {
+			this.bid=bid;
+			this.topic=topic;
+			this.genericDomains=genericDomains;
+			this.objects=objects;
+		}
+		public String getBid() {
+			return bid;
+		}
+		public String getTopic() {
+			return topic;
+		}
+		public Map<String, String> getGenericDomains() {
+			return genericDomains;
+		}
+		public ObjPoolImpl2<ObjectPoolKey, IomObject> getObjects() {
+			return objects;
+		}
+	}
+
+	/** @param baseDir directory that contains the pools.
+	 * @param checksum checksum of the reference data file.
+	 * @param modelFingerprint fingerprint of the model, that the pool is written with.
+	 * @see #getChecksum(File)
+	 * @see #getModelFingerprint(TransferDescription)
+	 */
+	public ReferenceDataPool(File baseDir,String checksum,String modelFingerprint) {
+		if(checksum==null || checksum.length()==0) {
+			throw new IllegalArgumentException("checksum==null");
+		}
+		if(modelFingerprint==null || modelFingerprint.length()==0) {
+			throw new IllegalArgumentException("modelFingerprint==null");
+		}
+		this.baseDir=baseDir;
+		this.checksum=checksum;
+		this.modelFingerprint=modelFingerprint;
+	}
+	/** @return MD5 checksum of the given file, as hex string.
+	 */
+	public static String getChecksum(File file) throws IOException {
+		java.security.MessageDigest md=newDigest();
+		updateDigest(md,file);
+		return toHex(md.digest());
+	}
+	/** @return MD5 checksum of the names, versions and files of all models of the given TransferDescription, as hex string.
+	 * Any change of a model file gives a new fingerprint, even if the names of the classes are unchanged.
+	 */
+	public static String getModelFingerprint(TransferDescription td) throws IOException {
+		java.security.MessageDigest md=newDigest();
+		Iterator<Model> modeli=td.iterator();
+		while(modeli.hasNext()) {
+			Model model=modeli.next();
+			md.update((model.getName()+"|"+model.getModelVersion()+"|"+model.getIliVersion()+"\n").getBytes("UTF-8"));
+			String fileName=model.getFileName();
+			if(fileName!=null && new File(fileName).isFile()) {
+				updateDigest(md,new File(fileName));
+			}
+		}
+		return toHex(md.digest());
+	}
+	private static java.security.MessageDigest newDigest() {
+		try {
+			return java.security.MessageDigest.getInstance("MD5");
+		} catch (java.security.NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	private static void updateDigest(java.security.MessageDigest md,File file) throws IOException {
+		InputStream in=new FileInputStream(file);
+		try {
+			byte[] buf=new byte[SegmentLog.DEFAULT_BUFFER_SIZE];
+			int len=0;
+			while((len=in.read(buf))!=-1) {
+				md.update(buf, 0, len);
+			}
+		}finally {
+			in.close();
+		}
+	}
+	private static String toHex(byte[] digest) {
+		StringBuilder ret=new StringBuilder();
+		for(byte b:digest) {
+			ret.append(Character.forDigit((b>>>4) & 0xf, 16));
+			ret.append(Character.forDigit(b & 0xf, 16));
+		}
+		return ret.toString();
+	}
+	public String getChecksum() {
+		return checksum;
+	}
+	public String getModelFingerprint() {
+		return modelFingerprint;
+	}
+	public File getPoolDir() {
+		return new File(baseDir,checksum+"-"+modelFingerprint);
+	}
+	/** @return messages about the reference objects, that were reported by the run that wrote the pool.
+	 * Only valid after a successful open().
+	 */
+	public List<IoxLogEvent> getMessages() {
+		return messages;
+	}
+	/** opens the pool.
+	 * @return baskets of the pool or null, if there is no usable pool
+	 * (not yet written, other format version or other model).
+	 */
+	public List<Basket> open(ObjectPoolManager objPoolManager,Map<String,Object> tag2class,boolean doItfOidPerTable) throws IOException {
+		File poolDir=getPoolDir();
+		File propFile=new File(poolDir,PROPERTIES_FILE);
+		if(!propFile.isFile()) {
+			return null;
+		}
+		Properties props=new Properties();
+		InputStream in=new FileInputStream(propFile);
+		try {
+			props.load(in);
+		}finally {
+			in.close();
+		}
+		if(!Integer.toString(FORMAT_VERSION).equals(props.getProperty(PROP_VERSION))
+				|| !checksum.equals(props.getProperty(PROP_CHECKSUM))
+				|| !modelFingerprint.equals(props.getProperty(PROP_MODEL))
+				|| !Boolean.toString(doItfOidPerTable).equals(props.getProperty(PROP_OIDPERTABLE))) {
+			return null;
+		}
+		int basketc=Integer.parseInt(props.getProperty(PROP_BASKETCOUNT));
+		// read all indices first; the pool is only usable if all classes are known
+		List<ObjectPoolKeyIndex> keyIndices=new ArrayList<ObjectPoolKeyIndex>();
+		for(int i=0;i<basketc;i++) {
+			String bid=props.getProperty(PROP_BASKET+i+PROP_BID);
+			ObjectPoolKeyIndex keyIndex=readIndex(new File(poolDir,getBasketFilename(i)+".idx"),bid,tag2class);
+			if(keyIndex==null) {
+				return null;
+			}
+			keyIndices.add(keyIndex);
+		}
+		List<Basket> ret=new ArrayList<Basket>();
+		for(int i=0;i<basketc;i++) {
+			String prefix=PROP_BASKET+i;
+			Map<String,String> genericDomains=new HashMap<String,String>();
+			for(String name:props.stringPropertyNames()) {
+				if(name.startsWith(prefix+PROP_DOMAIN)) {
+					genericDomains.put(name.substring(prefix.length()+PROP_DOMAIN.length()), props.getProperty(name));
+				}
+			}
+			MappedSegmentLog storage=new MappedSegmentLog(new File(poolDir,getBasketFilename(i)+".dat"));
+			ObjPoolImpl2<ObjectPoolKey,IomObject> objects=(ObjPoolImpl2<ObjectPoolKey,IomObject>)objPoolManager.newObjectPoolImpl2(ObjectPool.class.getSimpleName(),new IomObjectSerializer(),keyIndices.get(i),storage);
+			ret.add(new Basket(props.getProperty(prefix+PROP_BID),props.getProperty(prefix+PROP_TOPIC),genericDomains,objects));
+		}
+		messages=readMessages(new File(poolDir,MESSAGES_FILE));
+		return ret;
+	}
+	private static ObjectPoolKeyIndex readIndex(File file,String bid,Map<String,Object> tag2class) throws IOException {
+		ObjectPoolKeyIndex ret=new ObjectPoolKeyIndex();
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file),SegmentLog.DEFAULT_BUFFER_SIZE));
+		try {
+			int keyc=in.readInt();
+			for(int i=0;i<keyc;i++) {
+				String oid=in.readUTF();
+				String className=in.readUTF();
+				long pos=in.readLong();
+				Viewable aclass=null;
+				if(className.length()>0) {
+					Object modelEle=tag2class.get(className);
+					if(!(modelEle instanceof Viewable)) {
+						// model changed
+						return null;
+					}
+					aclass=(Viewable)modelEle;
+				}
+				ret.put(new ObjectPoolKey(oid,aclass,bid), pos);
+			}
+		}finally {
+			in.close();
+		}
+		return ret;
+	}
+	/** writes the given baskets of the object pool as a new pool.
+	 * An existing (outdated) pool with the same checksum and model is replaced.
+	 * @param baskets reference data baskets, as started by the StartBasketEvents.
+	 * @param messages messages about the reference objects, to be reported again by runs that reuse the pool.
+	 */
+	public void write(List<ch.interlis.iox.StartBasketEvent> baskets,ObjectPool objectPool,boolean doItfOidPerTable,List<IoxLogEvent> messages) throws IOException {
+		File tmpDir=new File(baseDir,checksum+"."+ObjectPoolManager.getTmpName());
+		if(!tmpDir.mkdirs()) {
+			throw new IOException("failed to create "+tmpDir.getPath());
+		}
+		try {
+			Properties props=new Properties();
+			props.setProperty(PROP_VERSION, Integer.toString(FORMAT_VERSION));
+			props.setProperty(PROP_CHECKSUM, checksum);
+			props.setProperty(PROP_MODEL, modelFingerprint);
+			props.setProperty(PROP_OIDPERTABLE, Boolean.toString(doItfOidPerTable));
+			props.setProperty(PROP_BASKETCOUNT, Integer.toString(baskets.size()));
+			for(int i=0;i<baskets.size();i++) {
+				ch.interlis.iox.StartBasketEvent basket=baskets.get(i);
+				String prefix=PROP_BASKET+i;
+				props.setProperty(prefix+PROP_BID, basket.getBid());
+				props.setProperty(prefix+PROP_TOPIC, basket.getType());
+				if(basket instanceof ch.interlis.iox_j.StartBasketEvent) {
+					for(Map.Entry<String,String> domain:((ch.interlis.iox_j.StartBasketEvent) basket).getDomains().entrySet()) {
+						props.setProperty(prefix+PROP_DOMAIN+domain.getKey(), domain.getValue());
+					}
+				}
+				writeBasket(tmpDir,i,objectPool.getObjectsOfBasketId(basket.getBid()));
+			}
+			writeMessages(new File(tmpDir,MESSAGES_FILE),messages);
+			OutputStream out=new FileOutputStream(new File(tmpDir,PROPERTIES_FILE));
+			try {
+				props.store(out, null);
+			}finally {
+				out.close();
+			}
+			File poolDir=getPoolDir();
+			if(poolDir.exists()) {
+				deleteDir(poolDir);
+			}
+			if(!tmpDir.renameTo(poolDir) && !poolDir.exists()) {
+				throw new IOException("failed to rename "+tmpDir.getPath()+" to "+poolDir.getPath());
+			}
+			// else a concurrent run may have written the same pool
+		}finally {
+			if(tmpDir.exists()) {
+				deleteDir(tmpDir);
+			}
+		}
+	}
+	private static void writeBasket(File dir,int basketIdx,ObjPoolImpl2<ObjectPoolKey,IomObject> objects) throws IOException {
+		long[] positions=objects.getPositionsInKeyOrder();
+		// copy the serialized values in the order of the existing storage
+		long[] sortedPositions=positions.clone();
+		Arrays.sort(sortedPositions);
+		long[] newPositions=new long[sortedPositions.length];
+		DataOutputStream dat=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir,getBasketFilename(basketIdx)+".dat")),SegmentLog.DEFAULT_BUFFER_SIZE));
+		try {
+			Iterator<byte[]> records=objects.getStorage().scan(sortedPositions);
+			long pos=0L;
+			for(int i=0;i<sortedPositions.length;i++) {
+				byte[] record=records.next();
+				newPositions[i]=pos;
+				dat.writeInt(record.length);
+				dat.write(record);
+				pos+=4+record.length;
+			}
+		}finally {
+			dat.close();
+		}
+		DataOutputStream idx=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir,getBasketFilename(basketIdx)+".idx")),SegmentLog.DEFAULT_BUFFER_SIZE));
+		try {
+			idx.writeInt(positions.length);
+			Iterator<ObjectPoolKey> keys=objects.keyIterator();
+			for(int i=0;i<positions.length;i++) {
+				ObjectPoolKey key=keys.next();
+				idx.writeUTF(key.getOid());
+				Viewable aclass=key.getClassValue();
+				idx.writeUTF(aclass!=null ? aclass.getScopedName(null) : "");
+				idx.writeLong(newPositions[Arrays.binarySearch(sortedPositions, positions[i])]);
+			}
+		}finally {
+			idx.close();
+		}
+	}
+	private static void writeMessages(File file,List<IoxLogEvent> messages) throws IOException {
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),SegmentLog.DEFAULT_BUFFER_SIZE));
+		try {
+			out.writeInt(messages.size());
+			for(IoxLogEvent message:messages) {
+				out.writeInt(message.getEventKind());
+				writeString(out,message.getEventMsg());
+				writeString(out,message.getEventId());
+				writeString(out,message.getDataSource());
+				Integer lineNr=message.getSourceLineNr();
+				out.writeInt(lineNr!=null ? lineNr : -1);
+				writeString(out,message.getSourceObjectTag());
+				writeString(out,message.getSourceObjectTechId());
+				writeString(out,message.getSourceObjectUsrId());
+				writeString(out,message.getSourceObjectXtfId());
+				writeString(out,message.getModelEleQName());
+				writeDouble(out,message.getGeomC1());
+				writeDouble(out,message.getGeomC2());
+				writeDouble(out,message.getGeomC3());
+			}
+		}finally {
+			out.close();
+		}
+	}
+	private static List<IoxLogEvent> readMessages(File file) throws IOException {
+		List<IoxLogEvent> ret=new ArrayList<IoxLogEvent>();
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file),SegmentLog.DEFAULT_BUFFER_SIZE));
+		try {
+			int messagec=in.readInt();
+			for(int i=0;i<messagec;i++) {
+				int eventKind=in.readInt();
+				String eventMsg=readString(in);
+				String eventId=readString(in);
+				String dataSource=readString(in);
+				int lineNr=in.readInt();
+				String tag=readString(in);
+				String techId=readString(in);
+				String usrId=readString(in);
+				String xtfId=readString(in);
+				String modelEleQName=readString(in);
+				Double geomC1=readDouble(in);
+				Double geomC2=readDouble(in);
+				Double geomC3=readDouble(in);
+				ret.add(new LogEventImpl(dataSource,new java.util.Date(),eventId,eventKind,eventMsg,null,
+						lineNr!=-1 ? Integer.valueOf(lineNr) : null,tag,techId,usrId,xtfId,modelEleQName,geomC1,geomC2,geomC3,null));
+			}
+		}finally {
+			in.close();
+		}
+		return ret;
+	}
+	private static void writeString(DataOutputStream out,String value) throws IOException {
+		out.writeBoolean(value!=null);
+		if(value!=null) {
+			// writeUTF() is limited to 64K
+			byte[] utf8=value.getBytes("UTF-8");
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+	}
+	private static String readString(DataInputStream in) throws IOException {
+		if(!in.readBoolean()) {
+			return null;
+		}
+		byte[] utf8=new byte[in.readInt()];
+		in.readFully(utf8);
+		return new String(utf8,"UTF-8");
+	}
+	private static void writeDouble(DataOutputStream out,Double value) throws IOException {
+		out.writeBoolean(value!=null);
+		if(value!=null) {
+			out.writeDouble(value);
+		}
+	}
+	private static Double readDouble(DataInputStream in) throws IOException {
+		if(!in.readBoolean()) {
+			return null;
+		}
+		return in.readDouble();
+	}
+	/** logging, that passes the events on and adds them to a list, to be written into the pool.
+	 */
+	public static class MessageRecorder implements IoxLogging {
+		private IoxLogging logging=null;
+		private List<IoxLogEvent> messages=null;
+		public MessageRecorder(IoxLogging logging,List<IoxLogEvent> messages) {
+			this.logging=logging;
+			this.messages=messages;
+		}
+		@Override
+		public void addEvent(IoxLogEvent event) {
+			if(event!=null) {
+				messages.add(event);
+			}
+			logging.addEvent(event);
+		}
+	}
+	private static String getBasketFilename(int basketIdx) {
+		return "basket"+basketIdx;
+	}
+	private static void deleteDir(File dir) {
+		File[] files=dir.listFiles();
+		if(files!=null) {
+			for(File file:files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,151 @@
+package ch.interlis.iox_j.validator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
+import ch.ehi.iox.objpool.impl.StringKeyIndex;
+import ch.interlis.ili2c.metamodel.RoleDef;
+import ch.interlis.ili2c.metamodel.Viewable;
+import ch.interlis.ili2c.metamodel.ViewableTransferElement;
+import ch.interlis.iom.IomObject;
+
+/** Index of the references of objects (by role), to navigate roles in reverse direction.
+ * The index is built while the objects are added to the ObjectPool.
+ * It doesn't hold the objects, but per reference the id of the referencing object
+ * (basket id, oid as used by the ObjectPool and the tag of the object).
+ * The entries of one referenced object are chained records in a pool storage;
+ * only the position of the last record is held in a compact key index.
+ */
+public class ReverseRoleIndex {
+	private static final long NO_RECORD=-1L;
+	private ObjectPoolManager objPoolManager=null;
+	private PoolStorage records=null;
+	/** roleName+'\0'+refoid (lower case) to position of the last record
+	 */
+	private StringKeyIndex heads=new StringKeyIndex();
+	private HashMap<Viewable,String[]> roleNamesOfClass=new HashMap<Viewable,String[]>();
+	private ByteArrayOutputStream recordBuf=new ByteArrayOutputStream();
+	private long entryCount=0L;
+
+	/** A reference of an object.
+	 */
+	public static class Entry {
+		private String basketId;
+		private String oid;
+		private String tag;
+		private String refOid;
+		private Entry(String basketId,String oid,String tag,String refOid) {
+			this.basketId=basketId;
+			this.oid=oid;
+			this.tag=tag;
+			this.refOid=refOid;
+		}
+		public String getBasketId() {
+			return basketId;
+		}
+		/** oid of the referencing object, as used as key by the ObjectPool.
+		 */
+		public String getOid() {
+			return oid;
+		}
+		public String getTag() {
+			return tag;
+		}
+		/** oid of the referenced object, as given by the referencing object.
+		 */
+		public String getRefOid() {
+			return refOid;
+		}
+	}
+
+	public ReverseRoleIndex(ObjectPoolManager objPoolManager) {
+		this.objPoolManager=objPoolManager;
+	}
+	/** adds the references of the given object.
+	 * @param oid oid of the object, as used as key by the ObjectPool.
+	 */
+	public void addObject(IomObject iomObj,Viewable aclass,String basketId,String oid) {
+		String roleNames[]=getRoleNames(aclass);
+		for(String roleName:roleNames) {
+			IomObject refStruct=iomObj.getattrobj(roleName, 0);
+			if(refStruct==null) {
+				continue;
+			}
+			String refOid=refStruct.getobjectrefoid();
+			if(refOid==null) {
+				continue;
+			}
+			String key=getKey(roleName,refOid);
+			try {
+				recordBuf.reset();
+				DataOutputStream out=new DataOutputStream(recordBuf);
+				out.writeUTF(basketId);
+				out.writeUTF(oid);
+				out.writeUTF(iomObj.getobjecttag());
+				out.writeUTF(refOid);
+				out.writeLong(heads.get(key));
+				out.flush();
+				if(records==null) {
+					records=objPoolManager.newStorage(this.getClass().getSimpleName());
+				}
+				long pos=records.append(recordBuf.toByteArray());
+				heads.put(key, pos);
+				entryCount++;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+	/** @return the references by the given role to the given oid (compared case insensitive),
+	 * in the order they were added.
+	 */
+	public List<Entry> getEntries(String roleName,String refOid) {
+		ArrayList<Entry> ret=new ArrayList<Entry>();
+		long pos=heads.get(getKey(roleName,refOid));
+		try {
+			while(pos!=NO_RECORD) {
+				DataInputStream in=new DataInputStream(new ByteArrayInputStream(records.read(pos)));
+				ret.add(new Entry(in.readUTF(),in.readUTF(),in.readUTF(),in.readUTF()));
+				pos=in.readLong();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		Collections.reverse(ret);
+		return ret;
+	}
+	public long getEntryCount() {
+		return entryCount;
+	}
+	private static String getKey(String roleName,String refOid) {
+		return roleName+'\0'+refOid.toLowerCase();
+	}
+	/** @return names of the roles, that are references in objects of the given class.
+	 */
+	private String[] getRoleNames(Viewable aclass) {
+		String[] ret=roleNamesOfClass.get(aclass);
+		if(ret==null) {
+			ArrayList<String> roleNames=new ArrayList<String>();
+			Iterator<ViewableTransferElement> propi=aclass.getAttributesAndRoles2();
+			while(propi.hasNext()) {
+				ViewableTransferElement prop=propi.next();
+				if(prop.obj instanceof RoleDef) {
+					roleNames.add(((RoleDef) prop.obj).getName());
+				}
+			}
+			ret=roleNames.toArray(new String[roleNames.size()]);
+			roleNamesOfClass.put(aclass, ret);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,206 @@
+package ch.interlis.iox_j.validator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ch.ehi.basics.logging.EhiLogger;
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.PoolStorage;
+import ch.ehi.iox.objpool.impl.LongCounterMap;
+import ch.interlis.iom.IomObject;
+
+/** Index of the value tuples of one uniqueness constraint.
+ * Each tuple is encoded into a compact binary key. Two keys are equal, if the tuples are equal
+ * according to AttributeArray.equals(). The key and the oid of the object
+ * are appended as a record to a pool storage (that is spilled to disk by the ObjectPoolManager);
+ * a 128 bit fingerprint of the key is mapped to the position of the record.
+ * The keys are only compared, if the fingerprints are equal. Records with the same
+ * fingerprint but different keys are chained.
+ */
+public class UniqueValueIndex {
+	private static final long NO_RECORD=-1L;
+	private static final int TAG_STRING=1;
+	private static final int TAG_OBJECT=2;
+	private static final int TAG_NULL=3;
+	private static final int TAG_VALUE=4;
+	private ObjectPoolManager objPoolManager=null;
+	private String poolName=null;
+	/** fingerprint to position+1 of the last record
+	 */
+	private LongCounterMap fingerprints=null;
+	private PoolStorage records=null;
+	private ByteArrayOutputStream keyBuf=new ByteArrayOutputStream();
+	private DataOutputStream keyOut=new DataOutputStream(keyBuf);
+	private long fingerprint1=0L;
+	private long fingerprint2=0L;
+	private long size=0L;
+	private long collisions=0L;
+	/** set by encodeKey(), if the tuple contains a value, that is not equal to any other value.
+	 */
+	private boolean isUnequal=false;
+
+	public UniqueValueIndex(ObjectPoolManager objPoolManager,String poolName) {
+		this.objPoolManager=objPoolManager;
+		this.poolName=poolName;
+	}
+	/** adds the given values, if they are not yet in the index.
+	 * @param oid oid of the object with the given values.
+	 * @return null if the values are new, or the oid of the object, that was added with the same values.
+	 */
+	public String add(AttributeArray values,String oid) {
+		try {
+			byte key[]=encodeKey(values);
+			if(isUnequal) {
+				// never a duplicate; no need to keep it
+				size++;
+				return null;
+			}
+			setFingerprint(key);
+			if(fingerprints==null) {
+				fingerprints=objPoolManager.newCounterMap(poolName);
+			}
+			if(records==null) {
+				records=objPoolManager.newStorage(poolName);
+			}
+			long head=fingerprints.get(fingerprint1, fingerprint2)-1L;
+			long pos=head;
+			while(pos!=NO_RECORD) {
+				DataInputStream in=new DataInputStream(new ByteArrayInputStream(records.read(pos)));
+				byte otherKey[]=new byte[in.readInt()];
+				in.readFully(otherKey);
+				String otherOid=in.readUTF();
+				if(Arrays.equals(key, otherKey)) {
+					return otherOid;
+				}
+				collisions++;
+				pos=in.readLong();
+			}
+			ByteArrayOutputStream recordBuf=new ByteArrayOutputStream(key.length+oid.length()+16);
+			DataOutputStream out=new DataOutputStream(recordBuf);
+			out.writeInt(key.length);
+			out.write(key);
+			out.writeUTF(oid);
+			out.writeLong(head);
+			out.flush();
+			long newPos=records.append(recordBuf.toByteArray());
+			fingerprints.put(fingerprint1, fingerprint2, newPos+1L);
+			size++;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return null;
+	}
+	/** @return number of value tuples in the index.
+	 */
+	public long size() {
+		return size;
+	}
+	/** removes all values.
+	 */
+	public void clear() {
+		if(fingerprints!=null) {
+			// resets the map
+			fingerprints.close();
+		}
+		if(records!=null) {
+			try {
+				objPoolManager.closeStorage(records);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			records=null;
+		}
+		if(collisions>0L) {
+			EhiLogger.traceState(poolName+": "+collisions+" fingerprint collisions");
+		}
+		size=0L;
+		collisions=0L;
+	}
+	private byte[] encodeKey(AttributeArray values) throws IOException {
+		keyBuf.reset();
+		isUnequal=false;
+		Object valuev[]=values.getValues();
+		keyOut.writeInt(valuev.length);
+		for(Object value:valuev) {
+			encodeValue(value);
+		}
+		keyOut.flush();
+		return keyBuf.toByteArray();
+	}
+	private void encodeValue(Object value) throws IOException {
+		if(value==null) {
+			keyOut.writeByte(TAG_NULL);
+		}else if(value instanceof IomObject) {
+			keyOut.writeByte(TAG_OBJECT);
+			encodeIomObj((IomObject)value);
+		}else if(value instanceof String) {
+			keyOut.writeByte(TAG_STRING);
+			encodeString((String)value);
+		}else {
+			// other values are only equal to values of the same class
+			keyOut.writeByte(TAG_VALUE);
+			encodeString(value.getClass().getName());
+			encodeString(value.toString());
+		}
+	}
+	/** encodes the struct with all of its content, as compared by AttributeArray.equalsIomObj().
+	 */
+	private void encodeIomObj(IomObject obj) throws IOException {
+		if(obj.getobjectrefoid()!=null) {
+			// equalsIomObj() treats a reference as unequal to any other value
+			isUnequal=true;
+			return;
+		}
+		encodeString(obj.getobjecttag());
+		encodeString(obj.getobjectoid());
+		int attrc=obj.getattrcount();
+		keyOut.writeInt(attrc);
+		// attributes are compared by name, independent of their order
+		String attrNames[]=new String[attrc];
+		for(int attri=0;attri<attrc;attri++){
+			attrNames[attri]=obj.getattrname(attri);
+		}
+		Arrays.sort(attrNames);
+		for(String attrName:attrNames){
+			encodeString(attrName);
+			int valuec=obj.getattrvaluecount(attrName);
+			keyOut.writeInt(valuec);
+			for(int valuei=0;valuei<valuec;valuei++){
+				IomObject valueObj=obj.getattrobj(attrName, valuei);
+				if(valueObj!=null){
+					encodeValue(valueObj);
+				}else{
+					encodeValue(obj.getattrprim(attrName, valuei));
+				}
+			}
+		}
+	}
+	/** writes a length prefixed UTF-8 string; -1 for null. Unlike writeUTF(), the length is not limited.
+	 */
+	private void encodeString(String value) throws IOException {
+		if(value==null) {
+			keyOut.writeInt(-1);
+			return;
+		}
+		byte utf8[]=value.getBytes("UTF-8");
+		keyOut.writeInt(utf8.length);
+		keyOut.write(utf8);
+	}
+	// two independent 64 bit hashes of the key
+	private void setFingerprint(byte key[]) {
+		long h1=0xcbf29ce484222325L;
+		long h2=0x84222325cbf29ce4L;
+		for(int i=0;i<key.length;i++) {
+			int b=key[i]&0xff;
+			h1=(h1^b)*0x100000001b3L;
+			h2=(h2+b)*0x9E3779B97F4A7C15L;
+			h2^=h2>>>29;
+		}
+		fingerprint1=h1;
+		fingerprint2=h2;
+	}
+}
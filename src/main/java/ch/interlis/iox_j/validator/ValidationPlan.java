@@ -0,0 +1,68 @@
+package ch.interlis.iox_j.validator;
+
+import ch.interlis.ili2c.metamodel.AttributeDef;
+import ch.interlis.ili2c.metamodel.Cardinality;
+import ch.interlis.ili2c.metamodel.Domain;
+import ch.interlis.ili2c.metamodel.Model;
+import ch.interlis.ili2c.metamodel.Type;
+import ch.interlis.ili2c.metamodel.Viewable;
+import ch.interlis.ili2c.metamodel.ViewableTransferElement;
+
+/** The properties of a class to validate, with everything about them,
+ * that doesn't depend on the object (qualified names, resolved types, validation configuration).
+ * Created once per class by the Validator.
+ */
+class ValidationPlan {
+	/** an attribute, as validated by Validator.validateAttrValue().
+	 */
+	static class AttrCheck {
+		final AttributeDef attr;
+		final String attrName;
+		final String attrQName;
+		final String iliClassQName;
+		/** configured multiplicity validation of the attribute (or the global one).
+		 */
+		final String validateMultiplicity;
+		final String validateType;
+		final String validateGeometryType;
+		/** the domain, if the attribute type is a domain reference, else null.
+		 */
+		final Domain domain;
+		final Model model;
+		/** type of the attribute, with all domain references resolved.
+		 */
+		final Type type;
+		final Cardinality cardinality;
+		AttrCheck(AttributeDef attr,String attrQName,String iliClassQName,String validateMultiplicity,String validateType,String validateGeometryType,Domain domain,Model model,Type type,Cardinality cardinality) {
+			this.attr=attr;
+			this.attrName=attr.getName();
+			this.attrQName=attrQName;
+			this.iliClassQName=iliClassQName;
+			this.validateMultiplicity=validateMultiplicity;
+			this.validateType=validateType;
+			this.validateGeometryType=validateGeometryType;
+			this.domain=domain;
+			this.model=model;
+			this.type=type;
+			this.cardinality=cardinality;
+		}
+	}
+	/** an attribute or role of the class, in the order of Viewable.getAttributesAndRoles2().
+	 */
+	static class Prop {
+		final ViewableTransferElement transferElement;
+		/** null, if it is a role.
+		 */
+		final AttrCheck attrCheck;
+		Prop(ViewableTransferElement transferElement,AttrCheck attrCheck) {
+			this.transferElement=transferElement;
+			this.attrCheck=attrCheck;
+		}
+	}
+	final Viewable aclass;
+	final Prop[] props;
+	ValidationPlan(Viewable aclass,Prop[] props) {
+		this.aclass=aclass;
+		this.props=props;
+	}
+}
@@ -1,6 +1,7 @@
 package ch.interlis.iox_j.validator;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -28,6 +29,7 @@ import ch.ehi.basics.logging.EhiLogger;
 import ch.ehi.basics.settings.Settings;
 import ch.ehi.basics.types.OutParam;
 import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.StorageEngine;
 import ch.interlis.ili2c.Ili2cException;
 import ch.interlis.ili2c.gui.UserSettings;
 import ch.interlis.ili2c.metamodel.AbstractClassDef;
@@ -128,6 +130,7 @@ import ch.interlis.iom_j.xtf.XtfWriter;
 import ch.interlis.iom_j.xtf.impl.MyHandler;
 import ch.interlis.iox.IoxEvent;
 import ch.interlis.iox.IoxException;
+import ch.interlis.iox.IoxLogEvent;
 import ch.interlis.iox.IoxLogging;
 import ch.interlis.iox.IoxReader;
 import ch.interlis.iox.IoxValidationConfig;
@@ -168,6 +171,32 @@ public class Validator implements ch.interlis.iox.IoxValidator {
     public static final String CONFIG_DO_SINGLE_PASS_DO="doSinglePass";
 	public static final String CONFIG_CUSTOM_FUNCTIONS="ch.interlis.iox_j.validator.customFunctions";
 	public static final String CONFIG_OBJECT_RESOLVERS="ch.interlis.iox_j.validator.objectResolvers";
+	/** max. number of bytes the object pools may hold on the heap, before they are spilled to the temp directory.
+	 * If set, the validator gets an own budget; otherwise it shares the default budget with all other object pools.
+	 */
+	public static final String CONFIG_OBJPOOL_MEMORY_BUDGET="ch.interlis.iox_j.validator.objPoolMemoryBudget";
+	/** transient object; the ch.ehi.iox.objpool.StorageEngine of the object pools.
+	 */
+	public static final String CONFIG_OBJPOOL_STORAGE_ENGINE="ch.interlis.iox_j.validator.objPoolStorageEngine";
+	/** number of nodes the BTree based object pools keep in memory.
+	 */
+	public static final String CONFIG_OBJPOOL_BTREE_CACHE_SIZE="ch.interlis.iox_j.validator.objPoolBTreeCacheSize";
+	/** max. number of entries per node of the BTree based object pools.
+	 */
+	public static final String CONFIG_OBJPOOL_BTREE_FAN_OUT="ch.interlis.iox_j.validator.objPoolBTreeFanOut";
+	/** number of threads used to validate the polygons of an AREA attribute. Default is 1.
+	 */
+	public static final String CONFIG_AREA_VALIDATION_THREADS="ch.interlis.iox_j.validator.areaValidationThreads";
+	/** keeps the polygons of AREA attributes in a temporary storage instead of on the heap, 
+	 * and validates them in spatially sorted batches.
+	 * @see ch.interlis.iom_j.itf.impl.ExternalAreaValidator
+	 */
+	public static final String CONFIG_AREA_VALIDATION_EXTERNAL="ch.interlis.iox_j.validator.areaValidationExternal";
+	public static final String CONFIG_AREA_VALIDATION_EXTERNAL_DO="areaValidationExternal";
+	/** directory of the persistent reference data pools.
+	 * @see #addReferenceDataPool(String)
+	 */
+	public static final String CONFIG_REFERENCE_DATA_POOL_DIR="ch.interlis.iox_j.validator.referenceDataPoolDir";
     public static final String CONFIG_DEBUG_XTFOUT = "ch.interlis.iox_j.validator.debugXtfOutput";
 	public static final String CONFIG_VERBOSE = "ch.interlis.iox_j.validator.verbose";
 	// the object count result as value in map with the appropriate function as key.
@@ -175,6 +204,12 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	private ObjectPoolManager objPoolManager=null;
 	private ObjectPool objectPool = null;
 	private LinkPool linkPool=null;
+	private ReferenceDataPool pendingReferenceDataPool=null;
+	private List<ch.interlis.iox.StartBasketEvent> pendingReferenceBaskets=null;
+	/** messages about the reference objects, that are added to the pending pool.
+	 */
+	private List<IoxLogEvent> pendingReferenceMessages=null;
+	private String modelFingerprint=null;
 	private ch.interlis.iox.IoxValidationConfig validationConfig=null;
 	//private ch.interlis.iox.IoxDataPool pipelinePool=null;
 	private PipelinePool pipelinePool=null;
@@ -186,6 +221,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	private Settings settings=null;
 	private boolean validationOff=false;
 	private boolean singlePass=false;
+	private boolean externalAreaValidation=false;
     private boolean validateSimpleBoundary=false;
 	private String areaOverlapValidation=null;
 	private String constraintValidation=null;
@@ -194,6 +230,10 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	Pattern patternForTextOIdValidation = null;
 	Pattern patternForStandartOidValidation = null;
     Pattern patternForBase64Validation = null;
+	private Pattern patternForInterlisNameValidation = null;
+	private Pattern patternForUriValidation = null;
+	private Pattern patternForUuidValidation = null;
+	private PatternCache patternCache=new PatternCache();
 	private boolean enforceTypeValidation=false;
 	private boolean enforceConstraintValidation=false;
 	private boolean enforceTargetValidation=false;
@@ -205,6 +245,21 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	private Map<AttributeDef,ItfAreaPolygon2Linetable> areaAttrs=new HashMap<AttributeDef,ItfAreaPolygon2Linetable>();
 	private Map<AttributeDef, Boolean> areaAttrsAreSurfaceTopologiesValid = new HashMap<AttributeDef, Boolean>();
 	private Map<String,Class> customFunctions=new HashMap<String,Class>(); // qualified Interlis function name -> java class that implements that function
+	private static final int FUNCTIONS_TEXT=1;
+	private static final int FUNCTIONS_MATH=2;
+	private static final int FUNCTIONS_RTS=3;
+	private static final int FUNCTIONS_INTERLIS=4;
+	private static final int FUNCTIONS_INTERLIS_EXT=5;
+	private static final int FUNCTIONS_DMAVTYM_TOPOLOGIE=6;
+	private static final int FUNCTIONS_OBJECTPOOL=7;
+	private static final int FUNCTIONS_CUSTOM=8;
+	/** per function, which of the FUNCTIONS_ libraries implements it; resolved on the first call of the function.
+	 * Only the library is cached; the library itself still selects the implementation by the name of the function.
+	 */
+	private HashMap<Function,Integer> functionLibraries=new HashMap<Function,Integer>();
+	/** type of text values created while evaluating expressions; never modified.
+	 */
+	private final TextType texttype=new TextType();
 	private List<ExternalObjectResolver> extObjResolvers=null; // java class that implements ExternalObjectResolver
 	private HashMap<Constraint, Projection> additionalConstraints=new HashMap<Constraint, Projection>();
 	private Map<PlausibilityConstraint, PlausibilityPoolValue> plausibilityConstraints=new LinkedHashMap<PlausibilityConstraint, PlausibilityPoolValue>();
@@ -216,6 +271,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	private Map<String, String> uniquenessOfBid = new HashMap<String, String>();
     private Map<String, String> stableBids = new HashMap<String, String>();
 	private String globalMultiplicity=null;
+	private HashMap<Viewable,ValidationPlan> validationPlans=new HashMap<Viewable,ValidationPlan>();
 	private ch.interlis.ilirepository.ReposManager repositoryManager = null;
 	private java.util.ResourceBundle rsrc=java.util.ResourceBundle.getBundle("ch.interlis.iox_j.validator.ValidatorMessages");
     private IoxWriter writer=null;
@@ -268,10 +324,30 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		this.patternForTextOIdValidation = Pattern.compile(REGEX_FOR_TEXTOID_VALIDATION);
 		this.patternForStandartOidValidation = Pattern.compile(REGEX_FOR_STANDARTOID_VALIDATION);
         this.patternForBase64Validation = Pattern.compile(REGEX_FOR_BASE64_VALIDATION);
+		this.patternForInterlisNameValidation = Pattern.compile("[a-zA-Z]{1}([a-zA-Z0-9\\_]{1,})");
+		// see http://blog.dieweltistgarnichtso.net/constructing-a-regular-expression-that-matches-uris
+		this.patternForUriValidation = Pattern.compile("((?<=\\()[A-Za-z][A-Za-z0-9\\+\\.\\-]*:([A-Za-z0-9\\.\\-_~:/\\?#\\[\\]@!\\$&'\\(\\)\\*\\+,;=]|%[A-Fa-f0-9]{2})+(?=\\)))|([A-Za-z][A-Za-z0-9\\+\\.\\-]*:([A-Za-z0-9\\.\\-_~:/\\?#\\[\\]@!\\$&'\\(\\)\\*\\+,;=]|%[A-Fa-f0-9]{2})+)");
+		this.patternForUuidValidation = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}?");
 		this.settings.setTransientObject(InterlisFunction.IOX_DATA_POOL,pipelinePool);
         this.settings.setTransientObject(InterlisFunction.IOX_VALIDATOR,this);
 		this.pipelinePool=pipelinePool;
 		objPoolManager=new ObjectPoolManager();
+		String objPoolMemoryBudget=settings.getValue(CONFIG_OBJPOOL_MEMORY_BUDGET);
+		if(objPoolMemoryBudget!=null){
+			objPoolManager.setMemoryBudget(Long.parseLong(objPoolMemoryBudget));
+		}
+		String objPoolBTreeCacheSize=settings.getValue(CONFIG_OBJPOOL_BTREE_CACHE_SIZE);
+		if(objPoolBTreeCacheSize!=null){
+			objPoolManager.setBTreeCacheSize(Integer.parseInt(objPoolBTreeCacheSize));
+		}
+		String objPoolBTreeFanOut=settings.getValue(CONFIG_OBJPOOL_BTREE_FAN_OUT);
+		if(objPoolBTreeFanOut!=null){
+			objPoolManager.setBTreeFanOut(Integer.parseInt(objPoolBTreeFanOut));
+		}
+		StorageEngine objPoolStorageEngine=(StorageEngine)settings.getTransientObject(CONFIG_OBJPOOL_STORAGE_ENGINE);
+		if(objPoolStorageEngine!=null){
+			objPoolManager.setStorageEngine(objPoolStorageEngine);
+		}
 		Map<String,Class> cf=(Map<String, Class>) settings.getTransientObject(CONFIG_CUSTOM_FUNCTIONS);
 		if(cf!=null){
 			customFunctions=cf;
@@ -284,6 +360,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		
         this.singlePass = CONFIG_DO_SINGLE_PASS_DO.equals(settings.getValue(CONFIG_DO_SINGLE_PASS));
 		this.doItfLineTables = CONFIG_DO_ITF_LINETABLES_DO.equals(settings.getValue(CONFIG_DO_ITF_LINETABLES));
+		this.externalAreaValidation = CONFIG_AREA_VALIDATION_EXTERNAL_DO.equals(settings.getValue(CONFIG_AREA_VALIDATION_EXTERNAL));
 		this.doItfOidPerTable = CONFIG_DO_ITF_OIDPERTABLE_DO.equals(settings.getValue(CONFIG_DO_ITF_OIDPERTABLE));
 		this.isVerbose = ValidationConfig.TRUE.equals(settings.getTransientValue(CONFIG_VERBOSE));
 		allObjectsAccessible=ValidationConfig.TRUE.equals(validationConfig.getConfigValue(ValidationConfig.PARAMETER, ValidationConfig.ALL_OBJECTS_ACCESSIBLE));
@@ -414,9 +491,73 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	public void setLoggingHandler(IoxLogging handler) {
 		errs=handler;
 	}
+	/** @return cache of the regular expressions used to validate values.
+	 */
+	public PatternCache getPatternCache() {
+		return patternCache;
+	}
     public void addReferenceData(ch.interlis.iox.IoxEvent event) {
         validate(event,false);
     }
+    /** adds the reference data, that was pooled by an earlier run under the given checksum.
+     * Requires the setting CONFIG_REFERENCE_DATA_POOL_DIR.
+     * @param checksum checksum of the reference data file (see ReferenceDataPool.getChecksum()).
+     * @return true if the pooled data was added. false if the caller has to add the reference data 
+     * with addReferenceData(); the data is then pooled (at its EndTransferEvent) for later runs.
+     */
+    public boolean addReferenceDataPool(String checksum) {
+        String poolDir=settings.getValue(CONFIG_REFERENCE_DATA_POOL_DIR);
+        if(validationOff || singlePass || poolDir==null || writer!=null){
+            return false;
+        }
+        if(modelFingerprint==null){
+            try {
+                modelFingerprint=ReferenceDataPool.getModelFingerprint(td);
+            } catch (IOException e) {
+                EhiLogger.traceState("failed to compute model fingerprint; "+e);
+                return false;
+            }
+        }
+        ReferenceDataPool pool=new ReferenceDataPool(new File(poolDir),checksum,modelFingerprint);
+        List<ReferenceDataPool.Basket> baskets=null;
+        try {
+            baskets=pool.open(objPoolManager,tag2class,doItfOidPerTable);
+        } catch (IOException e) {
+            EhiLogger.traceState("failed to open reference data pool "+pool.getPoolDir().getPath()+"; "+e);
+        }
+        if(baskets==null){
+            pendingReferenceDataPool=pool;
+            pendingReferenceBaskets=new ArrayList<ch.interlis.iox.StartBasketEvent>();
+            pendingReferenceMessages=new ArrayList<IoxLogEvent>();
+            return false;
+        }
+        EhiLogger.traceState("use reference data pool "+pool.getPoolDir().getPath());
+        // report the messages about the reference objects again, as if the data was read
+        for(IoxLogEvent message:pool.getMessages()){
+            errs.addEvent(message);
+        }
+        for(ReferenceDataPool.Basket basket:baskets){
+            objectPool.addReferenceBasket(basket.getBid(), basket.getObjects());
+            ch.interlis.iox_j.StartBasketEvent startBasketEvent=new ch.interlis.iox_j.StartBasketEvent(basket.getTopic(),basket.getBid(),basket.getGenericDomains());
+            currentBasketId=basket.getBid();
+            objectPool.startBasket(currentBasketId,false);
+            validateBasketEvent(startBasketEvent);
+            cleanupCurrentBasket();
+        }
+        return true;
+    }
+    private void writeReferenceDataPool() {
+        ReferenceDataPool pool=pendingReferenceDataPool;
+        pendingReferenceDataPool=null;
+        try {
+            pool.write(pendingReferenceBaskets, objectPool, doItfOidPerTable, pendingReferenceMessages);
+            EhiLogger.traceState("reference data pooled in "+pool.getPoolDir().getPath());
+        } catch (IOException e) {
+            EhiLogger.traceState("failed to write reference data pool "+pool.getPoolDir().getPath()+"; "+e);
+        }
+        pendingReferenceBaskets=null;
+        pendingReferenceMessages=null;
+    }
     @Override
     public void validate(ch.interlis.iox.IoxEvent event) {
         validate(event,true);
@@ -440,10 +581,18 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 			currentBasketId = startBasketEvent.getBid();
 			if(isValidId(currentBasketId)){
 			    objectPool.startBasket(currentBasketId,doValidation);
+			    if(!doValidation && pendingReferenceDataPool!=null) {
+			        pendingReferenceBaskets.add(startBasketEvent);
+			    }
 			}
 			validateBasketEvent(startBasketEvent);
 		}else if(event instanceof ch.interlis.iox.ObjectEvent){
 			IomObject iomObj=new ch.interlis.iom_j.Iom_jObject(((ch.interlis.iox.ObjectEvent)event).getIomObject());
+			IoxLogging logging=errs;
+			if(!doValidation && pendingReferenceDataPool!=null) {
+			    // keep the messages, to report them again, when the pool is reused
+			    errs=new ReferenceDataPool.MessageRecorder(logging,pendingReferenceMessages);
+			}
 			try {
                 validateObject(iomObj,null,null,doValidation);
 			} catch (IoxException e) {
@@ -451,6 +600,8 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 			}catch(RuntimeException e) {
 				EhiLogger.traceState(rsrc.getString("validate.failingObject") + iomObj.toString());
 				throw e;
+			}finally {
+			    errs=logging;
 			}
 		} else if (event instanceof ch.interlis.iox.EndBasketEvent){
 		    cleanupCurrentBasket();
@@ -459,6 +610,8 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	            if(autoSecondPass){
 	                doSecondPass();
 	            }
+		    }else if(pendingReferenceDataPool!=null) {
+		        writeReferenceDataPool();
 		    }
 		}
         if(writer!=null) {
@@ -869,6 +1022,11 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 
 	private void validateAllAreas() {
 		setCurrentMainObj(null);
+		int areaValidationThreads=1;
+		String areaValidationThreadsValue=settings.getValue(CONFIG_AREA_VALIDATION_THREADS);
+		if(areaValidationThreadsValue!=null){
+			areaValidationThreads=Integer.parseInt(areaValidationThreadsValue);
+		}
 		for(AttributeDef attr:areaAttrs.keySet()){
 			ItfAreaPolygon2Linetable allLines=areaAttrs.get(attr);
 			Boolean surfaceTopologiesValid = areaAttrsAreSurfaceTopologiesValid.get(attr);
@@ -882,7 +1040,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		        if(legacyAreAreas) {
 	                intersections=allLines.validate0(maxOverlap);
 		        }else {
-	                intersections=allLines.validate1(maxOverlap);
+	                intersections=allLines.validate1(maxOverlap,areaValidationThreads);
 		        }
 				if(intersections!=null && !intersections.isEmpty()){
 					for(IoxInvalidDataException ex:intersections){ // iterate through non-overlay intersections
@@ -903,6 +1061,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 					logMsg(areaOverlapValidation,rsrc.getString("validateAllAreas.failedToValidateAREA"), getScopedName(attr));
 				}
 			}
+			allLines.close();
 		}
 	}
 	private String getScopedName(AttributeDef attr) {
@@ -1409,11 +1568,10 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 					loggedObjects.add(uniquenessConstraint);
 					errs.addEvent(errFact.logInfoMsg(rsrc.getString("validateUniquenessConstraint.validateUniqeConstraint"),getScopedName(uniquenessConstraint)));
 				}
-			    HashMap<UniquenessConstraint, HashMap<AttributeArray, String>> seenValues = null;
+			    // values of a LOCAL constraint are only unique within the current object
+			    HashMap<AttributeArray, String> seenValues = null;
 			    if(uniquenessConstraint.getLocal()) {
-		            seenValues= new HashMap<UniquenessConstraint, HashMap<AttributeArray, String>>();
-			    }else {
-		            seenValues=seenUniqueConstraintValues;
+		            seenValues= new HashMap<AttributeArray, String>();
 			    }
 
 		        if(uniquenessConstraint.getPrefix()!=null){
@@ -1426,7 +1584,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		}
 	}
 	
-	private void visitStructEle(String checkUniqueConstraint,UniquenessConstraint uniquenessConstraint, HashMap<UniquenessConstraint, HashMap<AttributeArray, String>> seenValues, String iomObjOid, Viewable iomObjClass, PathEl[] attrPath, int i, IomObject parentObject, IomObject iomObj,RoleDef role) {
+	private void visitStructEle(String checkUniqueConstraint,UniquenessConstraint uniquenessConstraint, HashMap<AttributeArray, String> seenValues, String iomObjOid, Viewable iomObjClass, PathEl[] attrPath, int i, IomObject parentObject, IomObject iomObj,RoleDef role) {
 	    if(attrPath==null || i>=attrPath.length) {
 	        OutParam<AttributeArray> values = new OutParam<AttributeArray>();
             String oidOfObjectWithDuplicateValue = validateUnique(seenValues,iomObjOid,parentObject,iomObj,uniquenessConstraint, values, role);
@@ -1678,7 +1836,6 @@ public class Validator implements ch.interlis.iox.IoxValidator {
         return value;
     }
 	public Value evaluateExpression(IomObject parentObject, String validationKind, String usageScope, IomObject iomObj, Evaluable expression,RoleDef firstRole) {
-		TextType texttype = new TextType();
 		if(expression instanceof Equality){
 			// ==
 			Equality equality = (Equality) expression;
@@ -2020,49 +2177,48 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		} else if(expression instanceof FunctionCall){
 			FunctionCall functionCallObj = (FunctionCall) expression;
 			Function currentFunction = functionCallObj.getFunction();
-			final String funcName = currentFunction.getScopedName(null);
-            if (funcName.startsWith(Text.TEXT+".") || funcName.startsWith(Text.TEXT_V2+".")) {
+			final int functionLibrary = getFunctionLibrary(currentFunction);
+            if (functionLibrary==FUNCTIONS_TEXT) {
 			    if (textFunction == null) {
 			        textFunction = new Text(this, td, validationConfig);    
 			    }
 			    
 			    return textFunction.evaluateFunction(currentFunction, functionCallObj, parentObject, validationKind, usageScope, iomObj, texttype, firstRole);
-			} else if (funcName.startsWith(Math.MATH+".") || funcName.startsWith(Math.MATH_V2+".") || funcName.startsWith(Math.MATH_V2_1 + ".")) {
+			} else if (functionLibrary==FUNCTIONS_MATH) {
 			    if(mathFunction == null) {
 	                mathFunction = new Math(this, td, validationConfig);
 			    }
 			    
 			    return mathFunction.evaluateFunction(currentFunction, functionCallObj, parentObject,
 			            validationKind, usageScope, iomObj, texttype, firstRole);
-            } else if (funcName.startsWith("MinimalRuntimeSystem01.")) {
+            } else if (functionLibrary==FUNCTIONS_RTS) {
                 if(rtsFunction == null) {
                     rtsFunction = new MinimalRuntimeSystem(this, td, validationConfig);
                 }
                 
                 return rtsFunction.evaluateFunction(currentFunction, functionCallObj, parentObject,
                         validationKind, usageScope, iomObj, texttype, firstRole);
-			} else if (!funcName.equals("INTERLIS.convertUnit") && 
-			        funcName.startsWith("INTERLIS.")) {
+			} else if (functionLibrary==FUNCTIONS_INTERLIS) {
 			    if (interlisFunction == null) {
 			        interlisFunction = new Interlis(this, td, validationConfig);
 			    }
 			    
 			    return interlisFunction.evaluateFunction(currentFunction, functionCallObj, parentObject,
 			            validationKind, usageScope, iomObj, texttype, expression, functions, td, firstRole);
-			} else if (funcName.startsWith("INTERLIS_ext.")) {
+			} else if (functionLibrary==FUNCTIONS_INTERLIS_EXT) {
 			    if (interlis_ext == null) {
 			        interlis_ext = new Interlis_ext(this, td, validationConfig);
 			    }
 			    
 			    return interlis_ext.evaluateFunction(currentFunction, parentObject, validationKind, usageScope, iomObj, expression, functions, td, firstRole);
-            } else if (funcName.startsWith(DmavtymTopologie.DMAVTYM_Topologie_V1_0 + ".") || funcName.startsWith(DmavtymTopologie.DMAVTYM_Topologie_V1_1 + ".")) {
+            } else if (functionLibrary==FUNCTIONS_DMAVTYM_TOPOLOGIE) {
                 if (dmavtymTopologie == null) {
                     dmavtymTopologie = new DmavtymTopologie(this, td, validationConfig, errFact);
                 }
 
                 return dmavtymTopologie.evaluateFunction(currentFunction, functionCallObj, parentObject,
                         validationKind, usageScope, iomObj, texttype, firstRole);
-			} else if (funcName.startsWith(ObjectPoolFunctions.OBJECTPOOL + ".")) {
+			} else if (functionLibrary==FUNCTIONS_OBJECTPOOL) {
 				if (objectPoolFunctions == null) {
 					objectPoolFunctions = new ObjectPoolFunctions(this, objectPool, errFact);
 				}
@@ -2070,8 +2226,10 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 				return objectPoolFunctions.evaluateFunction(currentFunction, functionCallObj, parentObject,
 						validationKind, usageScope, iomObj, texttype, firstRole);
 			} else {
-				String functionQname=funcName;
-				Class functionTargetClass=customFunctions.get(functionQname);
+				Class functionTargetClass=null;
+				if(functionLibrary==FUNCTIONS_CUSTOM) {
+					functionTargetClass=customFunctions.get(currentFunction.getScopedName(null));
+				}
 				if(functionTargetClass==null){
 					return Value.createNotYetImplemented();
 				}
@@ -2152,6 +2310,35 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		//TODO instance of ViewableAlias
 	}
 	
+	/** @return the FUNCTIONS_ library, that implements the given function, or 0 if there is no implementation.
+	 */
+	private int getFunctionLibrary(Function function) {
+		Integer ret=functionLibraries.get(function);
+		if(ret==null) {
+			String funcName = function.getScopedName(null);
+			if (funcName.startsWith(Text.TEXT+".") || funcName.startsWith(Text.TEXT_V2+".")) {
+				ret=FUNCTIONS_TEXT;
+			} else if (funcName.startsWith(Math.MATH+".") || funcName.startsWith(Math.MATH_V2+".") || funcName.startsWith(Math.MATH_V2_1 + ".")) {
+				ret=FUNCTIONS_MATH;
+			} else if (funcName.startsWith("MinimalRuntimeSystem01.")) {
+				ret=FUNCTIONS_RTS;
+			} else if (!funcName.equals("INTERLIS.convertUnit") && funcName.startsWith("INTERLIS.")) {
+				ret=FUNCTIONS_INTERLIS;
+			} else if (funcName.startsWith("INTERLIS_ext.")) {
+				ret=FUNCTIONS_INTERLIS_EXT;
+			} else if (funcName.startsWith(DmavtymTopologie.DMAVTYM_Topologie_V1_0 + ".") || funcName.startsWith(DmavtymTopologie.DMAVTYM_Topologie_V1_1 + ".")) {
+				ret=FUNCTIONS_DMAVTYM_TOPOLOGIE;
+			} else if (funcName.startsWith(ObjectPoolFunctions.OBJECTPOOL + ".")) {
+				ret=FUNCTIONS_OBJECTPOOL;
+			} else if (customFunctions.containsKey(funcName)) {
+				ret=FUNCTIONS_CUSTOM;
+			} else {
+				ret=0;
+			}
+			functionLibraries.put(function, ret);
+		}
+		return ret;
+	}
 	public ObjectPath parseObjectOrAttributePath(Viewable viewable, String objectPath) throws Ili2cException {
         return Ili23Parser.parseObjectOrAttributePath(td,viewable, objectPath);
 	}
@@ -2448,34 +2635,8 @@ public class Validator implements ch.interlis.iox.IoxValidator {
             return true;
         }
     }
-    private Map<RoleDef,Map<String,List<IomObject>>> targetObjects=new HashMap<RoleDef,Map<String,List<IomObject>>>();
     private List<IomObject> getTargetObjectsOfReverseRole(RoleDef role, String srcObjOid) {
-        if(!targetObjects.containsKey(role)) {
-            buildTargetObjectsMap(role);
-        }
-        return targetObjects.get(role).get(srcObjOid);
-    }
-    private void buildTargetObjectsMap(RoleDef role) {     
-        Map<String, List<IomObject>> values = new HashMap<String, List<IomObject>>();
-        targetObjects.put(role, values);
-        for (String basketId : objectPool.getDataBids()) {
-            Iterator<IomObject> objectIterator = (objectPool.getObjectsOfBasketId(basketId)).valueIterator();
-            while (objectIterator.hasNext()) { 
-                IomObject targetObj = objectIterator.next();
-                if (((Viewable)tag2class.get(targetObj.getobjecttag())).isExtending(role.getDestination())) {
-                    IomObject refStruct = targetObj.getattrobj(role.getOppEnd().getName(), 0);
-                    if (refStruct!=null) {
-                        final String refoid = normalizeOid(role.getDestination(),refStruct.getobjectrefoid());
-                        List<IomObject> objects = values.get(refoid);
-                        if (objects == null) {
-                            objects = new ArrayList<IomObject>();
-                            values.put(refoid, objects);                            
-                        }
-                        objects.add(targetObj);
-                    }
-                }
-            }
-        }
+        return objectPool.getReferencingObjects(role.getOppEnd().getName(), role.getDestination(), role.getDestination(), srcObjOid);
     }
     private IomObject getReferencedObject(RoleDef role, String oid) {
         Iterator<AbstractClassDef> targetClassIterator = role.iteratorDestination();
@@ -2490,35 +2651,9 @@ public class Validator implements ch.interlis.iox.IoxValidator {
         return targetObj;
     }
 
-    private Map<RoleDef,Map<String,List<IomObject>>> linkObjects=new HashMap<RoleDef,Map<String,List<IomObject>>>();
     private boolean legacyAreAreas=false;
     private List<IomObject> getLinkObjects(RoleDef role, String srcObjOid) {        
-        if(!linkObjects.containsKey(role)) {
-            buildLinkObjMap(role);
-        }
-        return linkObjects.get(role).get(srcObjOid);
-    }
-    private void buildLinkObjMap(RoleDef role) {     
-        Map<String, List<IomObject>> values = new HashMap<String, List<IomObject>>();
-        linkObjects.put(role, values);
-        for (String basketId : objectPool.getDataBids()) {
-            Iterator<IomObject> objectIterator = (objectPool.getObjectsOfBasketId(basketId)).valueIterator();
-            while (objectIterator.hasNext()) { 
-                IomObject linkObj = objectIterator.next();
-                if (((Viewable)tag2class.get(linkObj.getobjecttag())).isExtending(role.getContainer())) {
-                    IomObject refStruct = linkObj.getattrobj(role.getOppEnd().getName(), 0);
-                    if (refStruct!=null) {
-                        final String refoid = normalizeOid(role.getOppEnd().getDestination(),refStruct.getobjectrefoid());
-                        List<IomObject> objects = values.get(refoid);
-                        if (objects == null) {
-                            objects = new ArrayList<IomObject>();
-                            values.put(refoid, objects);                            
-                        }
-                        objects.add(linkObj);
-                    }
-                }
-            }
-        }
+        return objectPool.getReferencingObjects(role.getOppEnd().getName(), (Viewable)role.getContainer(), role.getOppEnd().getDestination(), srcObjOid);
     }
     
     private IomObject getIomObjWithIndex(IomObject iomObj, StructAttributeRef structAttributeRefValue, String currentAttrName) {
@@ -2547,18 +2682,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
         return (IomObject) objectPool.getObject(targetOid, destinationClasses, bidOfTargetObj);
     }
     public Value evaluateObjectCount(Value value) {
-		Iterator objectIterator = objectPool.getObjectsOfBasketId(currentBasketId).valueIterator();
-		int counter = 0;
-		while(objectIterator.hasNext()){
-			IomObject anObj = (IomObject) objectIterator.next();
-			if(anObj!=null){
-				Object modelElement=tag2class.get(anObj.getobjecttag());
-				Viewable viewable = (Viewable) modelElement;
-				if(value.getViewable().equals(viewable)){
-					counter+=1;
-				}
-			}
-		}
+		int counter = (int)objectPool.getObjectCount(currentBasketId, value.getViewable(), false);
 		return new Value(counter);
 	}
 
@@ -3229,7 +3353,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 					while( !valueExists &&  basketIdIterator.hasNext()){
 						String basketId=basketIdIterator.next();
 						// iterate through iomObjects
-						Iterator<IomObject> objectIterator = (objectPool.getObjectsOfBasketId(basketId)).valueIterator();
+						Iterator<IomObject> objectIterator = (objectPool.getObjectsOfBasketId(basketId)).valueIteratorInFileOrder();
 						while (!valueExists &&  objectIterator.hasNext()){
 							IomObject otherIomObj = objectIterator.next();
 							if (otherIomObj.getattrcount() == 0){
@@ -3606,7 +3730,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	}
 
 	// HashMap of global unique constraints.
-	HashMap<UniquenessConstraint, HashMap<AttributeArray, String>> seenUniqueConstraintValues = new HashMap<UniquenessConstraint, HashMap<AttributeArray, String>>();
+	HashMap<UniquenessConstraint, UniqueValueIndex> seenUniqueConstraintValues = new HashMap<UniquenessConstraint, UniqueValueIndex>();
 	// List of all object Oid's and associated classPath's of uniqueness validate of Oid's.
 	Map<String , String> uniqueObjectIDs = new HashMap<String, String>();
 	HashSet<Object> loggedObjects=new HashSet<Object>();
@@ -3759,20 +3883,11 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 
         HashSet<String> propNames=new HashSet<String>();
         if(doValidation) {
-            Iterator iter = aclass1.getAttributesAndRoles2();
-            while (iter.hasNext()) {
-                ViewableTransferElement obj = (ViewableTransferElement)iter.next();
-                if (obj.obj instanceof AttributeDef) {
-                    AttributeDef attr = (AttributeDef) obj.obj;
-                    if(!attr.isTransient()){
-                        Type proxyType=attr.getDomain();
-                        if(proxyType!=null && (proxyType instanceof ObjectType)){
-                            // skip implicit particles (base-viewables) of views
-                        }else{
-                            propNames.add(attr.getName());
-                            validateAttrValue(aclass1,iomObj,attr,attrPath);
-                        }
-                    }
+            for (ValidationPlan.Prop prop : getValidationPlan(aclass1).props) {
+                ViewableTransferElement obj = prop.transferElement;
+                if (prop.attrCheck != null) {
+                    propNames.add(prop.attrCheck.attrName);
+                    validateAttrValue(prop.attrCheck,iomObj,attrPath);
                 }
                 if (isObject && obj.obj instanceof RoleDef) {
                     RoleDef role = (RoleDef) obj.obj;
@@ -3991,7 +4106,9 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		return null;
 	}
 	
-	private String validateUnique(HashMap<UniquenessConstraint, HashMap<AttributeArray, String>> seenValues,String originObjOid,IomObject parentObject,IomObject currentObject,UniquenessConstraint constraint, OutParam<AttributeArray> valuesRet, RoleDef role) {
+	/** @param seenValues values of a LOCAL constraint or null, to use the index of the constraint.
+	 */
+	private String validateUnique(HashMap<AttributeArray, String> seenValues,String originObjOid,IomObject parentObject,IomObject currentObject,UniquenessConstraint constraint, OutParam<AttributeArray> valuesRet, RoleDef role) {
         ArrayList<Object> values = new ArrayList<Object>();
 		Iterator constraintIter = constraint.getElements().iteratorAttribute();
 		while(constraintIter.hasNext()){
@@ -4020,39 +4137,58 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 			}
 		}
 		valuesRet.value=new AttributeArray(values);
-		HashMap<AttributeArray, String> alreadySeenValues = null;
-		if (seenValues.containsKey(constraint)){
-			alreadySeenValues = seenValues.get(constraint);
-			String oidOfNonUniqueObj = alreadySeenValues.get(valuesRet.value);
-
+		if(seenValues!=null){
+			String oidOfNonUniqueObj = seenValues.get(valuesRet.value);
 			// If exist a duplicate record
 			if(oidOfNonUniqueObj!=null){
 				return oidOfNonUniqueObj;
 			}
-			alreadySeenValues.put(valuesRet.value, originObjOid);
-		} else {
-			alreadySeenValues = new HashMap<AttributeArray, String>();
-			alreadySeenValues.put(valuesRet.value, originObjOid);
-			seenValues.put(constraint, alreadySeenValues);
+			seenValues.put(valuesRet.value, originObjOid);
+			return null;
 		}
-		return null;
+		UniqueValueIndex alreadySeenValues = seenUniqueConstraintValues.get(constraint);
+		if (alreadySeenValues==null){
+			alreadySeenValues = new UniqueValueIndex(objPoolManager,getScopedName(constraint));
+			seenUniqueConstraintValues.put(constraint, alreadySeenValues);
+		}
+		return alreadySeenValues.add(valuesRet.value, originObjOid);
 	}
 
-    private void validateAttrValue(Viewable eleClass,IomObject iomObj, AttributeDef attr,String attrPath) throws IoxException {
-		 String attrName = attr.getName();
+    /** @return the attributes and roles of the given class to validate; prepared on first use.
+     */
+    private ValidationPlan getValidationPlan(Viewable aclass) {
+        ValidationPlan plan=validationPlans.get(aclass);
+        if(plan==null) {
+            ArrayList<ValidationPlan.Prop> props=new ArrayList<ValidationPlan.Prop>();
+            Iterator iter = aclass.getAttributesAndRoles2();
+            while (iter.hasNext()) {
+                ViewableTransferElement obj = (ViewableTransferElement)iter.next();
+                if (obj.obj instanceof AttributeDef) {
+                    AttributeDef attr = (AttributeDef) obj.obj;
+                    if(!attr.isTransient()){
+                        Type proxyType=attr.getDomain();
+                        if(proxyType!=null && (proxyType instanceof ObjectType)){
+                            // skip implicit particles (base-viewables) of views
+                        }else{
+                            props.add(new ValidationPlan.Prop(obj,compileAttrCheck(aclass,attr)));
+                        }
+                    }
+                }else if (obj.obj instanceof RoleDef) {
+                    props.add(new ValidationPlan.Prop(obj,null));
+                }
+            }
+            plan=new ValidationPlan(aclass,props.toArray(new ValidationPlan.Prop[props.size()]));
+            validationPlans.put(aclass, plan);
+        }
+        return plan;
+    }
+    private ValidationPlan.AttrCheck compileAttrCheck(Viewable eleClass,AttributeDef attr) {
 		 String attrQName = getScopedName(attr);
-		 String iliClassQName=getScopedName(eleClass);
-		 if(attrPath==null){
-			 attrPath=attrName;
-		 }else{
-			 attrPath=attrPath+"/"+attrName;
-		 }
 		 String validateMultiplicity=validationConfig.getConfigValue(attrQName, ValidationConfig.MULTIPLICITY);
 		 if(validateMultiplicity==null){
 			 validateMultiplicity=globalMultiplicity;
 		 }
 		 String validateType=null;
-		 String validateTarget=null;
 		 String validateGeometryType=null;
 		 if(!enforceTypeValidation){
 			 validateType=validationConfig.getConfigValue(attrQName, ValidationConfig.TYPE);
@@ -4063,7 +4199,25 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 		Type attrType = attr.getDomain();
 		Domain domain = attrType instanceof TypeAlias ? ((TypeAlias)attrType).getAliasing() : null;
 		Model model = (Model)attr.getContainer(Model.class);
-		Type type = attr.getDomainResolvingAll();
+		return new ValidationPlan.AttrCheck(attr,attrQName,getScopedName(eleClass),validateMultiplicity,validateType,validateGeometryType,domain,model,attr.getDomainResolvingAll(),getCardinality(attr));
+    }
+    private void validateAttrValue(ValidationPlan.AttrCheck check,IomObject iomObj,String attrPath) throws IoxException {
+		 AttributeDef attr = check.attr;
+		 String attrName = check.attrName;
+		 String attrQName = check.attrQName;
+		 String iliClassQName=check.iliClassQName;
+		 if(attrPath==null){
+			 attrPath=attrName;
+		 }else{
+			 attrPath=attrPath+"/"+attrName;
+		 }
+		 String validateMultiplicity=check.validateMultiplicity;
+		 String validateType=check.validateType;
+		 String validateTarget=null;
+		 String validateGeometryType=check.validateGeometryType;
+		Domain domain = check.domain;
+		Model model = check.model;
+		Type type = check.type;
 		if (type instanceof CompositionType){
 			 int structc=iomObj.getattrvaluecount(attrName);
 				if(ValidationConfig.OFF.equals(validateMultiplicity)){
@@ -4154,7 +4308,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                      if(doItfLineTables && type instanceof SurfaceType){
                          // SURFACE; no attrValue in maintable
                      }else{
-                         Cardinality card = getCardinality(attr);
+                         Cardinality card = check.cardinality;
                          if(structc<card.getMinimum() || structc>card.getMaximum()){
                              if(card.getMaximum()>1 || structc>1) {
                                  logMsg(validateMultiplicity, rsrc.getString("validateAttrValue.attributeXHasWrongNumberOfValues"), attrPath);
@@ -4177,7 +4331,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 			}
             for(int structi=0;structi<structc;structi++){
                 String attrPathEle=attrPath;
-                if(getCardinality(attr).getMaximum()>1) {
+                if(check.cardinality.getMaximum()>1) {
                     attrPathEle=attrPath+"["+structi+"]";
                 }
                 if(ValidationConfig.OFF.equals(validateType)){
@@ -4231,7 +4385,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                         FormattedType subType = (FormattedType) type;
                         // The length is explicitly tested because the generated regular expression does not test the length of the value.
                         if (valueStr != null){
-                            if (!valueStr.matches(subType.getRegExp()) || valueStr.length() != 10) {
+                            if (!patternCache.matches(subType.getRegExp(),valueStr) || valueStr.length() != 10) {
                                 logMsg(validateType, rsrc.getString("validateAttrValue.invalidFormatOfDateValueXInAttributeY"), valueStr, attrPathEle);
                             } else if(!subType.isValueInRange(valueStr)){
                                 logMsg(validateType, rsrc.getString("validateAttrValue.dateValueXIsNotInRangeInAttributeY"), valueStr, attrPathEle);
@@ -4243,7 +4397,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                         FormattedType subType = (FormattedType) type;
                         // Min length and max length is added, because of the defined regular expression which does not test the length of the value.
                         if (valueStr != null){
-                            if (!valueStr.matches(subType.getRegExp()) || valueStr.length() < 9 || valueStr.length() > 12){
+                            if (!patternCache.matches(subType.getRegExp(),valueStr) || valueStr.length() < 9 || valueStr.length() > 12){
                                 logMsg(validateType, rsrc.getString("validateAttrValue.invalidFormatOfTimeValueXInAttributeY"), valueStr, attrPathEle);
                             } else if(!subType.isValueInRange(valueStr)){
                                 logMsg(validateType, rsrc.getString("validateAttrValue.timeValueXIsNotInRangeInAttributeY"), valueStr, attrPathEle);
@@ -4255,7 +4409,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                         FormattedType subType = (FormattedType) type;
                         // Min length and max length is added, because of the defined regular expression which does not test the length of the value.
                         if (valueStr != null){
-                            if (!valueStr.matches(subType.getRegExp()) || valueStr.length() < 18 || valueStr.length() > 23) {
+                            if (!patternCache.matches(subType.getRegExp(),valueStr) || valueStr.length() < 18 || valueStr.length() > 23) {
                                 logMsg(validateType, rsrc.getString("validateAttrValue.invalidFormatOfDatetimeValueXInAttributeY"), valueStr, attrPathEle);
                             } else if(!subType.isValueInRange(valueStr)){
                                 logMsg(validateType, rsrc.getString("validateAttrValue.datetimeValueXIsNotInRangeInAttributeY"), valueStr, attrPathEle);
@@ -4271,8 +4425,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                             }else{
                                 // value is not a keyword
                             }
-                            Pattern pattern=Pattern.compile("[a-zA-Z]{1}([a-zA-Z0-9\\_]{1,})");
-                            Matcher matcher=pattern.matcher(valueStr);
+                            Matcher matcher=patternForInterlisNameValidation.matcher(valueStr);
                             if(matcher!=null && matcher.matches()){
                                 // value matched pattern
                             }else {
@@ -4289,10 +4442,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                         String valueStr=iomObj.getattrprim(attrName, structi);
                         if (valueStr!=null) {
                             validateTextType(iomObj, attrPathEle, validateType, type, valueStr);
-                            
-                            // see http://blog.dieweltistgarnichtso.net/constructing-a-regular-expression-that-matches-uris
-                            Pattern pattern = Pattern.compile("((?<=\\()[A-Za-z][A-Za-z0-9\\+\\.\\-]*:([A-Za-z0-9\\.\\-_~:/\\?#\\[\\]@!\\$&'\\(\\)\\*\\+,;=]|%[A-Fa-f0-9]{2})+(?=\\)))|([A-Za-z][A-Za-z0-9\\+\\.\\-]*:([A-Za-z0-9\\.\\-_~:/\\?#\\[\\]@!\\$&'\\(\\)\\*\\+,;=]|%[A-Fa-f0-9]{2})+)");
-                            Matcher matcher=pattern.matcher(valueStr);
+                            Matcher matcher=patternForUriValidation.matcher(valueStr);
                             if(matcher!=null && matcher.matches()){
                              // value matched pattern
                             }else {
@@ -4372,7 +4522,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 
                                                     ItfAreaPolygon2Linetable allLines=areaAttrs.get(attr);
                                                     if(allLines==null){
-                                                        allLines=new ItfAreaPolygon2Linetable(iliClassQName, objPoolManager);
+                                                        allLines=new ItfAreaPolygon2Linetable(iliClassQName, objPoolManager, externalAreaValidation);
                                                         areaAttrs.put(attr,allLines);
                                                     }
 
@@ -4415,7 +4565,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 
                                                ItfAreaPolygon2Linetable allLines=areaAttrs.get(attr);
                                                if(allLines==null){
-                                                   allLines=new ItfAreaPolygon2Linetable(iliClassQName, objPoolManager);
+                                                   allLines=new ItfAreaPolygon2Linetable(iliClassQName, objPoolManager, externalAreaValidation);
                                                    areaAttrs.put(attr,allLines);
                                                }
 
@@ -4537,7 +4687,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
                         String regExp = ((FormattedType) type).getRegExp();
                         String actualValue=iomObj.getattrprim(attrName, structi);
                         if (actualValue != null) {
-                            if (!actualValue.matches(regExp)) {
+                            if (!patternCache.matches(regExp,actualValue)) {
                                 errs.addEvent(errFact.logErrorMsg(rsrc.getString("validateAttrValue.attributeXHasAInvalidValueY"), attrPathEle, actualValue));
                             } else {
                                 boolean hasAValidValue = ((FormattedType) type).isValueInRange(actualValue);
@@ -5093,7 +5243,7 @@ public class Validator implements ch.interlis.iox.IoxValidator {
 	}
 	
 	public boolean isValidUuid(String valueStr) {
-		return valueStr.length() == 36 && valueStr.matches("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}?");
+		return valueStr.length() == 36 && patternForUuidValidation.matcher(valueStr).matches();
 	}
 	
 	private static boolean isDomainName(AttributeDef attr){
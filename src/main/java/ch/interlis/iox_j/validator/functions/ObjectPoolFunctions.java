@@ -1,6 +1,5 @@
 package ch.interlis.iox_j.validator.functions;
 
-import ch.ehi.iox.objpool.impl.ObjPoolImpl2;
 import ch.interlis.ili2c.metamodel.Evaluable;
 import ch.interlis.ili2c.metamodel.Function;
 import ch.interlis.ili2c.metamodel.FunctionCall;
@@ -11,7 +10,6 @@ import ch.interlis.ili2c.metamodel.Viewable;
 import ch.interlis.iom.IomObject;
 import ch.interlis.iox_j.logging.LogEventFactory;
 import ch.interlis.iox_j.validator.ObjectPool;
-import ch.interlis.iox_j.validator.ObjectPoolKey;
 import ch.interlis.iox_j.validator.Validator;
 import ch.interlis.iox_j.validator.Value;
 
@@ -67,14 +65,12 @@ public class ObjectPoolFunctions {
             objectClass = projection.getSelected().getAliasing();
         }
 
-        String className = objectClass.getScopedName();
         List<IomObject> objects = new ArrayList<IomObject>();
         for (String basketId : objectPool.getDataBids()) {
-            ObjPoolImpl2<ObjectPoolKey, IomObject> basketObjectPool = objectPool.getObjectsOfBasketId(basketId);
-            Iterator<IomObject> valueIterator = basketObjectPool.valueIterator();
+            Iterator<IomObject> valueIterator = objectPool.getObjectsOfClass(basketId, objectClass, false);
             while (valueIterator.hasNext()) {
                 IomObject object = valueIterator.next();
-                if (object.getobjecttag().equals(className) && (projection == null || validator.viewIncludesObject(projection, object))) {
+                if (projection == null || validator.viewIncludesObject(projection, object)) {
                     objects.add(object);
                 }
             }
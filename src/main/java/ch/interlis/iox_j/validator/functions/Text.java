@@ -1,5 +1,9 @@
 package ch.interlis.iox_j.validator.functions;
 
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+import ch.interlis.ili2c.metamodel.Constant;
 import ch.interlis.ili2c.metamodel.Evaluable;
 import ch.interlis.ili2c.metamodel.Function;
 import ch.interlis.ili2c.metamodel.FunctionCall;
@@ -17,6 +21,7 @@ public class Text {
     private TransferDescription td = null;
     private ch.interlis.iox.IoxValidationConfig validationConfig = null;
     private Validator validator=null;
+    private HashMap<Evaluable,Pattern> constantPatterns=new HashMap<Evaluable,Pattern>();
     
     public Text(Validator validator, TransferDescription td, ch.interlis.iox.IoxValidationConfig validationConfig) {
         this.td = td;
@@ -186,6 +191,18 @@ public class Text {
                 if (firstValue.isUndefined()) {
                     return Value.createSkipEvaluation();
                 }
+                if (arguments[1] instanceof Constant.Text) {
+                    // pattern is a model constant; compile it once per function call
+                    Pattern pattern = constantPatterns.get(arguments[1]);
+                    if (pattern == null) {
+                        pattern = Pattern.compile(((Constant.Text) arguments[1]).getValue());
+                        constantPatterns.put(arguments[1], pattern);
+                    }
+                    if (firstValue.getValue() != null) {
+                        return new Value(pattern.matcher(firstValue.getValue()).matches());
+                    }
+                    return new Value(false);
+                }
                 Value secondValue = validator.evaluateExpression(parentObject, validationKind, usageScope, iomObj, arguments[1], firstRole);
                 if (secondValue.skipEvaluation()) {
                     return secondValue;
@@ -194,7 +211,7 @@ public class Text {
                     return Value.createSkipEvaluation();
                 }
                 if (firstValue.getValue() != null && secondValue.getValue() != null) {
-                    return new Value(firstValue.getValue().matches(secondValue.getValue()));
+                    return new Value(validator.getPatternCache().matches(secondValue.getValue(), firstValue.getValue()));
                 }
             }
             return new Value(false);
@@ -0,0 +1,393 @@
+package ch.interlis.iox_j.wkb;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ch.interlis.iom.IomConstants;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
+
+/** Converts INTERLIS geometries to WKB, directly into a ByteBuffer supplied by the caller.
+ * Unlike Iox2wkb, straight line geometries are not converted to JTS/CompoundCurve first;
+ * the coordinates are parsed into primitive arrays, that are reused from one geometry to the next.
+ * Geometries with ARCs, and all other cases that the direct conversion doesn't handle
+ * (e.g. duplicate coords, unclosed or self touching rings, invalid values), are converted by Iox2wkb,
+ * so the result is always the same as the one of Iox2wkb.
+ * The returned buffer contains the WKB between position 0 and its limit. If the supplied buffer is
+ * too small, a larger one is returned instead; the caller should keep the returned one for the next call.
+ * An instance is not thread safe.
+ */
+public class Iox2wkbEncoder {
+	private int outputDimension = 2;
+	private ByteOrder byteOrder = null;
+	private boolean asEWKB = true;
+	private boolean orientRings = false;
+	private Iox2wkb fallback = null;
+	private long fallbackCount = 0;
+	// coords of the current geometry
+	private double xs[] = new double[256];
+	private double ys[] = new double[256];
+	private double zs[] = new double[256];
+	private int coordc = 0;
+	/** index (in xs/ys/zs) of the first coord after each ring/line of the current geometry.
+	 */
+	private int ringEnds[] = new int[16];
+	private int ringc = 0;
+	private long keys[] = null;
+
+	public Iox2wkbEncoder(int outputDimension) {
+		this(outputDimension, ByteOrder.BIG_ENDIAN, true);
+	}
+	public Iox2wkbEncoder(int outputDimension, ByteOrder byteOrder, boolean asEWKB) {
+		if (outputDimension < 2 || outputDimension > 3)
+			throw new IllegalArgumentException("Output dimension must be 2 or 3");
+		this.outputDimension = outputDimension;
+		this.byteOrder = byteOrder;
+		this.asEWKB = asEWKB;
+	}
+	/** If set, the shell of a polygon is written counter-clockwise and the holes clockwise.
+	 * Default is false (the order of the coords in the INTERLIS geometry, as by Iox2wkb).
+	 * Only applies to geometries that are converted directly.
+	 */
+	public void setOrientRings(boolean orientRings) {
+		this.orientRings = orientRings;
+	}
+	/** @return number of geometries (or surfaces of a multisurface), that were converted by Iox2wkb.
+	 */
+	public long getFallbackCount() {
+		return fallbackCount;
+	}
+
+	/** Converts a POLYLINE to a WKB LineString or CompoundCurve.
+	 * @param buf buffer to reuse; may be null.
+	 * @return buffer with the WKB between position 0 and limit; null if polylineObj is null.
+	 * @see Iox2wkb#polyline2wkb(IomObject, boolean, boolean, double)
+	 */
+	public ByteBuffer polyline2wkb(IomObject polylineObj, boolean asCompoundCurve, double p, ByteBuffer buf)
+	throws Iox2wkbException
+	{
+		if (polylineObj == null) {
+			return null;
+		}
+		buf = clear(buf);
+		coordc = 0;
+		ringc = 0;
+		if (!addPolyline(polylineObj, true) || coordc < 2) {
+			fallbackCount++;
+			buf = put(buf, getFallback().polyline2wkb(polylineObj, false, asCompoundCurve, p));
+		} else {
+			endRing();
+			buf = ensureCapacity(buf, (asCompoundCurve ? 9 : 0) + 9 + coordc * outputDimension * 8);
+			if (asCompoundCurve) {
+				writeCompoundCurve(buf, 0, coordc);
+			} else {
+				writeLineString(buf, 0, coordc);
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/** Converts a SURFACE to a WKB Polygon or CurvePolygon.
+	 * @param buf buffer to reuse; may be null.
+	 * @return buffer with the WKB between position 0 and limit; null if obj is null.
+	 * @see Iox2wkb#surface2wkb(IomObject, boolean, double, boolean)
+	 */
+	public ByteBuffer surface2wkb(IomObject obj, boolean asCurvePolygon, double strokeP, boolean repairTouchingLine, ByteBuffer buf)
+	throws Iox2wkbException
+	{
+		if (obj == null) {
+			return null;
+		}
+		buf = clear(buf);
+		if (obj.getobjectconsistency() == IomConstants.IOM_INCOMPLETE
+				|| obj.getattrvaluecount(Iom_jObject.MULTISURFACE_SURFACE) != 1
+				|| !collectSurface(obj.getattrobj(Iom_jObject.MULTISURFACE_SURFACE, 0), repairTouchingLine)) {
+			fallbackCount++;
+			buf = put(buf, getFallback().surface2wkb(obj, asCurvePolygon, strokeP, repairTouchingLine));
+		} else {
+			buf = writeSurface(buf, asCurvePolygon);
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/** Converts a MULTISURFACE to a WKB MultiPolygon or MultiSurface.
+	 * @param buf buffer to reuse; may be null.
+	 * @return buffer with the WKB between position 0 and limit; null if obj is null.
+	 * @see Iox2wkb#multisurface2wkb(IomObject, boolean, double, boolean)
+	 */
+	public ByteBuffer multisurface2wkb(IomObject obj, boolean asCurvePolygon, double strokeP, boolean repairTouchingLine, ByteBuffer buf)
+	throws Iox2wkbException
+	{
+		if (obj == null) {
+			return null;
+		}
+		buf = clear(buf);
+		int surfacec = obj.getattrvaluecount(Iom_jObject.MULTISURFACE_SURFACE);
+		buf = ensureCapacity(buf, 9);
+		writeByteOrder(buf);
+		writeGeometryType(buf, asCurvePolygon ? WKBConstants.wkbMultiSurface : WKBConstants.wkbMultiPolygon);
+		buf.putInt(surfacec);
+		for (int surfacei = 0; surfacei < surfacec; surfacei++) {
+			IomObject surface = obj.getattrobj(Iom_jObject.MULTISURFACE_SURFACE, surfacei);
+			if (collectSurface(surface, repairTouchingLine)) {
+				buf = writeSurface(buf, asCurvePolygon);
+			} else {
+				fallbackCount++;
+				IomObject iomSurfaceClone = new Iom_jObject(Iom_jObject.MULTISURFACE, null);
+				iomSurfaceClone.addattrobj(Iom_jObject.MULTISURFACE_SURFACE, surface);
+				buf = put(buf, getFallback().surface2wkb(iomSurfaceClone, asCurvePolygon, strokeP, repairTouchingLine));
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/** reads the boundaries of a SURFACE into xs/ys/zs.
+	 * @return false if the surface has to be converted by Iox2wkb.
+	 */
+	private boolean collectSurface(IomObject surface, boolean repairTouchingLine) {
+		coordc = 0;
+		ringc = 0;
+		int boundaryc = surface.getattrvaluecount(Iom_jObject.SURFACE_BOUNDARY);
+		for (int boundaryi = 0; boundaryi < boundaryc; boundaryi++) {
+			IomObject boundary = surface.getattrobj(Iom_jObject.SURFACE_BOUNDARY, boundaryi);
+			int ringStart = coordc;
+			int polylinec = boundary.getattrvaluecount(Iom_jObject.BOUNDARY_POLYLINE);
+			for (int polylinei = 0; polylinei < polylinec; polylinei++) {
+				IomObject polyline = boundary.getattrobj(Iom_jObject.BOUNDARY_POLYLINE, polylinei);
+				if (polyline.getattrobj(Iom_jObject.POLYLINE_LINEATTR, 0) != null) {
+					return false;
+				}
+				if (!addPolyline(polyline, polylinei == 0)) {
+					return false;
+				}
+			}
+			// ring closed?
+			int last = coordc - 1;
+			if (coordc - ringStart < 2 || xs[ringStart] != xs[last] || ys[ringStart] != ys[last]) {
+				return false;
+			}
+			if (repairTouchingLine && !hasDistinctVertices(ringStart, last)) {
+				// RingCollector would split the ring
+				return false;
+			}
+			endRing();
+		}
+		if (orientRings) {
+			int ringStart = 0;
+			for (int ringi = 0; ringi < ringc; ringi++) {
+				double area = signedArea(ringStart, ringEnds[ringi]);
+				if (ringi == 0 ? area < 0.0 : area > 0.0) {
+					reverse(ringStart, ringEnds[ringi]);
+				}
+				ringStart = ringEnds[ringi];
+			}
+		}
+		return true;
+	}
+
+	/** appends the coords of a POLYLINE to xs/ys/zs.
+	 * @param newLine true if the polyline starts a new line/ring, false if it continues the current one.
+	 * @return false if the polyline has to be converted by Iox2wkb.
+	 */
+	private boolean addPolyline(IomObject polyline, boolean newLine) {
+		if (polyline.getobjectconsistency() == IomConstants.IOM_INCOMPLETE) {
+			return false;
+		}
+		if (polyline.getattrvaluecount(Iom_jObject.POLYLINE_SEQUENCE) != 1) {
+			return false;
+		}
+		IomObject sequence = polyline.getattrobj(Iom_jObject.POLYLINE_SEQUENCE, 0);
+		int segmentc = sequence.getattrvaluecount(Iom_jObject.SEGMENTS_SEGMENT);
+		if (segmentc < 2) {
+			return false;
+		}
+		ensureCoordCapacity(coordc + segmentc);
+		int lineStart = coordc;
+		for (int segmenti = 0; segmenti < segmentc; segmenti++) {
+			IomObject segment = sequence.getattrobj(Iom_jObject.SEGMENTS_SEGMENT, segmenti);
+			if (!Iom_jObject.COORD.equals(segment.getobjecttag())) {
+				return false;
+			}
+			double x;
+			double y;
+			double z = Double.NaN;
+			try {
+				x = Double.parseDouble(segment.getattrvalue(Iom_jObject.COORD_C1));
+				y = Double.parseDouble(segment.getattrvalue(Iom_jObject.COORD_C2));
+				String c3 = segment.getattrvalue(Iom_jObject.COORD_C3);
+				if (c3 != null) {
+					z = Double.parseDouble(c3);
+				}
+			} catch (Exception ex) {
+				return false;
+			}
+			if (coordc > lineStart) {
+				if (x == xs[coordc - 1] && y == ys[coordc - 1]) {
+					// duplicate coord; Iox2wkb reports it
+					return false;
+				}
+			} else if (!newLine && coordc > 0) {
+				// start of a continuing polyline has to be the end of the previous one
+				if (x != xs[coordc - 1] || y != ys[coordc - 1]) {
+					return false;
+				}
+				lineStart = coordc - 1;
+				continue;
+			}
+			xs[coordc] = x;
+			ys[coordc] = y;
+			zs[coordc] = z;
+			coordc++;
+		}
+		return true;
+	}
+	private void endRing() {
+		if (ringc == ringEnds.length) {
+			int newEnds[] = new int[ringc * 2];
+			System.arraycopy(ringEnds, 0, newEnds, 0, ringc);
+			ringEnds = newEnds;
+		}
+		ringEnds[ringc++] = coordc;
+	}
+	private void ensureCoordCapacity(int size) {
+		if (size > xs.length) {
+			int newSize = Math.max(size, xs.length * 2);
+			double newXs[] = new double[newSize];
+			double newYs[] = new double[newSize];
+			double newZs[] = new double[newSize];
+			System.arraycopy(xs, 0, newXs, 0, coordc);
+			System.arraycopy(ys, 0, newYs, 0, coordc);
+			System.arraycopy(zs, 0, newZs, 0, coordc);
+			xs = newXs;
+			ys = newYs;
+			zs = newZs;
+		}
+	}
+	/** tests if the coords start..end-1 are all different (2D).
+	 * Conservative: reports false for coords with the same hash.
+	 */
+	private boolean hasDistinctVertices(int start, int end) {
+		int n = end - start;
+		if (keys == null || keys.length < n) {
+			keys = new long[Math.max(n, xs.length)];
+		}
+		for (int i = 0; i < n; i++) {
+			// +0.0 normalizes -0.0, which is equal to 0.0
+			long h = Double.doubleToLongBits(xs[start + i] + 0.0) * 0x9E3779B97F4A7C15L;
+			keys[i] = (h ^ (h >>> 29)) + Double.doubleToLongBits(ys[start + i] + 0.0);
+		}
+		java.util.Arrays.sort(keys, 0, n);
+		for (int i = 1; i < n; i++) {
+			if (keys[i] == keys[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/** @return twice the signed area of the ring start..end-1; positive if counter-clockwise.
+	 */
+	private double signedArea(int start, int end) {
+		double area = 0.0;
+		double x0 = xs[start];
+		double y0 = ys[start];
+		for (int i = start + 1; i < end - 1; i++) {
+			area += (xs[i] - x0) * (ys[i + 1] - y0) - (xs[i + 1] - x0) * (ys[i] - y0);
+		}
+		return area;
+	}
+	private void reverse(int start, int end) {
+		for (int i = start, j = end - 1; i < j; i++, j--) {
+			double t = xs[i];
+			xs[i] = xs[j];
+			xs[j] = t;
+			t = ys[i];
+			ys[i] = ys[j];
+			ys[j] = t;
+			t = zs[i];
+			zs[i] = zs[j];
+			zs[j] = t;
+		}
+	}
+
+	private ByteBuffer writeSurface(ByteBuffer buf, boolean asCurvePolygon) {
+		int size = 9 + ringc * (asCurvePolygon ? 18 : 4) + coordc * outputDimension * 8;
+		buf = ensureCapacity(buf, size);
+		writeByteOrder(buf);
+		writeGeometryType(buf, asCurvePolygon ? WKBConstants.wkbCurvePolygon : WKBConstants.wkbPolygon);
+		buf.putInt(ringc);
+		int ringStart = 0;
+		for (int ringi = 0; ringi < ringc; ringi++) {
+			if (asCurvePolygon) {
+				writeCompoundCurve(buf, ringStart, ringEnds[ringi]);
+			} else {
+				buf.putInt(ringEnds[ringi] - ringStart);
+				writeCoords(buf, ringStart, ringEnds[ringi]);
+			}
+			ringStart = ringEnds[ringi];
+		}
+		return buf;
+	}
+	private void writeCompoundCurve(ByteBuffer buf, int start, int end) {
+		writeByteOrder(buf);
+		writeGeometryType(buf, WKBConstants.wkbCompoundCurve);
+		buf.putInt(1);
+		writeLineString(buf, start, end);
+	}
+	private void writeLineString(ByteBuffer buf, int start, int end) {
+		writeByteOrder(buf);
+		writeGeometryType(buf, WKBConstants.wkbLineString);
+		buf.putInt(end - start);
+		writeCoords(buf, start, end);
+	}
+	private void writeCoords(ByteBuffer buf, int start, int end) {
+		for (int i = start; i < end; i++) {
+			buf.putDouble(xs[i]);
+			buf.putDouble(ys[i]);
+			if (outputDimension == 3) {
+				buf.putDouble(zs[i]);
+			}
+		}
+	}
+	private void writeByteOrder(ByteBuffer buf) {
+		buf.put((byte) (byteOrder.equals(ByteOrder.LITTLE_ENDIAN) ? WKBConstants.wkbNDR : WKBConstants.wkbXDR));
+	}
+	private void writeGeometryType(ByteBuffer buf, int geometryType) {
+		int flagIncludeZ = asEWKB ? WKBConstants.ewkbIncludesZ : WKBConstants.wkbIncludesZ;
+		int flag3D = (outputDimension == 3) ? flagIncludeZ : 0;
+		buf.putInt(geometryType + flag3D);
+	}
+
+	private ByteBuffer clear(ByteBuffer buf) {
+		if (buf == null) {
+			buf = ByteBuffer.allocate(1024);
+		}
+		buf.clear();
+		buf.order(byteOrder);
+		return buf;
+	}
+	private ByteBuffer ensureCapacity(ByteBuffer buf, int size) {
+		if (buf.remaining() >= size) {
+			return buf;
+		}
+		int newCapacity = Math.max(buf.capacity() * 2, buf.position() + size);
+		ByteBuffer newBuf = buf.isDirect() ? ByteBuffer.allocateDirect(newCapacity) : ByteBuffer.allocate(newCapacity);
+		newBuf.order(byteOrder);
+		buf.flip();
+		newBuf.put(buf);
+		return newBuf;
+	}
+	private ByteBuffer put(ByteBuffer buf, byte[] wkb) {
+		buf = ensureCapacity(buf, wkb.length);
+		buf.put(wkb);
+		return buf;
+	}
+	private Iox2wkb getFallback() {
+		if (fallback == null) {
+			fallback = new Iox2wkb(outputDimension, byteOrder, asEWKB);
+		}
+		return fallback;
+	}
+}
@@ -33,13 +33,18 @@
 package ch.interlis.iox_j.wkb;
 
 import java.io.IOException;
-import java.util.ArrayList;
-
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ch.interlis.ili2c.metamodel.CoordType;
+import ch.interlis.ili2c.metamodel.NumericType;
+import ch.interlis.ili2c.metamodel.Type;
 import ch.interlis.iom.IomObject;
 import ch.interlis.iom_j.Iom_jObject;
 
 import com.vividsolutions.jts.io.ByteOrderDataInStream;
-import com.vividsolutions.jts.io.ByteArrayInStream;
 import com.vividsolutions.jts.io.InStream;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.ByteOrderValues;
@@ -91,17 +96,56 @@ public class Wkb2iox
 
   private static final String INVALID_GEOM_TYPE_MSG
   = "Invalid geometry type encountered in ";
+  private static final double POWERS_OF_TEN[] = new double[] {1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,1e12,1e13,1e14,1e15};
 
   // default dimension - will be set on read
   private int inputDimension = 2;
   private boolean hasSRID = false;
   private int SRID = 0;
   private ByteOrderDataInStream dis = new ByteOrderDataInStream();
+  // input, if reading from a ByteBuffer; else dis is used
+  private ByteBuffer buf = null;
   private double[] ordValues;
+  // number of fraction digits of C1, C2, C3; -1 if not rounded
+  private int fractionDigits[] = new int[] {-1, -1, -1};
+  private StringBuilder c1 = new StringBuilder();
+  private StringBuilder c2 = new StringBuilder();
+  private StringBuilder c3 = new StringBuilder();
+  private StringBuilder a1 = new StringBuilder();
+  private StringBuilder a2 = new StringBuilder();
+  private Wkb2ioxWriter out = null;
+  private IomBuilder builder = new IomBuilder();
 
   public Wkb2iox() {
   }
 
+  /** Rounds the coordinates to the given number of fraction digits (as the Validator does),
+   * instead of formatting them with Double.toString().
+   * @param fractionDigits number of fraction digits; -1 to not round.
+   */
+  public void setFractionDigits(int fractionDigits)
+  {
+    setFractionDigits(fractionDigits, fractionDigits, fractionDigits);
+  }
+  public void setFractionDigits(int c1FractionDigits, int c2FractionDigits, int c3FractionDigits)
+  {
+    fractionDigits[0] = c1FractionDigits;
+    fractionDigits[1] = c2FractionDigits;
+    fractionDigits[2] = c3FractionDigits;
+  }
+  /** Rounds the coordinates to the accuracy of the given coord type.
+   */
+  public void setFractionDigits(CoordType coordType)
+  {
+    Type dimensions[] = coordType.getDimensions();
+    for (int i = 0; i < fractionDigits.length; i++) {
+      if (i < dimensions.length && dimensions[i] instanceof NumericType && ((NumericType) dimensions[i]).getMinimum() != null) {
+        fractionDigits[i] = ((NumericType) dimensions[i]).getMinimum().getAccuracy();
+      } else {
+        fractionDigits[i] = -1;
+      }
+    }
+  }
 
   /**
    * Reads a single {@link Geometry} from a byte array.
@@ -112,14 +156,53 @@ public class Wkb2iox
    */
   public IomObject read(byte[] bytes) throws ParseException
   {
-    // possibly reuse the ByteArrayInStream?
-    // don't throw IOExceptions, since we are not doing any I/O
+    return read(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Reads a single {@link Geometry} from a ByteBuffer, starting at its position (without copying the bytes).
+   * After the call, the position of the buffer is after the geometry read.
+   *
+   * @param wkb the buffer to read from
+   * @return the geometry read; null if it is empty
+   * @throws ParseException if a parse exception occurs
+   */
+  public IomObject read(ByteBuffer wkb) throws ParseException
+  {
+    builder.reset();
+    read(wkb, builder);
+    return builder.getResult();
+  }
+
+  /**
+   * Reads a single {@link Geometry} from a ByteBuffer, starting at its position (without copying the bytes),
+   * and reports it to the given writer, instead of creating an IomObject.
+   * After the call, the position of the buffer is after the geometry read.
+   * Nothing is reported if the geometry is empty.
+   *
+   * @param wkb the buffer to read from
+   * @param writer receives the geometry read
+   * @throws ParseException if a parse exception occurs
+   */
+  public void read(ByteBuffer wkb, Wkb2ioxWriter writer) throws ParseException
+  {
+    ByteOrder order = wkb.order();
+    buf = wkb;
+    out = writer;
     try {
-      return read(new ByteArrayInStream(bytes));
+      readGeometry();
+    }
+    catch (BufferUnderflowException ex) {
+      throw new ParseException("unexpected end of WKB", ex);
     }
     catch (IOException ex) {
       throw new ParseException(ex);
     }
+    finally {
+      wkb.order(order);
+      buf = null;
+      out = null;
+    }
   }
 
   /**
@@ -134,22 +217,47 @@ public class Wkb2iox
   throws IOException, ParseException
   {
     dis.setInStream(is);
-    IomObject g = readGeometry();
-    setSRID(g);
-    return g;
+    builder.reset();
+    out = builder;
+    try {
+      readGeometry();
+    }
+    finally {
+      out = null;
+    }
+    return builder.getResult();
   }
 
-  private IomObject readGeometry()
-  throws IOException, ParseException
+  /** reads the byte order, type and SRID of a geometry.
+   * @return the geometry type (without Z/M flags)
+   */
+  private int readHeader()
+  throws IOException
+  {
+    return readHeader(true);
+  }
+  /** reads the byte order and type of a geometry.
+   * @param withDimension false, if the Z/M/SRID flags of the type are to be ignored
+   * (as for the components of a multi geometry or compound curve).
+   * @return the geometry type (without Z/M flags)
+   */
+  private int readHeader(boolean withDimension)
+  throws IOException
   {
     // determine byte order
-    byte byteOrder = dis.readByte();
+    byte byteOrder = readByte();
     // default is big endian
-    if (byteOrder == WKBConstants.wkbNDR)
-      dis.setOrder(ByteOrderValues.LITTLE_ENDIAN);
+    if (buf != null) {
+      buf.order(byteOrder == WKBConstants.wkbNDR ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    } else {
+      dis.setOrder(byteOrder == WKBConstants.wkbNDR ? ByteOrderValues.LITTLE_ENDIAN : ByteOrderValues.BIG_ENDIAN);
+    }
 
-    int typeInt = dis.readInt();
+    int typeInt = readInt();
     int geometryType = extractGeometryType(typeInt);
+    if (!withDimension) {
+      return geometryType;
+    }
     // determine if Z values are present
     boolean hasZ = ((typeInt & WKBConstants.ewkbIncludesZ) ==WKBConstants.ewkbIncludesZ) || ((typeInt & WKBConstants.wkbIncludesZ) ==WKBConstants.wkbIncludesZ);
     boolean hasM = ((typeInt & WKBConstants.ewkbIncludesM) ==WKBConstants.ewkbIncludesM) || ((typeInt & WKBConstants.wkbIncludesM) ==WKBConstants.wkbIncludesM);
@@ -161,39 +269,70 @@ public class Wkb2iox
     hasSRID = (typeInt & WKBConstants.ewkbIncludesSRID) == WKBConstants.ewkbIncludesSRID;
 
     if (hasSRID) {
-      SRID = dis.readInt();
+      SRID = readInt();
     }
 
     // only allocate ordValues buffer if necessary
     if (ordValues == null || ordValues.length < inputDimension)
       ordValues = new double[inputDimension];
+    return geometryType;
+  }
 
+  private void readGeometry()
+  throws IOException, ParseException
+  {
+    int geometryType = readHeader();
     switch (geometryType) {
       case WKBConstants.wkbPoint :
-        return readPoint(true);
+        readCoordinate();
+        if(Double.isNaN(ordValues[0]) && Double.isNaN(ordValues[1])) {
+            // POINT EMPTY
+            return;
+        }
+        writeCoord();
+        return;
       case WKBConstants.wkbMultiPoint :
-          return readMultiPoint();
+          readMultiPoint();
+          return;
       case WKBConstants.wkbLineString :
-        return readLineString();
       case WKBConstants.wkbCompoundCurve :
-          return readCompoundCurve();
+      case WKBConstants.wkbCircularString :
+      {
+          int coordc = readInt();
+          if(coordc==0) {
+              // EMPTY
+              return;
+          }
+          readPolyline(geometryType, coordc);
+          return;
+      }
       case WKBConstants.wkbMultiLineString :
-          return readMultiCurve(false);
+          readMultiCurve(false);
+          return;
         case WKBConstants.wkbMultiCurve :
-            return readMultiCurve(true);
+            readMultiCurve(true);
+            return;
       case WKBConstants.wkbPolygon :
-        return readPolygon();
       case WKBConstants.wkbCurvePolygon :
-          return readCurvePolygon();
+      {
+          int ringc = readInt();
+          if(ringc==0) {
+              // POLYGON EMPTY
+              return;
+          }
+          out.startMultiSurface();
+          readPolygon(geometryType, ringc);
+          out.endMultiSurface();
+          return;
+      }
       case WKBConstants.wkbMultiPolygon :
-          return readMultiPolygon();
+          readMultiSurface(false);
+          return;
       case WKBConstants.wkbMultiSurface :
-          return readMultiSurface();
-      case WKBConstants.wkbCircularString :
-          return readCircularString();
+          readMultiSurface(true);
+          return;
     }
     throw new ParseException("Unknown WKB type " + geometryType);
-    //return null;
   }
 
 private int extractGeometryType(int typeInt) {
@@ -201,174 +340,108 @@ private int extractGeometryType(int typeInt) {
     return (typeInt & 0xffff)%1000;
 }
 
-  /**
-   * Sets the SRID, if it was specified in the WKB
-   *
-   * @param g the geometry to update
-   * @return the geometry with an updated SRID value, if required
-   */
-  private IomObject setSRID(IomObject g)
-  {
-    if (SRID != 0){
-      // TODO g.setSRID(SRID);
-    }
-    return g;
-  }
-
-  private IomObject readPoint() throws IOException
-  {
-      return readPoint(false);
-  }
-  private IomObject readPoint(boolean enableEmpty) throws IOException
+  private void readMultiPoint() throws IOException
   {
-    readCoordinate();
-    if(Double.isNaN(ordValues[0]) && Double.isNaN(ordValues[1])) {
-        if(enableEmpty) {
-            // POINT EMPTY
-            return null;
-        }
-        throw new IOException("unexpected NaN in WKB");
-    }
-	IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.COORD,null);
-	ret.setattrvalue(Iom_jObject.COORD_C1, Double.toString(ordValues[0]));
-	ret.setattrvalue(Iom_jObject.COORD_C2, Double.toString(ordValues[1]));
-	if(inputDimension==3){
-		ret.setattrvalue(Iom_jObject.COORD_C3, Double.toString(ordValues[2]));
-	}
-	return ret;
-  }
-  private IomObject readMultiPoint() throws IOException
-  {
-      int coordc = dis.readInt();
+      int coordc = readInt();
       if(coordc==0) {
           // MULTIPOINT EMPTY
-          return null;
+          return;
       }
-		IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.MULTICOORD,null);
+      out.startMultiCoord();
 	    for(int coordi=0;coordi<coordc;coordi++){
-	        byte byteOrder = dis.readByte();
-	        int typeInt = dis.readInt();
-	        int geometryType = extractGeometryType(typeInt);
+	        int geometryType = readHeader(false);
 	        if(geometryType==WKBConstants.wkbPoint){
 	        }else{
 	    	    throw new IllegalStateException("Unexpected WKB type " + geometryType);
 	        }
-        	IomObject coord=null;
-        	coord=readPoint();
-	    	ret.addattrobj(Iom_jObject.MULTICOORD_COORD,coord);
+	        readPoint();
+	        writeCoord();
 	    }
-	    return ret;
+	    out.endMultiCoord();
+  }
+
+  /** reads a LineString, CompoundCurve or CircularString (without header).
+   * @param coordc number of coords or of components (CompoundCurve)
+   */
+  private void readPolyline(int geometryType, int coordc) throws IOException
+  {
+    out.startPolyline();
+    if(geometryType==WKBConstants.wkbLineString) {
+        readLineString(coordc, true);
+    }else if(geometryType==WKBConstants.wkbCircularString) {
+        readCircularString(coordc, true);
+    }else {
+        readCompoundCurve(coordc);
+    }
+    out.endPolyline();
   }
 
-  private IomObject readLineString() throws IOException
+  private void readLineString(int coordc, boolean withStartPoint) throws IOException
   {
 
 //	  <linestring binary representation> ::=
 //				<byte order> <wkblinestring> [ <num> <wkbpoint binary>... ]
 //	  <wkblinearring> ::= <num> <wkbpoint binary>...
 
-      int coordc = dis.readInt();
-      if(coordc==0) {
-          // LINESTRING EMPTY
-          return null;
-      }
-	    IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.POLYLINE,null);
-		IomObject sequence=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.SEGMENTS,null);
-		ret.addattrobj(Iom_jObject.POLYLINE_SEQUENCE,sequence);
 	for(int coordi=0;coordi<coordc;coordi++){
-		sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, readPoint());
+		readPoint();
+		if(coordi>0 || withStartPoint){
+			writeCoord();
+		}
 	}
-	return ret;
   }
-  private IomObject readCompoundCurve() throws IOException
+  private void readCompoundCurve(int compc) throws IOException
   {
-    int compc = dis.readInt();
-    if(compc==0) {
-        // EMPTY
-        return null;
-    }
-	IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.POLYLINE,null);
-	IomObject sequence=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.SEGMENTS,null);
-	ret.addattrobj(Iom_jObject.POLYLINE_SEQUENCE,sequence);
 	for(int compi=0;compi<compc;compi++){
-	    byte byteOrder = dis.readByte();
-	    int typeInt = dis.readInt();
-        int geometryType = extractGeometryType(typeInt);
+	    int geometryType = readHeader(false);
 	    switch (geometryType) {
 	      case WKBConstants.wkbLineString :
-	      {
-	    	    int coordc = dis.readInt();
-	    		for(int coordi=0;coordi<coordc;coordi++){
-	    			// not first component and start point?
-	    			if(compi>0 && coordi==0){
-	    				// skip start point
-		    			readPoint();
-	    			}else{
-		    			sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, readPoint());
-	    			}
-	    		}
-	    		break;
-	      }
+	    	  // not first component: skip start point
+	    	  readLineString(readInt(), compi==0);
+	    	  break;
 	      case WKBConstants.wkbCircularString :
-	      {
-	    	    int coordc = dis.readInt();
-	    		for(int coordi=0;coordi<coordc;coordi++){
-	    			// first component and start point?
-	    			if(compi==0 && coordi==0){
-	    				// add start point
-		    			sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, readPoint());
-	    			}else if(compi>0 && coordi==0){
-		    			// not first component and start point?
-	    				// skip start point
-		    			readPoint();
-	    			}else{
-		    			IomObject arcPt=readPoint();coordi++;
-		    			if(coordi>=coordc){
-		    				throw new IllegalStateException("missing coord (arcPt "+arcPt.toString()+")");
-		    			}
-		    			IomObject endPt=readPoint();
-		    			endPt.setobjecttag(Iom_jObject.ARC);
-		    			endPt.setattrvalue(Iom_jObject.ARC_A1, arcPt.getattrvalue(Iom_jObject.COORD_C1));
-		    			endPt.setattrvalue(Iom_jObject.ARC_A2, arcPt.getattrvalue(Iom_jObject.COORD_C2));
-		    			sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, endPt);
-	    			}
-	    		}
-	    		break;
-	      }
+	    	  // not first component: skip start point
+	    	  readCircularString(readInt(), compi==0);
+	    	  break;
 	      default:
     	    throw new IllegalStateException("Unexpected WKB type " + geometryType);
 	    }
-		
 	}
-	return ret;
+  }
+  private void readCircularString(int coordc, boolean withStartPoint) throws IOException
+  {
+
+//	  <circularstring binary representation> ::=
+//			    <byte order> <wkbcircularstring> [ <num> <wkbpoint binary>... ]
+
+		for(int coordi=0;coordi<coordc;coordi++){
+			if( coordi==0){
+				readPoint();
+				if(withStartPoint){
+					// add start point
+					writeCoord();
+				}
+			}else{
+				readPoint();coordi++;
+				format(ordValues[0], fractionDigits[0], a1);
+				format(ordValues[1], fractionDigits[1], a2);
+				if(coordi>=coordc){
+					throw new IllegalStateException("missing coord (arcPt "+a1+", "+a2+")");
+				}
+				readPoint();
+				out.arc(a1, a2, c1, c2, formatCoord());
+			}
+		}
   }
 
-  private IomObject readPolygon() throws IOException
+  /** reads the rings of a Polygon or CurvePolygon.
+   */
+  private void readPolygon(int geometryType, int ringc) throws IOException
   {
 //	  <polygon binary representation> ::=
 //		<byte order> <wkbpolygon> [ <num> <wkblinearring binary>... ]
 //		| <triangle binary representation>
-    int holec = dis.readInt();
-    if(holec==0) {
-        // POLYGON EMPTY
-        return null;
-    }
-	IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.MULTISURFACE,null);
-	IomObject surface=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.SURFACE,null);
-	ret.addattrobj(Iom_jObject.MULTISURFACE_SURFACE,surface);
-
-	for(int holei=0;holei<holec;holei++){
-		IomObject boundary=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.BOUNDARY,null);
-		surface.addattrobj(Iom_jObject.SURFACE_BOUNDARY,boundary);
-		boundary.addattrobj(Iom_jObject.BOUNDARY_POLYLINE, readLineString());
-	}
-	
-	return ret;
-    
-    
-  }
-  private IomObject readCurvePolygon() throws IOException, ParseException
-  {
+
 //	  <curvepolygon binary representation> ::=
 //				<byte order> <wkbcurvepolygon> [ <num> <wkbring binary>... ]
 //				| <polygon binary representation>
@@ -377,64 +450,26 @@ private int extractGeometryType(int typeInt) {
 //				<linestring binary representation>
 //				| <circularstring binary representation>
 //				| <compoundcurve binary representation>
-	  
-	  
-    int ringc = dis.readInt();
-    if(ringc==0) {
-        // EMPTY
-        return null;
-    }
-	IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.MULTISURFACE,null);
-	IomObject surface=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.SURFACE,null);
-	ret.addattrobj(Iom_jObject.MULTISURFACE_SURFACE,surface);
-
-	for(int holei=0;holei<ringc;holei++){
-		IomObject boundary=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.BOUNDARY,null);
-		surface.addattrobj(Iom_jObject.SURFACE_BOUNDARY,boundary);
-		boundary.addattrobj(Iom_jObject.BOUNDARY_POLYLINE, readGeometry());
+	out.startSurface();
+	for(int ringi=0;ringi<ringc;ringi++){
+		int ringType=WKBConstants.wkbLineString;
+		if(geometryType==WKBConstants.wkbCurvePolygon) {
+			ringType=readHeader();
+			if(ringType!=WKBConstants.wkbLineString && ringType!=WKBConstants.wkbCircularString && ringType!=WKBConstants.wkbCompoundCurve){
+	    	    throw new IllegalStateException("Unexpected WKB type " + ringType);
+			}
+		}
+		int coordc=readInt();
+		if(coordc==0) {
+    	    throw new IllegalStateException("unexpected empty ring");
+		}
+		out.startBoundary();
+		readPolyline(ringType, coordc);
+		out.endBoundary();
 	}
-	
-	return ret;
-    
-    
+	out.endSurface();
   }
-  private IomObject readMultiPolygon() throws IOException, ParseException
-  {
-/*
-	  <multipolygon binary representation> ::=
-			  <byte order> <wkbmultipolygon>
-			  [ <num> <polygon binary representation>... ]			  
-			  
-	  <polygon binary representation> ::=
-			  <byte order> <wkbpolygon> [ <num> <wkblinearring binary>... ]
-			  | <triangle binary representation>
-
-*/
-	    int polygonc = dis.readInt();
-	    if(polygonc==0) {
-	        // MULTIPOLYGON EMPTY
-	        return null;
-	    }
-	      IomObject ret=null;
-	    for(int polygoni=0;polygoni<polygonc;polygoni++){
-	        byte byteOrder = dis.readByte();
-	        int typeInt = dis.readInt();
-            int geometryType = extractGeometryType(typeInt);
-	        if(geometryType!=WKBConstants.wkbPolygon){
-	    	    throw new IllegalStateException("Unexpected WKB type " + geometryType);
-	        }
-	        if(ret==null){
-	        	ret=readPolygon();
-	        }else{
-	        	IomObject poly=readPolygon();
-	        	IomObject surface=poly.getattrobj(Iom_jObject.MULTISURFACE_SURFACE, 0);
-		    	ret.addattrobj(Iom_jObject.MULTISURFACE_SURFACE,surface);
-	        }
-	    }
-	    return ret;
-	  
-  }
-  private IomObject readMultiSurface() throws IOException, ParseException
+  private void readMultiSurface(boolean allowCurve) throws IOException
   {
 /*
 	  <multisurface binary representation> ::=
@@ -444,49 +479,39 @@ private int extractGeometryType(int typeInt) {
 
 	  <multipolygon binary representation> ::=
 			  <byte order> <wkbmultipolygon>
-			  [ <num> <polygon binary representation>... ]			  
+			  [ <num> <polygon binary representation>... ]
 
 	  <surface binary representation> ::=
 			  <curvepolygon binary representation>
-			  | <polyhedralsurface binary representation>					  
+			  | <polyhedralsurface binary representation>
 */
-	    int surfacec = dis.readInt();
-	    if(surfacec==0) {
-	        // EMPTY
-	        return null;
-	    }
-	      IomObject ret=null;
+	    int surfacec = readInt();
+	    boolean started=false;
 	    for(int surfacei=0;surfacei<surfacec;surfacei++){
-	        byte byteOrder = dis.readByte();
-	        int typeInt = dis.readInt();
-            int geometryType = extractGeometryType(typeInt);
-	        if(geometryType!=WKBConstants.wkbCurvePolygon && geometryType!=WKBConstants.wkbPolygon){
+	        int geometryType = readHeader(false);
+	        if(geometryType!=WKBConstants.wkbPolygon && !(allowCurve && geometryType==WKBConstants.wkbCurvePolygon)){
 	    	    throw new IllegalStateException("Unexpected WKB type " + geometryType);
 	        }
-	        if(ret==null){
-	            if(geometryType==WKBConstants.wkbPolygon) {
-	                ret=readPolygon();
-	            }else {
-	                ret=readCurvePolygon();
-	            }
-	        }else{
-	        	IomObject poly=null;
-                if(geometryType==WKBConstants.wkbPolygon) {
-                    poly=readPolygon();
-                }else {
-                    poly=readCurvePolygon();
-                }
-	        	IomObject surface=poly.getattrobj(Iom_jObject.MULTISURFACE_SURFACE, 0);
-		    	ret.addattrobj(Iom_jObject.MULTISURFACE_SURFACE,surface);
+	        int ringc=readInt();
+	        if(ringc==0) {
+	            // POLYGON EMPTY
+	            continue;
+	        }
+	        if(!started) {
+	            out.startMultiSurface();
+	            started=true;
 	        }
+	        readPolygon(geometryType, ringc);
+	    }
+	    if(started) {
+	        out.endMultiSurface();
 	    }
-	    return ret;
   }
-  private IomObject readMultiCurve(boolean allowCurve) throws IOException, ParseException
+  private void readMultiCurve(boolean allowCurve) throws IOException
   {
 /*
 <multicurve binary representation> ::=
-<byte order> <wkbmulticurve> 
+<byte order> <wkbmulticurve>
      [ <num> <curve binary representation>... ]
 | <multilinestring binary representation>
 
@@ -496,63 +521,37 @@ private int extractGeometryType(int typeInt) {
 [ <num> <linestring binary representation>... ]
 
 */
-      int curvec = dis.readInt();
+      int curvec = readInt();
       if(curvec==0) {
-          return null;
+          return;
       }
-		IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.MULTIPOLYLINE,null);
+      out.startMultiPolyline();
 	    for(int curvei=0;curvei<curvec;curvei++){
-	        byte byteOrder = dis.readByte();
-	        int typeInt = dis.readInt();
-            int geometryType = extractGeometryType(typeInt);
+	        int geometryType = readHeader(false);
 	        if(geometryType==WKBConstants.wkbLineString){
 	        }else if(allowCurve && geometryType==WKBConstants.wkbCompoundCurve){
 	        }else{
 	    	    throw new IllegalStateException("Unexpected WKB type " + geometryType);
 	        }
-        	IomObject polyline=null;
-	        if(geometryType==WKBConstants.wkbLineString){
-	        	polyline=readLineString();
-	        }else{
-	        	polyline=readCompoundCurve();
+	        int coordc=readInt();
+	        if(coordc==0) {
+	    	    throw new IllegalStateException("unexpected empty curve");
 	        }
-	    	ret.addattrobj(Iom_jObject.MULTIPOLYLINE_POLYLINE,polyline);
+	        readPolyline(geometryType, coordc);
 	    }
-	    return ret;
+	    out.endMultiPolyline();
   }
-  
-  private IomObject readCircularString() throws IOException
-  {
-
-//	  <circularstring binary representation> ::=
-//			    <byte order> <wkbcircularstring> [ <num> <wkbpoint binary>... ]
 
-      int coordc = dis.readInt();
-      if(coordc==0) {
-          return null;
-      }
-	    IomObject ret=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.POLYLINE,null);
-		IomObject sequence=new ch.interlis.iom_j.Iom_jObject(Iom_jObject.SEGMENTS,null);
-		ret.addattrobj(Iom_jObject.POLYLINE_SEQUENCE,sequence);
-		for(int coordi=0;coordi<coordc;coordi++){
-			if( coordi==0){
-				// add start point
-				sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, readPoint());
-			}else{
-				IomObject arcPt=readPoint();coordi++;
-				if(coordi>=coordc){
-					throw new IllegalStateException("missing coord");
-				}
-				IomObject endPt=readPoint();
-				endPt.setobjecttag(Iom_jObject.ARC);
-				endPt.setattrvalue(Iom_jObject.ARC_A1, arcPt.getattrvalue(Iom_jObject.COORD_C1));
-				endPt.setattrvalue(Iom_jObject.ARC_A2, arcPt.getattrvalue(Iom_jObject.COORD_C2));
-				sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, endPt);
-			}
-		}
-	return ret;
+  /**
+   * Reads a coordinate, that is not allowed to be empty.
+   */
+  private void readPoint() throws IOException
+  {
+    readCoordinate();
+    if(Double.isNaN(ordValues[0]) && Double.isNaN(ordValues[1])) {
+        throw new IOException("unexpected NaN in WKB");
+    }
   }
-  
   /**
    * Reads a coordinate value with the specified dimensionality.
    * Makes the X and Y ordinates precise according to the precision model
@@ -561,8 +560,197 @@ private int extractGeometryType(int typeInt) {
   private void readCoordinate() throws IOException
   {
     for (int i = 0; i < inputDimension; i++) {
-        ordValues[i] = dis.readDouble();
+        ordValues[i] = readDouble();
+    }
+  }
+  private void writeCoord()
+  {
+    CharSequence c3Value = formatCoord();
+    out.coord(c1, c2, c3Value);
+  }
+  /** formats the coordinate read last into c1, c2, c3.
+   * @return c3 or null
+   */
+  private CharSequence formatCoord()
+  {
+    format(ordValues[0], fractionDigits[0], c1);
+    format(ordValues[1], fractionDigits[1], c2);
+    if(inputDimension==3){
+      format(ordValues[2], fractionDigits[2], c3);
+      return c3;
+    }
+    return null;
+  }
+  private static void format(double value, int fractionDigits, StringBuilder ret)
+  {
+    ret.setLength(0);
+    if (fractionDigits < 0) {
+      ret.append(value);
+    } else {
+      appendRounded(value, fractionDigits, ret);
     }
   }
+  /** Appends a value, rounded to the given number of fraction digits.
+   * Same result as Validator.roundNumeric(fractionDigits, Double.toString(value)).toPlainString(),
+   * i.e. a half is rounded up (away from zero if positive, towards zero if negative).
+   */
+  static void appendRounded(double value, int fractionDigits, StringBuilder ret)
+  {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      ret.append(value);
+      return;
+    }
+    if (fractionDigits < POWERS_OF_TEN.length) {
+      double scale = POWERS_OF_TEN[fractionDigits];
+      double scaled = value * scale;
+      if (Math.abs(scaled) < 1e15) {
+        double floor = Math.floor(scaled);
+        // a half (of the decimal value) may not be exactly a half in binary
+        if (Math.abs(scaled - floor - 0.5) > 4 * Math.ulp(scaled)) {
+          long rounded = (long) Math.floor(scaled + 0.5);
+          if (rounded < 0) {
+            ret.append('-');
+            rounded = -rounded;
+          }
+          long factor = (long) scale;
+          ret.append(rounded / factor);
+          if (fractionDigits > 0) {
+            ret.append('.');
+            long fraction = rounded % factor;
+            for (long digit = factor / 10; digit > fraction && digit > 1; digit /= 10) {
+              ret.append('0');
+            }
+            ret.append(fraction);
+          }
+          return;
+        }
+      }
+    }
+    BigDecimal decimal = new BigDecimal(Double.toString(value));
+    ret.append(decimal.setScale(fractionDigits, decimal.signum() == -1 ? BigDecimal.ROUND_HALF_DOWN : BigDecimal.ROUND_HALF_UP).toPlainString());
+  }
 
-}
\ No newline at end of file
+  private byte readByte() throws IOException
+  {
+    return buf != null ? buf.get() : dis.readByte();
+  }
+  private int readInt() throws IOException
+  {
+    return buf != null ? buf.getInt() : dis.readInt();
+  }
+  private double readDouble() throws IOException
+  {
+    return buf != null ? buf.getDouble() : dis.readDouble();
+  }
+
+  /** builds the IomObject returned by read().
+   */
+  private static class IomBuilder implements Wkb2ioxWriter {
+    private IomObject result = null;
+    // MULTICOORD, MULTIPOLYLINE or MULTISURFACE
+    private IomObject multi = null;
+    private IomObject surface = null;
+    private IomObject boundary = null;
+    private IomObject sequence = null;
+    private void reset() {
+      result = null;
+      multi = null;
+      surface = null;
+      boundary = null;
+      sequence = null;
+    }
+    private IomObject getResult() {
+      return result;
+    }
+    @Override
+    public void startMultiCoord() {
+      multi = new Iom_jObject(Iom_jObject.MULTICOORD, null);
+      result = multi;
+    }
+    @Override
+    public void endMultiCoord() {
+      multi = null;
+    }
+    @Override
+    public void startMultiPolyline() {
+      multi = new Iom_jObject(Iom_jObject.MULTIPOLYLINE, null);
+      result = multi;
+    }
+    @Override
+    public void endMultiPolyline() {
+      multi = null;
+    }
+    @Override
+    public void startMultiSurface() {
+      multi = new Iom_jObject(Iom_jObject.MULTISURFACE, null);
+      result = multi;
+    }
+    @Override
+    public void endMultiSurface() {
+      multi = null;
+    }
+    @Override
+    public void startSurface() {
+      surface = new Iom_jObject(Iom_jObject.SURFACE, null);
+      multi.addattrobj(Iom_jObject.MULTISURFACE_SURFACE, surface);
+    }
+    @Override
+    public void endSurface() {
+      surface = null;
+    }
+    @Override
+    public void startBoundary() {
+      boundary = new Iom_jObject(Iom_jObject.BOUNDARY, null);
+      surface.addattrobj(Iom_jObject.SURFACE_BOUNDARY, boundary);
+    }
+    @Override
+    public void endBoundary() {
+      boundary = null;
+    }
+    @Override
+    public void startPolyline() {
+      IomObject polyline = new Iom_jObject(Iom_jObject.POLYLINE, null);
+      sequence = new Iom_jObject(Iom_jObject.SEGMENTS, null);
+      polyline.addattrobj(Iom_jObject.POLYLINE_SEQUENCE, sequence);
+      if (boundary != null) {
+        boundary.addattrobj(Iom_jObject.BOUNDARY_POLYLINE, polyline);
+      } else if (multi != null) {
+        multi.addattrobj(Iom_jObject.MULTIPOLYLINE_POLYLINE, polyline);
+      } else {
+        result = polyline;
+      }
+    }
+    @Override
+    public void endPolyline() {
+      sequence = null;
+    }
+    @Override
+    public void coord(CharSequence c1, CharSequence c2, CharSequence c3) {
+      IomObject coord = new Iom_jObject(Iom_jObject.COORD, null);
+      coord.setattrvalue(Iom_jObject.COORD_C1, c1.toString());
+      coord.setattrvalue(Iom_jObject.COORD_C2, c2.toString());
+      if (c3 != null) {
+        coord.setattrvalue(Iom_jObject.COORD_C3, c3.toString());
+      }
+      if (sequence != null) {
+        sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, coord);
+      } else if (multi != null) {
+        multi.addattrobj(Iom_jObject.MULTICOORD_COORD, coord);
+      } else {
+        result = coord;
+      }
+    }
+    @Override
+    public void arc(CharSequence a1, CharSequence a2, CharSequence c1, CharSequence c2, CharSequence c3) {
+      IomObject arc = new Iom_jObject(Iom_jObject.ARC, null);
+      arc.setattrvalue(Iom_jObject.COORD_C1, c1.toString());
+      arc.setattrvalue(Iom_jObject.COORD_C2, c2.toString());
+      if (c3 != null) {
+        arc.setattrvalue(Iom_jObject.COORD_C3, c3.toString());
+      }
+      arc.setattrvalue(Iom_jObject.ARC_A1, a1.toString());
+      arc.setattrvalue(Iom_jObject.ARC_A2, a2.toString());
+      sequence.addattrobj(Iom_jObject.SEGMENTS_SEGMENT, arc);
+    }
+  }
+}
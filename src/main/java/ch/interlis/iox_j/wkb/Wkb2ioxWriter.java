@@ -0,0 +1,29 @@
+package ch.interlis.iox_j.wkb;
+
+/** Receives a geometry decoded by Wkb2iox, in the structure of the INTERLIS geometry
+ * (as an alternative to the IomObject returned by Wkb2iox.read()).
+ * A POINT is reported as a single coord(), a (MULTI)POLYGON as MULTISURFACE.
+ * The CharSequences given to coord() and arc() are reused by Wkb2iox and are only valid during the call.
+ */
+public interface Wkb2ioxWriter {
+	public void startMultiCoord();
+	public void endMultiCoord();
+	public void startMultiPolyline();
+	public void endMultiPolyline();
+	public void startMultiSurface();
+	public void endMultiSurface();
+	public void startSurface();
+	public void endSurface();
+	public void startBoundary();
+	public void endBoundary();
+	public void startPolyline();
+	public void endPolyline();
+	/** a COORD (of a point, multipoint or polyline).
+	 * @param c3 null, if the geometry has no Z values.
+	 */
+	public void coord(CharSequence c1,CharSequence c2,CharSequence c3);
+	/** an ARC of a polyline.
+	 * @param c3 null, if the geometry has no Z values.
+	 */
+	public void arc(CharSequence a1,CharSequence a2,CharSequence c1,CharSequence c2,CharSequence c3);
+}
@@ -0,0 +1,155 @@
+package ch.ehi.iox.objpool;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.impl.JavaSerializer;
+import ch.ehi.iox.objpool.impl.LongCounterMap;
+import ch.ehi.iox.objpool.impl.ObjPoolImpl2;
+import ch.ehi.iox.objpool.impl.SegmentLogStorageEngine;
+import ch.ehi.iox.objpool.impl.StringKeyIndex;
+
+public class ObjectPoolManagerTest {
+	// solange das Budget reicht, bleiben die Pools im Speicher
+	@Test
+	public void withinBudget_Ok() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager(10L*1024L*1024L);
+		Map<String,String> pool=recman.newObjectPoolImpl2("test",new JavaSerializer<String>());
+		PoolStorage storage=recman.newStorage("test2");
+		for(int i=0;i<1000;i++){
+			pool.put("k"+i, "v"+i);
+		}
+		recman.checkMemoryBudget();
+		assertTrue(storage.spill()); // was still in memory
+		assertEquals("v42",pool.get("k42"));
+		recman.close();
+	}
+	// wird das Budget ueberschritten, wird der groesste Pool ausgelagert
+	@Test
+	public void overBudget_spillLargestFirst() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager(300L*1024L);
+		PoolStorage small=recman.newStorage("small");
+		PoolStorage large=recman.newStorage("large");
+		byte[] record=new byte[1000];
+		small.append(record);
+		for(int i=0;i<300;i++){
+			large.append(record);
+		}
+		// the budget is checked while appending
+		assertTrue(recman.getMemorySize()<=300L*1024L);
+		assertFalse(large.spill()); // already spilled
+		assertTrue(small.spill());
+		recman.close();
+	}
+	// auch Pools ohne Cache werden beim Ueberschreiten des Budgets ausgelagert
+	@Test
+	public void overBudget_noCache_spill() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager(256L*1024L);
+		Map<String,String> pool=recman.newObjectPoolImpl2("test",new JavaSerializer<String>());
+		((ObjPoolImpl2)pool).disableCache();
+		for(int i=0;i<20000;i++){
+			pool.put("k"+i, "value"+i);
+		}
+		// the key index stays on the heap
+		assertTrue(recman.getMemorySize()-((ObjPoolImpl2)pool).getKeyIndexMemorySize()<=256L*1024L);
+		assertEquals("value42",pool.get("k42"));
+		assertEquals("value19999",pool.get("k19999"));
+		recman.close();
+	}
+	// auch die Zaehler-Tabellen zaehlen zum Budget und werden ausgelagert
+	@Test
+	public void overBudget_counterMap_spill() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager(256L*1024L);
+		LongCounterMap[] counters=new LongCounterMap[3];
+		for(int c=0;c<counters.length;c++){
+			counters[c]=recman.newCounterMap("counters"+c);
+			for(long i=1;i<=2500;i++){
+				counters[c].increment(i, i);
+			}
+		}
+		assertTrue(recman.getMemorySize()>256L*1024L);
+		recman.checkMemoryBudget();
+		assertTrue(recman.getMemorySize()<=256L*1024L);
+		for(int c=0;c<counters.length;c++){
+			assertEquals(1L,counters[c].get(42L, 42L));
+		}
+		recman.close();
+	}
+	// mehrere Manager teilen sich ein Budget; der Manager, der das Budget ueberschreitet, lagert seine Pools aus
+	@Test
+	public void sharedBudget_spill() throws Exception {
+		MemoryBudget budget=new MemoryBudget(400L*1024L);
+		ObjectPoolManager recman1=new ObjectPoolManager(budget);
+		ObjectPoolManager recman2=new ObjectPoolManager(budget);
+		PoolStorage storage1=recman1.newStorage("storage1");
+		PoolStorage storage2=recman2.newStorage("storage2");
+		byte[] record=new byte[1000];
+		for(int i=0;i<200;i++){
+			storage1.append(record);
+		}
+		recman1.checkMemoryBudget();
+		for(int i=0;i<200;i++){
+			storage2.append(record);
+		}
+		recman2.checkMemoryBudget();
+		assertTrue(recman1.getMemorySize()+recman2.getMemorySize()<=400L*1024L);
+		assertTrue(budget.getTotalSize()<=400L*1024L);
+		assertFalse(storage2.spill()); // already spilled
+		assertTrue(storage1.spill());
+		recman1.close();
+		recman2.close();
+		assertEquals(0L,budget.getTotalSize());
+	}
+	// die Schluessel-Indizes zaehlen zum Speicherverbrauch
+	@Test
+	public void keyIndex_counted() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager(10L*1024L*1024L);
+		Map<String,String> pool=recman.newObjectPoolImpl2("test",new JavaSerializer<String>(),new StringKeyIndex());
+		long keyIndexSize=((ObjPoolImpl2)pool).getKeyIndexMemorySize();
+		assertTrue(keyIndexSize>0L);
+		assertTrue(recman.getMemorySize()>=keyIndexSize);
+		recman.closeObjectPool(pool);
+		assertEquals(0L,recman.getMemorySize());
+		recman.close();
+	}
+	// mit keepInMemory=false wird nichts im Speicher gehalten
+	@Test
+	public void fileEngine_Ok() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager();
+		recman.setStorageEngine(new SegmentLogStorageEngine(false));
+		PoolStorage storage=recman.newStorage("file");
+		long pos=storage.append(new byte[10]);
+		assertFalse(storage.spill());
+		assertEquals(10,storage.read(pos).length);
+		recman.close();
+	}
+	// die maximale Groesse der Storages wird pro Pool-Name auch nach dem Schliessen rapportiert
+	@Test
+	public void peakStorageSizes_Ok() throws Exception {
+		ObjectPoolManager recman=new ObjectPoolManager();
+		PoolStorage a1=recman.newStorage("a");
+		PoolStorage a2=recman.newStorage("a");
+		PoolStorage b=recman.newStorage("b");
+		a1.append(new byte[100]);
+		a2.append(new byte[50]);
+		b.append(new byte[10]);
+		long peakA=a1.length()+a2.length();
+		recman.closeStorage(a1);
+		recman.closeStorage(a2);
+		PoolStorage a3=recman.newStorage("a");
+		a3.append(new byte[10]);
+		Map<String,Long> peaks=recman.getPeakStorageSizes();
+		assertEquals(peakA,peaks.get("a").longValue());
+		assertEquals(b.length(),peaks.get("b").longValue());
+		Map<String,String> pool=recman.newObjectPoolImpl2("c",new JavaSerializer<String>());
+		pool.put("k1", "v1");
+		recman.closeObjectPool(pool);
+		recman.close();
+		peaks=recman.getPeakStorageSizes();
+		assertEquals(peakA,peaks.get("a").longValue());
+		assertTrue(peaks.get("c")>0L);
+	}
+}
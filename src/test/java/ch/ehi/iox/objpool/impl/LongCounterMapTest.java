@@ -0,0 +1,49 @@
+package ch.ehi.iox.objpool.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LongCounterMapTest {
+	private static final int KEY_COUNT=10000;
+	private static void incrementAll(LongCounterMap map){
+		for(int i=0;i<KEY_COUNT;i++){
+			for(int j=0;j<=i%3;j++){
+				map.increment(i, i*31L);
+			}
+		}
+	}
+	private static void assertCounters(LongCounterMap map){
+		assertEquals(KEY_COUNT,map.size());
+		for(int i=0;i<KEY_COUNT;i++){
+			assertEquals(i%3+1,map.get(i, i*31L));
+		}
+		assertEquals(0L,map.get(KEY_COUNT, 1L));
+	}
+	// Zaehler werden auf dem Heap gefuehrt
+	@Test
+	public void heap_Ok() {
+		LongCounterMap map=new LongCounterMap(null,Long.MAX_VALUE);
+		incrementAll(map);
+		assertFalse(map.isMapped());
+		assertCounters(map);
+		map.close();
+	}
+	// Zaehler werden in eine gemappte Datei ausgelagert, wenn die Tabelle zu gross wird
+	@Test
+	public void mapped_Ok() {
+		LongCounterMap map=new LongCounterMap(null,64*1024);
+		incrementAll(map);
+		assertTrue(map.isMapped());
+		assertCounters(map);
+		map.close();
+	}
+	// der reservierte Schluessel 0/0 kann trotzdem verwendet werden
+	@Test
+	public void zeroKey_Ok() {
+		LongCounterMap map=new LongCounterMap(null,Long.MAX_VALUE);
+		assertEquals(5L,map.add(0L, 0L, 5L));
+		assertEquals(5L,map.get(0L, 0L));
+		map.close();
+	}
+}
@@ -0,0 +1,62 @@
+package ch.ehi.iox.objpool.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+
+public class MappedSegmentLogTest {
+	private static byte[] record(int i,int size){
+		byte[] ret=new byte[size];
+		for(int j=0;j<size;j++){
+			ret[j]=(byte)(i+j);
+		}
+		return ret;
+	}
+	// records einer SegmentLog Datei koennen ueber die gemappte Datei gelesen werden
+	@Test
+	public void read_Ok() throws IOException {
+		SegmentLog log=new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),64);
+		long pos[]=new long[100];
+		for(int i=0;i<pos.length;i++){
+			pos[i]=log.append(record(i,i%20));
+		}
+		log.append(record(100,1000));
+		log.flush();
+		File file=log.getFilename();
+		MappedSegmentLog mapped=new MappedSegmentLog(file);
+		assertEquals(log.length(),mapped.length());
+		for(int i=pos.length-1;i>=0;i--){
+			assertArrayEquals(record(i,i%20),mapped.read(pos[i]));
+		}
+		Iterator<byte[]> it=mapped.scan(new long[]{pos[1],pos[50]});
+		assertArrayEquals(record(1,1),it.next());
+		assertArrayEquals(record(50,10),it.next());
+		assertFalse(it.hasNext());
+		mapped.close();
+		assertTrue(file.exists());
+		log.close();
+	}
+	// die gemappte Datei kann nicht veraendert werden
+	@Test
+	public void append_Fail() throws IOException {
+		SegmentLog log=new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),64);
+		log.append(record(1,10));
+		log.flush();
+		MappedSegmentLog mapped=new MappedSegmentLog(log.getFilename());
+		try{
+			mapped.append(record(2,10));
+			fail();
+		}catch(UnsupportedOperationException e){
+			// ok
+		}
+		assertFalse(mapped.spill());
+		mapped.close();
+		log.close();
+	}
+}
@@ -0,0 +1,35 @@
+package ch.ehi.iox.objpool.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+
+public class ObjPoolImpl2Test {
+	// in der Reihenfolge der Datei wird von jedem Schluessel nur der aktuelle Wert geliefert
+	@Test
+	public void valueIteratorInFileOrder_Ok() {
+		ObjectPoolManager recman=new ObjectPoolManager();
+		ObjPoolImpl2<String,String> pool=new ObjPoolImpl2<String,String>(recman,new JavaSerializer());
+		for(int i=0;i<10000;i++){
+			pool.put("k"+i, "v"+i);
+		}
+		pool.put("k5", "v5b");
+		pool.put("k0", "v0b");
+		assertEquals("v5b",pool.get("k5"));
+		Iterator<String> it=pool.valueIteratorInFileOrder();
+		for(int i=1;i<10000;i++){
+			if(i!=5){
+				assertEquals("v"+i,it.next());
+			}
+		}
+		assertEquals("v5b",it.next());
+		assertEquals("v0b",it.next());
+		assertFalse(it.hasNext());
+		pool.close();
+		recman.close();
+	}
+}
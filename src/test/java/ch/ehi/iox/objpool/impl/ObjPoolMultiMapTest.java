@@ -0,0 +1,78 @@
+package ch.ehi.iox.objpool.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+
+public class ObjPoolMultiMapTest {
+	private static final int KEY_COUNT=300;
+	// Werte werden pro Schluessel in der Reihenfolge des Hinzufuegens geliefert, auch ueber mehrere Chunks
+	@Test
+	public void add_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		ObjPoolMultiMap<String,Long> map=new ObjPoolMultiMap<String,Long>(objPoolManager,null,new LongSerializer(),new StringKeyIndex(),4);
+		// keys interleaved, key i gets i%10 values
+		for(int valuei=0;valuei<10;valuei++){
+			for(int keyi=0;keyi<KEY_COUNT;keyi++){
+				if(valuei<keyi%10){
+					map.add("k"+keyi, (long)(keyi*100+valuei));
+				}
+			}
+		}
+		assertFalse(map.containsKey("k0"));
+		assertNull(map.get("k0"));
+		for(int keyi=1;keyi<KEY_COUNT;keyi++){
+			if(keyi%10==0){
+				continue;
+			}
+			List<Long> values=map.get("k"+keyi);
+			assertEquals(keyi%10,values.size());
+			for(int valuei=0;valuei<values.size();valuei++){
+				assertEquals(Long.valueOf(keyi*100+valuei),values.get(valuei));
+			}
+		}
+		// values can still be added, after a key was read
+		map.add("k1", 1L);
+		assertEquals(2,map.get("k1").size());
+		assertEquals(KEY_COUNT-KEY_COUNT/10,map.size());
+		Iterator<String> keyIt=map.keyIterator();
+		assertEquals("k1",keyIt.next());
+		assertEquals("k101",keyIt.next());
+		objPoolManager.close();
+	}
+	// die Chunk-Groesse muss mindestens 1 sein
+	@Test
+	public void zeroChunkSize_Fail() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		try{
+			new ObjPoolMultiMap<String,Long>(objPoolManager,null,new LongSerializer(),new StringKeyIndex(),0);
+			fail();
+		}catch(IllegalArgumentException e){
+			// ok
+		}
+		objPoolManager.close();
+	}
+	// wird das Budget ueberschritten, wird der Pool beim Hinzufuegen ausgelagert
+	@Test
+	public void overBudget_spill() throws Exception {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager(128*1024);
+		ObjPoolMultiMap<String,Long> map=objPoolManager.newMultiMap("test",new LongSerializer(),new StringKeyIndex());
+		for(int valuei=0;valuei<100;valuei++){
+			for(int keyi=0;keyi<KEY_COUNT;keyi++){
+				map.add("k"+keyi, (long)(keyi*1000+valuei));
+			}
+		}
+		map.flush();
+		// the key index stays on the heap
+		assertTrue(objPoolManager.getMemorySize()-map.getKeyIndexMemorySize()<=128*1024);
+		List<Long> values=map.get("k42");
+		assertEquals(100,values.size());
+		assertEquals(Long.valueOf(42*1000+99),values.get(99));
+		objPoolManager.close();
+	}
+}
@@ -0,0 +1,133 @@
+package ch.ehi.iox.objpool.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+
+public class SegmentLogTest {
+	private static byte[] record(int i,int size){
+		byte[] ret=new byte[size];
+		for(int j=0;j<size;j++){
+			ret[j]=(byte)(i+j);
+		}
+		return ret;
+	}
+	// records aus dem Schreibpuffer und aus der Datei koennen gelesen werden
+	@Test
+	public void appendRead_Ok() throws IOException {
+		SegmentLog log=new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),64);
+		long pos[]=new long[100];
+		for(int i=0;i<pos.length;i++){
+			pos[i]=log.append(record(i,i%20));
+		}
+		assertTrue(log.getFlushCount()>0);
+		for(int i=pos.length-1;i>=0;i--){
+			assertArrayEquals(record(i,i%20),log.read(pos[i]));
+		}
+		log.close();
+	}
+	// records die groesser als der Schreibpuffer sind, werden direkt geschrieben
+	@Test
+	public void largeRecord_Ok() throws IOException {
+		SegmentLog log=new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),64);
+		long pos0=log.append(record(1,10));
+		long pos1=log.append(record(2,1000));
+		long pos2=log.append(record(3,10));
+		assertEquals(0L,pos0);
+		assertEquals(14L,pos1);
+		assertEquals(1018L,pos2);
+		assertEquals(1032L,log.length());
+		assertArrayEquals(record(2,1000),log.read(pos1));
+		assertArrayEquals(record(1,10),log.read(pos0));
+		assertArrayEquals(record(3,10),log.read(pos2));
+		log.close();
+	}
+	// solange der Schreibpuffer nicht voll ist, wird keine Datei erstellt
+	@Test
+	public void noFileIfSmall_Ok() throws IOException {
+		File file=ObjectPoolManager.getCacheTmpFilename();
+		SegmentLog log=new SegmentLog(file);
+		long pos=log.append(record(1,10));
+		assertFalse(file.exists());
+		assertArrayEquals(record(1,10),log.read(pos));
+		log.flush();
+		assertTrue(file.exists());
+		assertArrayEquals(record(1,10),log.read(pos));
+		log.close();
+		assertFalse(file.exists());
+	}
+	// scan liefert nur die verlangten records, in der Reihenfolge der Datei
+	@Test
+	public void scan_Ok() throws IOException {
+		SegmentLog log=new SegmentLog(ObjectPoolManager.getCacheTmpFilename(),64);
+		long pos[]=new long[100];
+		for(int i=0;i<pos.length;i++){
+			pos[i]=log.append(record(i,i%20));
+		}
+		long selected[]=new long[50];
+		for(int i=0;i<selected.length;i++){
+			selected[i]=pos[i*2+1];
+		}
+		java.util.Iterator<byte[]> it=log.scan(selected);
+		for(int i=0;i<selected.length;i++){
+			assertTrue(it.hasNext());
+			assertArrayEquals(record(i*2+1,(i*2+1)%20),it.next());
+		}
+		assertFalse(it.hasNext());
+		log.close();
+	}
+	// im Speicher gehaltene records werden bei spill() in die Datei geschrieben
+	@Test
+	public void inMemorySpill_Ok() throws IOException {
+		File file=ObjectPoolManager.getCacheTmpFilename();
+		SegmentLog log=new SegmentLog(file,64,true);
+		long pos[]=new long[100];
+		for(int i=0;i<pos.length;i++){
+			pos[i]=log.append(record(i,i==50?1000:i%20));
+		}
+		assertFalse(file.exists());
+		assertTrue(log.getMemorySize()>log.length());
+		for(int i=0;i<pos.length;i++){
+			assertArrayEquals(record(i,i==50?1000:i%20),log.read(pos[i]));
+		}
+		assertTrue(log.spill());
+		assertTrue(file.exists());
+		assertFalse(log.spill());
+		assertEquals(64L,log.getMemorySize());
+		for(int i=0;i<pos.length;i++){
+			assertArrayEquals(record(i,i==50?1000:i%20),log.read(pos[i]));
+		}
+		java.util.Iterator<byte[]> it=log.scan(pos);
+		for(int i=0;i<pos.length;i++){
+			assertArrayEquals(record(i,i==50?1000:i%20),it.next());
+		}
+		log.close();
+	}
+	// scan liest ueber die Grenzen der Lesebloecke hinweg, auch waehrend weitere records angehaengt werden,
+	// und muss nicht bis zum Ende gelesen werden
+	@Test
+	public void scanBlocks_Ok() throws IOException {
+		File file=ObjectPoolManager.getCacheTmpFilename();
+		SegmentLog log=new SegmentLog(file,64);
+		int sizes[]=new int[]{300000,10,SegmentLog.READ_BUFFER_SIZE+10,700000,500000,20,900000};
+		long pos[]=new long[sizes.length];
+		for(int i=0;i<pos.length;i++){
+			pos[i]=log.append(record(i,sizes[i]));
+		}
+		java.util.Iterator<byte[]> it=log.scan(pos);
+		for(int i=0;i<pos.length;i++){
+			assertArrayEquals(record(i,sizes[i]),it.next());
+			log.append(record(i,100));
+		}
+		assertFalse(it.hasNext());
+		it=log.scan(pos);
+		assertArrayEquals(record(0,sizes[0]),it.next());
+		log.close();
+		assertFalse(file.exists());
+	}
+}
@@ -0,0 +1,64 @@
+package ch.ehi.iox.objpool.impl.btree;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.ehi.iox.objpool.impl.JavaComparator;
+import ch.ehi.iox.objpool.impl.LongSerializer;
+
+public class BTreeTest {
+	private static final int KEY_COUNT=20000;
+	// mit einem kleinen Cache werden Knoten verdraengt, geschrieben und wieder gelesen
+	@Test
+	public void smallCache_Ok() throws IOException {
+		BTree<Long,Long> tree=new BTree<Long,Long>(null,ObjectPoolManager.getCacheTmpFilename(),new JavaComparator<Long>(),new LongSerializer(),new LongSerializer(),8,16);
+		Random random=new Random(1);
+		long keys[]=new long[KEY_COUNT];
+		for(int i=0;i<KEY_COUNT;i++){
+			keys[i]=i;
+		}
+		for(int i=KEY_COUNT-1;i>0;i--){
+			int j=random.nextInt(i+1);
+			long tmp=keys[i];
+			keys[i]=keys[j];
+			keys[j]=tmp;
+		}
+		for(int i=0;i<KEY_COUNT;i++){
+			assertNull(tree.put(keys[i], keys[i]));
+		}
+		// update every second key
+		for(int i=0;i<KEY_COUNT;i+=2){
+			assertEquals(Long.valueOf(keys[i]),tree.put(keys[i], keys[i]+1));
+		}
+		assertEquals(KEY_COUNT,tree.size());
+		for(int i=0;i<KEY_COUNT;i++){
+			long expected=i%2==0 ? keys[i]+1 : keys[i];
+			assertEquals(Long.valueOf(expected),tree.get(keys[i]));
+		}
+		// cursor returns the keys in key order
+		BTreeCursor<Long,Long> cursor=new BTreeCursor<Long,Long>(tree);
+		long expectedKey=0;
+		while(cursor.hasNext()){
+			cursor.next();
+			assertEquals(Long.valueOf(expectedKey),cursor.getKey());
+			expectedKey++;
+		}
+		assertEquals(KEY_COUNT,expectedKey);
+		tree.close();
+	}
+	// fan-out muss gerade und groesser als 2 sein
+	@Test
+	public void oddFanOut_Fail() throws IOException {
+		try{
+			new BTree<Long,Long>(null,ObjectPoolManager.getCacheTmpFilename(),new JavaComparator<Long>(),new LongSerializer(),new LongSerializer(),7,16);
+			fail();
+		}catch(IllegalArgumentException e){
+			// ok
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package ch.interlis.iom_j.itf.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Polygon;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.interlis.iom_j.itf.impl.jtsext.noding.AreaValidator;
+import ch.interlis.iox_j.IoxIntersectionException;
+import ch.interlis.iox_j.IoxInvalidDataException;
+import ch.interlis.iox_j.jts.Iox2jtsext;
+import ch.interlis.iox_j.validator.IomObjectHelper;
+
+public class ExternalAreaValidatorTest {
+	private static Polygon rect(String tid,double x1,double y1,double x2,double y2) throws Exception
+	{
+		Polygon ret=Iox2jtsext.surface2JTS(IomObjectHelper.createRectangleGeometry(Double.toString(x1),Double.toString(y1),Double.toString(x2),Double.toString(y2)),0.0);
+		ret.setUserData(tid);
+		return ret;
+	}
+	private static Polygon triangle(String tid,double x1,double y1,double x2,double y2,double x3,double y3) throws Exception
+	{
+		Polygon ret=Iox2jtsext.surface2JTS(IomObjectHelper.createPolygonFromBoundaries(IomObjectHelper.createBoundary(
+				IomObjectHelper.createCoord(Double.toString(x1),Double.toString(y1)),
+				IomObjectHelper.createCoord(Double.toString(x2),Double.toString(y2)),
+				IomObjectHelper.createCoord(Double.toString(x3),Double.toString(y3)),
+				IomObjectHelper.createCoord(Double.toString(x1),Double.toString(y1)))),0.0);
+		ret.setUserData(tid);
+		return ret;
+	}
+	private static List<Polygon> createGrid(boolean withOverlaps) throws Exception
+	{
+		List<Polygon> polygons=new ArrayList<Polygon>();
+		for(int i=0;i<30;i++){
+			for(int j=0;j<30;j++){
+				polygons.add(rect("R"+i+"_"+j,i*10,j*10,i*10+10,j*10+10));
+			}
+		}
+		if(withOverlaps){
+			polygons.add(rect("X1",55,55,65,65));
+			polygons.add(rect("X2",252,142,258,148));
+		}
+		return polygons;
+	}
+	/** Quadrate, von denen einige verschoben sind, und einige Dreiecke ueber den Quadraten.
+	 */
+	private static List<Polygon> createRandomLayout(Random random) throws Exception
+	{
+		List<Polygon> polygons=new ArrayList<Polygon>();
+		for(int i=0;i<12;i++){
+			for(int j=0;j<12;j++){
+				double dx=random.nextInt(4)==0 ? random.nextInt(9)-4 : 0;
+				double dy=random.nextInt(4)==0 ? random.nextInt(9)-4 : 0;
+				polygons.add(rect("R"+i+"_"+j,i*10+dx,j*10+dy,i*10+10+dx,j*10+10+dy));
+			}
+		}
+		for(int k=0;k<8;k++){
+			double x=random.nextInt(110);
+			double y=random.nextInt(110);
+			polygons.add(random.nextInt(polygons.size()),triangle("T"+k,x,y,x+5+random.nextInt(20),y+random.nextInt(5),x+random.nextInt(5),y+5+random.nextInt(20)));
+		}
+		return polygons;
+	}
+	private static List<String> getMessages(List<IoxInvalidDataException> exceptions)
+	{
+		List<String> ret=new ArrayList<String>();
+		for(IoxInvalidDataException ex:exceptions){
+			if(ex instanceof IoxIntersectionException){
+				ret.add(((IoxIntersectionException)ex).getIntersection().toShortString());
+			}else{
+				ret.add(ex.getMessage());
+			}
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+	private static List<String> validateExternal(List<Polygon> polygons) throws Exception
+	{
+		return validateExternal(polygons,17);
+	}
+	private static List<String> validateExternal(List<Polygon> polygons,int batchSize) throws Exception
+	{
+		return validateExternal(polygons,batchSize,1);
+	}
+	private static List<String> validateExternal(List<Polygon> polygons,int batchSize,int threadCount) throws Exception
+	{
+		ObjectPoolManager objPool=new ObjectPoolManager();
+		try{
+			ExternalAreaValidator validator=new ExternalAreaValidator(objPool,"test");
+			validator.setBatchSize(batchSize);
+			validator.setThreadCount(threadCount);
+			validator.setCacheSize(50);
+			for(Polygon polygon:polygons){
+				validator.addPolygon(polygon);
+			}
+			assertEquals(polygons.size(),validator.size());
+			List<String> ret=getMessages(validator.validate(0.0,"Test.Area"));
+			validator.close();
+			return ret;
+		}finally{
+			objPool.close();
+		}
+	}
+	// gueltige Gebietseinteilung
+	@Test
+	public void valid_Ok() throws Exception
+	{
+		assertEquals(0,validateExternal(createGrid(false)).size());
+	}
+	// in Teilen validiert werden die gleichen Fehler gefunden wie mit allen Polygonen im Speicher (zufaellige Gebietseinteilungen)
+	@Test
+	public void randomLayouts_sameAsInMemory() throws Exception
+	{
+		for(int seed=0;seed<100;seed++){
+			List<Polygon> polygons=createRandomLayout(new Random(seed));
+			List<String> expected=getMessages(AreaValidator.validateArea(polygons, 0.0, "Test.Area"));
+			assertEquals("seed "+seed,expected,validateExternal(polygons,1,1));
+			assertEquals("seed "+seed,expected,validateExternal(polygons,17,1));
+			assertEquals("seed "+seed,expected,validateExternal(polygons,100,3));
+		}
+	}
+	// Polygone, die sich vollstaendig ueberdecken, werden gefunden, ohne alle Polygone zu lesen
+	@Test
+	public void validateOverlays_Ok() throws Exception
+	{
+		ObjectPoolManager objPool=new ObjectPoolManager();
+		try{
+			ExternalAreaValidator validator=new ExternalAreaValidator(objPool,"test");
+			validator.setCacheSize(2);
+			for(Polygon polygon:createGrid(false)){
+				validator.addPolygon(polygon);
+			}
+			validator.addPolygon(rect("X1",50,50,60,60));
+			List<String> messages=getMessages(validator.validateOverlays());
+			assertEquals(1,messages.size());
+			assertEquals("polygons overlay tid1 R5_5, tid2 X1",messages.get(0));
+			validator.close();
+		}finally{
+			objPool.close();
+		}
+	}
+	// verschiedene Schnitte der gleichen Polygone im gleichen Punkt werden nicht zusammengefasst,
+	// auch wenn die Polygone in verschiedenen Teilen validiert werden
+	@Test
+	public void intersectionsAtSamePoint_sameAsInMemory() throws Exception
+	{
+		List<Polygon> polygons=new ArrayList<Polygon>();
+		polygons.add(rect("A",0,0,10,10));
+		polygons.add(triangle("B",5,10,8,20,2,20));
+		List<String> expected=getMessages(AreaValidator.validateArea(polygons, 0.0, "Test.Area"));
+		assertEquals(2,expected.size());
+		assertEquals(expected,validateExternal(polygons));
+		assertEquals(expected,validateExternal(polygons,1));
+	}
+	// Hilbert-Kurve: die ersten 16 Schluessel fuellen die Ecke 4x4, aufeinanderfolgende Schluessel sind benachbarte Zellen
+	@Test
+	public void hilbertKey_Ok() throws Exception
+	{
+		int cells[][]=new int[16][];
+		for(int x=0;x<4;x++){
+			for(int y=0;y<4;y++){
+				long key=ExternalAreaValidator.getHilbertKey(x,y);
+				assertTrue(key<16);
+				assertNull(cells[(int)key]);
+				cells[(int)key]=new int[]{x,y};
+			}
+		}
+		for(int i=1;i<16;i++){
+			assertEquals(1,Math.abs(cells[i][0]-cells[i-1][0])+Math.abs(cells[i][1]-cells[i-1][1]));
+		}
+	}
+}
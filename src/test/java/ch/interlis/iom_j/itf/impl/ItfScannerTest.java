@@ -0,0 +1,75 @@
+package ch.interlis.iom_j.itf.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+public class ItfScannerTest {
+	private static String[] splitWithRegex(String line,String undefinedCode)
+	{
+		String[] ret=line.trim().split("\\s+");
+		for(int i=0;i<ret.length;i++){
+			if(ret[i]!=null && ret[i].length()==0){
+				ret[i]=null;
+			}
+			if(ret[i]!=null && ret[i].equals(undefinedCode)){
+				ret[i]=null;
+			}
+		}
+		return ret;
+	}
+	// die Werte werden gleich getrennt wie mit dem regulaeren Ausdruck \s+
+	@Test
+	public void splitFields_sameAsRegex() throws Exception
+	{
+		String lines[]=new String[]{"","   ","10","10 @ abc"," 10  \t20 ","@","@@ @ x@","a\u000bb\fc\rd","\u0001a b\u0001","a\u0001 b"};
+		for(String line:lines){
+			assertArrayEquals(line,splitWithRegex(line,"@"),ItfScanner.splitFields(line,"@"));
+		}
+	}
+	// physische Zeilen mit LF, CR oder CR LF; Fortsetzungszeilen
+	@Test
+	public void read_lineTerminators() throws Exception
+	{
+		String itf="SCNT\r\ntest\r\n////\rMTID INTERLIS1\nMODL Test\\\r\nCONT 1\n\nEMOD\r\nENDE";
+		ItfScanner scanner=new ItfScanner(new ByteArrayInputStream(itf.getBytes(ItfScanner.ITF_CHARSET)));
+		ItfLineCursor cursor=new ItfLineCursor();
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.SCNT,cursor.getKind());
+		assertEquals("test",cursor.getContent());
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.MTID,cursor.getKind());
+		assertEquals("INTERLIS1",cursor.getContent());
+		assertEquals(4,cursor.getLineNumber());
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.MODL,cursor.getKind());
+		assertEquals("Test1",cursor.getContent());
+		assertEquals(ItfLineKind.EMOD,scanner.nextKind());
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.EMOD,cursor.getKind());
+		assertEquals(8,cursor.getLineNumber());
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.ENDE,cursor.getKind());
+		assertFalse(scanner.read(cursor));
+	}
+	// Zeilen laenger als der Puffer
+	@Test
+	public void read_longLine() throws Exception
+	{
+		StringBuilder content=new StringBuilder();
+		for(int i=0;i<100000;i++){
+			content.append("12345 ");
+		}
+		String itf="OBJE "+content+"\r\nENDE\r\n";
+		ItfScanner scanner=new ItfScanner(new ByteArrayInputStream(itf.getBytes(ItfScanner.ITF_CHARSET)));
+		ItfLineCursor cursor=new ItfLineCursor();
+		assertTrue(scanner.read(cursor));
+		assertEquals(content.toString(),cursor.getContent());
+		assertEquals(100000,ItfScanner.splitFields(cursor.getContent(),"@").length);
+		assertTrue(scanner.read(cursor));
+		assertEquals(ItfLineKind.ENDE,cursor.getKind());
+		assertFalse(scanner.read(cursor));
+	}
+}
@@ -1241,4 +1241,49 @@ public class ItfSurfaceLinetable2PolygonTest {
 		//System.out.println(polygon2);
 		assertEquals("MULTISURFACE {surface SURFACE {boundary BOUNDARY {polyline POLYLINE {sequence SEGMENTS {segment [COORD {C1 100.0, C2 100.0}, COORD {C1 100.0, C2 400.0}, COORD {C1 400.0, C2 400.0}, COORD {C1 400.0, C2 100.0}, COORD {C1 100.0, C2 100.0}]}}}}}",polygon2.toString());
 	}
-}
\ No newline at end of file
+	
+	private ItfSurfaceLinetable2Polygon buildManyPolygons(int threadCount) throws IoxException {
+		ItfSurfaceLinetable2Polygon builder=new ItfSurfaceLinetable2Polygon(REFATTR, GEOMATTR);
+		builder.setThreadCount(threadCount);
+		for(int i=0;i<500;i++){
+			double x=i*100.0;
+			IomObject polyline=newPolyline();
+			addCoord(polyline,x,100.0);
+			addCoord(polyline,x+50.0,100.0); 
+			addCoord(polyline,x+50.0,150.0); 
+			addCoord(polyline,x,150.0); 
+			addCoord(polyline,x,100.0);
+			builder.addItfLinetableObject(createLinetableObj(Integer.toString(i*2),TABLENAME,REFATTR,GEOMATTR,Integer.toString(i),polyline));
+			if(i%7==0){
+				// dangle
+				polyline=newPolyline();
+				addCoord(polyline,x+50.0,150.0);
+				addCoord(polyline,x+70.0,170.0);
+				builder.addItfLinetableObject(createLinetableObj(Integer.toString(i*2+1),TABLENAME,REFATTR,GEOMATTR,Integer.toString(i),polyline));
+			}
+		}
+		builder.buildSurfaces();
+		return builder;
+	}
+	// prueft ob mit mehreren Threads die gleichen Polygone und Fehler in der gleichen Reihenfolge erstellt werden.
+	@Test
+	public void test_manyPolygons_threads_Ok() throws IoxException {
+		ItfSurfaceLinetable2Polygon builder1=buildManyPolygons(1);
+		ItfSurfaceLinetable2Polygon builder4=buildManyPolygons(4);
+		for(int i=0;i<500;i++){
+			String mainObjectTid=Integer.toString(i);
+			IomObject polygon1=builder1.getSurfaceObject(mainObjectTid);
+			IomObject polygon4=builder4.getSurfaceObject(mainObjectTid);
+			assertEquals(polygon1==null ? null : polygon1.toString(),polygon4==null ? null : polygon4.toString());
+		}
+		ArrayList<IoxInvalidDataException> errs1=builder1.getDataerrs();
+		ArrayList<IoxInvalidDataException> errs4=builder4.getDataerrs();
+		assertTrue(errs1.size()>0);
+		assertEquals(errs1.size(),errs4.size());
+		for(int i=0;i<errs1.size();i++){
+			assertEquals(errs1.get(i).getMessage(),errs4.get(i).getMessage());
+		}
+		builder1.close();
+		builder4.close();
+	}
+}
@@ -0,0 +1,78 @@
+package ch.interlis.iom_j.xtf.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.XMLEvent;
+
+import org.junit.Test;
+
+public class XMLStreamEventReaderTest {
+	private final static String TEST_IN="src/test/data/Xtf24Reader/dataSection";
+	// liefert die gleichen Events wie der XMLEventReader der XMLInputFactory
+	@Test
+	public void sameEvents() throws Exception {
+		String files[]=new String[]{"Coord.xml","PolylineWithArcs.xml","Surface.xml","CommentsInFile.xml","TextTypes.xml","References.xml"};
+		XMLInputFactory inputFactory=XMLInputFactory.newInstance();
+		for(String file:files) {
+			InputStream in1=new FileInputStream(new File(TEST_IN,file));
+			InputStream in2=new FileInputStream(new File(TEST_IN,file));
+			XMLEventReader expected=inputFactory.createXMLEventReader(in1);
+			XMLEventReader actual=new XMLStreamEventReader(inputFactory.createXMLStreamReader(in2));
+			while(expected.hasNext()) {
+				assertTrue(file,actual.hasNext());
+				XMLEvent expectedEvent=expected.nextEvent();
+				XMLEvent actualEvent=actual.nextEvent();
+				assertEquals(file,expectedEvent.getEventType(),actualEvent.getEventType());
+				assertEquals(file,expectedEvent.getLocation().getLineNumber(),actualEvent.getLocation().getLineNumber());
+				if(expectedEvent.isStartElement()) {
+					assertEquals(file,expectedEvent.asStartElement().getName(),actualEvent.asStartElement().getName());
+					Iterator attrs=expectedEvent.asStartElement().getAttributes();
+					while(attrs.hasNext()) {
+						Attribute attr=(Attribute)attrs.next();
+						assertEquals(file,attr.getValue(),actualEvent.asStartElement().getAttributeByName(attr.getName()).getValue());
+					}
+				}else if(expectedEvent.isEndElement()) {
+					assertEquals(file,expectedEvent.asEndElement().getName(),actualEvent.asEndElement().getName());
+				}else if(expectedEvent.isCharacters()) {
+					assertEquals(file,expectedEvent.asCharacters().getData(),actualEvent.asCharacters().getData());
+					assertEquals(file,expectedEvent.asCharacters().isWhiteSpace(),actualEvent.asCharacters().isWhiteSpace());
+				}
+			}
+			assertFalse(file,actual.hasNext());
+			in1.close();
+			in2.close();
+		}
+	}
+	// der Cursor steht beim zuletzt gelesenen Event; nach direktem Lesen geht es danach weiter
+	@Test
+	public void cursorAligned() throws Exception {
+		XMLInputFactory inputFactory=XMLInputFactory.newInstance();
+		XMLStreamEventReader reader=new XMLStreamEventReader(inputFactory.createXMLStreamReader(new java.io.StringReader("<a><b>1</b><c>2</c></a>")));
+		assertFalse(reader.isCursorAligned());
+		assertTrue(reader.nextEvent().isStartDocument());
+		assertTrue(reader.isCursorAligned());
+		assertTrue(reader.nextEvent().isStartElement()); // a
+		reader.peek();
+		assertFalse(reader.isCursorAligned());
+		assertEquals("b",reader.nextEvent().asStartElement().getName().getLocalPart());
+		XMLStreamReader cursor=reader.getCursor();
+		assertEquals("b",cursor.getLocalName());
+		assertEquals(XMLStreamConstants.CHARACTERS,cursor.next());
+		assertEquals("1",cursor.getText());
+		assertEquals(XMLStreamConstants.END_ELEMENT,cursor.next());
+		assertTrue(reader.currentEvent().isEndElement());
+		assertEquals("c",reader.nextEvent().asStartElement().getName().getLocalPart());
+		assertEquals("2",reader.getElementText());
+		assertTrue(reader.nextEvent().isEndElement()); // a
+	}
+}
@@ -790,6 +790,46 @@ public class AreaValidatorTest {
         assertThat(areaValidator.createIntersectionExceptions("TEST"), is(empty()));
     }
 
+    @Test
+    public void parallelSameAsSerial() throws Exception {
+        for (int seed = 0; seed < 100; seed++) {
+            List<Polygon> polygons = randomLayout(new Random(seed));
+
+            AreaValidator serial = validate(polygons.toArray(new Polygon[0]));
+            List<String> expectedLines = getInvalidLines(serial);
+            List<String> expectedMessages = getMessages(serial.createIntersectionExceptions("TEST"));
+
+            for (int threadCount = 2; threadCount <= 4; threadCount++) {
+                AreaValidator parallel = new AreaValidator((JtsextGeometryFactory) polygons.get(0).getFactory(), 3);
+                parallel.setThreadCount(threadCount);
+                parallel.addPolygons(polygons);
+                parallel.validateAll();
+                assertThat("seed " + seed, getInvalidLines(parallel), is(expectedLines));
+                assertThat("seed " + seed, getMessages(parallel.createIntersectionExceptions("TEST")), is(expectedMessages));
+            }
+        }
+    }
+
+    /**
+     * A grid of squares, some of them moved, and some triangles lying across the grid.
+     */
+    private List<Polygon> randomLayout(Random random) throws IoxException {
+        List<Polygon> polygons = new ArrayList<Polygon>();
+        for (int i = 0; i < 12; i++) {
+            for (int j = 0; j < 12; j++) {
+                double dx = random.nextInt(4) == 0 ? random.nextInt(9) - 4 : 0;
+                double dy = random.nextInt(4) == 0 ? random.nextInt(9) - 4 : 0;
+                polygons.add(toJts("R" + i + "_" + j, p(rect(i * 10 + dx, j * 10 + dy, i * 10 + 10 + dx, j * 10 + 10 + dy))));
+            }
+        }
+        for (int k = 0; k < 8; k++) {
+            double x = random.nextInt(110);
+            double y = random.nextInt(110);
+            polygons.add(toJts("T" + k, p(b(c(x, y), c(x + 5 + random.nextInt(20), y + random.nextInt(5)), c(x + random.nextInt(5), y + 5 + random.nextInt(20)), c(x, y)))));
+        }
+        return polygons;
+    }
+
     // Functions to create geometries in a short and concise way
     private IomObject a(double a1, double a2, double c1, double c2) {
         return IomObjectHelper.createArc(Double.toString(a1), Double.toString(a2), Double.toString(c1), Double.toString(c2));
@@ -950,6 +990,18 @@ public class AreaValidatorTest {
         assertThat(actualMessages, arrayContainingInAnyOrder(expectedMessages));
     }
 
+    private List<String> getMessages(List<IoxInvalidDataException> exceptions) {
+        List<String> messages = new ArrayList<String>();
+        for (IoxInvalidDataException exception : exceptions) {
+            if (exception instanceof IoxIntersectionException) {
+                messages.add(((IoxIntersectionException) exception).getIntersection().toShortString());
+            } else {
+                messages.add(exception.getMessage());
+            }
+        }
+        return messages;
+    }
+
     private AreaValidator validate(Polygon... polygons) {
         AreaValidator areaValidator = new AreaValidator((JtsextGeometryFactory) polygons[0].getFactory(), 3);
         areaValidator.addPolygons(Arrays.asList(polygons));
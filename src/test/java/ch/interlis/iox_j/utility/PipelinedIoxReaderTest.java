@@ -0,0 +1,112 @@
+package ch.interlis.iox_j.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.xtf.XtfReader;
+import ch.interlis.iox.IoxEvent;
+import ch.interlis.iox.IoxException;
+import ch.interlis.iox.IoxFactoryCollection;
+import ch.interlis.iox.IoxReader;
+import ch.interlis.iox.ObjectEvent;
+
+public class PipelinedIoxReaderTest {
+	private final static String TEST_IN="src/test/data/Xtf23Reader/dataSection";
+	private static ArrayList<String> readAll(IoxReader reader) throws IoxException {
+		ArrayList<String> ret=new ArrayList<String>();
+		IoxEvent event=null;
+		while((event=reader.read())!=null) {
+			if(event instanceof ObjectEvent) {
+				ret.add(((ObjectEvent)event).getIomObject().toString());
+			}else {
+				ret.add(event.getClass().getName());
+			}
+		}
+		reader.close();
+		return ret;
+	}
+	// liefert die gleichen Events in der gleichen Reihenfolge wie der gekapselte Reader
+	@Test
+	public void sameEvents_Ok() throws Exception {
+		String files[]=new String[]{"Coord.xtf","Area.xtf","TextTypes.xtf"};
+		for(String file:files) {
+			ArrayList<String> expected=readAll(new XtfReader(new File(TEST_IN,file)));
+			assertEquals(file,expected,readAll(new PipelinedIoxReader(new XtfReader(new File(TEST_IN,file)))));
+			assertEquals(file,expected,readAll(new PipelinedIoxReader(new XtfReader(new File(TEST_IN,file)),1,1)));
+		}
+	}
+	// ein Fehler des gekapselten Readers wird nach den vorher gelesenen Events gemeldet
+	@Test
+	public void readerFails_Fail() throws Exception {
+		IoxReader failingReader=new IoxReader() {
+			private int eventc=0;
+			@Override
+			public IoxEvent read() throws IoxException {
+				if(eventc==3) {
+					throw new IoxException("read failed");
+				}
+				eventc++;
+				return new ch.interlis.iox_j.StartTransferEvent();
+			}
+			@Override
+			public void close() throws IoxException {
+			}
+			@Override
+			public void setFactory(IoxFactoryCollection factory) throws IoxException {
+			}
+			@Override
+			public IoxFactoryCollection getFactory() throws IoxException {
+				return null;
+			}
+			@Override
+			public IomObject createIomObject(String type, String oid) throws IoxException {
+				return null;
+			}
+		};
+		PipelinedIoxReader reader=new PipelinedIoxReader(failingReader,2,1);
+		assertNotNull(reader.read());
+		assertNotNull(reader.read());
+		assertNotNull(reader.read());
+		try {
+			reader.read();
+			fail();
+		}catch(IoxException ex) {
+			assertEquals("read failed",ex.getMessage());
+		}
+		assertNull(reader.read());
+		reader.close();
+	}
+	// close() vor dem Ende der Daten beendet den Thread
+	@Test
+	public void closeEarly_Ok() throws Exception {
+		PipelinedIoxReader reader=new PipelinedIoxReader(new XtfReader(new File(TEST_IN,"Coord.xtf")),1,1);
+		assertNotNull(reader.read());
+		reader.close();
+		assertNull(reader.read());
+	}
+	// das Modell kann nur vor dem ersten read() gesetzt werden
+	@Test
+	public void setModelAfterRead_Fail() throws Exception {
+		PipelinedIoxReader reader=new PipelinedIoxReader(new XtfReader(new File(TEST_IN,"Coord.xtf")));
+		reader.setModel(null);
+		assertNotNull(reader.read());
+		try {
+			reader.setModel(null);
+			fail();
+		}catch(IllegalStateException ex) {
+			// ok
+		}
+		try {
+			reader.setTopicFilter(new String[0]);
+			fail();
+		}catch(IllegalStateException ex) {
+			// ok
+		}
+		reader.close();
+	}
+}
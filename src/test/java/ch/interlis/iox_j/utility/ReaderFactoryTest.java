@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 import java.io.File;
 import org.junit.Test;
 
+import ch.ehi.basics.settings.Settings;
+import ch.interlis.ili2c.metamodel.Model;
+
 import ch.interlis.iom.IomObject;
 import ch.interlis.iom_j.csv.CsvReader;
 import ch.interlis.iom_j.iligml.Iligml20Reader;
@@ -19,6 +22,7 @@ import ch.interlis.iox.IoxReader;
 import ch.interlis.iox.ObjectEvent;
 import ch.interlis.iox.StartBasketEvent;
 import ch.interlis.iox.StartTransferEvent;
+import ch.interlis.iox_j.logging.LogEventFactory;
 
 public class ReaderFactoryTest {
 	
@@ -206,4 +210,16 @@ public class ReaderFactoryTest {
 		reader=new ReaderFactory().createReader(new File("src/test/data/ReaderFactory/Coord2.txt"),null);
 		assertTrue(reader instanceof Iligml20Reader);
 	}
-}
\ No newline at end of file
+	
+	// Es wird getestet ob die Modell-Version auch mit dem Pipelined-Reader erkannt wird.
+	@Test
+	public void getModelVersion_pipelined_Ok() throws IoxException {
+		Settings settings=new Settings();
+		settings.setValue(ReaderFactory.CONFIG_PIPELINED_XML_READER, ReaderFactory.CONFIG_PIPELINED_XML_READER_DO);
+		IoxReader reader=new ReaderFactory().createReader(new File("src/test/data/Xtf23Reader/dataSection/SimpleCoord23a.xtf"),null,settings);
+		assertTrue(reader instanceof PipelinedIoxReader);
+		reader.close();
+		String modelVersion=IoxUtility.getModelVersion(new String[]{"src/test/data/Xtf23Reader/dataSection/SimpleCoord23a.xtf"}, new LogEventFactory(), settings);
+		assertEquals(Model.ILI2_3,modelVersion);
+	}
+}
@@ -0,0 +1,76 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.interlis.ili2c.config.Configuration;
+import ch.interlis.ili2c.config.FileEntry;
+import ch.interlis.ili2c.config.FileEntryKind;
+import ch.interlis.ili2c.metamodel.Model;
+import ch.interlis.ili2c.metamodel.Table;
+import ch.interlis.ili2c.metamodel.Topic;
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.ili2c.metamodel.Viewable;
+
+public class ClassExtentIndexTest {
+	private TransferDescription td=null;
+	private Viewable classA=null;
+	private Viewable classB=null;
+	private Viewable classC=null;
+
+	@Before
+	public void setUp() {
+		Configuration ili2cConfig=new Configuration();
+		FileEntry fileEntry=new FileEntry("src/test/data/validator/ClassExtentIndex23.ili", FileEntryKind.ILIMODELFILE);
+		ili2cConfig.addFileEntry(fileEntry);
+		td=ch.interlis.ili2c.Main.runCompiler(ili2cConfig);
+		assertNotNull(td);
+		Topic topic=(Topic)((Model)td.getElement(Model.class, "ClassExtentIndex23")).getElement(Topic.class, "Topic");
+		classA=(Viewable)topic.getElement(Table.class, "ClassA");
+		classB=(Viewable)topic.getElement(Table.class, "ClassB");
+		classC=(Viewable)topic.getElement(Table.class, "ClassC");
+	}
+	// Anzahl Objekte pro Klasse, mit und ohne Subklassen
+	@Test
+	public void objectCount_Ok() {
+		ClassExtentIndex index=new ClassExtentIndex();
+		index.addObject("b1", classA, 0L);
+		index.addObject("b1", classB, 10L);
+		index.addObject("b1", classA, 20L);
+		index.addObject("b1", classC, 30L);
+		index.addObject("b2", classB, 0L);
+		assertEquals(2L,index.getObjectCount("b1", classA, false));
+		assertEquals(3L,index.getObjectCount("b1", classA, true));
+		assertEquals(1L,index.getObjectCount("b1", classB, false));
+		assertEquals(1L,index.getObjectCount("b1", classB, true));
+		assertEquals(1L,index.getObjectCount("b1", classC, true));
+		assertEquals(0L,index.getObjectCount("b2", classA, false));
+		assertEquals(1L,index.getObjectCount("b2", classA, true));
+		assertEquals(0L,index.getObjectCount("b3", classA, true));
+	}
+	// die Positionen werden in der Reihenfolge geliefert, in der die Objekte hinzugefuegt wurden
+	@Test
+	public void positionOrder_Ok() {
+		ClassExtentIndex index=new ClassExtentIndex();
+		for(int i=0;i<100;i++) {
+			index.addObject("b1", i%3==0 ? classB : (i%3==1 ? classA : classC), i*10L);
+		}
+		long[] positions=index.getPositions("b1", classA, true);
+		assertEquals(67,positions.length);
+		int posi=0;
+		for(int i=0;i<100;i++) {
+			if(i%3!=2) {
+				assertEquals(i*10L,positions[posi++]);
+			}
+		}
+		positions=index.getPositions("b1", classA, false);
+		assertEquals(33,positions.length);
+		for(int i=0;i<positions.length;i++) {
+			assertEquals((i*3+1)*10L,positions[i]);
+		}
+		assertEquals(0,index.getPositions("b2", classA, true).length);
+		assertEquals(34,index.getPositions("b1", classB, false).length);
+	}
+}
@@ -0,0 +1,99 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.ehi.basics.settings.Settings;
+import ch.interlis.ili2c.config.Configuration;
+import ch.interlis.ili2c.config.FileEntry;
+import ch.interlis.ili2c.config.FileEntryKind;
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.iom_j.Iom_jObject;
+import ch.interlis.iox.IoxLogEvent;
+import ch.interlis.iox_j.EndBasketEvent;
+import ch.interlis.iox_j.EndTransferEvent;
+import ch.interlis.iox_j.ObjectEvent;
+import ch.interlis.iox_j.StartBasketEvent;
+import ch.interlis.iox_j.StartTransferEvent;
+import ch.interlis.iox_j.logging.LogEventFactory;
+
+public class FunctionLibrary23Test {
+	private TransferDescription td=null;
+	// MODEL
+	private final static String ILI_TOPIC="FunctionLibrary23.Topic";
+	// CLASS
+	private final static String ILI_CLASSA=ILI_TOPIC+".ClassA";
+	private final static String ILI_CLASSB=ILI_TOPIC+".ClassB";
+	private final static String ILI_STRUCTA=ILI_TOPIC+".StructA";
+	// START BASKET EVENT
+	private final static String BID1="b1";
+
+	@Before
+	public void setUp() throws Exception {
+		// ili-datei lesen
+		Configuration ili2cConfig=new Configuration();
+		ili2cConfig.addFileEntry(new FileEntry("src/test/data/validator/Text.ili", FileEntryKind.ILIMODELFILE));
+		ili2cConfig.addFileEntry(new FileEntry("src/test/data/validator/INTERLIS_ext.ili", FileEntryKind.ILIMODELFILE));
+		ili2cConfig.addFileEntry(new FileEntry("src/test/data/validator/FunctionLibrary23.ili", FileEntryKind.ILIMODELFILE));
+		td=ch.interlis.ili2c.Main.runCompiler(ili2cConfig);
+		assertNotNull(td);
+	}
+	private static Iom_jObject newClassA(String oid,String text) {
+		Iom_jObject iomObj=new Iom_jObject(ILI_CLASSA, oid);
+		iomObj.setattrvalue("text", text);
+		return iomObj;
+	}
+	private static Iom_jObject newClassB(String oid,String x1,String x2) {
+		Iom_jObject iomObj=new Iom_jObject(ILI_CLASSB, oid);
+		Iom_jObject struct=new Iom_jObject(ILI_STRUCTA, null);
+		struct.addattrobj("flaeche", IomObjectHelper.createRectangleGeometry("480000.000", "70000.000", "500000.000", "80000.000"));
+		iomObj.addattrobj("attr1", struct);
+		struct=new Iom_jObject(ILI_STRUCTA, null);
+		struct.addattrobj("flaeche", IomObjectHelper.createRectangleGeometry(x1, "70000.000", x2, "80000.000"));
+		iomObj.addattrobj("attr1", struct);
+		return iomObj;
+	}
+	// die Funktionen (INTERLIS, Text, INTERLIS_ext, benutzerdefiniert) werden bei jedem Objekt ausgewertet,
+	// auch wenn die Bibliothek der Funktion beim ersten Aufruf bestimmt und danach wiederverwendet wird
+	@Test
+	public void sameFunctionManyObjects_Fail(){
+		ValidationConfig modelConfig=new ValidationConfig();
+		modelConfig.mergeIliMetaAttrs(td);
+		LogCollector logger=new LogCollector();
+		LogEventFactory errFactory=new LogEventFactory();
+		Settings settings=new Settings();
+		Map<String,Class> newFunctions=new HashMap<String,Class>();
+		newFunctions.put("FunctionLibrary23.subText",SubText.class);
+		settings.setTransientObject(Validator.CONFIG_CUSTOM_FUNCTIONS, newFunctions);
+		Validator validator=new Validator(td, modelConfig,logger,errFactory,settings);
+		validator.validate(new StartTransferEvent());
+		validator.validate(new StartBasketEvent(ILI_TOPIC,BID1));
+		validator.validate(new ObjectEvent(newClassA("a1","abcx")));
+		validator.validate(new ObjectEvent(newClassA("a2","ax")));
+		validator.validate(new ObjectEvent(newClassA("a3","abc")));
+		validator.validate(new ObjectEvent(newClassA("a4","bcdx")));
+		validator.validate(new ObjectEvent(newClassA("a5","abcdx")));
+		validator.validate(new ObjectEvent(newClassB("b1","500000.000","510000.000")));
+		validator.validate(new ObjectEvent(newClassB("b2","490000.000","510000.000")));
+		validator.validate(new ObjectEvent(newClassB("b3","500000.000","520000.000")));
+		validator.validate(new EndBasketEvent());
+		validator.validate(new EndTransferEvent());
+		// Asserts
+		assertEquals(4,logger.getErrs().size());
+		Set<String> errs=new HashSet<String>();
+		for(IoxLogEvent err:logger.getErrs()) {
+			errs.add(err.getSourceObjectXtfId()+": "+err.getEventMsg());
+		}
+		assertTrue(errs.contains("a2: Mandatory Constraint FunctionLibrary23.Topic.ClassA.Constraint1 is not true."));
+		assertTrue(errs.contains("a3: Mandatory Constraint FunctionLibrary23.Topic.ClassA.Constraint2 is not true."));
+		assertTrue(errs.contains("a4: Mandatory Constraint FunctionLibrary23.Topic.ClassA.Constraint3 is not true."));
+		assertTrue(errs.contains("b2: Mandatory Constraint FunctionLibrary23.Topic.ClassB.Constraint1 is not true."));
+	}
+}
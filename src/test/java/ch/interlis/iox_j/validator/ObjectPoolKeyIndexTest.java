@@ -0,0 +1,59 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class ObjectPoolKeyIndexTest {
+	private static final String[] OIDS=new String[]{
+		"1","10","9","o1","O1","ch100000000a1",
+		"9d5a3b3c-0f3e-4d35-9b7c-3f0c1d2e4a5b","00000000-0000-0000-0000-000000000000",
+		"9D5A3B3C-0F3E-4D35-9B7C-3F0C1D2E4A5B","fffffff-0000-0000-0000-000000000000",
+		"a\u00e4b","a\u00fcb","\ud83d\ude00","\uffee","z"};
+	// die Reihenfolge der Schluessel entspricht ObjectPoolKey.compareTo()
+	@Test
+	public void keyOrder_Ok() {
+		ObjectPoolKeyIndex index=new ObjectPoolKeyIndex();
+		TreeMap<ObjectPoolKey,Long> expected=new TreeMap<ObjectPoolKey,Long>();
+		long pos=0;
+		for(String bid:new String[]{"b2","b1"}){
+			for(String oid:OIDS){
+				ObjectPoolKey key=new ObjectPoolKey(oid,null,bid);
+				assertEquals(-1L,index.put(key, pos));
+				expected.put(key, pos);
+				pos++;
+			}
+		}
+		assertEquals(expected.size(),index.size());
+		Iterator<ObjectPoolKey> keyi=index.keyIterator();
+		long[] positions=index.getPositionsInKeyOrder();
+		int i=0;
+		for(ObjectPoolKey key:expected.keySet()){
+			assertEquals(key,keyi.next());
+			assertEquals((long)expected.get(key),positions[i++]);
+		}
+		assertFalse(keyi.hasNext());
+	}
+	// get, update und remove
+	@Test
+	public void getPutRemove_Ok() {
+		ObjectPoolKeyIndex index=new ObjectPoolKeyIndex(true);
+		for(int i=0;i<100000;i++){
+			index.put(new ObjectPoolKey("o"+i,null,"b1"), i);
+		}
+		assertEquals(100000,index.size());
+		assertEquals(42L,index.get(new ObjectPoolKey("o42",null,"b1")));
+		assertEquals(-1L,index.get(new ObjectPoolKey("o42",null,"b2")));
+		assertEquals(-1L,index.get(new ObjectPoolKey("x",null,"b1")));
+		assertEquals(42L,index.put(new ObjectPoolKey("o42",null,"b1"), 7L));
+		assertEquals(7L,index.get(new ObjectPoolKey("o42",null,"b1")));
+		assertEquals(7L,index.remove(new ObjectPoolKey("o42",null,"b1")));
+		assertEquals(-1L,index.get(new ObjectPoolKey("o42",null,"b1")));
+		assertEquals(99999,index.size());
+		assertEquals(-1L,index.put(new ObjectPoolKey("o42",null,"b1"), 8L));
+		assertEquals(100000,index.size());
+	}
+}
@@ -0,0 +1,93 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.interlis.ili2c.config.Configuration;
+import ch.interlis.ili2c.config.FileEntry;
+import ch.interlis.ili2c.config.FileEntryKind;
+import ch.interlis.ili2c.metamodel.Model;
+import ch.interlis.ili2c.metamodel.Table;
+import ch.interlis.ili2c.metamodel.Topic;
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.ili2c.metamodel.Viewable;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
+
+public class ObjectPoolTest {
+	private static final String TOPIC="ClassExtentIndex23.Topic";
+	private static final String CLASS_A=TOPIC+".ClassA";
+	private static final String CLASS_B=TOPIC+".ClassB";
+	private static final String CLASS_C=TOPIC+".ClassC";
+	private TransferDescription td=null;
+	private HashMap<String,Object> tag2class=new HashMap<String,Object>();
+	private Viewable classA=null;
+	private Viewable classB=null;
+	private Viewable classC=null;
+
+	@Before
+	public void setUp() {
+		Configuration ili2cConfig=new Configuration();
+		FileEntry fileEntry=new FileEntry("src/test/data/validator/ClassExtentIndex23.ili", FileEntryKind.ILIMODELFILE);
+		ili2cConfig.addFileEntry(fileEntry);
+		td=ch.interlis.ili2c.Main.runCompiler(ili2cConfig);
+		assertNotNull(td);
+		Topic topic=(Topic)((Model)td.getElement(Model.class, "ClassExtentIndex23")).getElement(Topic.class, "Topic");
+		classA=(Viewable)topic.getElement(Table.class, "ClassA");
+		classB=(Viewable)topic.getElement(Table.class, "ClassB");
+		classC=(Viewable)topic.getElement(Table.class, "ClassC");
+		tag2class.put(CLASS_A, classA);
+		tag2class.put(CLASS_B, classB);
+		tag2class.put(CLASS_C, classC);
+	}
+	private static void assertOids(Iterator<IomObject> objs,String... oids) {
+		for(String oid:oids) {
+			assertTrue(objs.hasNext());
+			assertEquals(oid,objs.next().getobjectoid());
+		}
+		assertFalse(objs.hasNext());
+	}
+	// Anzahl und Objekte pro Klasse und Behaelter, mit und ohne Subklassen
+	@Test
+	public void objectsOfClass_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		ObjectPool objectPool=new ObjectPool(false, null, null, tag2class, objPoolManager);
+		objectPool.startBasket("b1", true);
+		objectPool.startBasket("b2", true);
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_A, "o1"), "b1"));
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_B, "o2"), "b1"));
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_C, "o3"), "b1"));
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_A, "o4"), "b1"));
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_B, "o5"), "b2"));
+		// duplicate oid; not added again
+		assertNotNull(objectPool.addObject(new Iom_jObject(CLASS_A, "o1"), "b1"));
+		assertEquals(2L,objectPool.getObjectCount("b1", classA, false));
+		assertEquals(3L,objectPool.getObjectCount("b1", classA, true));
+		assertEquals(1L,objectPool.getObjectCount("b1", classC, true));
+		assertEquals(0L,objectPool.getObjectCount("b2", classA, false));
+		assertEquals(1L,objectPool.getObjectCount("b2", classA, true));
+		assertOids(objectPool.getObjectsOfClass("b1", classA, true),"o1","o2","o4");
+		assertOids(objectPool.getObjectsOfClass("b1", classA, false),"o1","o4");
+		assertOids(objectPool.getObjectsOfClass("b1", classB, true),"o2");
+		assertOids(objectPool.getObjectsOfClass("b2", classA, true),"o5");
+		assertOids(objectPool.getObjectsOfClass("b2", classC, true));
+		objPoolManager.close();
+	}
+	// Objekte von Behaeltern, die nicht geprueft werden, werden nicht gezaehlt
+	@Test
+	public void referenceBasket_notCounted() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		ObjectPool objectPool=new ObjectPool(false, null, null, tag2class, objPoolManager);
+		objectPool.startBasket("b1", false);
+		assertNull(objectPool.addObject(new Iom_jObject(CLASS_A, "o1"), "b1"));
+		assertEquals(0L,objectPool.getObjectCount("b1", classA, true));
+		assertOids(objectPool.getObjectsOfClass("b1", classA, true));
+		objPoolManager.close();
+	}
+}
@@ -0,0 +1,36 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class PatternCacheTest {
+	// ein regulaerer Ausdruck wird nur einmal kompiliert
+	@Test
+	public void samePattern_Ok() throws Exception
+	{
+		PatternCache cache=new PatternCache();
+		Pattern pattern=cache.get("[A-Z]{2}[0-9]+");
+		assertSame(pattern,cache.get("[A-Z]{2}[0-9]+"));
+		assertTrue(cache.matches("[A-Z]{2}[0-9]+","CH123"));
+		assertFalse(cache.matches("[A-Z]{2}[0-9]+","ch123"));
+		assertEquals(1,cache.size());
+		assertEquals(1,cache.getMisses());
+		assertEquals(3,cache.getHits());
+	}
+	// der am laengsten nicht verwendete Ausdruck wird verworfen
+	@Test
+	public void leastRecentlyUsedDropped_Ok() throws Exception
+	{
+		PatternCache cache=new PatternCache(2);
+		Pattern a=cache.get("a");
+		Pattern b=cache.get("b");
+		assertSame(a,cache.get("a"));
+		cache.get("c");
+		assertEquals(2,cache.size());
+		assertSame(a,cache.get("a"));
+		assertNotSame(b,cache.get("b"));
+	}
+}
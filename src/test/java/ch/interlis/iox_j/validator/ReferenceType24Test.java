@@ -100,6 +100,103 @@ public class ReferenceType24Test {
         // Asserts
         assertEquals(0,logger.getErrs().size());
     }
+    // Es wird getestet, ob die Referenzdaten im zweiten Lauf aus dem persistenten Pool gelesen werden.
+    @Test
+    public void referenceDataPool_Ok(){
+        String objTargetId=OID1;
+        Iom_jObject iomObjtarget=new Iom_jObject(ILI_CLASSA, objTargetId);
+        Iom_jObject o1Ref=new Iom_jObject("REF", null);
+        o1Ref.setobjectrefoid(objTargetId);
+        Iom_jObject iomObj=new Iom_jObject(ILI_CLASSH, OID2);
+        iomObj.addattrobj(ILI_CLASSH_ATTRH1, o1Ref);
+        Settings settings=new Settings();
+        settings.setValue(Validator.CONFIG_REFERENCE_DATA_POOL_DIR, ch.ehi.iox.objpool.ObjectPoolManager.getCacheTmpFilename().getPath());
+        for(int run=0;run<2;run++){
+            ValidationConfig modelConfig=new ValidationConfig();
+            LogCollector logger=new LogCollector();
+            LogEventFactory errFactory=new LogEventFactory();
+            Validator validator=new Validator(td, modelConfig,logger,errFactory,settings);
+            boolean pooled=validator.addReferenceDataPool("checksum1");
+            assertEquals(run==1,pooled);
+            if(!pooled){
+                validator.addReferenceData(new StartTransferEvent());
+                validator.addReferenceData(new StartBasketEvent(TOPIC,BID2));
+                validator.addReferenceData(new ObjectEvent(iomObjtarget));
+                validator.addReferenceData(new EndBasketEvent());
+                validator.addReferenceData(new EndTransferEvent());
+            }
+            validator.validate(new StartTransferEvent());
+            validator.validate(new StartBasketEvent(TOPIC,BID1));
+            validator.validate(new ObjectEvent(iomObj));
+            validator.validate(new EndBasketEvent());
+            validator.validate(new EndTransferEvent());
+            validator.close();
+            // Asserts
+            assertEquals(0,logger.getErrs().size());
+        }
+    }
+    // Es wird getestet, ob die Meldungen zu den Referenzdaten auch im zweiten Lauf (aus dem persistenten Pool) ausgegeben werden.
+    @Test
+    public void referenceDataPool_messagesReported(){
+        Iom_jObject iomObjtarget=new Iom_jObject(ILI_CLASSA, OID1);
+        Settings settings=new Settings();
+        settings.setValue(Validator.CONFIG_REFERENCE_DATA_POOL_DIR, ch.ehi.iox.objpool.ObjectPoolManager.getCacheTmpFilename().getPath());
+        for(int run=0;run<2;run++){
+            ValidationConfig modelConfig=new ValidationConfig();
+            LogCollector logger=new LogCollector();
+            LogEventFactory errFactory=new LogEventFactory();
+            Validator validator=new Validator(td, modelConfig,logger,errFactory,settings);
+            boolean pooled=validator.addReferenceDataPool("checksum1");
+            assertEquals(run==1,pooled);
+            if(!pooled){
+                validator.addReferenceData(new StartTransferEvent());
+                validator.addReferenceData(new StartBasketEvent(TOPIC,BID2));
+                validator.addReferenceData(new ObjectEvent(iomObjtarget));
+                validator.addReferenceData(new ObjectEvent(iomObjtarget));
+                validator.addReferenceData(new EndBasketEvent());
+                validator.addReferenceData(new EndTransferEvent());
+            }
+            validator.validate(new StartTransferEvent());
+            validator.validate(new StartBasketEvent(TOPIC,BID1));
+            validator.validate(new EndBasketEvent());
+            validator.validate(new EndTransferEvent());
+            validator.close();
+            // Asserts
+            assertEquals(1,logger.getErrs().size());
+            assertEquals("OID o1 of object ReferenceType24.Topic.ClassA already exists in ReferenceType24.Topic.ClassA.", logger.getErrs().get(0).getEventMsg());
+            assertEquals(OID1, logger.getErrs().get(0).getSourceObjectXtfId());
+        }
+    }
+    // Es wird getestet, ob ein Pool, der mit einem anderen Modell geschrieben wurde, nicht verwendet wird.
+    @Test
+    public void referenceDataPool_otherModel(){
+        Iom_jObject iomObjtarget=new Iom_jObject(ILI_CLASSA, OID1);
+        Configuration ili2cConfig=new Configuration();
+        ili2cConfig.addFileEntry(new FileEntry("src/test/data/validator/ReferenceType24.ili", FileEntryKind.ILIMODELFILE));
+        ili2cConfig.addFileEntry(new FileEntry("src/test/data/validator/Basket24.ili", FileEntryKind.ILIMODELFILE));
+        TransferDescription td2=ch.interlis.ili2c.Ili2c.runCompiler(ili2cConfig);
+        assertNotNull(td2);
+        Settings settings=new Settings();
+        settings.setValue(Validator.CONFIG_REFERENCE_DATA_POOL_DIR, ch.ehi.iox.objpool.ObjectPoolManager.getCacheTmpFilename().getPath());
+        TransferDescription tds[]=new TransferDescription[] {td,td2,td};
+        for(int run=0;run<tds.length;run++){
+            ValidationConfig modelConfig=new ValidationConfig();
+            LogCollector logger=new LogCollector();
+            LogEventFactory errFactory=new LogEventFactory();
+            Validator validator=new Validator(tds[run], modelConfig,logger,errFactory,settings);
+            boolean pooled=validator.addReferenceDataPool("checksum1");
+            // the pool of the first run is still there in the third run
+            assertEquals(run==2,pooled);
+            if(!pooled){
+                validator.addReferenceData(new StartTransferEvent());
+                validator.addReferenceData(new StartBasketEvent(TOPIC,BID2));
+                validator.addReferenceData(new ObjectEvent(iomObjtarget));
+                validator.addReferenceData(new EndBasketEvent());
+                validator.addReferenceData(new EndTransferEvent());
+            }
+            validator.close();
+        }
+    }
     // Es wird getestet, ob ein Fehler ausgegeben wird, wenn die Referenz External true ist und die Klasse A gefunden wird.
 	@Test
 	public void external_otherBasketTargetObj_Ok(){
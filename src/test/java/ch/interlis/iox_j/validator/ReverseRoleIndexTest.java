@@ -0,0 +1,103 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.interlis.ili2c.config.Configuration;
+import ch.interlis.ili2c.config.FileEntry;
+import ch.interlis.ili2c.config.FileEntryKind;
+import ch.interlis.ili2c.metamodel.Model;
+import ch.interlis.ili2c.metamodel.Table;
+import ch.interlis.ili2c.metamodel.Topic;
+import ch.interlis.ili2c.metamodel.TransferDescription;
+import ch.interlis.ili2c.metamodel.Viewable;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
+
+public class ReverseRoleIndexTest {
+	private static final String TOPIC="ReverseRoleIndex23.Topic";
+	private static final String CLASS_POINT=TOPIC+".Point";
+	private TransferDescription td=null;
+	private Viewable point=null;
+
+	@Before
+	public void setUp() {
+		Configuration ili2cConfig=new Configuration();
+		FileEntry fileEntry=new FileEntry("src/test/data/validator/ReverseRoleIndex23.ili", FileEntryKind.ILIMODELFILE);
+		ili2cConfig.addFileEntry(fileEntry);
+		td=ch.interlis.ili2c.Main.runCompiler(ili2cConfig);
+		assertNotNull(td);
+		Topic topic=(Topic)((Model)td.getElement(Model.class, "ReverseRoleIndex23")).getElement(Topic.class, "Topic");
+		point=(Viewable)topic.getElement(Table.class, "Point");
+		assertNotNull(point);
+	}
+	private static IomObject newPoint(String oid,String roleName,String refOid) {
+		IomObject iomObj=new Iom_jObject(CLASS_POINT, oid);
+		if(refOid!=null) {
+			iomObj.addattrobj(roleName, "REF").setobjectrefoid(refOid);
+		}
+		return iomObj;
+	}
+	private static void assertOids(List<ReverseRoleIndex.Entry> entries,String... oids) {
+		assertEquals(oids.length,entries.size());
+		for(int i=0;i<oids.length;i++) {
+			assertEquals(oids[i],entries.get(i).getOid());
+		}
+	}
+	// die Referenzen werden pro Rolle und referenziertem Objekt gefunden
+	@Test
+	public void lookupByRoleAndRefOid_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		ReverseRoleIndex index=new ReverseRoleIndex(objPoolManager);
+		index.addObject(newPoint("p1","ClassA","a1"), point, "b1", "p1");
+		index.addObject(newPoint("p2","ClassB","a1"), point, "b1", "p2");
+		index.addObject(newPoint("p3","ClassA","a2"), point, "b2", "p3");
+		index.addObject(newPoint("p4","ClassA",null), point, "b1", "p4");
+		assertEquals(3,index.getEntryCount());
+		List<ReverseRoleIndex.Entry> entries=index.getEntries("ClassA", "a1");
+		assertOids(entries,"p1");
+		ReverseRoleIndex.Entry entry=entries.get(0);
+		assertEquals("b1",entry.getBasketId());
+		assertEquals(CLASS_POINT,entry.getTag());
+		assertEquals("a1",entry.getRefOid());
+		assertOids(index.getEntries("ClassB", "a1"),"p2");
+		assertOids(index.getEntries("ClassA", "a2"),"p3");
+		assertEquals("b2",index.getEntries("ClassA", "a2").get(0).getBasketId());
+		assertOids(index.getEntries("ClassB", "a2"));
+		assertOids(index.getEntries("ClassA", "x"));
+		objPoolManager.close();
+	}
+	// UUIDs werden unabhaengig von Gross-/Kleinschreibung gefunden; die Referenz wird unveraendert geliefert
+	@Test
+	public void uuidCaseInsensitive_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		ReverseRoleIndex index=new ReverseRoleIndex(objPoolManager);
+		index.addObject(newPoint("p1","ClassA","9d5a3b3c-0f3e-4d35-9b7c-3f0c1d2e4a5b"), point, "b1", "p1");
+		index.addObject(newPoint("p2","ClassA","9D5A3B3C-0F3E-4D35-9B7C-3F0C1D2E4A5B"), point, "b1", "p2");
+		List<ReverseRoleIndex.Entry> entries=index.getEntries("ClassA", "9D5a3b3c-0f3e-4d35-9b7c-3f0c1d2e4a5b");
+		assertOids(entries,"p1","p2");
+		assertEquals("9d5a3b3c-0f3e-4d35-9b7c-3f0c1d2e4a5b",entries.get(0).getRefOid());
+		assertEquals("9D5A3B3C-0F3E-4D35-9B7C-3F0C1D2E4A5B",entries.get(1).getRefOid());
+		objPoolManager.close();
+	}
+	// die Referenzen werden in der Reihenfolge geliefert, in der sie hinzugefuegt wurden, auch wenn der Pool ausgelagert wird
+	@Test
+	public void insertionOrder_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager(16*1024);
+		ReverseRoleIndex index=new ReverseRoleIndex(objPoolManager);
+		for(int i=0;i<3000;i++) {
+			index.addObject(newPoint("p"+i,"ClassA","a"+(i%3)), point, "b1", "p"+i);
+		}
+		List<ReverseRoleIndex.Entry> entries=index.getEntries("ClassA", "a1");
+		assertEquals(1000,entries.size());
+		for(int i=0;i<entries.size();i++) {
+			assertEquals("p"+(i*3+1),entries.get(i).getOid());
+		}
+		objPoolManager.close();
+	}
+}
@@ -0,0 +1,121 @@
+package ch.interlis.iox_j.validator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ch.ehi.iox.objpool.ObjectPoolManager;
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
+
+public class UniqueValueIndexTest {
+	private static final int VALUE_COUNT=5000;
+	private static AttributeArray values(Object... valuev){
+		ArrayList<Object> ret=new ArrayList<Object>();
+		for(Object value:valuev){
+			ret.add(value);
+		}
+		return new AttributeArray(ret);
+	}
+	// gleiche Werte liefern die OID des ersten Objekts, auch wenn der Pool ausgelagert wird
+	@Test
+	public void duplicateValues_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager(64*1024);
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		for(int i=0;i<VALUE_COUNT;i++){
+			assertNull(index.add(values("Nr"+i,Integer.toString(i%7)), "o"+i));
+		}
+		assertEquals(VALUE_COUNT,index.size());
+		for(int i=0;i<VALUE_COUNT;i+=13){
+			assertEquals("o"+i,index.add(values("Nr"+i,Integer.toString(i%7)), "x"+i));
+		}
+		// the fields can not be shifted
+		assertNull(index.add(values("Nr1","17"), "y1"));
+		assertEquals(VALUE_COUNT+1,index.size());
+		objPoolManager.close();
+	}
+	// Strukturen werden mit ihren Attributen verglichen; nach clear() sind die Werte wieder neu
+	@Test
+	public void structValues_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		IomObject struct1=new Iom_jObject("Model.Topic.Struct",null);
+		struct1.setattrvalue("attr1", "a");
+		IomObject struct2=new Iom_jObject("Model.Topic.Struct",null);
+		struct2.setattrvalue("attr1", "b");
+		IomObject struct3=new Iom_jObject("Model.Topic.Struct",null);
+		struct3.setattrvalue("attr1", "a");
+		assertNull(index.add(values(struct1), "o1"));
+		assertNull(index.add(values(struct2), "o2"));
+		assertEquals("o1",index.add(values(struct3), "o3"));
+		index.clear();
+		assertEquals(0,index.size());
+		assertNull(index.add(values(struct3), "o3"));
+		objPoolManager.close();
+	}
+	private static IomObject struct(String attr1,IomObject sub){
+		IomObject struct=new Iom_jObject("Model.Topic.Struct",null);
+		struct.setattrvalue("attr1", attr1);
+		if(sub!=null){
+			struct.addattrobj("sub", sub);
+		}
+		return struct;
+	}
+	// der ganze Inhalt einer Struktur (auch von Unterstrukturen) wird verglichen
+	@Test
+	public void structContent_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		assertNull(index.add(values(struct("a",struct("x",null))), "o1"));
+		assertNull(index.add(values(struct("a",struct("y",null))), "o2"));
+		assertNull(index.add(values(struct("a",null)), "o3"));
+		assertEquals("o2",index.add(values(struct("a",struct("y",null))), "o4"));
+		objPoolManager.close();
+	}
+	// die Reihenfolge der Attribute einer Struktur spielt keine Rolle
+	@Test
+	public void structAttrOrder_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		IomObject struct1=new Iom_jObject("Model.Topic.Struct",null);
+		struct1.setattrvalue("attr1", "a");
+		struct1.setattrvalue("attr2", "b");
+		IomObject struct2=new Iom_jObject("Model.Topic.Struct",null);
+		struct2.setattrvalue("attr2", "b");
+		struct2.setattrvalue("attr1", "a");
+		assertTrue(values(struct1).equals(values(struct2)));
+		assertNull(index.add(values(struct1), "o1"));
+		assertEquals("o1",index.add(values(struct2), "o2"));
+		objPoolManager.close();
+	}
+	// Werte, die keine Strings sind, sind nur gleich, wenn sie von der gleichen Klasse sind
+	@Test
+	public void nonStringValues_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		assertFalse(values(1).equals(values("1")));
+		assertNull(index.add(values(1), "o1"));
+		assertNull(index.add(values("1"), "o2"));
+		assertNull(index.add(values(1L), "o3"));
+		assertEquals("o1",index.add(values(1), "o4"));
+		assertEquals("o2",index.add(values("1"), "o5"));
+		objPoolManager.close();
+	}
+	// Referenzen in Strukturen sind wie in AttributeArray.equals() nie gleich
+	@Test
+	public void structWithRef_Ok() {
+		ObjectPoolManager objPoolManager=new ObjectPoolManager();
+		UniqueValueIndex index=new UniqueValueIndex(objPoolManager,"Test");
+		IomObject ref1=new Iom_jObject("REF",null);
+		ref1.setobjectrefoid("r1");
+		IomObject ref2=new Iom_jObject("REF",null);
+		ref2.setobjectrefoid("r1");
+		assertFalse(values(struct("a",ref1)).equals(values(struct("a",ref2))));
+		assertNull(index.add(values(struct("a",ref1)), "o1"));
+		assertNull(index.add(values(struct("a",ref2)), "o2"));
+		assertEquals(2,index.size());
+		objPoolManager.close();
+	}
+}
@@ -0,0 +1,128 @@
+package ch.interlis.iox_j.wkb;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.io.WKBReader;
+
+import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
+
+public class Iox2wkbEncoderTest {
+    private static IomObject createPolyline(double coords[]) {
+        IomObject polylineValue=new Iom_jObject("POLYLINE", null);
+        IomObject segments=polylineValue.addattrobj("sequence", "SEGMENTS");
+        for(int i=0;i<coords.length;i+=3) {
+            IomObject coord=segments.addattrobj("segment", "COORD");
+            coord.setattrvalue("C1", Double.toString(coords[i]));
+            coord.setattrvalue("C2", Double.toString(coords[i+1]));
+            coord.setattrvalue("C3", Double.toString(coords[i+2]));
+        }
+        return polylineValue;
+    }
+    private static IomObject addSurface(IomObject multiSurface,double boundaries[][][]) {
+        IomObject surfaceValue = multiSurface.addattrobj("surface", "SURFACE");
+        for(double polylines[][]:boundaries) {
+            IomObject boundary = surfaceValue.addattrobj("boundary", "BOUNDARY");
+            for(double polyline[]:polylines) {
+                boundary.addattrobj("polyline", createPolyline(polyline));
+            }
+        }
+        return multiSurface;
+    }
+    private static byte[] toBytes(ByteBuffer buf) {
+        assertEquals(0,buf.position());
+        byte ret[]=new byte[buf.remaining()];
+        buf.get(ret);
+        return ret;
+    }
+    // shell aus zwei Linien, ein Loch
+    private static final double SURFACE1[][][]=new double[][][] {
+        {{480000.0,70000.0,1.0, 500000.0,80000.0,2.0, 550000.0,90000.0,3.0},{550000.0,90000.0,3.0, 560000.0,60000.0,4.0, 480000.0,70000.0,1.0}},
+        {{500000.0,75000.0,5.0, 520000.0,76000.0,6.0, 510000.0,80000.0,7.0, 500000.0,75000.0,5.0}},
+    };
+    private static final double SURFACE2[][][]=new double[][][] {
+        {{0.0,0.0,0.0, 10.0,0.0,0.0, 10.0,10.0,0.0, 0.0,10.0,0.0, 0.0,0.0,0.0}},
+    };
+
+    // ohne ARCs gleiches Resultat wie Iox2wkb, ohne Iox2wkb zu verwenden
+    @Test
+    public void straight_sameAsIox2wkb() throws Exception {
+        IomObject surface=addSurface(new Iom_jObject("MULTISURFACE", null),SURFACE1);
+        IomObject multiSurface=addSurface(addSurface(new Iom_jObject("MULTISURFACE", null),SURFACE1),SURFACE2);
+        IomObject polyline=createPolyline(SURFACE1[0][0]);
+        ByteBuffer buf=null;
+        for(int dim=2;dim<=3;dim++) {
+            for(ByteOrder order:new ByteOrder[] {ByteOrder.BIG_ENDIAN,ByteOrder.LITTLE_ENDIAN}) {
+                Iox2wkbEncoder encoder=new Iox2wkbEncoder(dim,order,true);
+                for(int curve=0;curve<2;curve++) {
+                    boolean asCurve=curve==1;
+                    buf=encoder.polyline2wkb(polyline, asCurve, 0.0, buf);
+                    assertArrayEquals(new Iox2wkb(dim,order,true).polyline2wkb(polyline, false, asCurve, 0.0),toBytes(buf));
+                    for(int repair=0;repair<2;repair++) {
+                        boolean repairTouchingLine=repair==1;
+                        buf=encoder.surface2wkb(surface, asCurve, 0.0, repairTouchingLine, buf);
+                        assertArrayEquals(new Iox2wkb(dim,order,true).surface2wkb(surface, asCurve, 0.0, repairTouchingLine),toBytes(buf));
+                        buf=encoder.multisurface2wkb(multiSurface, asCurve, 0.0, repairTouchingLine, buf);
+                        assertArrayEquals(new Iox2wkb(dim,order,true).multisurface2wkb(multiSurface, asCurve, 0.0, repairTouchingLine),toBytes(buf));
+                    }
+                }
+                assertEquals(0,encoder.getFallbackCount());
+            }
+        }
+    }
+    // sich selbst beruehrender Rand und ARCs werden von Iox2wkb konvertiert
+    @Test
+    public void touchingRingAndArc_fallback() throws Exception {
+        IomObject touching=addSurface(new Iom_jObject("MULTISURFACE", null),new double[][][] {
+            {{0.0,0.0,0.0, 10.0,0.0,0.0, 5.0,5.0,0.0, 6.0,2.0,0.0, 4.0,2.0,0.0, 5.0,5.0,0.0, 0.0,10.0,0.0, 0.0,0.0,0.0}},
+        });
+        Iox2wkbEncoder encoder=new Iox2wkbEncoder(2,ByteOrder.BIG_ENDIAN,true);
+        ByteBuffer buf=encoder.surface2wkb(touching, true, 0.0, true, null);
+        byte expected[]=new Iox2wkb(2,ByteOrder.BIG_ENDIAN,true).surface2wkb(touching, true, 0.0, true);
+        assertArrayEquals(expected,toBytes(buf));
+        assertEquals(1,encoder.getFallbackCount());
+        // ohne Reparatur kein Fallback
+        buf=encoder.surface2wkb(touching, true, 0.0, false, buf);
+        assertArrayEquals(new Iox2wkb(2,ByteOrder.BIG_ENDIAN,true).surface2wkb(touching, true, 0.0, false),toBytes(buf));
+        assertEquals(1,encoder.getFallbackCount());
+
+        IomObject polyline=createPolyline(new double[] {2631293.029,1226007.765,0.0});
+        IomObject arc=polyline.getattrobj("sequence", 0).addattrobj("segment", "ARC");
+        arc.setattrvalue("A1", "2631297.503");
+        arc.setattrvalue("A2", "1226017.040");
+        arc.setattrvalue("C1", "2631296.768");
+        arc.setattrvalue("C2", "1226027.312");
+        buf=encoder.polyline2wkb(polyline, true, 0.01, buf);
+        assertArrayEquals(new Iox2wkb(2,ByteOrder.BIG_ENDIAN,true).polyline2wkb(polyline, false, true, 0.01),toBytes(buf));
+        assertEquals(2,encoder.getFallbackCount());
+    }
+    // zu kleiner Puffer wird ersetzt
+    @Test
+    public void smallBuffer_replaced() throws Exception {
+        IomObject multiSurface=addSurface(addSurface(new Iom_jObject("MULTISURFACE", null),SURFACE1),SURFACE2);
+        Iox2wkbEncoder encoder=new Iox2wkbEncoder(3,ByteOrder.LITTLE_ENDIAN,false);
+        ByteBuffer small=ByteBuffer.allocate(16);
+        ByteBuffer buf=encoder.multisurface2wkb(multiSurface, false, 0.0, false, small);
+        assertNotSame(small,buf);
+        assertArrayEquals(new Iox2wkb(3,ByteOrder.LITTLE_ENDIAN,false).multisurface2wkb(multiSurface, false, 0.0, false),toBytes(buf));
+        // wiederverwendet
+        assertSame(buf,encoder.multisurface2wkb(multiSurface, false, 0.0, false, buf));
+    }
+    // Rand im Gegenuhrzeigersinn, Loch im Uhrzeigersinn
+    @Test
+    public void orientRings() throws Exception {
+        IomObject surface=addSurface(new Iom_jObject("MULTISURFACE", null),new double[][][] {
+            {{0.0,0.0,0.0, 0.0,10.0,0.0, 10.0,10.0,0.0, 10.0,0.0,0.0, 0.0,0.0,0.0}},
+            {{2.0,2.0,0.0, 4.0,2.0,0.0, 4.0,4.0,0.0, 2.0,2.0,0.0}},
+        });
+        Iox2wkbEncoder encoder=new Iox2wkbEncoder(2);
+        encoder.setOrientRings(true);
+        ByteBuffer buf=encoder.surface2wkb(surface, false, 0.0, false, null);
+        assertEquals("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 4 4, 4 2, 2 2))",new WKBReader().read(toBytes(buf)).toText());
+    }
+}
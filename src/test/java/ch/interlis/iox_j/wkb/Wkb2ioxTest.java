@@ -1,9 +1,15 @@
 package ch.interlis.iox_j.wkb;
 
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import ch.interlis.iom.IomObject;
+import ch.interlis.iom_j.Iom_jObject;
 
 public class Wkb2ioxTest {
     @Test
@@ -26,5 +32,93 @@ public class Wkb2ioxTest {
         Assert.assertEquals("MULTISURFACE", iomObj.getobjecttag());
         Assert.assertEquals("MULTISURFACE {surface SURFACE {boundary [BOUNDARY {polyline POLYLINE {sequence SEGMENTS {segment [COORD {C1 0.0, C2 0.0}, ARC {A1 4.0, A2 0.0, C1 4.0, C2 4.0}, ARC {A1 0.0, A2 4.0, C1 0.0, C2 0.0}]}}}, BOUNDARY {polyline POLYLINE {sequence SEGMENTS {segment [COORD {C1 1.0, C2 1.0}, COORD {C1 3.0, C2 3.0}, COORD {C1 3.0, C2 1.0}, COORD {C1 1.0, C2 1.0}]}}}]}}",iomObj.toString());
     }
-
+    private static final String SURFACE_WITH_ARC="MULTISURFACE {surface SURFACE {boundary [BOUNDARY {polyline POLYLINE {sequence SEGMENTS {segment [COORD {C1 0.0, C2 0.0}, ARC {A1 4.0, A2 0.0, C1 4.0, C2 4.0}, ARC {A1 0.0, A2 4.0, C1 0.0, C2 0.0}]}}}, BOUNDARY {polyline POLYLINE {sequence SEGMENTS {segment [COORD {C1 1.0, C2 1.0}, COORD {C1 3.0, C2 3.0}, COORD {C1 3.0, C2 1.0}, COORD {C1 1.0, C2 1.0}]}}}]}}";
+    private static IomObject createSurface(String coords[]) {
+        IomObject multiSurface=new Iom_jObject("MULTISURFACE", null);
+        IomObject surface=multiSurface.addattrobj("surface", "SURFACE");
+        IomObject polyline=surface.addattrobj("boundary", "BOUNDARY").addattrobj("polyline", "POLYLINE");
+        IomObject segments=polyline.addattrobj("sequence", "SEGMENTS");
+        for(int i=0;i<coords.length;i+=2) {
+            IomObject coord=segments.addattrobj("segment", "COORD");
+            coord.setattrvalue("C1", coords[i]);
+            coord.setattrvalue("C2", coords[i+1]);
+        }
+        return multiSurface;
+    }
+    // aus einem ByteBuffer ab dessen Position lesen
+    @Test
+    public void readByteBuffer() throws Exception {
+        IomObject surface=createSurface(new String[] {"480000.0","70000.0","500000.0","80000.0","550000.0","90000.0","480000.0","70000.0"});
+        byte wkb[]=new Iox2wkb(2,ByteOrder.LITTLE_ENDIAN).surface2wkb(surface, true, 0.0, false);
+        ByteBuffer buf=ByteBuffer.allocate(wkb.length+5);
+        buf.put(new byte[] {9,9,9});
+        buf.put(wkb);
+        buf.put(new byte[] {9,9});
+        buf.position(3);
+        Wkb2iox wkb2iox=new Wkb2iox();
+        Assert.assertEquals(surface.toString(), wkb2iox.read(buf).toString());
+        Assert.assertEquals(3+wkb.length, buf.position());
+        Assert.assertEquals(ByteOrder.BIG_ENDIAN, buf.order());
+        // gleiche Instanz, andere Byte-Reihenfolge
+        wkb=new Iox2wkb(2,ByteOrder.BIG_ENDIAN).surface2wkb(surface, false, 0.0, false);
+        Assert.assertEquals(surface.toString(), wkb2iox.read(wkb).toString());
+        // abgeschnitten
+        try {
+            wkb2iox.read(ByteBuffer.wrap(wkb, 0, wkb.length-4));
+            Assert.fail();
+        }catch(com.vividsolutions.jts.io.ParseException ex) {
+        }
+    }
+    // Geometrie an einen Writer statt als IomObject
+    @Test
+    public void readToWriter() throws Exception {
+        byte cb[]=net.iharder.Base64.decode("AQwAAAABAAAAAQoAAAACAAAAAQgAAAAFAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAABBAAAAAAAAA\r\n" + 
+        "AAAAAAAAAAAQQAAAAAAAABBAAAAAAAAAAAAAAAAAAAAQQAAAAAAAAAAAAAAAAAAAAAABAgAAAAQA\r\n" + 
+        "AAAAAAAAAADwPwAAAAAAAPA/AAAAAAAACEAAAAAAAAAIQAAAAAAAAAhAAAAAAAAA8D8AAAAAAADw\r\n" + 
+        "PwAAAAAAAPA/");
+        final StringBuilder events=new StringBuilder();
+        Wkb2ioxWriter writer=new Wkb2ioxWriter() {
+            public void startMultiCoord() {events.append("MC(");}
+            public void endMultiCoord() {events.append(")");}
+            public void startMultiPolyline() {events.append("ML(");}
+            public void endMultiPolyline() {events.append(")");}
+            public void startMultiSurface() {events.append("MS(");}
+            public void endMultiSurface() {events.append(")");}
+            public void startSurface() {events.append("S(");}
+            public void endSurface() {events.append(")");}
+            public void startBoundary() {events.append("B(");}
+            public void endBoundary() {events.append(")");}
+            public void startPolyline() {events.append("L(");}
+            public void endPolyline() {events.append(")");}
+            public void coord(CharSequence c1, CharSequence c2, CharSequence c3) {events.append("C "+c1+" "+c2+" "+c3+";");}
+            public void arc(CharSequence a1, CharSequence a2, CharSequence c1, CharSequence c2, CharSequence c3) {events.append("A "+a1+" "+a2+" "+c1+" "+c2+" "+c3+";");}
+        };
+        Wkb2iox wkb2iox=new Wkb2iox();
+        wkb2iox.setFractionDigits(3);
+        wkb2iox.read(ByteBuffer.wrap(cb), writer);
+        Assert.assertEquals("MS(S(B(L(C 0.000 0.000 null;A 4.000 0.000 4.000 4.000 null;A 0.000 4.000 0.000 0.000 null;))B(L(C 1.000 1.000 null;C 3.000 3.000 null;C 3.000 1.000 null;C 1.000 1.000 null;))))",events.toString());
+        wkb2iox.setFractionDigits(-1);
+        Assert.assertEquals(SURFACE_WITH_ARC,wkb2iox.read(cb).toString());
+    }
+    // Runden wie Validator.roundNumeric()
+    @Test
+    public void appendRounded() throws Exception {
+        Random random=new Random(4711);
+        StringBuilder ret=new StringBuilder();
+        double values[]=new double[] {0.0,-0.0,1.0005,-1.0005,2.5,-2.5,0.0004,-0.0004,2600000.0005,1234567.8915,-1234567.8915,1e20,-1e-20,99.9996};
+        for(int i=0;i<values.length+10000;i++) {
+            double value=i<values.length ? values[i] : (random.nextDouble()-0.5)*Math.pow(10, random.nextInt(12));
+            if(i>=values.length && random.nextBoolean()) {
+                // Werte mit wenigen Nachkommastellen, d.h. auch genau eine Haelfte
+                value=Math.round(value*10000.0)/10000.0;
+            }
+            for(int digits=0;digits<5;digits++) {
+                BigDecimal decimal=new BigDecimal(Double.toString(value));
+                String expected=decimal.setScale(digits, decimal.signum()==-1 ? BigDecimal.ROUND_HALF_DOWN : BigDecimal.ROUND_HALF_UP).toPlainString();
+                ret.setLength(0);
+                Wkb2iox.appendRounded(value, digits, ret);
+                Assert.assertEquals(Double.toString(value)+" "+digits, expected, ret.toString());
+            }
+        }
+    }
 }